@@ -31,6 +31,7 @@ public class Lirical implements Callable<Integer> {
                 .addSubcommand("background", new BackgroundFrequencyCommand())
                 .addSubcommand("download", new DownloadCommand())
                 .addSubcommand("grid", new GridSearchCommand())
+                .addSubcommand("lr-matrix", new LrMatrixCommand())
                 .addSubcommand("phenopacket", new PhenopacketCommand())
                 .addSubcommand("simulate", new SimulatePhenotypeOnlyCommand())
                 .addSubcommand("simulate-vcf", new SimulatePhenopacketWithVcfCommand())
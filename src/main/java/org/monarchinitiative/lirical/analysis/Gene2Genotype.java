@@ -2,6 +2,7 @@ package org.monarchinitiative.lirical.analysis;
 
 import org.monarchinitiative.exomiser.core.model.TranscriptAnnotation;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.vcf.SimpleGenotype;
 import org.monarchinitiative.lirical.vcf.SimpleVariant;
 import org.monarchinitiative.phenol.ontology.data.TermId;
@@ -14,6 +15,10 @@ import java.util.stream.Collectors;
 /**
  * This class collects and organizes the variants found to be present in a given gene.
  * It provides functions that can be used to calculate the genotype likelihood ratio.
+ * The counts used by the genotype likelihood ratio are updated when a variant is added, so that the queries do
+ * not need to iterate over the variants. The variant list is sorted once, when it is first requested or when
+ * the object is frozen with {@link #freeze()} after the last variant of the VCF file was added. A frozen object
+ * cannot be changed and can be shared by several threads.
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  */
 public class Gene2Genotype {
@@ -24,12 +29,24 @@ public class Gene2Genotype {
     /** The symbol of this gene. */
     private final String symbol;
     /** List of all of the variants found in this gene. */
-    private final List<SimpleVariant> varList;
+    private List<SimpleVariant> varList;
     /** Sum of variants in the pathogenic bin, weighted by their predicted pathogenicity. */
     private double sumOfPathBinScores;
+    /** Number of variants in the pathogenic bin. */
+    private int pathogenicBinVariantCount;
+    /** Number of variants with a pathogenic ClinVar interpretation. */
+    private int clinVarPathogenicVariantCount;
+    /** Number of pathogenic alleles (see {@link SimpleVariant#pathogenicAlleleCount()}). */
+    private int pathogenicAlleleCount;
+    /** Number of ClinVar-pathogenic alleles (see {@link SimpleVariant#pathogenicClinVarAlleleCount()}). */
+    private int pathogenicClinVarAlleleCount;
+    /** True if {@link #varList} is sorted (the variants are sorted lazily, see {@link #getVarList()}). */
+    private boolean sorted;
+    /** True if no more variants can be added (see {@link #freeze()}). */
+    private boolean frozen;
     /** It simplifies the use of this class to have an object that indicates that NO VARIANT
      * was found in the gene (no variant in the gene was present in teh VCF file).    */
-    public static final Gene2Genotype NO_IDENTIFIED_VARIANT = new Gene2Genotype(TermId.of("n/a:n/a"),"n/a");
+    public static final Gene2Genotype NO_IDENTIFIED_VARIANT = new Gene2Genotype(TermId.of("n/a:n/a"),"n/a").freeze();
 
 
 
@@ -44,6 +61,35 @@ public class Gene2Genotype {
         this.symbol=sym;
         this.varList=new ArrayList<>();
         this.sumOfPathBinScores=0d;
+        this.sorted=true;
+        this.frozen=false;
+    }
+
+    /**
+     * Sort the variants and make this object immutable. This is called once all variants of the VCF file have
+     * been added; calling it again has no effect.
+     * @return this object
+     */
+    public Gene2Genotype freeze() {
+        if (!frozen) {
+            sortVariants();
+            this.varList = Collections.unmodifiableList(varList);
+            this.frozen = true;
+        }
+        return this;
+    }
+
+    /** @return true if no more variants can be added to this object (see {@link #freeze()}) */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void sortVariants() {
+        if (!sorted) {
+            // a stable sort, so the order is the same as if the list was sorted after each insertion
+            Collections.sort(varList);
+            sorted = true;
+        }
     }
 
     public TermId getGeneId() {
@@ -54,7 +100,9 @@ public class Gene2Genotype {
         return symbol;
     }
 
+    /** @return the variants of this gene, sorted in decreasing order of their pathogenicity */
     public List<SimpleVariant> getVarList() {
+        sortVariants();
         return varList;
     }
 
@@ -65,9 +113,14 @@ public class Gene2Genotype {
 
     public void addVariant(int chrom, int pos, String ref, String alt,
                            List<TranscriptAnnotation> annotList, String genotypeString, float path, float freq,ClinVarData.ClinSig clinv){
+        if (frozen) {
+            throw new LiricalRuntimeException("[ERROR] Cannot add a variant to the frozen genotype of " + symbol);
+        }
         SimpleVariant simplevar = new SimpleVariant(chrom, pos, ref, alt,  annotList, path,  freq, genotypeString,clinv);
         this.varList.add(simplevar);
+        this.sorted = false; // the list is sorted when it is requested (see getVarList)
         if (simplevar.isInPathogenicBin()) {
+            this.pathogenicBinVariantCount++;
             SimpleGenotype sgenotype=simplevar.getGtype();
             if (sgenotype.equals(SimpleGenotype.HOMOZYGOUS_ALT)) {
                 this.sumOfPathBinScores += 2*simplevar.getPathogenicityScore();
@@ -75,30 +128,34 @@ public class Gene2Genotype {
                 this.sumOfPathBinScores+=simplevar.getPathogenicityScore();
             }
         }
-        Collections.sort(varList); // keep variant list sorted
+        if (simplevar.isClinVarPathogenic()) {
+            this.clinVarPathogenicVariantCount++;
+        }
+        this.pathogenicAlleleCount += simplevar.pathogenicAlleleCount();
+        this.pathogenicClinVarAlleleCount += simplevar.pathogenicClinVarAlleleCount();
     }
 
 
     public boolean hasPredictedPathogenicVar() {
-        return this.varList.stream().anyMatch(SimpleVariant::isInPathogenicBin);
+        return this.pathogenicBinVariantCount > 0;
     }
 
     /** @return true iff there is a variant with a pathogenic ClinVar interpretation. */
    public boolean hasPathogenicClinvarVar() {
-        return this.varList.stream().anyMatch(SimpleVariant::isClinVarPathogenic);
+        return this.clinVarPathogenicVariantCount > 0;
    }
 
    public int pathogenicClinVarCount() {
-       return this.varList.stream().map(SimpleVariant::pathogenicClinVarAlleleCount).reduce(0,Integer::sum);
+       return this.pathogenicClinVarAlleleCount;
    }
 
    public int pathogenicAlleleCount() {
-       return this.varList.stream().map(SimpleVariant::pathogenicAlleleCount).reduce(0,Integer::sum);
+       return this.pathogenicAlleleCount;
    }
 
     @Override
     public String toString() {
-        String varString = varList.stream().filter(SimpleVariant::isInPathogenicBin).map(SimpleVariant::toString).collect(Collectors.joining("; "));
+        String varString = getVarList().stream().filter(SimpleVariant::isInPathogenicBin).map(SimpleVariant::toString).collect(Collectors.joining("; "));
         return String.format("%s[%s]: %s",this.symbol,this.geneId.getValue(),varString);
     }
 
@@ -3,6 +3,7 @@ package org.monarchinitiative.lirical.analysis;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import de.charite.compbio.jannovar.annotation.VariantEffect;
 import de.charite.compbio.jannovar.data.Chromosome;
@@ -13,6 +14,7 @@ import de.charite.compbio.jannovar.progress.ProgressReporter;
 import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.LazyGenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFHeader;
@@ -28,6 +30,7 @@ import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.VariantEffectPathogenicityScore;
 import org.monarchinitiative.exomiser.core.proto.AlleleProto;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.phenol.base.PhenolRuntimeException;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
@@ -36,6 +39,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
  * This class is responsible for parsing the VCF file and extracting variants and genotypes. Its
@@ -49,6 +54,22 @@ public class Vcf2GenotypeMap {
      * Path to the VCF file with the exome/genome of the proband.
      */
     private final String vcfPath;
+    /**
+     * Number of VCF records that are annotated together by a worker thread.
+     */
+    private static final int BATCH_SIZE = 1_000;
+    /**
+     * Maximum number of batches per worker thread that are read ahead of the merge of the annotated variants.
+     */
+    private static final int BATCHES_PER_THREAD = 4;
+    /**
+     * Marks the end of the VCF file in the queue of batches (see {@link #annotateInParallel}).
+     */
+    private static final Future<List<AnnotatedAllele>> END_OF_FILE = CompletableFuture.completedFuture(ImmutableList.of());
+    /**
+     * Number of threads used to annotate the variants (1: the VCF file is annotated by the calling thread).
+     */
+    private final int threads;
     /**
      * Prefix for the NCBI Entrez Gene data.
      */
@@ -114,6 +135,10 @@ public class Vcf2GenotypeMap {
      * A map with data from the Exomiser database.
      */
     private final MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap;
+    /**
+     * Creates the annotator of a thread (see {@link RecordAnnotator}).
+     */
+    private final Supplier<RecordAnnotator> annotatorFactory;
     /**
      * A set of interpretation classes from ClinVar that we will regard as pathogenic.
      */
@@ -124,12 +149,52 @@ public class Vcf2GenotypeMap {
 
 
     public Vcf2GenotypeMap(String vcf, JannovarData jannovar, MVStore mvs, GenomeAssembly ga, Map<TermId, String> geneId2SymbolMap) {
+        this(vcf, jannovar, mvs, ga, geneId2SymbolMap, 1);
+    }
+
+    /**
+     * @param vcf path to the VCF file
+     * @param jannovar the Jannovar transcript data
+     * @param mvs the Exomiser database
+     * @param ga the genome assembly of the VCF file
+     * @param geneId2SymbolMap key: an EntrezGene id; value: the corresponding gene symbol
+     * @param threads number of threads used to annotate the variants (1: serial annotation)
+     */
+    public Vcf2GenotypeMap(String vcf, JannovarData jannovar, MVStore mvs, GenomeAssembly ga, Map<TermId, String> geneId2SymbolMap, int threads) {
+        if (threads < 1) {
+            throw new LiricalRuntimeException("[ERROR] Number of threads must be at least 1 but was " + threads);
+        }
         this.vcfPath = vcf;
+        this.threads = threads;
         this.jannovarData = jannovar;
         this.alleleMap = MvStoreUtil.openAlleleMVMap(mvs);
         this.referenceDictionary = jannovarData.getRefDict();
         this.chromosomeMap = jannovarData.getChromosomes();
         this.genomeAssembly = ga;
+        this.annotatorFactory = AlleleAnnotator::new;
+        initSymbolToGenIdMap(geneId2SymbolMap);
+    }
+
+    /**
+     * Constructor for tests, which annotates the VCF records with the given annotators instead of Jannovar and the
+     * Exomiser database.
+     * @param vcf path to the VCF file
+     * @param annotatorFactory creates the annotator of a thread
+     * @param geneId2SymbolMap key: an EntrezGene id; value: the corresponding gene symbol
+     * @param threads number of threads used to annotate the variants (1: serial annotation)
+     */
+    Vcf2GenotypeMap(String vcf, Supplier<RecordAnnotator> annotatorFactory, Map<TermId, String> geneId2SymbolMap, int threads) {
+        if (threads < 1) {
+            throw new LiricalRuntimeException("[ERROR] Number of threads must be at least 1 but was " + threads);
+        }
+        this.vcfPath = vcf;
+        this.threads = threads;
+        this.jannovarData = null;
+        this.alleleMap = null;
+        this.referenceDictionary = null;
+        this.chromosomeMap = null;
+        this.genomeAssembly = null;
+        this.annotatorFactory = annotatorFactory;
         initSymbolToGenIdMap(geneId2SymbolMap);
     }
 
@@ -154,7 +219,11 @@ public class Vcf2GenotypeMap {
     }
 
     /**
-     * Read the VCF file and extract genotype
+     * Read the VCF file and extract genotype. If more than one thread was requested, the VCF file is annotated by a
+     * pipeline: one thread reads the VCF records and passes them on in batches to a pool of worker threads, which
+     * annotate the variants with Jannovar and look up their frequency and pathogenicity in the Exomiser database.
+     * The calling thread then adds the annotated variants to the {@link Gene2Genotype} objects in the order of the
+     * VCF file, and so the map is identical to the one of the serial annotation.
      *
      * @return map with key=TermId of a Gene, value corresponding {@link Gene2Genotype} object
      */
@@ -170,118 +239,311 @@ public class Vcf2GenotypeMap {
             this.samplenames = vcfHeader.getSampleNamesInOrder();
             this.n_samples = samplenames.size();
             this.samplename = samplenames.get(0);
-            logger.trace("Annotating VCF at " + vcfPath + " for sample " + this.samplename);
+            logger.trace("Annotating VCF at " + vcfPath + " for sample " + this.samplename + " with " + threads + " thread(s)");
             CloseableIterator<VariantContext> iter = vcfReader.iterator();
-            VariantContextAnnotator variantEffectAnnotator =
-                    new VariantContextAnnotator(this.referenceDictionary, this.chromosomeMap,
-                            new VariantContextAnnotator.Options());
+            if (threads < 2) {
+                RecordAnnotator annotator = annotatorFactory.get();
+                List<AnnotatedAllele> alleles = new ArrayList<>();
+                while (iter.hasNext()) {
+                    VariantContext vc = iter.next();
+                    if (!passesQualityFilter(vc)) {
+                        continue;
+                    }
+                    annotator.annotate(vc, alleles);
+                    alleles.forEach(this::addAllele);
+                    alleles.clear();
+                }
+            } else {
+                annotateInParallel(iter);
+            }
+        }
+
+        // sort the variants of each gene once, and make the genotypes immutable
+        gene2genotypeMap.values().forEach(Gene2Genotype::freeze);
+        final long endTime = System.nanoTime();
+        logger.info(String.format("Finished Annotating VCF (time= %.2f sec).", (endTime - startTime) / 1_000_000_000.0));
+        logger.info("Extracted {} non-filtered variants and {} variants that were removed because of a quality filter",
+                n_good_quality_variants, n_filtered_variants);
+        logger.info("Symbols without gene ids n={}.", symbolsWithoutGeneIds.size());
+        logger.info(String.join(";", symbolsWithoutGeneIds));
+        return gene2genotypeMap;
+    }
+
+    /**
+     * Count the VCF records that pass or fail the quality filter.
+     * @param vc a record of the VCF file
+     * @return true if the record passes the quality filter and is annotated
+     */
+    private boolean passesQualityFilter(VariantContext vc) {
+        if (vc.isFiltered()) {
+            // this is a failing VariantContext
+            n_filtered_variants++;
+            return false;
+        }
+        n_good_quality_variants++;
+        return true;
+    }
+
+    /**
+     * Annotate the records of the VCF file with {@link #threads} worker threads. A reader thread reads the records
+     * and submits them in batches of {@link #BATCH_SIZE} records to the workers. The futures of the batches are
+     * queued in the order of the VCF file, and the calling thread adds the annotated alleles of one batch after the
+     * other to {@link #gene2genotypeMap}. The queue is bounded, so that the reader cannot get too far ahead of the
+     * annotation (and keep the whole VCF file in memory). The reader and the workers are daemon threads, so that they
+     * cannot keep the JVM alive if the annotation fails.
+     * @param iter iterator over the records of the VCF file
+     */
+    private void annotateInParallel(Iterator<VariantContext> iter) {
+        ExecutorService workers = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("vcf-annotator-%d").setDaemon(true).build());
+        ExecutorService reader = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("vcf-reader-%d").setDaemon(true).build());
+        // each worker thread uses its own annotators, which are not thread safe
+        ThreadLocal<RecordAnnotator> annotators = ThreadLocal.withInitial(annotatorFactory);
+        BlockingQueue<Future<List<AnnotatedAllele>>> batches = new ArrayBlockingQueue<>(threads * BATCHES_PER_THREAD);
+        Future<Void> reading = reader.submit(() -> {
+            boolean interrupted = false;
+            try {
+                List<VariantContext> batch = new ArrayList<>(BATCH_SIZE);
+                while (iter.hasNext() && !Thread.currentThread().isInterrupted()) {
+                    VariantContext vc = iter.next();
+                    if (!passesQualityFilter(vc)) {
+                        continue;
+                    }
+                    // the genotypes are decoded lazily by the parser of the VCF reader, which is not thread safe
+                    if (vc.getGenotypes() instanceof LazyGenotypesContext) {
+                        ((LazyGenotypesContext) vc.getGenotypes()).decode();
+                    }
+                    batch.add(vc);
+                    if (batch.size() == BATCH_SIZE) {
+                        batches.put(workers.submit(annotationTask(batch, annotators)));
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(workers.submit(annotationTask(batch, annotators)));
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                throw e;
+            } finally {
+                // the reader is only interrupted by a consumer that stopped taking batches, and so the queue may be
+                // full and nobody waits for the end of the file
+                if (!interrupted && !Thread.currentThread().isInterrupted()) {
+                    batches.put(END_OF_FILE);
+                }
+            }
+            return null;
+        });
+        try {
+            Future<List<AnnotatedAllele>> batch;
+            while ((batch = batches.take()) != END_OF_FILE) {
+                batch.get().forEach(this::addAllele);
+            }
+            // the counts of the reader thread are visible once the reader has finished
+            reading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LiricalRuntimeException("[ERROR] Interrupted while annotating " + vcfPath);
+        } catch (ExecutionException e) {
+            throw new LiricalRuntimeException("[ERROR] Could not annotate " + vcfPath + ": " + e.getCause().getMessage());
+        } finally {
+            reader.shutdownNow();
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * @param batch records of the VCF file that passed the quality filter
+     * @param annotators the annotators of the worker threads
+     * @return a task that annotates the records in a worker thread and returns the alleles in the order of the records
+     */
+    private Callable<List<AnnotatedAllele>> annotationTask(List<VariantContext> batch, ThreadLocal<RecordAnnotator> annotators) {
+        return () -> {
+            RecordAnnotator annotator = annotators.get();
+            List<AnnotatedAllele> alleles = new ArrayList<>();
+            for (VariantContext vc : batch) {
+                annotator.annotate(vc, alleles);
+            }
+            return alleles;
+        };
+    }
+
+    /**
+     * Add an annotated allele to the genotype of its gene in {@link #gene2genotypeMap}. This method is only called
+     * by one thread, in the order of the VCF file.
+     * @param allele an allele annotated by a {@link RecordAnnotator}
+     */
+    private void addAllele(AnnotatedAllele allele) {
+        if (allele.geneId == null) {
+            symbolsWithoutGeneIds.add(allele.symbol);
+            return;
+        }
+        Gene2Genotype gene2Genotype = gene2genotypeMap.computeIfAbsent(allele.geneId, k -> new Gene2Genotype(allele.geneId, allele.symbol));
+        if (allele.hasVariant) {
+            gene2Genotype.addVariant(allele.chrom, allele.pos, allele.ref, allele.alt, allele.transcriptAnnotations,
+                    allele.genotypeString, allele.pathogenicity, allele.frequency, allele.clinSig);
+        }
+    }
+
+    /**
+     * One alternate allele of a VCF record, annotated with its gene and (unless the genotype is 0/0 or ./.) the data
+     * that is stored in {@link Gene2Genotype}. If the gene symbol returned by Jannovar could not be mapped to a gene id,
+     * only the symbol is set.
+     */
+    static class AnnotatedAllele {
+        private final TermId geneId;
+        private final String symbol;
+        private final boolean hasVariant;
+        private final int chrom;
+        private final int pos;
+        private final String ref;
+        private final String alt;
+        private final List<TranscriptAnnotation> transcriptAnnotations;
+        private final String genotypeString;
+        private final float pathogenicity;
+        private final float frequency;
+        private final ClinVarData.ClinSig clinSig;
+
+        AnnotatedAllele(TermId geneId, String symbol, boolean hasVariant, int chrom, int pos, String ref, String alt,
+                        List<TranscriptAnnotation> transcriptAnnotations, String genotypeString,
+                        float pathogenicity, float frequency, ClinVarData.ClinSig clinSig) {
+            this.geneId = geneId;
+            this.symbol = symbol;
+            this.hasVariant = hasVariant;
+            this.chrom = chrom;
+            this.pos = pos;
+            this.ref = ref;
+            this.alt = alt;
+            this.transcriptAnnotations = transcriptAnnotations;
+            this.genotypeString = genotypeString;
+            this.pathogenicity = pathogenicity;
+            this.frequency = frequency;
+            this.clinSig = clinSig;
+        }
+
+        static AnnotatedAllele withoutGeneId(String symbol) {
+            return new AnnotatedAllele(null, symbol, false, 0, 0, null, null, null, null, 0f, 0f, null);
+        }
+
+        static AnnotatedAllele withoutVariant(TermId geneId, String symbol) {
+            return new AnnotatedAllele(geneId, symbol, false, 0, 0, null, null, null, null, 0f, 0f, null);
+        }
+    }
+
+    /**
+     * Annotates the alternate alleles of the VCF records. An annotator is only used by one thread.
+     */
+    interface RecordAnnotator {
+        /**
+         * Annotate the alternate alleles of a VCF record.
+         * @param vc a record of the VCF file that passed the quality filter
+         * @param alleles list to which the annotated alleles are added, in the order of the alternate alleles
+         */
+        void annotate(VariantContext vc, List<AnnotatedAllele> alleles);
+    }
+
+    /**
+     * The Jannovar annotators of one thread. The annotation only reads the shared data (transcripts, Exomiser
+     * database), and so several threads can annotate variants at the same time with their own annotators.
+     */
+    private class AlleleAnnotator implements RecordAnnotator {
+        private final VariantContextAnnotator variantEffectAnnotator;
+        private final JannovarVariantAnnotator jannovarVariantAnnotator;
+
+        private AlleleAnnotator() {
+            this.variantEffectAnnotator = new VariantContextAnnotator(referenceDictionary, chromosomeMap,
+                    new VariantContextAnnotator.Options());
             // Note that we do not use Genomiser data in this version of LIRICAL
             // Therefore, just pass in an empty list to satisfy the API
             List<RegulatoryFeature> emtpylist = ImmutableList.of();
             ChromosomalRegionIndex<RegulatoryFeature> emptyRegionIndex = ChromosomalRegionIndex.of(emtpylist);
-            JannovarVariantAnnotator jannovarVariantAnnotator = new JannovarVariantAnnotator(genomeAssembly, jannovarData, emptyRegionIndex);
-            while (iter.hasNext()) {
-                VariantContext vc = iter.next();
-                if (vc.isFiltered()) {
-                    // this is a failing VariantContext
-                    n_filtered_variants++;
-                    continue;
-                } else {
-                    n_good_quality_variants++;
-                }
-                vc = variantEffectAnnotator.annotateVariantContext(vc);
-                List<Allele> altAlleles = vc.getAlternateAlleles();
-                String contig = vc.getContig();
-                int start = vc.getStart();
-                String ref = vc.getReference().getBaseString();
-                for (int i = 0; i < altAlleles.size(); i++) {
-                    Allele allele = altAlleles.get(i);
-                    String alt = allele.getBaseString();
-                    Map<String, SampleGenotype> sampleGenotypes = createAlleleSampleGenotypes(vc, i);
-                    VariantAnnotation va = jannovarVariantAnnotator.annotate(contig, start, ref, alt);
-                    VariantEffect variantEffect = va.getVariantEffect();
-                    if (!variantEffect.isOffExome()) {
-                        String genIdString = va.getGeneId(); // for now assume this is an Entrez Gene ID
-                        String symbol = va.getGeneSymbol();
-                        TermId geneId;
-                        if (genIdString.isEmpty()) {
-                            if (symbolToIdMap.containsKey(symbol)) {
-                                geneId = symbolToIdMap.get(symbol);
-                            } else {
-                                // this is something where the NCBI gene is is not included in the Jannovar file
-                                // it could be e.g., abParts, or a gene such as DQ582201 (a piRNA)
-                                //System.out.println("ABOUT TO CONU with " + genIdString + ":"+ symbol);
-                                symbolsWithoutGeneIds.add(symbol);
-                                continue;
-                            }
+            this.jannovarVariantAnnotator = new JannovarVariantAnnotator(genomeAssembly, jannovarData, emptyRegionIndex);
+        }
+
+        @Override
+        public void annotate(VariantContext vc, List<AnnotatedAllele> alleles) {
+            vc = variantEffectAnnotator.annotateVariantContext(vc);
+            List<Allele> altAlleles = vc.getAlternateAlleles();
+            String contig = vc.getContig();
+            int start = vc.getStart();
+            String ref = vc.getReference().getBaseString();
+            for (int i = 0; i < altAlleles.size(); i++) {
+                Allele allele = altAlleles.get(i);
+                String alt = allele.getBaseString();
+                Map<String, SampleGenotype> sampleGenotypes = createAlleleSampleGenotypes(vc, i);
+                VariantAnnotation va = jannovarVariantAnnotator.annotate(contig, start, ref, alt);
+                VariantEffect variantEffect = va.getVariantEffect();
+                if (!variantEffect.isOffExome()) {
+                    String genIdString = va.getGeneId(); // for now assume this is an Entrez Gene ID
+                    String symbol = va.getGeneSymbol();
+                    TermId geneId;
+                    if (genIdString.isEmpty()) {
+                        if (symbolToIdMap.containsKey(symbol)) {
+                            geneId = symbolToIdMap.get(symbol);
                         } else {
-                            try {
-                                geneId = TermId.of(NCBI_ENTREZ_GENE_PREFIX, genIdString);
-                            } catch (PhenolRuntimeException pre) {
-                                logger.error("Could not identify gene \"{}\" with symbol \"{}\" for variant {}", genIdString, symbol, va.toString());
-                                // if gene is not included in the Jannovar file then it is not a Mendelian
-                                // disease gene, e.g., abParts.
-                                //System.out.println(genIdString +"!");
-                                //System.out.print(symbol+"!");
-                                if (!symbol.isEmpty()) {
-                                    symbolsWithoutGeneIds.add(symbol);
-                                    System.out.println("Adding " + symbol);
-                                }
-                                // Therefore just skip it
-                                continue;
+                            // this is something where the NCBI gene is is not included in the Jannovar file
+                            // it could be e.g., abParts, or a gene such as DQ582201 (a piRNA)
+                            alleles.add(AnnotatedAllele.withoutGeneId(symbol));
+                            continue;
+                        }
+                    } else {
+                        try {
+                            geneId = TermId.of(NCBI_ENTREZ_GENE_PREFIX, genIdString);
+                        } catch (PhenolRuntimeException pre) {
+                            logger.error("Could not identify gene \"{}\" with symbol \"{}\" for variant {}", genIdString, symbol, va.toString());
+                            // if gene is not included in the Jannovar file then it is not a Mendelian
+                            // disease gene, e.g., abParts.
+                            if (!symbol.isEmpty()) {
+                                alleles.add(AnnotatedAllele.withoutGeneId(symbol));
                             }
+                            // Therefore just skip it
+                            continue;
                         }
+                    }
 
-                        gene2genotypeMap.putIfAbsent(geneId, new Gene2Genotype(geneId, symbol));
-                        Gene2Genotype gene2Genotype = gene2genotypeMap.get(geneId);
-                        VariantEvaluation veval = buildVariantEvaluation(vc, va, sampleGenotypes);
-                        AlleleProto.AlleleKey alleleKey = AlleleProtoAdaptor.toAlleleKey(veval);
-                        AlleleProto.AlleleProperties alleleProp = alleleMap.get(alleleKey);
-                        int chrom = veval.getChromosome();
-                        int pos = veval.getPosition();
-                        List<TranscriptAnnotation> transcriptAnnotationList = veval.getTranscriptAnnotations();
-                        String genotypeString = veval.getGenotypeString();
-                        // Some VCF files may have been prepared from multi-VCF files. In some cases,
-                        // 0/0 is left in, i.e., HOMOZYGOUS_REF, or ./., i.e., no call possible
-                        // We will just skip these lines
-                        if ((genotypeString.equals("0/0") || genotypeString.equals("./.")))
-                            continue;
-                        float freq;
-                        float pathogenicity;
-                        if (alleleProp == null) {
-                            // this means the variant is not represented in the Exomiser data
-                            // this is not an error, the variant could be very rare or otherwise not seen before
-                            freq = DEFAULT_FREQUENCY;
-                            pathogenicity = VariantEffectPathogenicityScore.getPathogenicityScoreOf(variantEffect);
-                            gene2Genotype.addVariant(chrom, pos, ref, alt, transcriptAnnotationList, genotypeString, pathogenicity, freq, ClinVarData.ClinSig.NOT_PROVIDED);
+                    VariantEvaluation veval = buildVariantEvaluation(vc, va, sampleGenotypes);
+                    AlleleProto.AlleleKey alleleKey = AlleleProtoAdaptor.toAlleleKey(veval);
+                    int chrom = veval.getChromosome();
+                    int pos = veval.getPosition();
+                    List<TranscriptAnnotation> transcriptAnnotationList = veval.getTranscriptAnnotations();
+                    String genotypeString = veval.getGenotypeString();
+                    // Some VCF files may have been prepared from multi-VCF files. In some cases,
+                    // 0/0 is left in, i.e., HOMOZYGOUS_REF, or ./., i.e., no call possible
+                    // We will just skip these lines (but the gene is still added to the map)
+                    if ((genotypeString.equals("0/0") || genotypeString.equals("./."))) {
+                        alleles.add(AnnotatedAllele.withoutVariant(geneId, symbol));
+                        continue;
+                    }
+                    // concurrent reads of the MVStore are thread safe
+                    AlleleProto.AlleleProperties alleleProp = alleleMap.get(alleleKey);
+                    float freq;
+                    float pathogenicity;
+                    ClinVarData.ClinSig clinSig;
+                    if (alleleProp == null) {
+                        // this means the variant is not represented in the Exomiser data
+                        // this is not an error, the variant could be very rare or otherwise not seen before
+                        freq = DEFAULT_FREQUENCY;
+                        pathogenicity = VariantEffectPathogenicityScore.getPathogenicityScoreOf(variantEffect);
+                        clinSig = ClinVarData.ClinSig.NOT_PROVIDED;
+                    } else {
+                        FrequencyData frequencyData = AlleleProtoAdaptor.toFrequencyData(alleleProp);
+                        PathogenicityData pathogenicityData = AlleleProtoAdaptor.toPathogenicityData(alleleProp);
+                        freq = frequencyData.getMaxFreq();
+                        pathogenicity = calculatePathogenicity(variantEffect, pathogenicityData);
+                        ClinVarData cVarData = pathogenicityData.getClinVarData();
+                        // Only use ClinVar data if it is backed up by assertions.
+                        if (cVarData.getReviewStatus().startsWith("no_assertion")) {
+                            clinSig = ClinVarData.ClinSig.NOT_PROVIDED;
                         } else {
-                            FrequencyData frequencyData = AlleleProtoAdaptor.toFrequencyData(alleleProp);
-                            PathogenicityData pathogenicityData = AlleleProtoAdaptor.toPathogenicityData(alleleProp);
-                            freq = frequencyData.getMaxFreq();
-                            pathogenicity = calculatePathogenicity(variantEffect, pathogenicityData);
-                            ClinVarData cVarData = pathogenicityData.getClinVarData();
-                            // Only use ClinVar data if it is backed up by assertions.
-                            if (cVarData.getReviewStatus().startsWith("no_assertion")) {
-                                gene2Genotype.addVariant(chrom, pos, ref, alt, transcriptAnnotationList, genotypeString, pathogenicity, freq, ClinVarData.ClinSig.NOT_PROVIDED);
-                            } else {
-                                gene2Genotype.addVariant(chrom, pos, ref, alt, transcriptAnnotationList, genotypeString, pathogenicity, freq, cVarData.getPrimaryInterpretation());
-                            }
+                            clinSig = cVarData.getPrimaryInterpretation();
                         }
-
                     }
+                    alleles.add(new AnnotatedAllele(geneId, symbol, true, chrom, pos, ref, alt, transcriptAnnotationList,
+                            genotypeString, pathogenicity, freq, clinSig));
                 }
             }
-
-
         }
-
-        final long endTime = System.nanoTime();
-        logger.info(String.format("Finished Annotating VCF (time= %.2f sec).", (endTime - startTime) / 1_000_000_000.0));
-        logger.info("Extracted {} non-filtered variants and {} variants that were removed because of a quality filter",
-                n_good_quality_variants, n_filtered_variants);
-        logger.info("Symbols without gene ids n={}.", symbolsWithoutGeneIds.size());
-        logger.info(String.join(";", symbolsWithoutGeneIds));
-        return gene2genotypeMap;
     }
 
 
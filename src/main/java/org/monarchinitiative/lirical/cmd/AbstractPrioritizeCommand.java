@@ -2,7 +2,12 @@ package org.monarchinitiative.lirical.cmd;
 
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
 import org.monarchinitiative.lirical.configuration.LiricalFactory;
+import org.monarchinitiative.lirical.exception.LiricalException;
 import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLikelihoodRatio;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLrMatrix;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import picocli.CommandLine;
 
@@ -39,6 +44,21 @@ public abstract class AbstractPrioritizeCommand {
     protected String outfilePrefix="lirical";
     @CommandLine.Option(names={"--orpha"},description = "use Orphanet annotation data (default: ${DEFAULT-VALUE})")
     boolean useOrphanet = false;
+    /** Number of threads used to annotate the VCF file and to evaluate the candidate diseases. */
+    @CommandLine.Option(names={"--threads"},description = "number of threads used to annotate the VCF file and to evaluate diseases (default: ${DEFAULT-VALUE})")
+    protected int threads = 1;
+    /** Path to a file with precomputed phenotype likelihood ratios (see {@link LrMatrixCommand}). */
+    @CommandLine.Option(names={"--lr-matrix"},description = "path to precomputed phenotype LR matrix file")
+    protected String lrMatrixPath = null;
+    /** Maximum number of HPO terms whose likelihood ratios in all diseases are cached (0: no cache). */
+    @CommandLine.Option(names={"--lr-cache-size"},description = "number of HPO terms for which LRs are cached (default: ${DEFAULT-VALUE})")
+    protected int lrCacheSize = 0;
+    /** If positive, only the best topK diseases are evaluated with explanations and shown in the output (0: all). */
+    @CommandLine.Option(names={"--top-k"},description = "number of top-ranked diseases to report (default: ${DEFAULT-VALUE}, i.e., all)")
+    protected int topK = 0;
+    /** If true, diseases that cannot reach the top K are not evaluated (requires --top-k and --lr-matrix). */
+    @CommandLine.Option(names={"--prune"},description = "skip diseases that cannot reach the top K (requires --top-k and --lr-matrix, default: ${DEFAULT-VALUE})")
+    protected boolean prune = false;
     /** An object that contains parameters from the YAML file for configuration. */
     protected LiricalFactory factory;
     /** Key: an EntrezGene id; value: corresponding gene symbol. */
@@ -47,6 +67,25 @@ public abstract class AbstractPrioritizeCommand {
     /** Various metadata that will be used for the HTML org.monarchinitiative.lirical.output. */
     protected Map<String,String> metadata;
 
+    /**
+     * Create the {@link PhenotypeLikelihoodRatio} object, using the precomputed likelihood ratios
+     * if the user passed the --lr-matrix option and a cache of likelihood ratios if --lr-cache-size is positive.
+     * @param ontology reference to HPO ontology
+     * @param diseaseMap key: disease CURIE, e.g., OMIM:600100; value: HpoDisease object
+     * @return object to calculate phenotype likelihood ratios
+     */
+    protected PhenotypeLikelihoodRatio phenotypeLikelihoodRatio(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+        if (lrMatrixPath == null) {
+            return new PhenotypeLikelihoodRatio(ontology, diseaseMap, null, lrCacheSize);
+        }
+        try {
+            PhenotypeLrMatrix matrix = PhenotypeLrMatrix.load(lrMatrixPath, ontology, diseaseMap);
+            return new PhenotypeLikelihoodRatio(ontology, diseaseMap, matrix, lrCacheSize);
+        } catch (LiricalException e) {
+            throw new LiricalRuntimeException("Could not load LR matrix: " + e.getMessage());
+        }
+    }
+
     protected void checkThresholds() {
         if (LR_THRESHOLD != null && minDifferentialsToShow != null) {
             System.err.println("[ERROR] Only one of the options -t/--threshold and -m/--mindiff can be used at once.");
@@ -58,6 +97,23 @@ public abstract class AbstractPrioritizeCommand {
                 throw new LiricalRuntimeException("Post-test probability (-t/--threshold) must be between 0.0 and 1.0.");
             }
         }
+        checkPruning(prune, topK, lrMatrixPath);
+    }
+
+    /**
+     * Pruning skips the diseases that cannot reach the top K of the ranking, so it needs a positive --top-k.
+     * The -t/--threshold option only affects the HTML output and is not used for pruning. The upper bounds of
+     * the diseases are derived from the precomputed likelihood ratios, so it also needs --lr-matrix.
+     */
+    static void checkPruning(boolean prune, int topK, String lrMatrixPath) {
+        if (prune && topK <= 0) {
+            System.err.println("[ERROR] The option --prune requires a positive value for --top-k.");
+            throw new LiricalRuntimeException("The option --prune requires a positive value for --top-k.");
+        }
+        if (prune && lrMatrixPath == null) {
+            System.err.println("[ERROR] The option --prune requires --lr-matrix.");
+            throw new LiricalRuntimeException("The option --prune requires --lr-matrix.");
+        }
     }
 
 }
@@ -0,0 +1,61 @@
+package org.monarchinitiative.lirical.cmd;
+
+import org.monarchinitiative.lirical.configuration.LiricalFactory;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLikelihoodRatio;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLrMatrix;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * This command precomputes the phenotype likelihood ratio of every HPO term in every disease and writes
+ * the results to a file that can be passed to the phenopacket and yaml commands with the {@code --lr-matrix}
+ * option. The file must be recreated whenever the hp.obo or phenotype.hpoa files are updated.
+ * The heavy lifting is done by {@link PhenotypeLrMatrix}.
+ * To run the command enter
+ * <pre>
+ *     java -jar LIRICAL.jar lr-matrix -d data -o data/lr-matrix.bin
+ * </pre>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+@CommandLine.Command(name = "lr-matrix",
+        aliases = {"M"},
+        mixinStandardHelpOptions = true,
+        description = "Precompute phenotype likelihood ratios for all HPO terms and diseases")
+public class LrMatrixCommand implements Callable<Integer> {
+    private static final Logger logger = LoggerFactory.getLogger(LrMatrixCommand.class);
+    /** Directory that contains {@code hp.obo} and {@code phenotype.hpoa} files. */
+    @CommandLine.Option(names={"-d","--data"}, description ="directory to download data (default: ${DEFAULT-VALUE})" )
+    private String datadir="data";
+    @CommandLine.Option(names={"--orpha"},description = "use Orphanet annotation data (default: ${DEFAULT-VALUE})")
+    private boolean useOrphanet = false;
+    @CommandLine.Option(names={"-o","--output"}, description = "path of the output file (default: ${DEFAULT-VALUE})")
+    private String outputPath = "lr-matrix.bin";
+    @CommandLine.Option(names={"--threads"},description = "number of threads (default: ${DEFAULT-VALUE})")
+    private int threads = 1;
+
+    public LrMatrixCommand() {
+    }
+
+    @Override
+    public Integer call() throws LiricalException {
+        LiricalFactory factory = new LiricalFactory.Builder()
+                .datadir(this.datadir)
+                .orphanet(this.useOrphanet)
+                .build();
+        factory.qcHumanPhenotypeOntologyFiles();
+        Ontology ontology = factory.hpoOntology();
+        Map<TermId, HpoDisease> diseaseMap = factory.diseaseMap(ontology);
+        PhenotypeLikelihoodRatio phenoLr = new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+        logger.info("Calculating LR matrix for {} diseases with {} thread(s)", diseaseMap.size(), threads);
+        PhenotypeLrMatrix.write(phenoLr, this.outputPath, this.threads);
+        return 0;
+    }
+}
@@ -99,11 +99,11 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
         factory.qcGenomeBuild();
         factory.qcVcfFile();
 
-        Map<TermId, Gene2Genotype> genotypemap = factory.getGene2GenotypeMap();
+        Map<TermId, Gene2Genotype> genotypemap = factory.getGene2GenotypeMap(this.threads);
         symbolsWithoutGeneIds = factory.getSymbolsWithoutGeneIds();
         GenotypeLikelihoodRatio genoLr = factory.getGenotypeLR();
         Map<TermId, HpoDisease> diseaseMap = factory.diseaseMap(this.hpOntology);
-        PhenotypeLikelihoodRatio phenoLr = new PhenotypeLikelihoodRatio(this.hpOntology, diseaseMap);
+        PhenotypeLikelihoodRatio phenoLr = phenotypeLikelihoodRatio(this.hpOntology, diseaseMap);
         Multimap<TermId, TermId> disease2geneMultimap = factory.disease2geneMultimap();
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(this.hpoIdList)
                 .ontology(this.hpOntology)
@@ -112,7 +112,10 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
                 .disease2geneMultimap(disease2geneMultimap)
                 .genotypeMap(genotypemap)
                 .phenotypeLr(phenoLr)
-                .genotypeLr(genoLr);
+                .genotypeLr(genoLr)
+                .threads(this.threads)
+                .topK(this.topK)
+                .pruning(this.prune);
 
         CaseEvaluator evaluator = caseBuilder.build();
         HpoCase hcase = evaluator.evaluate();
@@ -159,12 +162,15 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
         factory.qcHumanPhenotypeOntologyFiles();
         factory.qcExternalFilesInDataDir();
         Map<TermId, HpoDisease> diseaseMap = factory.diseaseMap(this.hpOntology);
-        PhenotypeLikelihoodRatio phenoLr = new PhenotypeLikelihoodRatio(this.hpOntology, diseaseMap);
+        PhenotypeLikelihoodRatio phenoLr = phenotypeLikelihoodRatio(this.hpOntology, diseaseMap);
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(this.hpoIdList)
                 .ontology(this.hpOntology)
                 .negated(this.negatedHpoIdList)
                 .diseaseMap(diseaseMap)
-                .phenotypeLr(phenoLr);
+                .phenotypeLr(phenoLr)
+                .threads(this.threads)
+                .topK(this.topK)
+                .pruning(this.prune);
         CaseEvaluator evaluator = caseBuilder.buildPhenotypeOnlyEvaluator();
         HpoCase hcase = evaluator.evaluate();
         this.metadata.put("hpoVersion", factory.getHpoVersion());
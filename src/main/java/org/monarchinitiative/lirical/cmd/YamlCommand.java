@@ -9,6 +9,7 @@ import org.monarchinitiative.lirical.io.YamlParser;
 import org.monarchinitiative.lirical.likelihoodratio.CaseEvaluator;
 import org.monarchinitiative.lirical.likelihoodratio.GenotypeLikelihoodRatio;
 import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLikelihoodRatio;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLrMatrix;
 import org.monarchinitiative.lirical.output.LiricalTemplate;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
 import org.monarchinitiative.phenol.base.PhenolRuntimeException;
@@ -38,6 +39,21 @@ public class YamlCommand implements Callable<Integer> {
     private static final Logger logger = LoggerFactory.getLogger(YamlCommand.class);
     @CommandLine.Option(names = {"-y","--yaml"}, description = "path to yaml configuration file", required = true)
     private String yamlPath;
+    /** Number of threads used to annotate the VCF file and to evaluate the candidate diseases. */
+    @CommandLine.Option(names={"--threads"},description = "number of threads used to annotate the VCF file and to evaluate diseases (default: ${DEFAULT-VALUE})")
+    private int threads = 1;
+    /** Path to a file with precomputed phenotype likelihood ratios (see {@link LrMatrixCommand}). */
+    @CommandLine.Option(names={"--lr-matrix"},description = "path to precomputed phenotype LR matrix file")
+    private String lrMatrixPath = null;
+    /** Maximum number of HPO terms whose likelihood ratios in all diseases are cached (0: no cache). */
+    @CommandLine.Option(names={"--lr-cache-size"},description = "number of HPO terms for which LRs are cached (default: ${DEFAULT-VALUE})")
+    private int lrCacheSize = 0;
+    /** If positive, only the best topK diseases are evaluated with explanations and shown in the output (0: all). */
+    @CommandLine.Option(names={"--top-k"},description = "number of top-ranked diseases to report (default: ${DEFAULT-VALUE}, i.e., all)")
+    private int topK = 0;
+    /** If true, diseases that cannot reach the top K are not evaluated (requires --top-k and --lr-matrix). */
+    @CommandLine.Option(names={"--prune"},description = "skip diseases that cannot reach the top K (requires --top-k and --lr-matrix, default: ${DEFAULT-VALUE})")
+    private boolean prune = false;
     /** Reference to the HPO. */
     private Ontology ontology;
 
@@ -75,7 +91,10 @@ public class YamlCommand implements Callable<Integer> {
                 .negated(factory.negatedHpoTerms())
                 .ontology(ontology)
                 .diseaseMap(diseaseMap)
-                .phenotypeLr(phenoLr);
+                .phenotypeLr(phenoLr)
+                .threads(threads)
+                .topK(topK)
+                .pruning(prune);
         CaseEvaluator evaluator = caseBuilder.buildPhenotypeOnlyEvaluator();
         HpoCase hcase = evaluator.evaluate();
         LiricalTemplate.Builder builder = new LiricalTemplate.Builder(hcase,ontology,this.metadata)
@@ -92,7 +111,7 @@ public class YamlCommand implements Callable<Integer> {
 
     private void runVcf() throws LiricalException {
         this.geneId2symbol = factory.geneId2symbolMap();
-        Map<TermId, Gene2Genotype> genotypeMap = factory.getGene2GenotypeMap();
+        Map<TermId, Gene2Genotype> genotypeMap = factory.getGene2GenotypeMap(threads);
         this.symbolsWithoutGeneIds = factory.getSymbolsWithoutGeneIds();
         this.metadata.put("vcf_file", factory.getVcfPath());
         this.metadata.put("n_filtered_variants", String.valueOf(factory.getN_filtered_variants()));
@@ -109,7 +128,10 @@ public class YamlCommand implements Callable<Integer> {
                 .phenotypeLr(phenoLr)
                 .global(factory.global())
                 .gene2idMap(geneId2symbol)
-                .genotypeLr(genoLr);
+                .genotypeLr(genoLr)
+                .threads(threads)
+                .topK(topK)
+                .pruning(prune);
         this.metadata.put("transcriptDatabase", factory.transcriptdb());
         int n_genes_with_var = genotypeMap.size();
         this.metadata.put("genesWithVar",String.valueOf(n_genes_with_var));
@@ -137,10 +159,14 @@ public class YamlCommand implements Callable<Integer> {
 
     @Override
     public Integer call() throws LiricalException {
+        AbstractPrioritizeCommand.checkPruning(prune, topK, lrMatrixPath);
         this.factory = deYamylate(this.yamlPath);
         this.ontology =  factory.hpoOntology();
         this.diseaseMap = factory.diseaseMap(ontology);
-        this.phenoLr = new PhenotypeLikelihoodRatio(ontology,diseaseMap);
+        PhenotypeLrMatrix matrix = lrMatrixPath != null ?
+                PhenotypeLrMatrix.load(lrMatrixPath, ontology, diseaseMap) :
+                null;
+        this.phenoLr = new PhenotypeLikelihoodRatio(ontology, diseaseMap, matrix, lrCacheSize);
         this.metadata=new HashMap<>();
         this.metadata.put("sample_name", factory.getSampleName());
         this.metadata.put("analysis_date", factory.getTodaysDate());
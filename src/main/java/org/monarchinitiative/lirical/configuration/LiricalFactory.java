@@ -16,6 +16,7 @@ import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.exception.LiricalException;
 import org.monarchinitiative.lirical.io.GenotypeDataIngestor;
 import org.monarchinitiative.lirical.io.YamlParser;
+import org.monarchinitiative.lirical.likelihoodratio.BackgroundFrequencyTable;
 import org.monarchinitiative.lirical.likelihoodratio.GenotypeLikelihoodRatio;
 import org.monarchinitiative.lirical.vcf.SimpleVariant;
 import org.monarchinitiative.phenol.annotations.assoc.GeneInfoParser;
@@ -121,6 +122,8 @@ public class LiricalFactory {
 
 
     private JannovarData jannovarData=null;
+    /** Background frequencies of the HPO terms, shared by all analyses that use the same diseases (null if not yet calculated). */
+    private BackgroundFrequencyTable backgroundFrequencyTable=null;
 
 
     /** Used as a flag to pick the right constructor in {@link Builder#buildForGt2Git()}. */
@@ -466,20 +469,52 @@ public class LiricalFactory {
         return HpoDiseaseAnnotationParser.loadDiseaseMap(phenotypeAnnotationPath,ontology,desiredDatabasePrefixes);
     }
 
+    /**
+     * The background frequencies of the HPO terms are calculated once and reused as long as the diseases are
+     * the same, e.g., by the simulations that are run for several phenopackets.
+     * @param ontology Reference to HPO ontology object
+     * @param diseaseMap the diseases of the corpus
+     * @return the background frequencies of the HPO terms in the diseases
+     */
+    public BackgroundFrequencyTable backgroundFrequencyTable(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+        if (backgroundFrequencyTable == null || !backgroundFrequencyTable.isCompatible(ontology, diseaseMap)) {
+            backgroundFrequencyTable = BackgroundFrequencyTable.compute(ontology, diseaseMap);
+        }
+        return backgroundFrequencyTable;
+    }
+
     public  Map<TermId, Gene2Genotype> getGene2GenotypeMap() {
         return getGene2GenotypeMap(getVcfPath());
     }
 
+    /**
+     * @param threads number of threads used to annotate the VCF file (1: serial annotation)
+     * @return map with the genotypes of the genes in the VCF file of this factory
+     */
+    public  Map<TermId, Gene2Genotype> getGene2GenotypeMap(int threads) {
+        return getGene2GenotypeMap(getVcfPath(), threads);
+    }
+
     public Set<String> getSymbolsWithoutGeneIds() {
         return symbolsWithoutGeneIds;
     }
 
     public  Map<TermId, Gene2Genotype> getGene2GenotypeMap(String vcfPath) {
+        return getGene2GenotypeMap(vcfPath, 1);
+    }
+
+    /**
+     * @param vcfPath path to the VCF file
+     * @param threads number of threads used to annotate the VCF file (1: serial annotation)
+     * @return map with the genotypes of the genes in the VCF file
+     */
+    public  Map<TermId, Gene2Genotype> getGene2GenotypeMap(String vcfPath, int threads) {
         Vcf2GenotypeMap vcf2geno = new Vcf2GenotypeMap(vcfPath,
                 jannovarData(),
                 mvStore(),
                 getAssembly(),
-                geneId2symbolMap() );
+                geneId2symbolMap(),
+                threads);
         Map<TermId, Gene2Genotype> genotypeMap = vcf2geno.vcf2genotypeMap();
         this.sampleName = vcf2geno.getSamplename();
         this.n_filtered_variants = vcf2geno.getN_filtered_variants();
@@ -3,6 +3,7 @@ package org.monarchinitiative.lirical.hpo;
 
 import com.google.common.collect.ImmutableList;
 
+import org.monarchinitiative.lirical.likelihoodratio.DiseaseRanking;
 import org.monarchinitiative.lirical.likelihoodratio.TestResult;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
@@ -31,11 +32,14 @@ public final class HpoCase {
     private final Age age;
 
     private final Map<TermId,TestResult> disease2resultMap;
+    /** Scores of all evaluated diseases if only the best diseases are stored in {@link #disease2resultMap}, otherwise null. */
+    private final DiseaseRanking ranking;
 
-    private HpoCase(List<TermId> observedAbn,  List<TermId> excludedAbn, Map<TermId,TestResult> d2rmap, Sex sex, Age age) {
+    private HpoCase(List<TermId> observedAbn,  List<TermId> excludedAbn, Map<TermId,TestResult> d2rmap, DiseaseRanking ranking, Sex sex, Age age) {
         this.observedAbnormalities=observedAbn;
         this.excludedAbnormalities=excludedAbn;
         this.disease2resultMap=d2rmap;
+        this.ranking=ranking;
         this.sex=sex;
         this.age=age;
     }
@@ -70,7 +74,8 @@ public final class HpoCase {
      * Note that in some cases, the correct disease may be completely removed from the list of results. This can
      * be the case, fo instance, if we are using the {@code strict} option and only return diseases for which
      * LIRICAL finds a predicted pathogenic variant in a gene associated with the disease.
-     * Therefore, we return an Optional. If it is not-present, then the disease was not found.
+     * Therefore, we return an Optional. If it is not-present, then the disease was not found. If only the results of
+     * the best diseases were kept, the rank of the other diseases is taken from the {@link DiseaseRanking}.
      * @param diseaseId CURIE (e.g., OMIM:600100) of the disease whose rank we want to know
      * @return the rank of the disease within all of the test results.
      *
@@ -78,7 +83,7 @@ public final class HpoCase {
     public Optional<Integer> getRank(TermId diseaseId){
         TestResult result = this.disease2resultMap.get(diseaseId);
         if (result==null) {
-            return Optional.empty();
+            return ranking != null ? ranking.getRank(diseaseId) : Optional.empty();
         }
         return Optional.of(result.getRank());
     }
@@ -86,7 +91,7 @@ public final class HpoCase {
     public double getPosttestProbability(TermId diseaseId) {
         TestResult result = this.disease2resultMap.get(diseaseId);
         if (result==null) {
-            return 0.0;
+            return ranking != null ? ranking.getPosttestProbability(diseaseId) : 0.0;
         }
         return result.getPosttestProbability();
     }
@@ -96,7 +101,7 @@ public final class HpoCase {
      * @return (tied) rank of an unranked disease
      */
     public int getRankOfUnrankedDisease() {
-        return 1 + this.disease2resultMap.size();
+        return 1 + (ranking != null ? ranking.size() : this.disease2resultMap.size());
     }
 
 
@@ -130,6 +135,8 @@ public final class HpoCase {
         private List<TermId> excludedAbnormalities;
         /** List of results . */
         private Map<TermId,TestResult> testResultMap;
+        /** Scores of all diseases if {@link #testResultMap} only contains the best diseases. */
+        private DiseaseRanking ranking = null;
         /** One of Male, Female, Unknown. See {@link Sex}. */
         private Sex sex;
         /** Age of the proband, if known. */
@@ -162,9 +169,14 @@ public final class HpoCase {
             return this;
         }
 
+        public Builder ranking(DiseaseRanking ranking) {
+            this.ranking = ranking;
+            return this;
+        }
+
         public HpoCase build() {
             Objects.requireNonNull(testResultMap);
-            return new HpoCase(observedAbnormalities,excludedAbnormalities, testResultMap,sex,age);
+            return new HpoCase(observedAbnormalities,excludedAbnormalities, testResultMap,ranking,sex,age);
         }
     }
 
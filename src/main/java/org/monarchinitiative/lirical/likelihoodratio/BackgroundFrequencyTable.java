@@ -0,0 +1,344 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The background frequency of each HPO term, i.e., the proportion of diseases that are annotated to the term or
+ * to one of its descendants, weighted by the maximum frequency of these annotations in each disease. The
+ * frequencies are stored in a {@code double} array indexed by the {@link HpoTermIndex} of the terms.
+ * <p>
+ * The table depends only on the HPO and on the disease annotations. The contribution of each disease is
+ * calculated in parallel, and the contributions are then added up in the order of the disease map, so that the
+ * result is identical to a serial calculation. The table can be shared by several {@link PhenotypeLikelihoodRatio}
+ * objects (e.g., by the simulators, which create one for each simulation run), and it can be written to a file
+ * with {@link #write(String)} and loaded again with {@link #load(String, Ontology, Map)}. The file has the
+ * following layout (big endian):
+ * </p>
+ * <pre>
+ * int magic, int version, UTF HPO version,
+ * UTF digest of the HPO and of the disease annotations (see {@link ReferenceDataDigest}),
+ * int number of terms, UTF term id (one per term, in index order),
+ * int number of diseases, UTF disease id (one per disease),
+ * double background frequency (one per term)
+ * </pre>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class BackgroundFrequencyTable {
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundFrequencyTable.class);
+    /** "BGFT" */
+    private static final int MAGIC = 0x42474654;
+    private static final int VERSION = 2;
+    /** Index of the HPO terms; position i of {@link #frequencies} belongs to term i of the index. */
+    private final HpoTermIndex termIndex;
+    /** The ontology that was used to create {@link #termIndex}. */
+    private final Ontology ontology;
+    /** The ids of the diseases the table was calculated for, in the order of the disease map. */
+    private final ImmutableList<TermId> diseaseIds;
+    /**
+     * Digest of the HPO and of the disease annotations the table was calculated for. It is only needed to write the
+     * table, so it is calculated when it is first used.
+     */
+    private final Supplier<String> digest;
+    /** Background frequency of each indexed HPO term. */
+    private final double[] frequencies;
+
+    private BackgroundFrequencyTable(HpoTermIndex termIndex, Ontology ontology, List<TermId> diseaseIds, Supplier<String> digest,
+                                     double[] frequencies) {
+        this.termIndex = termIndex;
+        this.ontology = ontology;
+        this.diseaseIds = ImmutableList.copyOf(diseaseIds);
+        this.digest = digest;
+        this.frequencies = frequencies;
+    }
+
+    /**
+     * The contribution of one disease to the background frequencies: the indices of the terms to which the
+     * disease is (explicitly or implicitly) annotated and the maximum frequency of the annotation.
+     */
+    private static class DiseaseContribution {
+        private final int[] termIndices;
+        private final double[] frequencies;
+
+        DiseaseContribution(int[] termIndices, double[] frequencies) {
+            this.termIndices = termIndices;
+            this.frequencies = frequencies;
+        }
+    }
+
+    /**
+     * Calculate the background frequencies using the common fork-join pool.
+     * @param ontology Reference to HPO ontology object
+     * @param diseaseMap the diseases of the corpus
+     * @return the background frequency table
+     */
+    public static BackgroundFrequencyTable compute(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+        return compute(ontology, new HpoTermIndex(ontology), diseaseMap);
+    }
+
+    /**
+     * Calculate the background frequencies with a dedicated pool of threads.
+     * @param ontology Reference to HPO ontology object
+     * @param diseaseMap the diseases of the corpus
+     * @param threads number of threads used for the calculation
+     * @return the background frequency table
+     * @throws LiricalException if the calculation was interrupted
+     */
+    public static BackgroundFrequencyTable compute(Ontology ontology, Map<TermId, HpoDisease> diseaseMap, int threads) throws LiricalException {
+        HpoTermIndex termIndex = new HpoTermIndex(ontology);
+        List<HpoDisease> diseases = ImmutableList.copyOf(diseaseMap.values());
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            List<DiseaseContribution> contributions = pool.submit(() -> contributions(ontology, termIndex, diseases)).get();
+            return sum(ontology, termIndex, diseases, Suppliers.memoize(() -> ReferenceDataDigest.of(ontology, diseaseMap)),
+                    contributions);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LiricalException("Interrupted while calculating background frequencies: " + e.getMessage());
+        } catch (ExecutionException e) {
+            throw new LiricalException("Could not calculate background frequencies: " + e.getCause().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Calculate the background frequencies using the common fork-join pool and an existing term index.
+     */
+    static BackgroundFrequencyTable compute(Ontology ontology, HpoTermIndex termIndex, Map<TermId, HpoDisease> diseaseMap) {
+        List<HpoDisease> diseases = ImmutableList.copyOf(diseaseMap.values());
+        return sum(ontology, termIndex, diseases, Suppliers.memoize(() -> ReferenceDataDigest.of(ontology, diseaseMap)),
+                contributions(ontology, termIndex, diseases));
+    }
+
+    /** @return the contribution of each disease, calculated in parallel (in the order of the diseases). */
+    private static List<DiseaseContribution> contributions(Ontology ontology, HpoTermIndex termIndex, List<HpoDisease> diseases) {
+        return IntStream.range(0, diseases.size()).parallel()
+                .mapToObj(i -> contribution(ontology, termIndex, diseases.get(i)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Add up the contributions in the order of the disease map (this gives the same result as a serial
+     * calculation) and normalize by the number of diseases.
+     */
+    private static BackgroundFrequencyTable sum(Ontology ontology, HpoTermIndex termIndex, List<HpoDisease> diseases,
+                                                Supplier<String> digest, List<DiseaseContribution> contributions) {
+        double[] cumulative = new double[termIndex.size()];
+        for (DiseaseContribution c : contributions) {
+            for (int k = 0; k < c.termIndices.length; k++) {
+                cumulative[c.termIndices[k]] += c.frequencies[k];
+            }
+        }
+        double N = diseases.size();
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= N;
+        }
+        List<TermId> diseaseIds = new ArrayList<>(diseases.size());
+        for (HpoDisease disease : diseases) {
+            diseaseIds.add(disease.getDiseaseDatabaseId());
+        }
+        logger.trace("Got data on background frequency for {} terms", cumulative.length);
+        return new BackgroundFrequencyTable(termIndex, ontology, diseaseIds, digest, cumulative);
+    }
+
+    /**
+     * All of the ancestor terms of an annotation are implicitly annotated to the disease. Each ancestor gets the
+     * maximum frequency of the annotations it is an ancestor of (which also avoids double counting). The
+     * annotations are processed in decreasing order of frequency, so that the first annotation that reaches an
+     * ancestor determines its frequency.
+     */
+    private static DiseaseContribution contribution(Ontology ontology, HpoTermIndex termIndex, HpoDisease disease) {
+        List<HpoAnnotation> annotations = new ArrayList<>(disease.getPhenotypicAbnormalities());
+        annotations.sort((a, b) -> Double.compare(b.getFrequency(), a.getFrequency()));
+        BitSet seen = new BitSet(termIndex.size());
+        int[] terms = new int[16];
+        double[] freqs = new double[16];
+        int n = 0;
+        for (HpoAnnotation annotation : annotations) {
+            int idx = termIndex.indexOf(ontology.getPrimaryTermId(annotation.getTermId()));
+            if (idx == HpoTermIndex.NOT_INDEXED) {
+                logger.trace("Skipping unindexed annotation {} of {}", annotation.getTermId().getValue(),
+                        disease.getDiseaseDatabaseId().getValue());
+                continue;
+            }
+            for (int a : termIndex.getAncestorIndices(idx)) {
+                if (seen.get(a)) {
+                    continue;
+                }
+                seen.set(a);
+                if (n == terms.length) {
+                    terms = Arrays.copyOf(terms, 2 * n);
+                    freqs = Arrays.copyOf(freqs, 2 * n);
+                }
+                terms[n] = a;
+                freqs[n] = annotation.getFrequency();
+                n++;
+            }
+        }
+        return new DiseaseContribution(Arrays.copyOf(terms, n), Arrays.copyOf(freqs, n));
+    }
+
+    /**
+     * @param ontology Reference to HPO ontology object
+     * @param diseaseMap a disease map
+     * @return true if this table was calculated for the same ontology and the same diseases (in the same order)
+     */
+    public boolean isCompatible(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+        if (ontology != this.ontology || diseaseMap.size() != diseaseIds.size()) {
+            return false;
+        }
+        int i = 0;
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            if (!diseaseId.equals(diseaseIds.get(i++))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param tid an HPO term id
+     * @return true if the table has a background frequency for the term
+     */
+    public boolean contains(TermId tid) {
+        return termIndex.indexOf(tid) != HpoTermIndex.NOT_INDEXED;
+    }
+
+    /**
+     * @param tid an HPO term id
+     * @param defaultValue value to return if the term is not in the table
+     * @return the background frequency of the term
+     */
+    public double getOrDefault(TermId tid, double defaultValue) {
+        int idx = termIndex.indexOf(tid);
+        return idx == HpoTermIndex.NOT_INDEXED ? defaultValue : frequencies[idx];
+    }
+
+    /**
+     * @param termIdx index of a term in {@link #getTermIndex()}
+     * @return the background frequency of the term
+     */
+    double get(int termIdx) {
+        return frequencies[termIdx];
+    }
+
+    /** @return number of terms in the table. */
+    public int size() {
+        return frequencies.length;
+    }
+
+    HpoTermIndex getTermIndex() {
+        return termIndex;
+    }
+
+    private static String hpoVersion(Ontology ontology) {
+        return ontology.getMetaInfo().getOrDefault("data-version", "n/a");
+    }
+
+    /**
+     * Write the table to a file that can be loaded with {@link #load(String, Ontology, Map)}.
+     * @param path path of the output file
+     * @throws LiricalException if the file cannot be written
+     */
+    public void write(String path) throws LiricalException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(hpoVersion(ontology));
+            out.writeUTF(digest.get());
+            out.writeInt(frequencies.length);
+            for (int i = 0; i < frequencies.length; i++) {
+                out.writeUTF(termIndex.getTermId(i).getValue());
+            }
+            out.writeInt(diseaseIds.size());
+            for (TermId diseaseId : diseaseIds) {
+                out.writeUTF(diseaseId.getValue());
+            }
+            for (double f : frequencies) {
+                out.writeDouble(f);
+            }
+        } catch (IOException e) {
+            throw new LiricalException("Could not write background frequencies to " + path, e);
+        }
+        logger.info("Wrote background frequencies of {} terms to {}", frequencies.length, path);
+    }
+
+    /**
+     * Load a table that was created by {@link #write(String)}.
+     * @param path path of the file
+     * @param ontology Reference to HPO ontology object (must be the same version as used to create the file)
+     * @param diseaseMap the diseases of the corpus (must have the same annotations as used to create the file)
+     * @return the background frequency table
+     * @throws LiricalException if the file cannot be read or was created for other data
+     */
+    public static BackgroundFrequencyTable load(String path, Ontology ontology, Map<TermId, HpoDisease> diseaseMap) throws LiricalException {
+        HpoTermIndex termIndex = new HpoTermIndex(ontology);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new LiricalException(path + " is not a background frequency file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new LiricalException(String.format("Unsupported background frequency file version %d (expected %d)", version, VERSION));
+            }
+            String hpoVersion = in.readUTF();
+            if (!hpoVersion.equals(hpoVersion(ontology))) {
+                throw new LiricalException(String.format("Background frequencies were calculated with HPO version %s but HPO version is %s",
+                        hpoVersion, hpoVersion(ontology)));
+            }
+            String digest = in.readUTF();
+            if (!digest.equals(ReferenceDataDigest.of(ontology, diseaseMap))) {
+                throw new LiricalException("Background frequencies were calculated for a different HPO or for different disease annotations");
+            }
+            int nTerms = in.readInt();
+            if (nTerms != termIndex.size()) {
+                throw new LiricalException(String.format("Background frequency file has %d terms but HPO has %d",
+                        nTerms, termIndex.size()));
+            }
+            for (int i = 0; i < nTerms; i++) {
+                String tid = in.readUTF();
+                if (!tid.equals(termIndex.getTermId(i).getValue())) {
+                    throw new LiricalException("Background frequency file has unexpected term " + tid + " at position " + i);
+                }
+            }
+            int nDiseases = in.readInt();
+            if (nDiseases != diseaseMap.size()) {
+                throw new LiricalException(String.format("Background frequency file has %d diseases but disease map has %d",
+                        nDiseases, diseaseMap.size()));
+            }
+            List<TermId> diseaseIds = new ArrayList<>(nDiseases);
+            Iterator<TermId> expected = diseaseMap.keySet().iterator();
+            for (int i = 0; i < nDiseases; i++) {
+                TermId diseaseId = TermId.of(in.readUTF());
+                if (!diseaseId.equals(expected.next())) {
+                    throw new LiricalException("Background frequency file has unexpected disease " + diseaseId.getValue());
+                }
+                diseaseIds.add(diseaseId);
+            }
+            double[] frequencies = new double[nTerms];
+            for (int i = 0; i < nTerms; i++) {
+                frequencies[i] = in.readDouble();
+            }
+            logger.info("Loaded background frequencies of {} terms from {}", nTerms, path);
+            return new BackgroundFrequencyTable(termIndex, ontology, diseaseIds, Suppliers.ofInstance(digest), frequencies);
+        } catch (IOException e) {
+            throw new LiricalException("Could not read background frequencies from " + path, e);
+        }
+    }
+}
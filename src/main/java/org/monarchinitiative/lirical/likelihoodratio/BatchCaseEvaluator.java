@@ -0,0 +1,187 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluate many cases at once. {@link CaseEvaluator#evaluate()} iterates over all diseases for each case, and so
+ * the annotations and the {@link InducedDiseaseGraph} of each disease are visited once per case. This class
+ * iterates disease-major instead: each disease is visited once, and all cases are scored against it before the
+ * next disease is visited, which keeps the data of the disease in the CPU cache. If more than one thread is
+ * requested, the diseases are distributed over the threads. To bound the memory, the cases are evaluated in
+ * chunks of {@link #DEFAULT_CHUNK_SIZE} cases (or a chunk size passed to the constructor).
+ * <p>
+ * The cases are configured with {@link CaseEvaluator.Builder} as usual and must all use the same disease map
+ * and the same {@link PhenotypeLikelihoodRatio} object. The returned {@link HpoCase} objects are identical to
+ * the ones returned by {@link CaseEvaluator#evaluate()}, including the errors reported by
+ * {@link CaseEvaluator#getErrors()}. Cases that use pruning (see {@link CaseEvaluator.Builder#pruning(boolean)})
+ * skip most diseases anyway and are evaluated separately.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class BatchCaseEvaluator {
+    private static final Logger logger = LoggerFactory.getLogger(BatchCaseEvaluator.class);
+    /** The cases to evaluate. */
+    private final List<CaseEvaluator> cases;
+    /** Number of threads used to evaluate the diseases (1: serial evaluation). */
+    private final int threads;
+    /** Maximum number of cases that are evaluated together (see {@link #evaluate()}). */
+    private final int chunkSize;
+    /** Default value of {@link #chunkSize}. */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    /**
+     * @param cases the cases to evaluate
+     * @param threads number of threads used to evaluate the diseases
+     */
+    public BatchCaseEvaluator(List<CaseEvaluator> cases, int threads) {
+        this(cases, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param cases the cases to evaluate
+     * @param threads number of threads used to evaluate the diseases
+     * @param chunkSize maximum number of cases that are evaluated together
+     */
+    public BatchCaseEvaluator(List<CaseEvaluator> cases, int threads, int chunkSize) {
+        if (threads < 1) {
+            throw new LiricalRuntimeException("[ERROR] Number of threads must be at least 1 but was " + threads);
+        }
+        if (chunkSize < 1) {
+            throw new LiricalRuntimeException("[ERROR] Chunk size must be at least 1 but was " + chunkSize);
+        }
+        this.cases = ImmutableList.copyOf(cases);
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        if (!this.cases.isEmpty()) {
+            CaseEvaluator first = this.cases.get(0);
+            for (CaseEvaluator evaluator : this.cases) {
+                if (!EvaluationContext.sameDiseases(evaluator.getDiseaseMap(), first.getDiseaseMap()) ||
+                        !evaluator.getDiseaseIds().equals(first.getDiseaseIds()) ||
+                        evaluator.getPhenotypeLrEvaluator() != first.getPhenotypeLrEvaluator()) {
+                    throw new LiricalRuntimeException("[ERROR] All cases of a batch must use the same disease map, diseases and phenotype LR evaluator");
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate all cases. The cases are evaluated in chunks of at most {@link #chunkSize} cases, and the results of
+     * a chunk are reduced to its {@link HpoCase} objects before the next chunk is evaluated, so that at most
+     * {@link #chunkSize} times the number of diseases {@link TestResult} objects are kept in memory at once.
+     * @return one {@link HpoCase} for each case, in the order of the cases
+     */
+    public List<HpoCase> evaluate() {
+        HpoCase[] hpoCases = new HpoCase[cases.size()];
+        ForkJoinPool pool = threads < 2 ? null : new ForkJoinPool(threads);
+        try {
+            List<Integer> chunk = new ArrayList<>();
+            for (int c = 0; c < cases.size(); c++) {
+                if (cases.get(c).usesPruning()) {
+                    hpoCases[c] = cases.get(c).evaluate();
+                    continue;
+                }
+                chunk.add(c);
+                if (chunk.size() == chunkSize) {
+                    evaluateChunk(chunk, hpoCases, pool);
+                    chunk = new ArrayList<>();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                evaluateChunk(chunk, hpoCases, pool);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return Arrays.asList(hpoCases);
+    }
+
+    /**
+     * Evaluate the given cases disease-major and store their {@link HpoCase} objects in hpoCases.
+     * @param chunk indices of the cases to evaluate
+     * @param hpoCases the {@link HpoCase} objects of all cases
+     * @param pool pool used to evaluate the diseases in parallel, or null for a serial evaluation
+     */
+    private void evaluateChunk(List<Integer> chunk, HpoCase[] hpoCases, ForkJoinPool pool) {
+        List<TermId> diseaseIds = cases.get(chunk.get(0)).getDiseaseIds();
+        int n = diseaseIds.size();
+        int m = chunk.size();
+        // results[k][i]: result of case chunk.get(k) for disease i
+        TestResult[][] results = new TestResult[m][n];
+        // errors[k][i]: error messages of case chunk.get(k) for disease i (null if there were none)
+        List<String>[][] errors = newErrorArray(m, n);
+        if (pool == null) {
+            evaluateDiseases(chunk, diseaseIds, results, errors, false);
+        } else {
+            try {
+                pool.submit(() -> evaluateDiseases(chunk, diseaseIds, results, errors, true)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LiricalRuntimeException("Interrupted while evaluating diseases: " + e.getMessage());
+            } catch (ExecutionException e) {
+                throw new LiricalRuntimeException("Could not evaluate diseases: " + e.getCause().getMessage());
+            }
+        }
+        for (int k = 0; k < m; k++) {
+            List<String> errorList = new ArrayList<>();
+            for (List<String> e : errors[k]) {
+                if (e != null) {
+                    errorList.addAll(e);
+                }
+            }
+            int c = chunk.get(k);
+            hpoCases[c] = cases.get(c).caseFromResults(diseaseIds, results[k], errorList);
+        }
+        logger.trace("Evaluated {} cases against {} diseases", m, n);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String>[][] newErrorArray(int m, int n) {
+        return (List<String>[][]) new List<?>[m][n];
+    }
+
+    /**
+     * Score each case of a chunk against each disease, one disease after the other.
+     * @param parallel if true, the diseases are evaluated in parallel (in the current pool)
+     */
+    private void evaluateDiseases(List<Integer> chunk, List<TermId> diseaseIds, TestResult[][] results,
+                                  List<String>[][] errors, boolean parallel) {
+        int m = chunk.size();
+        PhenotypeLrRowCache.Row[][] observedRows = new PhenotypeLrRowCache.Row[m][];
+        boolean[] explain = new boolean[m];
+        for (int k = 0; k < m; k++) {
+            CaseEvaluator evaluator = cases.get(chunk.get(k));
+            observedRows[k] = evaluator.fetchObservedRows(parallel, false);
+            if (evaluator.usesGenotypeAnalysis()) {
+                evaluator.genotypeLrTable(false);
+            }
+            explain[k] = evaluator.explainsAllDiseases();
+        }
+        IntStream indices = IntStream.range(0, diseaseIds.size());
+        if (parallel) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> {
+            for (int k = 0; k < m; k++) {
+                List<String> errorList = new ArrayList<>();
+                results[k][i] = cases.get(chunk.get(k))
+                        .evaluateSingleDisease(i, observedRows[k], errorList, explain[k])
+                        .orElse(null);
+                if (!errorList.isEmpty()) {
+                    errors[k][i] = errorList;
+                }
+            }
+        });
+    }
+}
@@ -14,32 +14,61 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Likelihood ratio evaluator. This class coordinates the performance of the likelihood ratio test
  * and returns one {@link HpoCase} object with the results by the method {@link #evaluate()}.
+ * The diseases are evaluated independently of each other. If more than one thread is requested (see
+ * {@link Builder#threads(int)} and {@link Builder#forkJoinPool(ForkJoinPool)}), the diseases are evaluated in
+ * parallel. The results (and the order of ties in the ranking) are identical to those of the serial evaluation.
+ * If {@link Builder#topK(int)} is set, only the best diseases are returned with explanations, and the other
+ * diseases are represented by a lightweight {@link DiseaseRanking}. With {@link Builder#pruning(boolean)},
+ * diseases that cannot reach the top K (or the threshold) according to an upper bound derived from a
+ * {@link PhenotypeLrMatrix} are not evaluated at all.
+ * The reference data (ontology, diseases, likelihood ratio calculators) is held by an immutable
+ * {@link EvaluationContext} that can be shared by any number of evaluators, which only store the inputs of their case.
  *
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  */
 public class CaseEvaluator {
     private static final Logger logger = LoggerFactory.getLogger(CaseEvaluator.class);
     private final static String EMPTY_STRING = "";
+    /** Added to the upper bounds of the log10 post-test odds to allow for rounding errors (see {@link #upperBounds}). */
+    private final static double BOUND_TOLERANCE = 1e-9;
+    /** Number of diseases that are evaluated at once with pruning (see {@link #evaluateWithPruning()}). */
+    private final static int PRUNING_CHUNK_SIZE = 64;
+    /** Result of {@link #bestGene} for a disease without associated genes that is evaluated with its phenotypes. */
+    private final static int NO_GENE = -1;
+    /** Result of {@link #bestGene} for a disease that is skipped. */
+    private final static int SKIPPED = -2;
     /** List of abnormalities (HPO terms) observed in the person being evaluated.   */
     private final List<TermId> phenotypicAbnormalities;
     /** Map of the observed genotypes in the VCF file. Key: an EntrezGene id; value is a {@link Gene2Genotype} object */
     private final Map<TermId, Gene2Genotype> genotypeMap;
-    /** key: a disease CURIE, e.g., OMIM:600100; value-corresponding disease object.  */
+    /** The reference data shared by all cases (ontology, diseases, likelihood ratio calculators). */
+    private final EvaluationContext context;
+    /** The disease map of the {@link #context}. */
     private final Map<TermId, HpoDisease> diseaseMap;
-    /* key: a gene CURIE such as NCBIGene:123; value: a collection of disease CURIEs such as OMIM:600123; */
-    private final Multimap<TermId, TermId> disease2geneMultimap;
-    /**Probability of diseases before testing (e.g., prevalence or 1/N).      */
-    private final Map<TermId, Double> pretestProbabilityMap;
-    /**  Object used to calculate phenotype likelihood ratios.  */
-    private final PhenotypeLikelihoodRatio phenotypeLRevaluator;
-    /** Object used to calculate genotype-based likelihood ratio. */
-    private final GenotypeLikelihoodRatio genotypeLrEvalutator;
-    /** Reference to the Human Phenotype Ontology object.    */
-    private final Ontology ontology;
+    /**
+     * The ids of the diseases that are evaluated, in the order of {@link #diseaseMap}: all diseases, or the
+     * diseases of a {@link DiseaseSubset}. The diseases are referred to by their index in this list.
+     */
+    private final List<TermId> diseaseIds;
+    /** The position of each of the {@link #diseaseIds} in {@link #diseaseMap} (null: all diseases are evaluated). */
+    private final int[] positions;
+    /**
+     * The indices of the evaluated diseases in the phenotype likelihood ratio object of the {@link #context}, which
+     * restrict the likelihood ratio rows and their sums to a {@link DiseaseSubset} (null: all diseases).
+     */
+    private final BitSet lrMask;
+    /**
+     * Probability of diseases before testing (e.g., prevalence or 1/N), indexed by the position of the disease in
+     * {@link #diseaseMap}.
+     */
+    private final PretestProbabilityProvider pretestProbabilities;
     /** retain candidates even if no candidate variant is found  */
     private final boolean globalAnalysisMode;
     /**
@@ -50,124 +79,129 @@ public class CaseEvaluator {
      * List of abnormalities excluded in the person being evaluated.
      */
     private final List<TermId> negatedPhenotypicAbnormalities;
-    /**
-     * Key: an EntrezGene id; value: corresponding gene symbol.
-     */
-    private Map<TermId, String> geneId2symbol;
-    //private List<LrWithExplanation> currentPhenotypeExplanation;
-    private List<LrWithExplanation> currentObservedPhenotypeExplanation;
-    private List<LrWithExplanation> currentExcludedPhenotypeExplanation;
+    /** Number of threads used to evaluate the diseases (1: serial evaluation). Ignored if {@link #pool} is set. */
+    private final int threads;
+    /** An optional pool provided by the caller (e.g., a long-running service) used to evaluate the diseases. */
+    private final ForkJoinPool pool;
+    /** If positive, only the best topK diseases are returned with a full {@link TestResult} (see {@link #evaluateTopK()}). */
+    private final int topK;
+    /** If true, skip the diseases that cannot reach the best {@link #topK} diseases or the {@link #threshold}. */
+    private final boolean pruning;
+    /** Minimum post-test probability of the diseases that are returned if {@link #pruning} is true (0: none). */
+    private final double threshold;
     private final List<String> errors;
-
     /**
-     * This constructor is used for phenotype-only cases.
-     *
-     * @param hpoTerms             List of phenotypic abnormalityes observed in the patient
-     * @param ontology             Reference to HPO ontology
-     * @param diseaseMap           key: disease CURIE, e.h., OMIM:600100; value: HpoDisease object
-     * @param phenotypeLrEvaluator class to evaluate phenotype likelihood ratios.
+     * Genotype likelihood ratios of all genes of this case, which only depend on the gene and the modes of
+     * inheritance of a disease, and are therefore shared by all diseases associated with the same gene (see
+     * {@link #genotypeLrTable(boolean)}). Null until the table is needed.
      */
-    private CaseEvaluator(List<TermId> hpoTerms,
-                          List<TermId> negatedHpoTerms,
-                          Ontology ontology,
-                          Map<TermId, HpoDisease> diseaseMap,
-                          PhenotypeLikelihoodRatio phenotypeLrEvaluator) {
-        this.phenotypicAbnormalities = hpoTerms;
-        this.negatedPhenotypicAbnormalities = negatedHpoTerms;
-        this.ontology = ontology;
-        this.diseaseMap = diseaseMap;
-        this.phenotypeLRevaluator = phenotypeLrEvaluator;
-        this.genotypeMap = ImmutableMap.of();
-        this.disease2geneMultimap = ImmutableMultimap.of();
-        this.genotypeLrEvalutator = null;
-        // For now, assume equal pretest probabilities
-        this.pretestProbabilityMap = new HashMap<>();
-        int n = diseaseMap.size();
-        double prob = 1.0 / (double) n;
-        for (TermId tid : diseaseMap.keySet()) {
-            pretestProbabilityMap.put(tid, prob);
-        }
-        this.useGenotypeAnalysis = false;
-        this.globalAnalysisMode = true; // needs to be true for phenotype-only analysis!
-        this.errors = new ArrayList<>();
-    }
-
+    private volatile GenotypeLrTable genotypeLrTable;
 
     /**
-     * Constructor for LIRICAL anaysis with a VCF file.
+     * The evaluator only stores references to the shared reference data of the {@link EvaluationContext} and
+     * the inputs of the case, and so it is cheap to create.
      *
+     * @param context              reference data shared by all cases
      * @param hpoTerms             list of observed abnormalities
      * @param negatedHpoTerms      list of excluded abnormalities
-     * @param ontology             reference to HPO ontology
-     * @param diseaseMap           map to HPO disease objects
-     * @param disease2geneMultimap map from disease id to the corresponding gene symbols
-     * @param phenotypeLrEvaluator reference to object that evaluates the phenotype LR
-     * @param genotypeLrEvalutator reference to object that evaluates the genotype LR
+     * @param diseaseSubset        the diseases that are evaluated (null: all diseases of the context)
+     * @param pretestProbabilities pretest probabilities of the diseases
      * @param genotypeMap          Map of gene symbol to genotype evaluations
-     * @param global                 if true, do not discard candidates if they do not have a candidate variant
+     * @param useGenotypeAnalysis  if false, only the phenotypes are evaluated
+     * @param global               if true, do not discard candidates if they do not have a candidate variant
+     * @param threads              number of threads used to evaluate the diseases
+     * @param pool                 optional pool used to evaluate the diseases (can be null)
+     * @param topK                 number of diseases for which a full result is returned (0: all)
+     * @param pruning              if true, skip the evaluation of diseases that cannot reach the top K or the threshold
+     * @param threshold            minimum post-test probability of the returned diseases if pruning is used
      */
-    private CaseEvaluator(List<TermId> hpoTerms,
+    private CaseEvaluator(EvaluationContext context,
+                          List<TermId> hpoTerms,
                           List<TermId> negatedHpoTerms,
-                          Ontology ontology,
-                          Map<TermId, HpoDisease> diseaseMap,
-                          Multimap<TermId, TermId> disease2geneMultimap,
-                          PhenotypeLikelihoodRatio phenotypeLrEvaluator,
-                          GenotypeLikelihoodRatio genotypeLrEvalutator,
+                          DiseaseSubset diseaseSubset,
+                          PretestProbabilityProvider pretestProbabilities,
                           Map<TermId, Gene2Genotype> genotypeMap,
+                          boolean useGenotypeAnalysis,
                           boolean global,
-                          Map<TermId, String> geneId2symbol) {
+                          int threads,
+                          ForkJoinPool pool,
+                          int topK,
+                          boolean pruning,
+                          double threshold) {
+        this.context = context;
         this.phenotypicAbnormalities = hpoTerms;
         this.negatedPhenotypicAbnormalities = negatedHpoTerms;
-        this.diseaseMap = diseaseMap;
-        this.disease2geneMultimap = disease2geneMultimap;
-        this.phenotypeLRevaluator = phenotypeLrEvaluator;
-        this.genotypeLrEvalutator = genotypeLrEvalutator;
-        this.ontology = ontology;
-        this.globalAnalysisMode = global;
-        this.geneId2symbol = geneId2symbol;
-        // For now, assume equal pretest probabilities
-        this.pretestProbabilityMap = new HashMap<>();
-        int n = diseaseMap.size();
-        double prob = 1.0 / (double) n;
-        for (TermId tid : diseaseMap.keySet()) {
-            pretestProbabilityMap.put(tid, prob);
-        }
+        this.diseaseMap = context.getDiseaseMap();
+        this.diseaseIds = diseaseSubset == null ? context.getDiseaseIds() : diseaseSubset.getDiseaseIds();
+        this.positions = diseaseSubset == null ? null : diseaseSubset.getPositions();
+        this.lrMask = diseaseSubset == null ? null : diseaseSubset.getDiseaseIndexMask(context);
+        this.pretestProbabilities = pretestProbabilities;
         this.genotypeMap = genotypeMap;
-        this.useGenotypeAnalysis = true;
+        this.useGenotypeAnalysis = useGenotypeAnalysis;
+        this.globalAnalysisMode = global;
+        this.threads = threads;
+        this.pool = pool;
+        this.topK = topK;
+        this.pruning = pruning;
+        this.threshold = threshold;
         this.errors = new ArrayList<>();
     }
 
-    private List<Double> observedPhenotypesLikelihoodRatios(TermId diseaseId) {
-        ImmutableList.Builder<Double> builderObserved = new ImmutableList.Builder<>();
-        HpoDisease disease = this.diseaseMap.get(diseaseId);
-        InducedDiseaseGraph idg = new InducedDiseaseGraph(disease, ontology);
-        // todo -- this is a bit of a hack, refactor
-        this.currentObservedPhenotypeExplanation = new ArrayList<>();
-        for (TermId tid : this.phenotypicAbnormalities) {
+    /**
+     * Calculate the likelihood ratios of the observed phenotypes for one disease.
+     * @param diseaseId the disease being tested
+     * @param idg the {@link InducedDiseaseGraph} of the disease
+     * @param observedRows cached likelihood ratios of the observed phenotypes (see {@link #fetchObservedRows}), or null
+     * @param explanations list to which the explanations of the likelihood ratios are added (can be null)
+     * @param errorList list to which error messages are added
+     * @return array of likelihood ratios, one for each observed phenotype for which the LR could be calculated
+     */
+    private double[] observedPhenotypesLikelihoodRatios(TermId diseaseId,
+                                                        InducedDiseaseGraph idg,
+                                                        PhenotypeLrRowCache.Row[] observedRows,
+                                                        List<LrWithExplanation> explanations,
+                                                        List<String> errorList) {
+        double[] observedLR = new double[this.phenotypicAbnormalities.size()];
+        int n = 0;
+        int diseaseIdx = observedRows == null ? -1 : context.getPhenotypeLr().getDiseaseIndex(idg.getDisease());
+        for (int i = 0; i < this.phenotypicAbnormalities.size(); i++) {
+            TermId tid = this.phenotypicAbnormalities.get(i);
             try {
-                LrWithExplanation lrwe = phenotypeLRevaluator.getLikelihoodRatio(tid, idg);
-                builderObserved.add(lrwe.getLR());
-                this.currentObservedPhenotypeExplanation.add(lrwe);
+                LrWithExplanation lrwe = diseaseIdx < 0 ? null : observedRows[i].get(diseaseIdx, tid);
+                if (lrwe == null) {
+                    lrwe = context.getPhenotypeLr().getLikelihoodRatio(tid, idg);
+                }
+                observedLR[n++] = lrwe.getLR();
+                if (explanations != null) {
+                    explanations.add(lrwe);
+                }
             } catch (Exception e) {
                 String errormsg = String.format("%s (%s/%s)", e.getMessage(), diseaseMap.get(diseaseId).getName(), tid.getValue());
-                this.errors.add(errormsg);
+                errorList.add(errormsg);
             }
         }
-        return builderObserved.build();
+        // terms for which the LR could not be calculated are skipped
+        return n == observedLR.length ? observedLR : Arrays.copyOf(observedLR, n);
     }
 
-    private List<Double> excludedPhenotypesLikelihoodRatios(TermId diseaseId) {
-        ImmutableList.Builder<Double> builderExcluded = new ImmutableList.Builder<>();
-        HpoDisease disease = this.diseaseMap.get(diseaseId);
-        InducedDiseaseGraph idg = new InducedDiseaseGraph(disease, ontology);
-        this.currentExcludedPhenotypeExplanation = new ArrayList<>();
-        for (TermId negated : this.negatedPhenotypicAbnormalities) {
-            LrWithExplanation lrwe = phenotypeLRevaluator.getLikelihoodRatioForExcludedTerm(negated, idg);
-            this.currentExcludedPhenotypeExplanation.add(lrwe);
-            double LR = lrwe.getLR();
-            builderExcluded.add(LR);
+    /**
+     * Calculate the likelihood ratios of the excluded phenotypes for one disease.
+     * @param idg the {@link InducedDiseaseGraph} of the disease
+     * @param explanations list to which the explanations of the likelihood ratios are added (can be null)
+     * @return array of likelihood ratios, one for each excluded phenotype
+     */
+    private double[] excludedPhenotypesLikelihoodRatios(InducedDiseaseGraph idg,
+                                                        List<LrWithExplanation> explanations) {
+        double[] excludedLR = new double[this.negatedPhenotypicAbnormalities.size()];
+        for (int i = 0; i < excludedLR.length; i++) {
+            TermId negated = this.negatedPhenotypicAbnormalities.get(i);
+            LrWithExplanation lrwe = context.getPhenotypeLr().getLikelihoodRatioForExcludedTerm(negated, idg);
+            if (explanations != null) {
+                explanations.add(lrwe);
+            }
+            excludedLR[i] = lrwe.getLR();
         }
-        return builderExcluded.build();
+        return excludedLR;
     }
 
     public List<String> getErrors() {
@@ -175,296 +209,676 @@ public class CaseEvaluator {
     }
 
 
+
     /**
-     * Perform the evaluation of the current case based only on phenotype evidence
-     *
-     * @return map with key=disease idea and value=corresponding {@link TestResult}
+     * The genotype evidence for one disease: the best genotype likelihood ratio of all genes associated with the
+     * disease, the corresponding gene, and the explanation of the genotype likelihood ratio.
      */
-    private Map<TermId, TestResult> phenotypeOnlyEvaluation() {
-        ImmutableMap.Builder<TermId, TestResult> mapbuilder = new ImmutableMap.Builder<>();
-        for (TermId diseaseId : diseaseMap.keySet()) {
-            // reset the lists of current explanations
-            Optional<TestResult> opt = evaluateDiseasePhenotypeOnly(diseaseId);
-            opt.ifPresent(testResult -> mapbuilder.put(diseaseId, testResult));
+    static class GenotypeEvidence {
+        /** Evidence of a disease that is evaluated on the basis of the phenotypes only. */
+        static final GenotypeEvidence PHENOTYPE_ONLY = new GenotypeEvidence(null, null, null);
+        /** Genotype likelihood ratio, or null if only the phenotypes are used for the disease. */
+        private final Double genotypeLR;
+        private final TermId geneId;
+        private final GenotypeLrWithExplanation explanation;
+
+        private GenotypeEvidence(Double genotypeLR, TermId geneId, GenotypeLrWithExplanation explanation) {
+            this.genotypeLR = genotypeLR;
+            this.geneId = geneId;
+            this.explanation = explanation;
         }
-        return mapbuilder.build();
-    }
 
+        Double getGenotypeLR() {
+            return genotypeLR;
+        }
+    }
 
     /**
-     * This method calculates the likelihood ratio based only on phenotype. It is inteded to be used
-     * for analyses where we do not have an exome or genome. Note that we return an optional because
-     * with some user settings some differentials will be skipped.
-     *
-     * @param diseaseId The disease being tested
-     * @return The corresponding TestResult.
+     * Get the table with the genotype likelihood ratios of all genes of the evaluated diseases for this case,
+     * and calculate it if this has not been done yet. The genotypes of the case do not change once the VCF file has
+     * been parsed, and so the table is calculated once, before the diseases are evaluated.
+     * @param parallel if true, the table is calculated with {@link #threads} threads or in {@link #pool}
+     * @return the genotype likelihood ratios of this case
      */
-    private Optional<TestResult> evaluateDiseasePhenotypeOnly(TermId diseaseId) {
-        HpoDisease disease = this.diseaseMap.get(diseaseId);
-        double pretest = pretestProbabilityMap.get(diseaseId);
-        List<Double> observedLR = observedPhenotypesLikelihoodRatios(diseaseId);
-        List<Double> excludedLR = excludedPhenotypesLikelihoodRatios(diseaseId);
-        TestResult result = new TestResult(observedLR, excludedLR, disease, pretest);
-        List<String> phenoExpObserved = getObservedPhenotypeExplanation();
-        List<String> phenoExpExcluded = getExcludedPhenotypeExplanation();
-        result.setObservedPhenotypeExplanation(phenoExpObserved);
-        result.setExcludedPhenotypeExplanation(phenoExpExcluded);
-        return Optional.of(result);
+    GenotypeLrTable genotypeLrTable(boolean parallel) {
+        GenotypeLrTable table = genotypeLrTable;
+        if (table == null) {
+            synchronized (this) {
+                table = genotypeLrTable;
+                if (table == null) {
+                    table = GenotypeLrTable.compute(diseaseIds, diseaseMap, context.getDisease2geneMultimap(),
+                            genotypeMap, context.getGenotypeLr(), parallel ? threads : 1, parallel ? pool : null);
+                    genotypeLrTable = table;
+                }
+            }
+        }
+        return table;
     }
 
     /**
-     * This method is used to calculate the likelihood ratio based on both phenotype and genotype
-     * It should be used for analyses where we have an exome or genome. This method is used if
-     * the user has indicated that they want to see all differential diagnoses, including those
-     * that do not have a known disease gene and those where no pathogenic variant was found
-     * in the exome/genome VCF file.
-     *
-     * @param diseaseId The disease being tested
-     * @return The corresponding TestResult.
+     * Find the gene with the best genotype likelihood ratio of a disease according to the settings of this
+     * evaluator. If {@link #globalAnalysisMode} is true, then we also rank differential diagnoses even if (i) no
+     * disease gene is known or (ii) the disease gene is known but we did not find a pathogenic variant. In the
+     * latter case, the candidate will be downranked, but can still score highly if the phenotype evidence is very
+     * strong. If {@link #globalAnalysisMode} is false, the disease is skipped in both cases.
+     * @param table the genotype likelihood ratios of this case (see {@link #genotypeLrTable(boolean)})
+     * @param d index of the disease in {@link #diseaseIds}, which is also its index in the table
+     * @return the row of the best gene in the table, {@link #NO_GENE} or {@link #SKIPPED}
      */
-    private Optional<TestResult> evaluateDiseaseWithGlobalAnalysisMode(TermId diseaseId) {
-        HpoDisease disease = this.diseaseMap.get(diseaseId);
-        double pretest = pretestProbabilityMap.get(diseaseId);
-        List<Double> observedLR = observedPhenotypesLikelihoodRatios(diseaseId);
-        List<Double> excludedLR = excludedPhenotypesLikelihoodRatios(diseaseId);
-        TestResult result;
-        Collection<TermId> associatedGenes = disease2geneMultimap.get(diseaseId);
-        if (associatedGenes.isEmpty()) {
+    private int bestGene(GenotypeLrTable table, int d) {
+        // rows of the associated genes in the table
+        int[] associatedGenes = table.getGeneRows(d);
+        if (associatedGenes.length == 0) {
             // this is a disease with no known disease gene
-            result =  createResultFromPheno(observedLR, excludedLR, disease, pretest);
-            return Optional.of(result);
+            // if keepIfNoCandidateVariant is true then the user wants to
+            // keep differentials with no associated gene
+            // we create the TestResult based solely on the Phenotype data.
+            // Otherwise, we skip this differential because there is no associated gene
+            return globalAnalysisMode ? NO_GENE : SKIPPED;
         }
         // If we get here, then the disease is associated with one or multiple genes
-        // The disease may also be associated with multiple modes of inheritance (this happens rarely)
-        List<TermId> inheritancemodes = disease.getModesOfInheritance();
-        List<String> genesWithNoIdentifiedVariant = new ArrayList<>(); // we keep track of this for the HTML output
+        // The disease may also be associated with multiple modes of inheritance (this happens rarely); the column
+        // of the table is that of its list of modes of inheritance
+        int column = table.getColumn(d);
         boolean foundPredictedPathogenicVariant = false;
-        Double genotypeLR = null;
-        TermId geneId = null;
-        String currentGenotypeExplanation = null;
-        // if we get here, then associatedGenes is not empty
-        for (TermId entrezGeneId : associatedGenes) {
-            // if there is no Gene2Genotype object in the map, then no variant in the gene was found in the VCF
-            Gene2Genotype g2g = this.genotypeMap.getOrDefault(entrezGeneId, Gene2Genotype.NO_IDENTIFIED_VARIANT);
-            // The following two special cases are if no variant was found or if a ClinVar-pathogenic variant was found.
-            if (g2g.equals(Gene2Genotype.NO_IDENTIFIED_VARIANT)) {
-                String symbol = this.geneId2symbol.get(entrezGeneId);
-                genesWithNoIdentifiedVariant.add(symbol);
-            } else {
-                if (g2g.hasPathogenicClinvarVar() || g2g.hasPredictedPathogenicVar()) {
-                    foundPredictedPathogenicVariant = true;
-                }
+        double genotypeLR = 0.0;
+        int bestGene = -1;
+        for (int gene : associatedGenes) {
+            // Set foundPredictedVariant to true if we found a variant in this gene and it was either a
+            // known ClinVar-pathogenic variant or we predicted it to be pathogenic.
+            if (table.hasCandidateVariant(gene)) {
+                foundPredictedPathogenicVariant = true;
             }
-            GenotypeLrWithExplanation glrwe = this.genotypeLrEvalutator.evaluateGenotype(g2g,
-                    inheritancemodes,
-                    entrezGeneId);
-            double score = glrwe.getLR();
-            if (genotypeLR == null) { // this is the first iteration
+            double score = table.getLikelihoodRatio(gene, column);
+            if (bestGene < 0 || genotypeLR < score) { // the first gene, or a better genotype LR
                 genotypeLR = score;
-                geneId = entrezGeneId;
-                currentGenotypeExplanation = glrwe.getExplanation();
-            } else if (genotypeLR < score) { // if the new genotype LR is better, replace!
-                genotypeLR = score;
-                geneId = entrezGeneId;
-                currentGenotypeExplanation = glrwe.getExplanation();
+                bestGene = gene;
             }
         }
         // when we get here, we have checked for variants in all genes associated with the disease.
-        // genotypeLR has the most pathogenic genotype score for all associated genes, or is null if
-        // no variants in any associated gene were found.
-        //when we get here, genotypeLR is not null
-        result =  createResultFromGenoPheno(observedLR, excludedLR, disease, genotypeLR, geneId, pretest,currentGenotypeExplanation);
-        return Optional.of(result);
+        // genotypeLR has the most pathogenic genotype score for all associated genes.
+        if (!globalAnalysisMode && !foundPredictedPathogenicVariant) {
+            return SKIPPED; // Skip this disease since there was no pathogenic variant.
+        }
+        return bestGene;
+    }
+
+    /**
+     * Get the genotype evidence of a disease according to the settings of this evaluator. If
+     * {@link #useGenotypeAnalysis} is false, only phenotype evidence is used; otherwise, the evidence is that of
+     * the best gene of the disease (see {@link #bestGene(GenotypeLrTable, int)}).
+     * @param diseaseIdx index of the disease being tested in {@link #diseaseIds}
+     * @return the genotype evidence, or null if the disease is skipped
+     */
+    GenotypeEvidence genotypeEvidence(int diseaseIdx) {
+        if (!useGenotypeAnalysis) {
+            return GenotypeEvidence.PHENOTYPE_ONLY;
+        }
+        GenotypeLrTable table = genotypeLrTable(false);
+        int gene = bestGene(table, diseaseIdx);
+        if (gene == SKIPPED) {
+            return null;
+        }
+        if (gene == NO_GENE) {
+            return GenotypeEvidence.PHENOTYPE_ONLY;
+        }
+        int column = table.getColumn(diseaseIdx);
+        return new GenotypeEvidence(table.getLikelihoodRatio(gene, column), table.getGeneId(gene),
+                table.getLikelihoodRatioWithExplanation(gene, column));
+    }
+
+    /**
+     * Get the genotype likelihood ratios of the evaluated diseases for {@link LogLrAccumulator#addGenotype}, with
+     * one read of the {@link GenotypeLrTable} per gene of a disease.
+     * @param lrIndex index of each of the {@link #diseaseIds} in the accumulator (-1: not part of it)
+     * @param size number of diseases of the accumulator
+     * @param skipped set to true for the diseases that are skipped
+     * @return the genotype likelihood ratio of each disease of the accumulator, NaN if a disease is evaluated on the
+     * basis of the phenotypes only
+     */
+    private double[] genotypeLikelihoodRatios(int[] lrIndex, int size, boolean[] skipped) {
+        double[] genotypeLR = new double[size];
+        Arrays.fill(genotypeLR, Double.NaN);
+        if (!useGenotypeAnalysis) {
+            return genotypeLR;
+        }
+        GenotypeLrTable table = genotypeLrTable(false);
+        for (int i = 0; i < lrIndex.length; i++) {
+            int gene = bestGene(table, i);
+            if (gene == SKIPPED) {
+                skipped[i] = true;
+            } else if (gene != NO_GENE && lrIndex[i] >= 0) {
+                genotypeLR[lrIndex[i]] = table.getLikelihoodRatio(gene, table.getColumn(i));
+            }
+        }
+        return genotypeLR;
+    }
+
+    /**
+     * Construct the {@link TestResult} object of a disease from the phenotype and genotype evidence.
+     * @param observedLR LRs for observed HPOs
+     * @param excludedLR LRs for excluded HPOs
+     * @param disease HpoDisease object
+     * @param pretest pretest probability
+     * @param genotype the genotype evidence (see {@link #genotypeEvidence(int)})
+     * @param observedExplanations explanations of the LRs for observed HPOs (null: no explanations)
+     * @param excludedExplanations explanations of the LRs for excluded HPOs (null: no explanations)
+     * @return Corresponding {@link TestResult} object
+     */
+    TestResult createResult(double[] observedLR,
+                            double[] excludedLR,
+                            HpoDisease disease,
+                            double pretest,
+                            GenotypeEvidence genotype,
+                            List<LrWithExplanation> observedExplanations,
+                            List<LrWithExplanation> excludedExplanations) {
+        if (genotype.genotypeLR == null) {
+            return createResultFromPheno(observedLR, excludedLR, disease, pretest, observedExplanations, excludedExplanations);
+        }
+        return createResultFromGenoPheno(observedLR, excludedLR, disease, genotype.genotypeLR, genotype.geneId, pretest,
+                genotype.explanation, observedExplanations, excludedExplanations);
     }
 
     /**
      * * This is a convenience method that constructs a {@link TestResult} object from pheno/geno data
-     * @param observedLR List of LRs for observed HPOs
-     * @param excludedLR List of LRs for excluded HPOs
+     * @param observedLR LRs for observed HPOs
+     * @param excludedLR LRs for excluded HPOs
      * @param disease HpoDisease object
      * @param genotypeLR genotype likelihood ratio
      * @param geneId id of disease-associated gene
      * @param pretest pretest probability
      * @param currentGeneExp current genotype Explanation
+     * @param observedExplanations explanations of the LRs for observed HPOs (null: no explanations)
+     * @param excludedExplanations explanations of the LRs for excluded HPOs (null: no explanations)
      * @return Corresponding {@link TestResult} object
      */
-    private TestResult createResultFromGenoPheno(List<Double> observedLR,
-                                                 List<Double> excludedLR,
+    private TestResult createResultFromGenoPheno(double[] observedLR,
+                                                 double[] excludedLR,
                                                  HpoDisease disease,
                                                  Double genotypeLR,
                                                  TermId geneId,
                                                  double pretest,
-                                                 String currentGeneExp) {
+                                                 GenotypeLrWithExplanation currentGeneExp,
+                                                 List<LrWithExplanation> observedExplanations,
+                                                 List<LrWithExplanation> excludedExplanations) {
         TestResult result = new TestResult(observedLR, excludedLR, disease, genotypeLR, geneId, pretest);
         result.setGenotypeExplanation(currentGeneExp);
-        List<String> phenoExpObserved = getObservedPhenotypeExplanation();
-        List<String> phenoExpExcluded = getExcludedPhenotypeExplanation();
-        result.setObservedPhenotypeExplanation(phenoExpObserved);
-        result.setExcludedPhenotypeExplanation(phenoExpExcluded);
+        if (observedExplanations != null) {
+            result.setPhenotypeExplanations(observedExplanations, excludedExplanations, context.getOntology());
+        }
         return result;
     }
 
     /**
      * This is a convenience method that constructs a {@link TestResult} object from purely phenotypic
      * observation (no VCF)
-     * @param observedLR List of LRs for observed HPOs
-     * @param excludedLR List of LRs for excluded HPOs
+     * @param observedLR LRs for observed HPOs
+     * @param excludedLR LRs for excluded HPOs
      * @param disease HpoDisease object
      * @param pretest pretest probability
+     * @param observedExplanations explanations of the LRs for observed HPOs (null: no explanations)
+     * @param excludedExplanations explanations of the LRs for excluded HPOs (null: no explanations)
      * @return Corresponding {@link TestResult} object
      */
-    private TestResult createResultFromPheno(List<Double> observedLR,
-                                                 List<Double> excludedLR,
-                                                 HpoDisease disease,
-                                                 double pretest) {
+    private TestResult createResultFromPheno(double[] observedLR,
+                                             double[] excludedLR,
+                                             HpoDisease disease,
+                                             double pretest,
+                                             List<LrWithExplanation> observedExplanations,
+                                             List<LrWithExplanation> excludedExplanations) {
         TestResult result = new TestResult(observedLR, excludedLR, disease, pretest);
-        List<String> phenoExpObserved = getObservedPhenotypeExplanation();
-        List<String> phenoExpExcluded = getExcludedPhenotypeExplanation();
-        result.setObservedPhenotypeExplanation(phenoExpObserved);
-        result.setExcludedPhenotypeExplanation(phenoExpExcluded);
+        if (observedExplanations != null) {
+            result.setPhenotypeExplanations(observedExplanations, excludedExplanations, context.getOntology());
+        }
         return result;
     }
 
-    private List<String> getObservedPhenotypeExplanation() {
-        ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
-        Collections.sort(this.currentObservedPhenotypeExplanation, Collections.reverseOrder());
-        for (LrWithExplanation lrwe : this.currentObservedPhenotypeExplanation) {
-            String e = lrwe.getEscapedExplanation(this.ontology);
-            builder.add(e);
+    /**
+     * Evaluate one disease according to the settings of this evaluator (see {@link #genotypeEvidence(int)}).
+     * If there is no predicted pathogenic variant in the exome/genome file and {@link #globalAnalysisMode} is false,
+     * then we will return Optional.empty(), which will cause this diseases to be skipped in the differential
+     * diagnosis. This method does not modify the state of the evaluator and can be called from several threads
+     * at once.
+     *
+     * @param diseaseIdx index of the disease being tested in {@link #diseaseIds}
+     * @param observedRows cached likelihood ratios of the observed phenotypes, or null
+     * @param errorList list to which error messages are added
+     * @param explain if false, the explanations of the phenotype likelihood ratios are not created
+     * @return The corresponding TestResult, or Optional.empty() if the disease is skipped.
+     */
+    Optional<TestResult> evaluateSingleDisease(int diseaseIdx,
+                                               PhenotypeLrRowCache.Row[] observedRows,
+                                               List<String> errorList,
+                                               boolean explain) {
+        TermId diseaseId = diseaseIds.get(diseaseIdx);
+        HpoDisease disease = this.diseaseMap.get(diseaseId);
+        double pretest = pretestProbabilities.getPretestProbability(position(diseaseIdx));
+        InducedDiseaseGraph idg = context.getPhenotypeLr().getInducedDiseaseGraph(disease);
+        List<LrWithExplanation> observedExplanations = explain ? new ArrayList<>() : null;
+        List<LrWithExplanation> excludedExplanations = explain ? new ArrayList<>() : null;
+        double[] observedLR = observedPhenotypesLikelihoodRatios(diseaseId, idg, observedRows, observedExplanations, errorList);
+        double[] excludedLR = excludedPhenotypesLikelihoodRatios(idg, excludedExplanations);
+        GenotypeEvidence genotype = genotypeEvidence(diseaseIdx);
+        if (genotype == null) {
+            return Optional.empty();
+        }
+        return Optional.of(createResult(observedLR, excludedLR, disease, pretest, genotype, observedExplanations, excludedExplanations));
+    }
+
+    /**
+     * If the {@link PhenotypeLikelihoodRatio} object caches the likelihood ratios of query terms, get the
+     * likelihood ratios of each observed phenotype in all diseases. This needs one cache lookup per phenotype
+     * instead of one per phenotype and disease.
+     * @param parallel if true, the missing rows are calculated in parallel
+     * @param force if true, the rows are calculated even if there is no cache
+     * @return one row for each of the {@link #phenotypicAbnormalities}, or null if there is no cache and force is false
+     */
+    PhenotypeLrRowCache.Row[] fetchObservedRows(boolean parallel, boolean force) {
+        if (!force && !context.getPhenotypeLr().hasRowCache()) {
+            return null;
         }
-        return builder.build();
+        PhenotypeLrRowCache.Row[] rows = new PhenotypeLrRowCache.Row[phenotypicAbnormalities.size()];
+        IntStream indices = IntStream.range(0, rows.length);
+        if (parallel) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> rows[i] = context.getPhenotypeLr().getLikelihoodRatioRow(phenotypicAbnormalities.get(i), lrMask));
+        return rows;
     }
 
-    private List<String> getExcludedPhenotypeExplanation() {
-        ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
-        Collections.sort(this.currentExcludedPhenotypeExplanation, Collections.reverseOrder());
-        for (LrWithExplanation lrwe : this.currentExcludedPhenotypeExplanation) {
-            String e = lrwe.getEscapedExplanation(this.ontology);
-            builder.add(e);
+    /**
+     * Calculate the likelihood ratios of each excluded phenotype in all diseases.
+     * @param parallel if true, the rows are calculated in parallel
+     * @return one row for each of the {@link #negatedPhenotypicAbnormalities}
+     */
+    private PhenotypeLrRowCache.Row[] fetchExcludedRows(boolean parallel) {
+        PhenotypeLrRowCache.Row[] rows = new PhenotypeLrRowCache.Row[negatedPhenotypicAbnormalities.size()];
+        IntStream indices = IntStream.range(0, rows.length);
+        if (parallel) {
+            indices = indices.parallel();
         }
-        return builder.build();
+        indices.forEach(i -> rows[i] = context.getPhenotypeLr().getExcludedLikelihoodRatioRow(negatedPhenotypicAbnormalities.get(i), lrMask));
+        return rows;
+    }
+
+    /** Evaluation of the disease with the given index, see {@link #forEachDisease}. */
+    private interface DiseaseTask {
+        void evaluate(int diseaseIdx, PhenotypeLrRowCache.Row[] observedRows, List<String> errorList);
+    }
+
+    /** Preparation of the evaluation of all diseases, see {@link #forEachDisease(int, boolean, RowsTask, DiseaseTask)}. */
+    private interface RowsTask {
+        void prepare(PhenotypeLrRowCache.Row[] observedRows, boolean parallel);
+    }
+
+    /** Same as {@link #forEachDisease(int, boolean, RowsTask, DiseaseTask)} without a preparation task. */
+    private void forEachDisease(int n, boolean allRows, DiseaseTask task) {
+        forEachDisease(n, allRows, null, task);
     }
 
     /**
-     * Calculate the likelihood ratio for diseaseId. If there is no predicted pathogenic variant in the exome/genome file,
-     * then we will return Optional.empty(), which will cause this diseases to be skipped in the differential diagnosis.
-     *
-     * @param diseaseId an Id for a disease entry, e.g., OMIM:157000.
-     * @return A TestResult for diseaseId, or Optional.empty() if no pathogenic variant was found in the associated gene(s).
+     * Run a task for each of the n diseases, either serially or in parallel. In both cases, the error
+     * messages are added to {@link #errors} in the order of the diseases.
+     * @param n number of diseases
+     * @param allRows if true, the likelihood ratio rows of the observed phenotypes are passed to the task even if
+     *                they are not cached (see {@link #fetchObservedRows(boolean, boolean)})
+     * @param prepare task that is run once with the rows before the diseases are evaluated (can be null)
+     * @param task the evaluation of one disease
      */
-    private Optional<TestResult> evaluateDisease(TermId diseaseId) {
-        HpoDisease disease = this.diseaseMap.get(diseaseId);
-        double pretest = pretestProbabilityMap.get(diseaseId);
-        List<Double> observedLR = observedPhenotypesLikelihoodRatios(diseaseId);
-        List<Double> excludedLR = excludedPhenotypesLikelihoodRatios(diseaseId);
-        List<String> phenoExpObserved = getObservedPhenotypeExplanation();
-        List<String> phenoExpExcluded = getExcludedPhenotypeExplanation();
-        if (phenoExpObserved.size() != observedLR.size() ) {
-            logger.error("phenotype explanations had wrong size: {}, while observed = {}",
-                    phenoExpObserved.size(), observedLR.size());
-        }
-        TestResult result;
-        Collection<TermId> associatedGenes = disease2geneMultimap.get(diseaseId);
-        if (associatedGenes.isEmpty()) {
-            // this is a disease with no known disease gene
-            if (globalAnalysisMode) {
-                // if keepIfNoCandidateVariant is true then the user wants to
-                // keep differentials with no associated gene
-                // we create the TestResult based solely on the Phenotype data.
-                result = createResultFromPheno(observedLR, excludedLR, disease, pretest);
-                return Optional.of(result);
-            } else {
-                // we skip this differential because there is no associated gene
-                return Optional.empty();
+    private void forEachDisease(int n, boolean allRows, RowsTask prepare, DiseaseTask task) {
+        if (pool == null && threads < 2) {
+            PhenotypeLrRowCache.Row[] observedRows = fetchObservedRows(false, allRows);
+            if (prepare != null) {
+                prepare.prepare(observedRows, false);
             }
+            for (int i = 0; i < n; i++) {
+                task.evaluate(i, observedRows, this.errors);
+            }
+            return;
         }
-        // If we get here, then the disease is associated with one or multiple genes
-        // The disease may also be associated with multiple modes of inheritance (this happens rarely)
-        List<TermId> inheritancemodes = disease.getModesOfInheritance();
-        List<String> genesWithNoIdentifiedVariant = new ArrayList<>(); // we keep track of this for the HTML output
-        boolean foundPredictedPathogenicVariant = false;
-        Double genotypeLR = null;
-        TermId geneId = null;
-        String currentGenotypeExplanation = null;
-        for (TermId entrezGeneId : associatedGenes) {
-            // if there is no Gene2Genotype object in the map, then no variant in the gene was found in the VCF
-            Gene2Genotype g2g = this.genotypeMap.getOrDefault(entrezGeneId, Gene2Genotype.NO_IDENTIFIED_VARIANT);
-            // Set foundPredictedVariant to true if we found a variant in this gene and it was either a
-            // known ClinVar-pathogenic variant or we predicted it to be pathogenic.
-            if (!g2g.equals(Gene2Genotype.NO_IDENTIFIED_VARIANT) &&
-                    (g2g.hasPathogenicClinvarVar() || g2g.hasPredictedPathogenicVar())) {
-                foundPredictedPathogenicVariant = true;
+        List<List<String>> errorsPerDisease = new ArrayList<>(Collections.nCopies(n, ImmutableList.of()));
+        Runnable runnable = () -> {
+            PhenotypeLrRowCache.Row[] observedRows = fetchObservedRows(true, allRows);
+            if (prepare != null) {
+                prepare.prepare(observedRows, true);
             }
-            GenotypeLrWithExplanation glrwe = this.genotypeLrEvalutator.evaluateGenotype(g2g,
-                    inheritancemodes,
-                    entrezGeneId);
-            double score = glrwe.getLR();
-            if (genotypeLR == null) { // this is the first iteration
-                genotypeLR = score;
-                geneId = entrezGeneId;
-                currentGenotypeExplanation = glrwe.getExplanation();
-            } else if (genotypeLR < score) { // if the new genotype LR is better, replace!
-                genotypeLR = score;
-                geneId = entrezGeneId;
-                currentGenotypeExplanation = glrwe.getExplanation();
+            IntStream.range(0, n).parallel().forEach(i -> {
+                List<String> errorList = new ArrayList<>();
+                task.evaluate(i, observedRows, errorList);
+                if (!errorList.isEmpty()) {
+                    errorsPerDisease.set(i, errorList);
+                }
+            });
+        };
+        runInPool(runnable);
+        errorsPerDisease.forEach(this.errors::addAll);
+    }
+
+    /**
+     * Run a task in {@link #pool}, or else in a new pool with {@link #threads} threads. A parallel stream
+     * started from within the task runs in that pool.
+     * @param runnable the task
+     */
+    private void runInPool(Runnable runnable) {
+        ForkJoinPool forkJoinPool = pool != null ? pool : new ForkJoinPool(threads);
+        try {
+            forkJoinPool.submit(runnable).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LiricalRuntimeException("Interrupted while evaluating diseases: " + e.getMessage());
+        } catch (ExecutionException e) {
+            throw new LiricalRuntimeException("Could not evaluate diseases: " + e.getCause().getMessage());
+        } finally {
+            if (pool == null) {
+                forkJoinPool.shutdown();
             }
         }
-        // when we get here, we have checked for variants in all genes associated with the disease.
-        // genotypeLR has the most pathogenic genotype score for all associated genes, or if none were found
-        // we have returned an Optional.empty() above.
-        if (!foundPredictedPathogenicVariant) {
-            return Optional.empty(); // Skip this disease since there was no pathogenic variant.
-        } else {
-            // if we get here, then foundPredictedPathogenicVariant is true.
-            result = createResultFromGenoPheno(observedLR, excludedLR, disease, genotypeLR, geneId, pretest,currentGenotypeExplanation);
-            return Optional.of(result);
-        }
     }
 
-
     /**
-     * Perform the evaluation of the current case based on phenotype and genotype evidence
-     * If {@link #globalAnalysisMode} is true, then we also rank differential diagnoses even
-     * if (i) no disease gene is known or (ii) the disease gene is known but we did not find a
-     * pathogenic variant. In the latter case, the candidate will be downranked, but can still score
-     * highly if the phenotype evidence is very strong.
+     * Perform the evaluation of the current case for all {@link #diseaseIds}, either serially or
+     * in parallel. In both cases, the entries of the returned map and {@link #errors} are in the order of
+     * the diseases in {@link #diseaseMap}.
      *
      * @return map with key=disease idea and value=corresponding {@link TestResult}
      */
-    private Map<TermId, TestResult> phenoGenoEvaluation() {
+    private Map<TermId, TestResult> evaluateDiseases() {
+        int n = diseaseIds.size();
+        TestResult[] results = new TestResult[n];
+        forEachDisease(n, false, (i, observedRows, errorList) ->
+                results[i] = evaluateSingleDisease(i, observedRows, errorList, true).orElse(null));
+        return resultMap(diseaseIds, results);
+    }
+
+    /**
+     * @param diseaseIds ids of the diseases in the order of the disease map
+     * @param results the result of each disease, or null if the disease was skipped
+     * @return map with key=disease idea and value=corresponding {@link TestResult}, in the order of the diseases
+     */
+    private Map<TermId, TestResult> resultMap(List<TermId> diseaseIds, TestResult[] results) {
+        int n = diseaseIds.size();
+        // some differentials will be completely skipped depending on user settings
+        // for instance, we might skip differentials if there is no associated gene
+        // in this case, evaluateDisease returns an empty Optional and we just skip it here.
         ImmutableMap.Builder<TermId, TestResult> mapbuilder = new ImmutableMap.Builder<>();
-        for (TermId diseaseId : diseaseMap.keySet()) {
-            Optional<TestResult> optionalTestResult;
-            if (useGenotypeAnalysis) {
-                if (globalAnalysisMode) {
-                    optionalTestResult = evaluateDiseaseWithGlobalAnalysisMode(diseaseId);
-                } else {
-                    optionalTestResult = evaluateDisease(diseaseId);
-                }
-            } else {
-                optionalTestResult = evaluateDiseasePhenotypeOnly(diseaseId);
+        for (int i = 0; i < n; i++) {
+            if (results[i] != null) {
+                mapbuilder.put(diseaseIds.get(i), results[i]);
             }
-            // some differentials will be completely skipped depending on user settings
-            // for instance, we might skip differentials if there is no associated gene
-            // in this case, evaluateDisease returns an empty Optional and we just skip it here.
-            optionalTestResult.ifPresent(testResult -> mapbuilder.put(diseaseId, testResult));
         }
         return mapbuilder.build();
     }
 
+    /**
+     * Evaluate all diseases, but only keep {@link TestResult} objects for the best {@link #topK} diseases. The
+     * other diseases are only kept as scores in a {@link DiseaseRanking}. The diseases are first evaluated
+     * without explanations, and the best diseases are then evaluated again with explanations. This is cheaper
+     * than creating the explanation strings for all diseases, most of which are never shown.
+     * <p>
+     * In the first pass, the likelihood ratios of each phenotype are calculated for all diseases at once, and
+     * the sums of their log<sub>10</sub> values are accumulated for all diseases at once (see
+     * {@link LogLrAccumulator}), together with the genotype likelihood ratio of each disease, which is read from the
+     * {@link GenotypeLrTable} by index. Only the diseases for which the likelihood ratio of some phenotype could
+     * not be calculated (and the error has to be reported) are evaluated one by one. If only a subset of the diseases is
+     * evaluated (see {@link Builder#diseaseSubset(DiseaseSubset)}), the rows and the sums are restricted to the
+     * diseases of the subset with {@link #lrMask}.
+     * </p>
+     * @return the case with the results of the best {@link #topK} diseases
+     */
+    private HpoCase evaluateTopK() {
+        int n = diseaseIds.size();
+        double[] log10PosttestOdds = new double[n];
+        boolean[] evaluated = new boolean[n];
+        int[] lrIndex = new int[n];
+        for (int i = 0; i < n; i++) {
+            lrIndex[i] = context.getLrIndex(position(i));
+        }
+        int size = context.getPhenotypeLr().getDiseases().size();
+        LogLrAccumulator log10LR = new LogLrAccumulator(size, lrMask);
+        boolean[] skipped = new boolean[n];
+        RowsTask accumulate = (observedRows, parallel) -> {
+            for (PhenotypeLrRowCache.Row row : observedRows) {
+                log10LR.addObserved(row);
+            }
+            for (PhenotypeLrRowCache.Row row : fetchExcludedRows(parallel)) {
+                log10LR.addExcluded(row);
+            }
+            log10LR.addGenotype(genotypeLikelihoodRatios(lrIndex, size, skipped));
+        };
+        forEachDisease(n, true, accumulate, (i, observedRows, errorList) -> {
+            int d = lrIndex[i];
+            if (d >= 0 && log10LR.hasAllObserved(d)) {
+                if (!skipped[i]) {
+                    log10PosttestOdds[i] = log10LR.getLog10PosttestOdds(d, pretestProbabilities.getLog10PretestOdds(position(i)));
+                    evaluated[i] = true;
+                }
+                return;
+            }
+            Optional<TestResult> opt = evaluateSingleDisease(i, observedRows, errorList, false);
+            if (opt.isPresent()) {
+                log10PosttestOdds[i] = opt.get().getLog10PosttestOdds();
+                evaluated[i] = true;
+            }
+        });
+        return topKCase(diseaseIds, log10PosttestOdds, evaluated);
+    }
+
+    /** Same as {@link #topKCase(List, double[], boolean[], int)} for the best {@link #topK} diseases. */
+    private HpoCase topKCase(List<TermId> diseaseIds, double[] log10PosttestOdds, boolean[] evaluated) {
+        return topKCase(diseaseIds, log10PosttestOdds, evaluated, topK);
+    }
+
+    /**
+     * Evaluate the best k diseases again with explanations.
+     * @param diseaseIds ids of the diseases in the order of the disease map
+     * @param log10PosttestOdds log<sub>10</sub> post-test odds of each disease (ignored for skipped diseases)
+     * @param evaluated false for the diseases that were skipped (they are not ranked)
+     * @param k number of diseases for which a full result is returned
+     * @return the case with the results of the best k diseases
+     */
+    private HpoCase topKCase(List<TermId> diseaseIds, double[] log10PosttestOdds, boolean[] evaluated, int k) {
+        DiseaseRanking ranking = new DiseaseRanking(diseaseIds, log10PosttestOdds, evaluated);
+        int[] top = ranking.topIndices(k);
+        // errors were already reported in the first pass
+        List<String> ignoredErrors = new ArrayList<>();
+        ImmutableMap.Builder<TermId, TestResult> mapbuilder = new ImmutableMap.Builder<>();
+        for (int r = 0; r < top.length; r++) {
+            TermId diseaseId = diseaseIds.get(top[r]);
+            Optional<TestResult> opt = evaluateSingleDisease(top[r], null, ignoredErrors, true);
+            if (opt.isPresent()) {
+                TestResult result = opt.get();
+                result.setRank(r + 1);
+                mapbuilder.put(diseaseId, result);
+            }
+        }
+        return new HpoCase.Builder(phenotypicAbnormalities)
+                .excluded(negatedPhenotypicAbnormalities)
+                .results(mapbuilder.build())
+                .ranking(ranking)
+                .build();
+    }
+
+
+    /**
+     * Calculate an upper bound of the log<sub>10</sub> post-test odds of each disease without calculating any
+     * phenotype likelihood ratio. The likelihood ratio of an observed phenotype in a disease is at most the smaller
+     * of the largest likelihood ratio of the phenotype in any disease and the largest likelihood ratio of any
+     * phenotype in the disease, both of which are stored with the {@link PhenotypeLrMatrix}. The likelihood ratios
+     * of the excluded phenotypes are replaced by an upper bound that only depends on whether the disease has
+     * negative annotations, and the genotype likelihood ratio is read from the {@link GenotypeLrTable}.
+     * @return upper bound of the log<sub>10</sub> post-test odds of each of the {@link #diseaseIds}
+     * (+Infinity if there is no bound), or NaN if the disease would be skipped
+     */
+    private double[] upperBounds() {
+        PhenotypeLikelihoodRatio phenotypeLr = context.getPhenotypeLr();
+        double[] log10MaxLrOfTerm = new double[phenotypicAbnormalities.size()];
+        boolean bounded = true;
+        for (int j = 0; j < log10MaxLrOfTerm.length; j++) {
+            log10MaxLrOfTerm[j] = phenotypeLr.getLog10MaxLikelihoodRatioOfTerm(phenotypicAbnormalities.get(j));
+            bounded &= !Double.isNaN(log10MaxLrOfTerm[j]);
+        }
+        if (!bounded) {
+            logger.warn("Some observed terms are not part of the LR matrix, all diseases are evaluated");
+        }
+        // the bound of an excluded phenotype depends only on whether the disease has negative annotations
+        double log10ExcludedBound = 0.0;
+        double log10ExcludedBoundWithNegativeAnnotations = 0.0;
+        for (TermId negated : negatedPhenotypicAbnormalities) {
+            log10ExcludedBound += Math.log10(phenotypeLr.getUpperBoundForExcludedTerm(negated, false));
+            log10ExcludedBoundWithNegativeAnnotations += Math.log10(phenotypeLr.getUpperBoundForExcludedTerm(negated, true));
+        }
+        GenotypeLrTable table = useGenotypeAnalysis ? genotypeLrTable(false) : null;
+        double[] bounds = new double[diseaseIds.size()];
+        for (int i = 0; i < bounds.length; i++) {
+            double log10GenotypeLR = Double.NaN;
+            if (table != null) {
+                int gene = bestGene(table, i);
+                if (gene == SKIPPED) {
+                    bounds[i] = Double.NaN;
+                    continue;
+                }
+                if (gene != NO_GENE) {
+                    log10GenotypeLR = Math.log10(table.getLikelihoodRatio(gene, table.getColumn(i)));
+                }
+            }
+            int d = context.getLrIndex(position(i));
+            if (!bounded || d < 0) {
+                bounds[i] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double log10MaxLrOfDisease = phenotypeLr.getLog10MaxLikelihoodRatioOfDisease(d);
+            double log10ObservedBound = 0.0;
+            for (double log10MaxLr : log10MaxLrOfTerm) {
+                log10ObservedBound += Math.min(log10MaxLr, log10MaxLrOfDisease);
+            }
+            double bound = TestResult.log10PosttestOddsFromLog10GenotypeLr(log10ObservedBound,
+                    phenotypeLr.hasNegativeAnnotations(d) ? log10ExcludedBoundWithNegativeAnnotations : log10ExcludedBound,
+                    log10GenotypeLR, pretestProbabilities.getLog10PretestOdds(position(i)));
+            // allow for rounding differences between the bound and the sum of the log LRs of the evaluation
+            // (a likelihood ratio of zero and an infinite one give NaN, and then there is no bound)
+            bounds[i] = Double.isNaN(bound) ? Double.POSITIVE_INFINITY : bound + BOUND_TOLERANCE;
+        }
+        return bounds;
+    }
+
+    /**
+     * Evaluate the diseases with a branch-and-bound approach. We first calculate a cheap upper bound of the
+     * post-test odds of each disease (see {@link #upperBounds()}), and then evaluate the diseases in decreasing
+     * order of their bound, {@link #PRUNING_CHUNK_SIZE} diseases at a time (in parallel if more than one thread is
+     * used) and without explanations. We stop as soon as the bound of the next disease is below the post-test odds
+     * of the {@link #topK}'th best disease found so far, or below the {@link #threshold}. The best diseases are then
+     * evaluated again with explanations (see {@link #topKCase}). The returned results are therefore exact for the
+     * best {@link #topK} diseases (or the diseases above the threshold), but the other diseases are not ranked.
+     * @return the case with the results of the best diseases
+     */
+    private HpoCase evaluateWithPruning() {
+        int n = diseaseIds.size();
+        double[] bounds = upperBounds();
+        int[] order = IntStream.range(0, n)
+                .filter(i -> !Double.isNaN(bounds[i]))
+                .boxed()
+                // decreasing bound; ties in the order of the disease map
+                .sorted((a, b) -> {
+                    int c = Double.compare(bounds[b], bounds[a]);
+                    return c != 0 ? c : Integer.compare(a, b);
+                })
+                .mapToInt(Integer::intValue)
+                .toArray();
+        double minLog10Odds = threshold > 0.0 ? Math.log10(threshold / (1.0 - threshold)) : Double.NEGATIVE_INFINITY;
+        double[] log10PosttestOdds = new double[n];
+        boolean[] evaluated = new boolean[n];
+        List<List<String>> errorsPerDisease = new ArrayList<>(Collections.nCopies(n, ImmutableList.of()));
+        // the worst of the best diseases found so far is at the head
+        PriorityQueue<Integer> best = new PriorityQueue<>((a, b) -> {
+            int c = Double.compare(log10PosttestOdds[a], log10PosttestOdds[b]);
+            return c != 0 ? c : Integer.compare(b, a);
+        });
+        boolean parallel = pool != null || threads > 1;
+        int[] evaluatedCount = new int[1];
+        Runnable prune = () -> {
+            int next = 0;
+            while (next < order.length) {
+                double cutoff = minLog10Odds;
+                if (topK > 0 && best.size() == topK) {
+                    cutoff = Math.max(cutoff, log10PosttestOdds[best.peek()]);
+                }
+                int end = next;
+                while (end < order.length && end - next < PRUNING_CHUNK_SIZE && bounds[order[end]] >= cutoff) {
+                    end++;
+                }
+                if (end == next) {
+                    break;
+                }
+                IntStream chunk = Arrays.stream(order, next, end);
+                if (parallel) {
+                    chunk = chunk.parallel();
+                }
+                chunk.forEach(idx -> {
+                    List<String> errorList = new ArrayList<>();
+                    Optional<TestResult> opt = evaluateSingleDisease(idx, null, errorList, false);
+                    if (opt.isPresent()) {
+                        log10PosttestOdds[idx] = opt.get().getLog10PosttestOdds();
+                        evaluated[idx] = true;
+                    }
+                    if (!errorList.isEmpty()) {
+                        errorsPerDisease.set(idx, errorList);
+                    }
+                });
+                // the best diseases are updated in the order of the bounds, as in a serial evaluation
+                for (int k = next; k < end; k++) {
+                    int idx = order[k];
+                    if (!evaluated[idx] || log10PosttestOdds[idx] < minLog10Odds) {
+                        continue;
+                    }
+                    best.add(idx);
+                    if (topK > 0 && best.size() > topK) {
+                        best.poll();
+                    }
+                }
+                evaluatedCount[0] += end - next;
+                next = end;
+            }
+        };
+        if (parallel) {
+            runInPool(prune);
+        } else {
+            prune.run();
+        }
+        errorsPerDisease.forEach(this.errors::addAll);
+        logger.info("Evaluated {} of {} diseases (pruning)", evaluatedCount[0], n);
+        boolean[] ranked = new boolean[n];
+        for (int idx : best) {
+            ranked[idx] = true;
+        }
+        return topKCase(diseaseIds, log10PosttestOdds, ranked, best.size());
+    }
+
 
     /**
-     * This method evaluates the likelihood ratio for each disease in
-     * {@link #diseaseMap}. After this, it sorts the results (the best hit is then at index 0, etc).
+     * This method evaluates the likelihood ratio for each of the
+     * {@link #diseaseIds}. After this, it sorts the results (the best hit is then at index 0, etc).
+     * If {@link #topK} is positive, only the results of the best {@link #topK} diseases are returned.
+     * If {@link #pruning} is true, diseases that cannot reach the top K or the {@link #threshold} are skipped.
      */
     public HpoCase evaluate() {
-        assert diseaseMap.size() == pretestProbabilityMap.size();
-        Map<TermId, TestResult> evaluationmap;
         if (useGenotypeAnalysis) {
-            evaluationmap = phenoGenoEvaluation();
-        } else {
-            evaluationmap = phenotypeOnlyEvaluation();
+            genotypeLrTable(true);
+        }
+        if (pruning && (topK > 0 || threshold > 0.0)) {
+            return evaluateWithPruning();
+        }
+        if (topK > 0) {
+            return evaluateTopK();
         }
+        Map<TermId, TestResult> evaluationmap = evaluateDiseases();
+        return fullCase(evaluationmap);
+    }
+
+    /**
+     * @param evaluationmap the results of all diseases that were not skipped, in the order of the disease map
+     * @return the case with the ranked results
+     */
+    private HpoCase fullCase(Map<TermId, TestResult> evaluationmap) {
         Map<TermId, TestResult> results = evaluateRanks(evaluationmap);
         HpoCase.Builder casebuilder = new HpoCase.Builder(phenotypicAbnormalities)
                 .excluded(negatedPhenotypicAbnormalities)
@@ -472,6 +886,115 @@ public class CaseEvaluator {
         return casebuilder.build();
     }
 
+    /** @return true if this case cannot be part of a disease-major batch evaluation (see {@link BatchCaseEvaluator}). */
+    boolean usesPruning() {
+        return pruning && (topK > 0 || threshold > 0.0);
+    }
+
+    /** @return true if the genotypes of the case are evaluated, and thus need a {@link GenotypeLrTable}. */
+    boolean usesGenotypeAnalysis() {
+        return useGenotypeAnalysis;
+    }
+
+    /** @return true if the results of all diseases are returned, and thus need explanations. */
+    boolean explainsAllDiseases() {
+        return topK == 0;
+    }
+
+    /**
+     * Create the case from the results of a disease-major batch evaluation (see {@link BatchCaseEvaluator}).
+     * @param diseaseIds ids of the diseases in the order of the disease map
+     * @param results the result of each disease (with explanations if {@link #explainsAllDiseases()}), or null
+     *                if the disease was skipped
+     * @param errorList error messages of the evaluation, in the order of the diseases
+     * @return the same case as {@link #evaluate()}
+     */
+    HpoCase caseFromResults(List<TermId> diseaseIds, TestResult[] results, List<String> errorList) {
+        this.errors.addAll(errorList);
+        if (topK > 0) {
+            double[] log10PosttestOdds = new double[results.length];
+            boolean[] evaluated = new boolean[results.length];
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != null) {
+                    log10PosttestOdds[i] = results[i].getLog10PosttestOdds();
+                    evaluated[i] = true;
+                }
+            }
+            return topKCase(diseaseIds, log10PosttestOdds, evaluated);
+        }
+        return fullCase(resultMap(diseaseIds, results));
+    }
+
+    Map<TermId, HpoDisease> getDiseaseMap() {
+        return diseaseMap;
+    }
+
+    /** @return the ids of the diseases that are evaluated, in the order of the disease map. */
+    List<TermId> getDiseaseIds() {
+        return diseaseIds;
+    }
+
+    /**
+     * @param diseaseIdx index of a disease in {@link #diseaseIds}
+     * @return the position of the disease in {@link #diseaseMap}
+     */
+    private int position(int diseaseIdx) {
+        return positions == null ? diseaseIdx : positions[diseaseIdx];
+    }
+
+    /**
+     * @return the indices of the evaluated diseases in the phenotype likelihood ratio object (null: all diseases;
+     * do not modify)
+     */
+    BitSet getLrMask() {
+        return lrMask;
+    }
+
+    PhenotypeLikelihoodRatio getPhenotypeLrEvaluator() {
+        return context.getPhenotypeLr();
+    }
+
+    /** @return the reference data used by this evaluator */
+    public EvaluationContext getContext() {
+        return context;
+    }
+
+    /**
+     * @param diseaseIdx index of a disease in {@link #diseaseIds}
+     * @return the pretest probability of the disease
+     */
+    double getPretestProbability(int diseaseIdx) {
+        return pretestProbabilities.getPretestProbability(position(diseaseIdx));
+    }
+
+    /**
+     * @param diseaseIdx index of a disease in {@link #diseaseIds}
+     * @return log<sub>10</sub> of the pretest odds of the disease
+     */
+    double getLog10PretestOdds(int diseaseIdx) {
+        return pretestProbabilities.getLog10PretestOdds(position(diseaseIdx));
+    }
+
+    List<TermId> getObservedTerms() {
+        return phenotypicAbnormalities;
+    }
+
+    List<TermId> getExcludedTerms() {
+        return negatedPhenotypicAbnormalities;
+    }
+
+    /**
+     * Start an interactive session in which phenotypes can be added to or removed from this case one at a time,
+     * and the diseases are re-ranked without evaluating the case again (see {@link EvaluationSession}).
+     * @return a new session that starts with the observed and excluded phenotypes of this case
+     */
+    public EvaluationSession startSession() {
+        if (useGenotypeAnalysis) {
+            genotypeLrTable(true);
+        }
+        return new EvaluationSession(this);
+    }
+
 
     /**
      * This function sets the rank of the {@link TestResult} objects.
@@ -493,9 +1016,15 @@ public class CaseEvaluator {
 
     /**
      * Convenience class for building a {@link CaseEvaluator} object--mainly to avoid having
-     * a constructor with an extremely long list of arguments.
+     * a constructor with an extremely long list of arguments. The reference data (ontology, diseases, etc.) is
+     * either set with the methods of the builder, or taken from a shared {@link EvaluationContext} if the builder
+     * was created with {@link EvaluationContext#newCase(List)}.
      */
     public static class Builder {
+        /**
+         * The shared reference data (null: the reference data is set with the methods of this builder).
+         */
+        private final EvaluationContext context;
         /**
          * The abnormalities observed in the individual being investigated.
          */
@@ -530,8 +1059,46 @@ public class CaseEvaluator {
          * Key: an EntrezGene id; value: corresponding gene symbol.
          */
         private Map<TermId, String> geneId2symbol;
+        /**
+         * Number of threads used to evaluate the diseases (default: 1, i.e., serial evaluation).
+         */
+        private int threads = 1;
+        /**
+         * Optional pool used to evaluate the diseases. If set, {@link #threads} is ignored.
+         */
+        private ForkJoinPool forkJoinPool = null;
+        /**
+         * Number of diseases for which a full {@link TestResult} is returned (default: 0, i.e., all diseases).
+         */
+        private int topK = 0;
+        /**
+         * If true, diseases that cannot reach the top K or the threshold are not evaluated (default: false).
+         */
+        private boolean pruning = false;
+        /**
+         * Minimum post-test probability of the diseases that are returned if {@link #pruning} is true.
+         */
+        private double threshold = 0.0;
+        /**
+         * Pretest probabilities of the diseases (default: null, i.e., {@link UniformPretestProbability}).
+         */
+        private PretestProbabilityProvider pretestProbabilities = null;
+        /**
+         * If not null, only the diseases of this subset of {@link #diseaseMap} are evaluated.
+         */
+        private DiseaseSubset diseaseSubset = null;
 
         public Builder(List<TermId> hpoTerms) {
+            this.context = null;
+            this.hpoTerms = hpoTerms;
+        }
+
+        /**
+         * @param context the shared reference data; the reference data must not be set again with this builder
+         * @param hpoTerms the abnormalities observed in the individual being investigated
+         */
+        Builder(EvaluationContext context, List<TermId> hpoTerms) {
+            this.context = Objects.requireNonNull(context);
             this.hpoTerms = hpoTerms;
         }
 
@@ -580,39 +1147,190 @@ public class CaseEvaluator {
             return this;
         }
 
+        public Builder threads(int n) {
+            if (n < 1) {
+                throw new LiricalRuntimeException("[ERROR] Number of threads must be at least 1 but was " + n);
+            }
+            this.threads = n;
+            return this;
+        }
+
+        public Builder forkJoinPool(ForkJoinPool fjpool) {
+            this.forkJoinPool = fjpool;
+            return this;
+        }
+
+        public Builder topK(int k) {
+            if (k < 0) {
+                throw new LiricalRuntimeException("[ERROR] Number of top diseases must not be negative but was " + k);
+            }
+            this.topK = k;
+            return this;
+        }
+
+        /**
+         * Skip the diseases that cannot reach the {@link #topK(int)} best diseases or the {@link #threshold(double)},
+         * according to an upper bound of their post-test odds. The bound is derived from the maximum likelihood
+         * ratios of a {@link PhenotypeLrMatrix}, and so pruning requires a phenotype likelihood ratio object with
+         * a matrix. The skipped diseases are not ranked.
+         * @param prune true to skip the diseases
+         * @return this builder
+         */
+        public Builder pruning(boolean prune) {
+            this.pruning = prune;
+            return this;
+        }
+
+        public Builder threshold(double posttestProbability) {
+            if (posttestProbability < 0.0 || posttestProbability > 1.0) {
+                throw new LiricalRuntimeException("[ERROR] Threshold must be between 0.0 and 1.0 but was " + posttestProbability);
+            }
+            this.threshold = posttestProbability;
+            return this;
+        }
+
+        /**
+         * @param provider pretest probabilities of the diseases of the disease map; the provider can be shared
+         *                 by the cases
+         * @return this builder
+         */
+        public Builder pretestProbability(PretestProbabilityProvider provider) {
+            this.pretestProbabilities = provider;
+            return this;
+        }
+
+        /**
+         * Only evaluate the diseases of a subset of the disease map, e.g., the diseases of a gene panel. The other
+         * diseases are skipped entirely and are not part of the differential diagnosis, and the pretest
+         * probabilities are normalised within the subset.
+         * @param subset a subset of the diseases of the disease map (see {@link #diseaseMap(Map)})
+         * @return this builder
+         */
+        public Builder diseaseSubset(DiseaseSubset subset) {
+            this.diseaseSubset = subset;
+            return this;
+        }
+
+        /**
+         * @param genotype true if the evaluator uses genotypes
+         * @return the shared context, or a context of the reference data that was set with this builder
+         */
+        private EvaluationContext context(boolean genotype) {
+            if (context != null) {
+                if (ontology != null || diseaseMap != null || disease2geneMultimap != null || phenotypeLR != null
+                        || genotypeLR != null || geneId2symbol != null) {
+                    throw new LiricalRuntimeException("[ERROR] The reference data of the case is set by the evaluation context");
+                }
+                if (genotype && context.getGenotypeLr() == null) {
+                    throw new LiricalRuntimeException("[ERROR] The evaluation context has no genotype likelihood ratio calculator");
+                }
+                return context;
+            }
+            Objects.requireNonNull(ontology);
+            Objects.requireNonNull(diseaseMap);
+            Map<TermId, String> symbols = geneId2symbol == null ? ImmutableMap.of() : geneId2symbol;
+            PretestProbabilityProvider provider = pretestProbabilities != null ? pretestProbabilities
+                    : new UniformPretestProbability(diseaseMap.size());
+            if (genotype) {
+                Objects.requireNonNull(disease2geneMultimap);
+                return new EvaluationContext(ontology, diseaseMap, disease2geneMultimap, phenotypeLR, genotypeLR,
+                        symbols, provider);
+            }
+            Objects.requireNonNull(phenotypeLR);
+            return new EvaluationContext(ontology, diseaseMap, ImmutableMultimap.of(), phenotypeLR, null,
+                    symbols, provider);
+        }
+
+        /**
+         * Check that the {@link #diseaseSubset}, if any, can be evaluated with the given context.
+         * @param context the reference data of the case
+         */
+        private void checkDiseaseSubset(EvaluationContext context) {
+            if (diseaseSubset == null) {
+                return;
+            }
+            if (!diseaseSubset.isSubsetOf(context.getDiseaseMap())) {
+                throw new LiricalRuntimeException("[ERROR] The disease subset was not selected from the disease map of the case");
+            }
+            if (diseaseSubset.size() == 0) {
+                throw new LiricalRuntimeException("[ERROR] The disease subset is empty");
+            }
+        }
+
+        /**
+         * Check that the upper bounds needed for {@link #pruning} are available in the given context.
+         * @param context the reference data of the case
+         */
+        private void checkPruning(EvaluationContext context) {
+            if (pruning && !context.getPhenotypeLr().hasLikelihoodRatioBounds()) {
+                throw new LiricalRuntimeException("[ERROR] Pruning requires a phenotype likelihood ratio object with an LR matrix");
+            }
+        }
+
+        /**
+         * @param context the reference data of the case
+         * @return the pretest probabilities of the case, or else of the context, restricted to {@link #diseaseSubset}
+         */
+        private PretestProbabilityProvider pretestProbabilities(EvaluationContext context) {
+            if (pretestProbabilities != null) {
+                checkIndexedBy(pretestProbabilities, context.getDiseaseMap());
+            }
+            PretestProbabilityProvider provider = pretestProbabilities != null ? pretestProbabilities : context.getPretestProbabilities();
+            return diseaseSubset == null ? provider : diseaseSubset.restrict(provider);
+        }
+
+
+        /**
+         * The evaluation looks up the pretest probabilities by the position of a disease in the disease map, so
+         * a provider must have been created for a map with the same diseases in the same order.
+         * @param provider pretest probabilities
+         * @param diseaseMap the disease map of the case
+         */
+        static void checkIndexedBy(PretestProbabilityProvider provider, Map<TermId, HpoDisease> diseaseMap) {
+            if (provider instanceof IndexedPretestProbability &&
+                    !((IndexedPretestProbability) provider).isIndexedBy(ImmutableList.copyOf(diseaseMap.keySet()))) {
+                throw new LiricalRuntimeException("[ERROR] The pretest probabilities were created for a different disease map");
+            }
+        }
 
         public CaseEvaluator build() {
             if (hpoTerms == null) {
                 throw new LiricalRuntimeException("[ERROR] No HPO terms found. At least one HPO term required to run LIRICAL");
             }
             Objects.requireNonNull(hpoTerms);
-            Objects.requireNonNull(ontology);
-            Objects.requireNonNull(diseaseMap);
-            Objects.requireNonNull(disease2geneMultimap);
             if (negatedHpoTerms == null) {
                 negatedHpoTerms = ImmutableList.of();
             }
-            return new CaseEvaluator(hpoTerms,
+            EvaluationContext context = context(true);
+            checkDiseaseSubset(context);
+            checkPruning(context);
+            return new CaseEvaluator(context,
+                    hpoTerms,
                     negatedHpoTerms,
-                    ontology,
-                    diseaseMap,
-                    disease2geneMultimap,
-                    phenotypeLR,
-                    genotypeLR,
+                    diseaseSubset,
+                    pretestProbabilities(context),
                     genotypeMap,
+                    true,
                     globalAnalysisMode,
-                    this.geneId2symbol);
+                    threads,
+                    forkJoinPool,
+                    topK,
+                    pruning,
+                    threshold);
         }
 
 
         public CaseEvaluator buildPhenotypeOnlyEvaluator() {
             Objects.requireNonNull(hpoTerms);
-            Objects.requireNonNull(ontology);
-            Objects.requireNonNull(phenotypeLR);
             if (negatedHpoTerms == null) {
                 negatedHpoTerms = ImmutableList.of();
             }
-            return new CaseEvaluator(hpoTerms, negatedHpoTerms, ontology, diseaseMap, phenotypeLR);
+            EvaluationContext context = context(false);
+            checkDiseaseSubset(context);
+            checkPruning(context);
+            // global mode needs to be true for phenotype-only analysis!
+            return new CaseEvaluator(context, hpoTerms, negatedHpoTerms, diseaseSubset, pretestProbabilities(context),
+                    ImmutableMap.of(), false, true, threads, forkJoinPool, topK, pruning, threshold);
         }
     }
 
@@ -0,0 +1,189 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dense integer index of the diseases of a disease map (in iteration order of the map), together with the
+ * annotations of each disease encoded as indices of an {@link HpoTermIndex}. Together with the
+ * {@link HpoTermIndex}, this is the central index of the likelihood ratio calculations of
+ * {@link PhenotypeLikelihoodRatio}: the calculations run on the integer ids and primitive arrays of this class
+ * and do not need to hash {@link TermId} objects or box frequencies; the {@link TermId} objects are only looked
+ * up to create the explanations of the results.
+ * <p>
+ * If an annotation of a disease is not part of the term index (e.g., an alternate id), the disease is
+ * marked as not indexed (see {@link #isIndexed(int)}) and the callers fall back to the {@link HpoDisease}
+ * object. The index is immutable and can be shared between threads.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class DiseaseIndex {
+    private static final Logger logger = LoggerFactory.getLogger(DiseaseIndex.class);
+    /** Value returned by {@link #indexOf(TermId)} for diseases that are not in the index. */
+    static final int NOT_INDEXED = -1;
+    /** The indexed diseases; the position of a disease is its index. */
+    private final ImmutableList<HpoDisease> diseases;
+    /** Key: a disease id, e.g., OMIM:600200; value: the index of the disease in {@link #diseases}. */
+    private final ImmutableMap<TermId, Integer> diseaseId2index;
+    /** annotationTerms[d][k] is the term index of the k-th phenotypic abnormality of disease d. */
+    private final int[][] annotationTerms;
+    /** annotationFrequencies[d][k] is the frequency of the k-th phenotypic abnormality of disease d. */
+    private final double[][] annotationFrequencies;
+    /**
+     * termFrequencies[d][k] is the frequency of the term of the k-th annotation of disease d, i.e., the frequency
+     * of the first annotation of the disease to the same term (see {@link HpoDisease#getFrequencyOfTermInDisease}).
+     */
+    private final double[][] termFrequencies;
+    /**
+     * excludedTerms[d] is a bitset with the indices of the terms that are excluded in disease d, i.e., of the
+     * negative annotations of the disease and all of their descendants; it is null if the disease has no negative
+     * annotations (or if one of them is not part of the term index).
+     */
+    private final BitSet[] excludedTerms;
+    /** indexed[d] is false if one of the annotations of disease d is not part of the term index. */
+    private final boolean[] indexed;
+
+    /**
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param termIndex Index of the terms of the ontology
+     */
+    DiseaseIndex(Map<TermId, HpoDisease> diseaseMap, HpoTermIndex termIndex) {
+        this.diseases = ImmutableList.copyOf(diseaseMap.values());
+        int n = diseases.size();
+        ImmutableMap.Builder<TermId, Integer> builder = new ImmutableMap.Builder<>();
+        this.annotationTerms = new int[n][];
+        this.annotationFrequencies = new double[n][];
+        this.termFrequencies = new double[n][];
+        this.excludedTerms = new BitSet[n];
+        this.indexed = new boolean[n];
+        int notIndexed = 0;
+        for (int d = 0; d < n; d++) {
+            HpoDisease disease = diseases.get(d);
+            builder.put(disease.getDiseaseDatabaseId(), d);
+            List<HpoAnnotation> annotations = disease.getPhenotypicAbnormalities();
+            int[] terms = new int[annotations.size()];
+            double[] freqs = new double[annotations.size()];
+            double[] firstFreqs = new double[annotations.size()];
+            boolean allIndexed = true;
+            for (int k = 0; k < terms.length; k++) {
+                HpoAnnotation annotation = annotations.get(k);
+                terms[k] = termIndex.indexOf(annotation.getTermId());
+                freqs[k] = annotation.getFrequency();
+                firstFreqs[k] = freqs[k];
+                allIndexed &= terms[k] != HpoTermIndex.NOT_INDEXED;
+                for (int j = 0; j < k; j++) {
+                    if (annotations.get(j).getTermId().equals(annotation.getTermId())) {
+                        firstFreqs[k] = freqs[j];
+                        break;
+                    }
+                }
+            }
+            List<TermId> negated = disease.getNegativeAnnotations();
+            int[] negatives = new int[negated.size()];
+            boolean negativesIndexed = true;
+            for (int k = 0; k < negatives.length; k++) {
+                negatives[k] = termIndex.indexOf(negated.get(k));
+                negativesIndexed &= negatives[k] != HpoTermIndex.NOT_INDEXED;
+            }
+            allIndexed &= negativesIndexed;
+            annotationTerms[d] = terms;
+            annotationFrequencies[d] = freqs;
+            termFrequencies[d] = firstFreqs;
+            if (negatives.length > 0 && negativesIndexed) {
+                excludedTerms[d] = termIndex.getDescendantBits(negatives);
+            }
+            indexed[d] = allIndexed;
+            if (!allIndexed) {
+                notIndexed++;
+            }
+        }
+        this.diseaseId2index = builder.build();
+        logger.trace("Indexed {} diseases ({} with annotations that are not in the term index)", n, notIndexed);
+    }
+
+    /** @return number of indexed diseases. */
+    int size() {
+        return diseases.size();
+    }
+
+    /**
+     * @param diseaseId a disease id, e.g., OMIM:600200
+     * @return the index of the disease, or {@link #NOT_INDEXED} if the disease is not part of the index
+     */
+    int indexOf(TermId diseaseId) {
+        Integer idx = diseaseId2index.get(diseaseId);
+        return idx == null ? NOT_INDEXED : idx;
+    }
+
+    /**
+     * @param disease a disease
+     * @return the index of the disease, or {@link #NOT_INDEXED} if the disease is not part of the index (this
+     * includes a different disease object with the same id, e.g., from another disease map)
+     */
+    int indexOf(HpoDisease disease) {
+        int idx = indexOf(disease.getDiseaseDatabaseId());
+        return idx != NOT_INDEXED && diseases.get(idx) == disease ? idx : NOT_INDEXED;
+    }
+
+    /**
+     * @param d index of a disease
+     * @return the corresponding disease
+     */
+    HpoDisease getDisease(int d) {
+        return diseases.get(d);
+    }
+
+    /**
+     * @param d index of a disease
+     * @return true if all (positive and negative) annotations of the disease are part of the term index
+     */
+    boolean isIndexed(int d) {
+        return indexed[d];
+    }
+
+    /**
+     * @param d index of a disease
+     * @return the term indices of the phenotypic abnormalities of the disease, in the order of
+     * {@link HpoDisease#getPhenotypicAbnormalities()} (the array must not be modified)
+     */
+    int[] getAnnotationTerms(int d) {
+        return annotationTerms[d];
+    }
+
+    /**
+     * @param d index of a disease
+     * @return the frequencies of the phenotypic abnormalities of the disease (the array must not be modified)
+     */
+    double[] getAnnotationFrequencies(int d) {
+        return annotationFrequencies[d];
+    }
+
+    /**
+     * @param d index of a disease
+     * @return the frequencies of the terms of the phenotypic abnormalities of the disease, which differ from
+     * {@link #getAnnotationFrequencies(int)} only if the disease has several annotations to the same term
+     * (the array must not be modified)
+     */
+    double[] getTermFrequencies(int d) {
+        return termFrequencies[d];
+    }
+
+    /**
+     * @param d index of an indexed disease (see {@link #isIndexed(int)})
+     * @param termIdx index of a term
+     * @return true if the term or one of its ancestors is a negative annotation of the disease
+     */
+    boolean isExcludedTerm(int d, int termIdx) {
+        BitSet excluded = excludedTerms[d];
+        return excluded != null && excluded.get(termIdx);
+    }
+}
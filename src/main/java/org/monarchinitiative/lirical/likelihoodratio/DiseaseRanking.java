@@ -0,0 +1,118 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * Lightweight scores of all diseases that were evaluated for a case. This class is used by the top-K mode of
+ * {@link CaseEvaluator}: only the best K diseases are stored as {@link TestResult} objects with explanations,
+ * while the remaining diseases are represented by their log<sub>10</sub> post-test odds. The rank of any
+ * disease can still be determined, and it is identical to the rank the disease would be assigned if
+ * {@link TestResult} objects were created for all diseases (ties are broken by the order of the diseases
+ * in the disease map).
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class DiseaseRanking {
+    /** Key: disease id; value: index of the disease in {@link #log10PosttestOdds}. */
+    private final ImmutableMap<TermId, Integer> diseaseIndex;
+    /** log<sub>10</sub> of the post-test odds of each disease, in the order of the disease map. */
+    private final double[] log10PosttestOdds;
+    /** false for the diseases that were skipped, e.g., because no candidate variant was found. */
+    private final boolean[] evaluated;
+    /** Number of diseases that were evaluated (not skipped). */
+    private final int size;
+
+    /**
+     * @param diseaseIds ids of the diseases in the order of the disease map
+     * @param log10PosttestOdds log<sub>10</sub> post-test odds of each disease (ignored for skipped diseases)
+     * @param evaluated false for the diseases that were skipped
+     */
+    DiseaseRanking(List<TermId> diseaseIds, double[] log10PosttestOdds, boolean[] evaluated) {
+        ImmutableMap.Builder<TermId, Integer> builder = new ImmutableMap.Builder<>();
+        int n = 0;
+        for (int i = 0; i < diseaseIds.size(); i++) {
+            builder.put(diseaseIds.get(i), i);
+            if (evaluated[i]) {
+                n++;
+            }
+        }
+        this.diseaseIndex = builder.build();
+        this.log10PosttestOdds = log10PosttestOdds;
+        this.evaluated = evaluated;
+        this.size = n;
+    }
+
+    /**
+     * Compare two diseases in the same way as sorting the {@link TestResult} objects in reverse order.
+     * @return a positive value if disease i is ranked better than disease j
+     */
+    private int compare(int i, int j) {
+        int c = Double.compare(log10PosttestOdds[i], log10PosttestOdds[j]);
+        // the sort is stable, and so the disease that comes first in the disease map is ranked better
+        return c != 0 ? c : Integer.compare(j, i);
+    }
+
+    /**
+     * Get the best k diseases. This uses a heap of size k rather than sorting all diseases.
+     * @param k maximum number of diseases to return
+     * @return indices of the best k diseases, the best one first
+     */
+    int[] topIndices(int k) {
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, k), this::compare); // worst disease at the head
+        for (int i = 0; i < log10PosttestOdds.length; i++) {
+            if (!evaluated[i]) {
+                continue;
+            }
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (k > 0 && compare(i, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] top = new int[heap.size()];
+        for (int r = top.length - 1; r >= 0; r--) {
+            top[r] = heap.poll();
+        }
+        return top;
+    }
+
+    /** @return number of diseases that were evaluated (i.e., not skipped). */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param diseaseId id of a disease, e.g., OMIM:600100
+     * @return the rank of the disease, or Optional.empty() if the disease was not evaluated
+     */
+    public Optional<Integer> getRank(TermId diseaseId) {
+        Integer idx = diseaseIndex.get(diseaseId);
+        if (idx == null || !evaluated[idx]) {
+            return Optional.empty();
+        }
+        int rank = 1;
+        for (int j = 0; j < log10PosttestOdds.length; j++) {
+            if (evaluated[j] && compare(j, idx) > 0) {
+                rank++;
+            }
+        }
+        return Optional.of(rank);
+    }
+
+    /**
+     * @param diseaseId id of a disease, e.g., OMIM:600100
+     * @return the post-test probability of the disease, or 0 if the disease was not evaluated
+     */
+    public double getPosttestProbability(TermId diseaseId) {
+        Integer idx = diseaseIndex.get(diseaseId);
+        if (idx == null || !evaluated[idx]) {
+            return 0.0;
+        }
+        return TestResult.oddsToProbability(log10PosttestOdds[idx]);
+    }
+}
@@ -0,0 +1,220 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A subset of the diseases of a disease map, e.g., the diseases associated with the genes of a virtual gene panel
+ * or the diseases of one organ system. The filter is resolved once to a bitset over the positions of the diseases
+ * in the disease map, and the subset can then be passed to any number of cases with
+ * {@link CaseEvaluator.Builder#diseaseSubset(DiseaseSubset)}. The evaluation uses the bitset to restrict the
+ * likelihood ratio rows and their sums to the diseases of the subset (see {@link #getDiseaseIndexMask}). The
+ * diseases outside of the subset are not evaluated at all, so that the evaluation time is proportional to the size
+ * of the subset, and they are not part of the differential diagnosis.
+ * <p>
+ * The pretest probabilities of the diseases of the subset are normalised so that they add up to one within the
+ * subset (see {@link #restrict(PretestProbabilityProvider)}); the default is 1/N, where N is the size of the
+ * subset. Objects of this class are immutable (apart from a thread-safe cache) and can be shared between threads.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class DiseaseSubset {
+    private static final Logger logger = LoggerFactory.getLogger(DiseaseSubset.class);
+    /** The disease map from which the subset was selected. */
+    private final Map<TermId, HpoDisease> sourceMap;
+    /** Bit i is set if the i-th disease of {@link #sourceMap} is part of the subset. */
+    private final BitSet members;
+    /** The positions of the diseases of the subset in {@link #sourceMap}, i.e., the set bits of {@link #members}. */
+    private final int[] positions;
+    /** The ids of the diseases of the subset, in the order of {@link #sourceMap}. */
+    private final ImmutableList<TermId> diseaseIds;
+    /** The same ids as {@link #diseaseIds}, for {@link #contains(TermId)}. */
+    private final ImmutableSet<TermId> diseaseIdSet;
+    /** Key: a provider for all diseases; value: the same provider restricted to this subset. */
+    private final Map<PretestProbabilityProvider, PretestProbabilityProvider> restrictedProviders = new ConcurrentHashMap<>();
+
+    /** A disease filter that is evaluated once for each disease when the subset is created. */
+    private interface DiseaseFilter {
+        boolean accept(TermId diseaseId, HpoDisease disease);
+    }
+
+    private DiseaseSubset(Map<TermId, HpoDisease> sourceMap, DiseaseFilter filter) {
+        this.sourceMap = sourceMap;
+        this.members = new BitSet(sourceMap.size());
+        ImmutableList.Builder<TermId> builder = new ImmutableList.Builder<>();
+        int i = 0;
+        for (Map.Entry<TermId, HpoDisease> entry : sourceMap.entrySet()) {
+            if (filter.accept(entry.getKey(), entry.getValue())) {
+                members.set(i);
+                builder.add(entry.getKey());
+            }
+            i++;
+        }
+        this.positions = members.stream().toArray();
+        this.diseaseIds = builder.build();
+        this.diseaseIdSet = ImmutableSet.copyOf(diseaseIds);
+        logger.trace("Selected {} of {} diseases", diseaseIds.size(), sourceMap.size());
+    }
+
+    /**
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param diseaseIds the diseases of the subset (ids that are not part of the disease map are ignored)
+     * @return the subset of the given diseases
+     */
+    public static DiseaseSubset ofDiseases(Map<TermId, HpoDisease> diseaseMap, Collection<TermId> diseaseIds) {
+        Set<TermId> ids = ImmutableSet.copyOf(diseaseIds);
+        return new DiseaseSubset(diseaseMap, (diseaseId, disease) -> ids.contains(diseaseId));
+    }
+
+    /**
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param disease2geneMultimap key: a disease CURIE; value: the genes associated with the disease
+     * @param geneIds the genes of a panel, e.g., NCBIGene:2200
+     * @return the subset of the diseases that are associated with at least one of the genes
+     */
+    public static DiseaseSubset ofGenes(Map<TermId, HpoDisease> diseaseMap,
+                                        Multimap<TermId, TermId> disease2geneMultimap,
+                                        Collection<TermId> geneIds) {
+        Set<TermId> genes = ImmutableSet.copyOf(geneIds);
+        return new DiseaseSubset(diseaseMap, (diseaseId, disease) -> {
+            for (TermId geneId : disease2geneMultimap.get(diseaseId)) {
+                if (genes.contains(geneId)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param ontology Reference to HPO ontology object
+     * @param organSystem the root term of an organ system, e.g., Abnormality of the eye (HP:0000478)
+     * @return the subset of the diseases with at least one phenotypic abnormality in the organ system
+     */
+    public static DiseaseSubset ofOrganSystem(Map<TermId, HpoDisease> diseaseMap, Ontology ontology, TermId organSystem) {
+        Set<TermId> organSystemTerms = ImmutableSet.copyOf(OntologyAlgorithm.getDescendents(ontology, organSystem));
+        return new DiseaseSubset(diseaseMap, (diseaseId, disease) -> {
+            for (TermId tid : disease.getPhenotypicAbnormalityTermIdList()) {
+                if (organSystemTerms.contains(tid)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * @param diseaseIdx position of a disease in the disease map from which the subset was selected
+     * @return true if the disease is part of the subset
+     */
+    public boolean contains(int diseaseIdx) {
+        return members.get(diseaseIdx);
+    }
+
+    /**
+     * @param diseaseId a disease CURIE, e.g., OMIM:600100
+     * @return true if the disease is part of the subset
+     */
+    public boolean contains(TermId diseaseId) {
+        return diseaseIdSet.contains(diseaseId);
+    }
+
+    /** @return number of diseases of the subset. */
+    public int size() {
+        return diseaseIds.size();
+    }
+
+    /** @return the ids of the diseases of the subset, in the order of the disease map. */
+    public List<TermId> getDiseaseIds() {
+        return diseaseIds;
+    }
+
+    /**
+     * @return the positions of the diseases of the subset in the disease map, in increasing order; the array is
+     * shared by all cases (do not modify)
+     */
+    int[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * Get the subset as a bitset over the indices of the diseases in the phenotype likelihood ratio object of a
+     * context (see {@link PhenotypeLikelihoodRatio#getDiseaseIndex(HpoDisease)}), which is used to restrict the
+     * likelihood ratio rows and their sums to the subset. If the phenotype likelihood ratio object was created for
+     * the disease map of the context, as is usually the case, the indices are the positions in the disease map and
+     * the bitset of this subset is returned.
+     * @param context a context whose disease map is the disease map of this subset
+     * @return the bitset of the diseases of the subset in the order of the phenotype likelihood ratio object (do
+     * not modify)
+     */
+    BitSet getDiseaseIndexMask(EvaluationContext context) {
+        if (context.isAlignedWithPhenotypeLr()) {
+            return members;
+        }
+        BitSet mask = new BitSet(context.getPhenotypeLr().getDiseases().size());
+        for (int p : positions) {
+            int d = context.getLrIndex(p);
+            if (d >= 0) {
+                mask.set(d);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param diseaseMap a disease map
+     * @return true if this subset was selected from the given disease map, or from a map with the same diseases
+     * in the same order (see {@link EvaluationContext#sameDiseases(Map, Map)})
+     */
+    boolean isSubsetOf(Map<TermId, HpoDisease> diseaseMap) {
+        return EvaluationContext.sameDiseases(sourceMap, diseaseMap);
+    }
+
+    /**
+     * Restrict the pretest probabilities of the full disease map to the subset, i.e., normalise them so that
+     * they add up to one within the subset. The restricted provider is calculated once for each provider and
+     * then reused for all cases. It is indexed by the positions in the disease map, like the given provider.
+     * @param provider pretest probabilities of the diseases of the disease map
+     * @return pretest probabilities of the diseases of the subset
+     */
+    PretestProbabilityProvider restrict(PretestProbabilityProvider provider) {
+        if (provider instanceof UniformPretestProbability) {
+            // 1/N of the subset, without the rounding errors of the normalisation (and cheap enough not to cache)
+            return new UniformPretestProbability(size());
+        }
+        return restrictedProviders.computeIfAbsent(provider, this::computeRestriction);
+    }
+
+    private PretestProbabilityProvider computeRestriction(PretestProbabilityProvider provider) {
+        double[] weights = new double[sourceMap.size()];
+        for (int p : positions) {
+            weights[p] = provider.getPretestProbability(p);
+        }
+        return new RestrictedPretestProbability(ImmutableList.copyOf(sourceMap.keySet()), weights, members);
+    }
+
+    /**
+     * Pretest probabilities of the diseases of a subset, proportional to the ones of the full disease map, and
+     * indexed by the positions in the full disease map.
+     */
+    private static class RestrictedPretestProbability extends IndexedPretestProbability {
+        RestrictedPretestProbability(List<TermId> diseaseIds, double[] weights, BitSet members) {
+            super(diseaseIds, weights, members);
+        }
+    }
+}
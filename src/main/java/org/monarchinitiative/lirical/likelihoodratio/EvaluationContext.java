@@ -0,0 +1,241 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The reference data that is shared by all cases: the ontology, the diseases, the disease genes, the objects
+ * that calculate the phenotype and genotype likelihood ratios, and the default pretest probabilities. The context
+ * is created once (e.g., when a long-running service starts), and the cases are then configured with
+ * {@link #newCase(List)}, which returns a {@link CaseEvaluator.Builder} that only needs the inputs of the patient
+ * (phenotypes, genotypes) and the options of the evaluation. Creating a {@link CaseEvaluator} in this way is cheap
+ * and does not copy any reference data.
+ * <p>
+ * The context is immutable (the disease map, the disease genes and the gene symbols are copied into immutable
+ * collections when the context is created) and all of its parts are safe to use from several threads (the caches
+ * of {@link PhenotypeLikelihoodRatio} are thread safe), and so any number of cases can be evaluated concurrently
+ * with the same context.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class EvaluationContext {
+    /** Reference to the Human Phenotype Ontology object. */
+    private final Ontology ontology;
+    /** key: a disease CURIE, e.g., OMIM:600100; value-corresponding disease object. */
+    private final ImmutableMap<TermId, HpoDisease> diseaseMap;
+    /** The ids of the diseases of {@link #diseaseMap}, in the order of the map. */
+    private final ImmutableList<TermId> diseaseIds;
+    /** Index of each disease of {@link #diseaseMap} in {@link #phenotypeLr} (-1 if it is not one of its diseases). */
+    private final int[] lrIndex;
+    /** True if the diseases of {@link #diseaseMap} have the same positions in {@link #phenotypeLr}. */
+    private final boolean alignedWithPhenotypeLr;
+    /** key: a disease CURIE such as OMIM:600123; value: a collection of gene CURIEs such as NCBIGene:123. */
+    private final ImmutableMultimap<TermId, TermId> disease2geneMultimap;
+    /** Object used to calculate phenotype likelihood ratios. */
+    private final PhenotypeLikelihoodRatio phenotypeLr;
+    /** Object used to calculate genotype likelihood ratios (null: only phenotype-only cases can be evaluated). */
+    private final GenotypeLikelihoodRatio genotypeLr;
+    /** Key: an EntrezGene id; value: corresponding gene symbol. */
+    private final ImmutableMap<TermId, String> geneId2symbol;
+    /** Pretest probabilities of the diseases of {@link #diseaseMap}, used unless a case sets its own. */
+    private final PretestProbabilityProvider pretestProbabilities;
+
+    EvaluationContext(Ontology ontology,
+                      Map<TermId, HpoDisease> diseaseMap,
+                      Multimap<TermId, TermId> disease2geneMultimap,
+                      PhenotypeLikelihoodRatio phenotypeLr,
+                      GenotypeLikelihoodRatio genotypeLr,
+                      Map<TermId, String> geneId2symbol,
+                      PretestProbabilityProvider pretestProbabilities) {
+        CaseEvaluator.Builder.checkIndexedBy(pretestProbabilities, diseaseMap);
+        this.ontology = ontology;
+        this.diseaseMap = ImmutableMap.copyOf(diseaseMap);
+        this.disease2geneMultimap = ImmutableMultimap.copyOf(disease2geneMultimap);
+        this.phenotypeLr = phenotypeLr;
+        this.genotypeLr = genotypeLr;
+        this.geneId2symbol = ImmutableMap.copyOf(geneId2symbol);
+        this.pretestProbabilities = pretestProbabilities;
+        this.diseaseIds = ImmutableList.copyOf(diseaseMap.keySet());
+        this.lrIndex = new int[diseaseIds.size()];
+        boolean aligned = diseaseIds.size() == phenotypeLr.getDiseases().size();
+        for (int i = 0; i < lrIndex.length; i++) {
+            lrIndex[i] = phenotypeLr.getDiseaseIndex(this.diseaseMap.get(diseaseIds.get(i)));
+            aligned &= lrIndex[i] == i;
+        }
+        this.alignedWithPhenotypeLr = aligned;
+    }
+
+    /**
+     * Start the configuration of a new case that is evaluated with the reference data of this context.
+     * @param hpoTerms the abnormalities observed in the individual being investigated
+     * @return a builder for the evaluator of the case
+     */
+    public CaseEvaluator.Builder newCase(List<TermId> hpoTerms) {
+        return new CaseEvaluator.Builder(this, hpoTerms);
+    }
+
+    public Ontology getOntology() {
+        return ontology;
+    }
+
+    public Map<TermId, HpoDisease> getDiseaseMap() {
+        return diseaseMap;
+    }
+
+    /**
+     * The disease map of a context is a copy of the map that it was created with, and so the maps are compared by
+     * content: they must have the same diseases in the same order, with the same disease objects (the positions
+     * of the diseases are used to index pretest probabilities and subsets).
+     * @param map1 a disease map
+     * @param map2 another disease map
+     * @return true if the maps have the same diseases in the same order
+     */
+    static boolean sameDiseases(Map<TermId, HpoDisease> map1, Map<TermId, HpoDisease> map2) {
+        if (map1 == map2) {
+            return true;
+        }
+        if (map1.size() != map2.size()) {
+            return false;
+        }
+        Iterator<Map.Entry<TermId, HpoDisease>> entries2 = map2.entrySet().iterator();
+        for (Map.Entry<TermId, HpoDisease> entry1 : map1.entrySet()) {
+            Map.Entry<TermId, HpoDisease> entry2 = entries2.next();
+            if (!entry1.getKey().equals(entry2.getKey()) || entry1.getValue() != entry2.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the ids of the diseases of the disease map, in the order of the map */
+    List<TermId> getDiseaseIds() {
+        return diseaseIds;
+    }
+
+    /**
+     * @param diseaseIdx position of a disease in the disease map
+     * @return the index of the disease in the phenotype likelihood ratio object (see
+     * {@link PhenotypeLikelihoodRatio#getDiseaseIndex(HpoDisease)}), or -1 if it is not one of its diseases
+     */
+    int getLrIndex(int diseaseIdx) {
+        return lrIndex[diseaseIdx];
+    }
+
+    /**
+     * @return true if each disease has the same position in the disease map and in the phenotype likelihood ratio
+     * object, which is the case if the latter was created for the disease map of this context
+     */
+    boolean isAlignedWithPhenotypeLr() {
+        return alignedWithPhenotypeLr;
+    }
+
+    public Multimap<TermId, TermId> getDisease2geneMultimap() {
+        return disease2geneMultimap;
+    }
+
+    public PhenotypeLikelihoodRatio getPhenotypeLr() {
+        return phenotypeLr;
+    }
+
+    /** @return the object used to calculate genotype likelihood ratios, or null if it was not set */
+    public GenotypeLikelihoodRatio getGenotypeLr() {
+        return genotypeLr;
+    }
+
+    public Map<TermId, String> getGeneId2symbol() {
+        return geneId2symbol;
+    }
+
+    public PretestProbabilityProvider getPretestProbabilities() {
+        return pretestProbabilities;
+    }
+
+    /**
+     * Convenience class for building an {@link EvaluationContext} object.
+     */
+    public static class Builder {
+
+        private Ontology ontology;
+
+        private Map<TermId, HpoDisease> diseaseMap;
+
+        private Multimap<TermId, TermId> disease2geneMultimap = ImmutableMultimap.of();
+        /**
+         * If not set, a {@link PhenotypeLikelihoodRatio} object is created for {@link #ontology} and
+         * {@link #diseaseMap} when the context is built.
+         */
+        private PhenotypeLikelihoodRatio phenotypeLr;
+
+        private GenotypeLikelihoodRatio genotypeLr;
+
+        private Map<TermId, String> geneId2symbol = ImmutableMap.of();
+        /**
+         * Pretest probabilities of the diseases (default: null, i.e., {@link UniformPretestProbability}).
+         */
+        private PretestProbabilityProvider pretestProbabilities;
+
+        public Builder ontology(Ontology hont) {
+            this.ontology = hont;
+            return this;
+        }
+
+        public Builder diseaseMap(Map<TermId, HpoDisease> dmap) {
+            this.diseaseMap = dmap;
+            return this;
+        }
+
+        public Builder disease2geneMultimap(Multimap<TermId, TermId> d2gmmap) {
+            this.disease2geneMultimap = d2gmmap;
+            return this;
+        }
+
+        public Builder phenotypeLr(PhenotypeLikelihoodRatio phenoLr) {
+            this.phenotypeLr = phenoLr;
+            return this;
+        }
+
+        public Builder genotypeLr(GenotypeLikelihoodRatio glr) {
+            this.genotypeLr = glr;
+            return this;
+        }
+
+        public Builder gene2idMap(Map<TermId, String> geneId2symbol) {
+            this.geneId2symbol = geneId2symbol;
+            return this;
+        }
+
+        public Builder pretestProbability(PretestProbabilityProvider provider) {
+            this.pretestProbabilities = provider;
+            return this;
+        }
+
+        public EvaluationContext build() {
+            Objects.requireNonNull(ontology);
+            Objects.requireNonNull(diseaseMap);
+            Objects.requireNonNull(disease2geneMultimap);
+            Objects.requireNonNull(geneId2symbol);
+            if (diseaseMap.isEmpty()) {
+                throw new LiricalRuntimeException("[ERROR] The disease map of the evaluation context is empty");
+            }
+            if (phenotypeLr == null) {
+                phenotypeLr = new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+            }
+            if (pretestProbabilities == null) {
+                pretestProbabilities = new UniformPretestProbability(diseaseMap.size());
+            }
+            return new EvaluationContext(ontology, diseaseMap, disease2geneMultimap, phenotypeLr, genotypeLr,
+                    geneId2symbol, pretestProbabilities);
+        }
+    }
+}
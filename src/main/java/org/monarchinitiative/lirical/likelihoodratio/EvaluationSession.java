@@ -0,0 +1,245 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An interactive evaluation of one case, in which the observed and excluded phenotypes are refined one term at a
+ * time (e.g., by a clinician in a user interface). The session is started with {@link CaseEvaluator#startSession()}
+ * and keeps the likelihood ratio of each phenotype in each disease together with the sums of the log<sub>10</sub>
+ * likelihood ratios of each disease. Adding a phenotype only requires the likelihood ratios of the new term, which
+ * are added to the sums. Removing a phenotype does not require any likelihood ratios to be calculated; the sums
+ * of the affected diseases are recalculated from the stored likelihood ratios of the remaining phenotypes (rather
+ * than subtracting the removed term, which would accumulate rounding errors). The genotype evidence of each
+ * disease does not depend on the phenotypes and is calculated once.
+ * <p>
+ * The ranking returned by {@link #getRanking()} and the case returned by {@link #getCase(int)} are identical to
+ * the results of a {@link CaseEvaluator} built with the current phenotypes. The session is not thread safe.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class EvaluationSession {
+    private static final Logger logger = LoggerFactory.getLogger(EvaluationSession.class);
+    /** The evaluator whose settings (genotypes, analysis mode) are used by this session. */
+    private final CaseEvaluator evaluator;
+    /** The {@link PhenotypeLikelihoodRatio} object of {@link #evaluator}. */
+    private final PhenotypeLikelihoodRatio phenotypeLrEvaluator;
+    /** Ids of the diseases in the order of the disease map. */
+    private final ImmutableList<TermId> diseaseIds;
+    private final HpoDisease[] diseases;
+    /** Index of each disease in {@link #phenotypeLrEvaluator} (-1 if it is not one of its diseases). */
+    private final int[] lrIndex;
+    private final double[] pretest;
+    /** log<sub>10</sub> of the pretest odds of each disease. */
+    private final double[] log10PretestOdds;
+    /** Genotype evidence of each disease, or null if the disease is skipped. */
+    private final CaseEvaluator.GenotypeEvidence[] genotypes;
+    /** The observed phenotypes, in the order in which they were added. */
+    private final List<TermId> observed = new ArrayList<>();
+    /** The likelihood ratios of each of the {@link #observed} phenotypes in each disease. */
+    private final List<PhenotypeLrRowCache.Row> observedRows = new ArrayList<>();
+    /** The excluded phenotypes, in the order in which they were added. */
+    private final List<TermId> excluded = new ArrayList<>();
+    /** The likelihood ratios of each of the {@link #excluded} phenotypes in each disease. */
+    private final List<PhenotypeLrRowCache.Row> excludedRows = new ArrayList<>();
+    /** Sums of the log<sub>10</sub> LRs of the observed and excluded phenotypes of each disease. */
+    private final LogLrAccumulator log10LR;
+
+    EvaluationSession(CaseEvaluator evaluator) {
+        this.evaluator = evaluator;
+        this.phenotypeLrEvaluator = evaluator.getPhenotypeLrEvaluator();
+        this.diseaseIds = ImmutableList.copyOf(evaluator.getDiseaseIds());
+        int n = diseaseIds.size();
+        this.diseases = new HpoDisease[n];
+        this.lrIndex = new int[n];
+        this.pretest = new double[n];
+        this.log10PretestOdds = new double[n];
+        this.genotypes = new CaseEvaluator.GenotypeEvidence[n];
+        for (int i = 0; i < n; i++) {
+            TermId diseaseId = diseaseIds.get(i);
+            diseases[i] = evaluator.getDiseaseMap().get(diseaseId);
+            lrIndex[i] = phenotypeLrEvaluator.getDiseaseIndex(diseases[i]);
+            pretest[i] = evaluator.getPretestProbability(i);
+            log10PretestOdds[i] = evaluator.getLog10PretestOdds(i);
+            genotypes[i] = evaluator.genotypeEvidence(i);
+        }
+        this.log10LR = new LogLrAccumulator(n);
+        for (TermId tid : evaluator.getObservedTerms()) {
+            addObservedTerm(tid);
+        }
+        for (TermId tid : evaluator.getExcludedTerms()) {
+            addExcludedTerm(tid);
+        }
+    }
+
+    /** @return the observed phenotypes of the case. */
+    public List<TermId> getObservedTerms() {
+        return ImmutableList.copyOf(observed);
+    }
+
+    /** @return the excluded phenotypes of the case. */
+    public List<TermId> getExcludedTerms() {
+        return ImmutableList.copyOf(excluded);
+    }
+
+    /**
+     * Add a phenotype that was observed in the patient.
+     * @param tid an HPO term
+     * @return false if the term was already one of the observed phenotypes (nothing is changed in this case)
+     */
+    public boolean addObservedTerm(TermId tid) {
+        if (observed.contains(tid)) {
+            return false;
+        }
+        PhenotypeLrRowCache.Row row = observedRow(tid);
+        observed.add(tid);
+        observedRows.add(row);
+        // terms whose LR cannot be calculated for a disease are skipped, as in CaseEvaluator
+        log10LR.addObserved(row);
+        return true;
+    }
+
+    /**
+     * Add a phenotype that was excluded in the patient.
+     * @param tid an HPO term
+     * @return false if the term was already one of the excluded phenotypes (nothing is changed in this case)
+     */
+    public boolean addExcludedTerm(TermId tid) {
+        if (excluded.contains(tid)) {
+            return false;
+        }
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(diseases.length);
+        for (int i = 0; i < diseases.length; i++) {
+            InducedDiseaseGraph idg = phenotypeLrEvaluator.getInducedDiseaseGraph(diseases[i]);
+            row.set(i, phenotypeLrEvaluator.getLikelihoodRatioForExcludedTerm(tid, idg));
+        }
+        excluded.add(tid);
+        excludedRows.add(row);
+        log10LR.addExcluded(row);
+        return true;
+    }
+
+    /**
+     * @param tid an HPO term
+     * @return false if the term was not one of the observed phenotypes
+     */
+    public boolean removeObservedTerm(TermId tid) {
+        int k = observed.indexOf(tid);
+        if (k < 0) {
+            return false;
+        }
+        observed.remove(k);
+        observedRows.remove(k);
+        log10LR.resetObserved(observedRows);
+        return true;
+    }
+
+    /**
+     * @param tid an HPO term
+     * @return false if the term was not one of the excluded phenotypes
+     */
+    public boolean removeExcludedTerm(TermId tid) {
+        int k = excluded.indexOf(tid);
+        if (k < 0) {
+            return false;
+        }
+        excluded.remove(k);
+        excludedRows.remove(k);
+        log10LR.resetExcluded(excludedRows);
+        return true;
+    }
+
+    /**
+     * Get the likelihood ratios of an observed phenotype in all diseases of this session, in the same way as
+     * {@link CaseEvaluator}: from the (cached) row of the {@link PhenotypeLikelihoodRatio} object if possible,
+     * and otherwise calculated for the disease.
+     */
+    private PhenotypeLrRowCache.Row observedRow(TermId tid) {
+        PhenotypeLrRowCache.Row lrRow = phenotypeLrEvaluator.getLikelihoodRatioRow(tid, evaluator.getLrMask());
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(diseases.length);
+        for (int i = 0; i < diseases.length; i++) {
+            LrWithExplanation lrwe = lrIndex[i] < 0 ? null : lrRow.get(lrIndex[i], tid);
+            if (lrwe == null) {
+                try {
+                    lrwe = phenotypeLrEvaluator.getLikelihoodRatio(tid, phenotypeLrEvaluator.getInducedDiseaseGraph(diseases[i]));
+                } catch (Exception e) {
+                    logger.trace("Could not calculate LR for {}/{}: {}", tid.getValue(),
+                            diseaseIds.get(i).getValue(), e.getMessage());
+                    continue;
+                }
+            }
+            row.set(i, lrwe);
+        }
+        return row;
+    }
+
+    /** @return the scores of all diseases given the current phenotypes. */
+    public DiseaseRanking getRanking() {
+        int n = diseases.length;
+        double[] log10PosttestOdds = new double[n];
+        boolean[] evaluated = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (genotypes[i] != null) {
+                log10PosttestOdds[i] = TestResult.log10PosttestOddsFromPretestOdds(log10LR.getLog10ObservedLR(i),
+                        log10LR.getLog10ExcludedLR(i), genotypes[i].getGenotypeLR(), log10PretestOdds[i]);
+                evaluated[i] = true;
+            }
+        }
+        return new DiseaseRanking(diseaseIds, log10PosttestOdds, evaluated);
+    }
+
+    /**
+     * Create the case for the current phenotypes. Only the best k diseases are returned as {@link TestResult}
+     * objects with explanations; the ranks and post-test probabilities of the other diseases are available from
+     * {@link HpoCase#getRank(TermId)} and {@link HpoCase#getPosttestProbability(TermId)}.
+     * @param k number of diseases for which a full result is returned (0: all)
+     * @return the case with the results of the best k diseases
+     */
+    public HpoCase getCase(int k) {
+        DiseaseRanking ranking = getRanking();
+        int[] top = ranking.topIndices(k > 0 ? k : ranking.size());
+        ImmutableMap.Builder<TermId, TestResult> mapbuilder = new ImmutableMap.Builder<>();
+        for (int r = 0; r < top.length; r++) {
+            TestResult result = createResult(top[r]);
+            result.setRank(r + 1);
+            mapbuilder.put(diseaseIds.get(top[r]), result);
+        }
+        return new HpoCase.Builder(getObservedTerms())
+                .excluded(getExcludedTerms())
+                .results(mapbuilder.build())
+                .ranking(ranking)
+                .build();
+    }
+
+    /** @return the result of the disease with index i, with explanations. */
+    private TestResult createResult(int i) {
+        List<LrWithExplanation> observedExplanations = new ArrayList<>();
+        double[] observedLR = new double[observed.size()];
+        int n = 0;
+        for (int k = 0; k < observed.size(); k++) {
+            LrWithExplanation lrwe = observedRows.get(k).get(i, observed.get(k));
+            if (lrwe != null) {
+                observedLR[n++] = lrwe.getLR();
+                observedExplanations.add(lrwe);
+            }
+        }
+        List<LrWithExplanation> excludedExplanations = new ArrayList<>();
+        double[] excludedLR = new double[excluded.size()];
+        for (int k = 0; k < excluded.size(); k++) {
+            LrWithExplanation lrwe = excludedRows.get(k).get(i, excluded.get(k));
+            excludedLR[k] = lrwe.getLR();
+            excludedExplanations.add(lrwe);
+        }
+        return evaluator.createResult(n == observedLR.length ? observedLR : Arrays.copyOf(observedLR, n),
+                excludedLR, diseases[i], pretest[i], genotypes[i], observedExplanations, excludedExplanations);
+    }
+}
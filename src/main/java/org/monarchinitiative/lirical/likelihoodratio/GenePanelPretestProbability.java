@@ -0,0 +1,74 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Pretest probabilities that are restricted to the diseases of a gene panel. The diseases that are associated
+ * with at least one gene of the panel share most of the probability; all other diseases keep a small weight
+ * relative to the panel diseases ({@code outOfPanelWeight}, e.g., 0.01), so that they can still be ranked if the
+ * phenotypic evidence is strong, but are downranked otherwise.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class GenePanelPretestProbability extends IndexedPretestProbability {
+    private static final Logger logger = LoggerFactory.getLogger(GenePanelPretestProbability.class);
+
+    /**
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param disease2geneMultimap key: a disease CURIE; value: the genes associated with the disease
+     * @param panelGenes the genes of the panel, e.g., NCBIGene:2200
+     * @param outOfPanelWeight weight of a disease without a panel gene relative to a disease of the panel
+     *                         (greater than 0 and at most 1)
+     */
+    public GenePanelPretestProbability(Map<TermId, HpoDisease> diseaseMap,
+                                       Multimap<TermId, TermId> disease2geneMultimap,
+                                       Collection<TermId> panelGenes,
+                                       double outOfPanelWeight) {
+        this(ImmutableList.copyOf(diseaseMap.keySet()), disease2geneMultimap, ImmutableSet.copyOf(panelGenes), outOfPanelWeight);
+    }
+
+    private GenePanelPretestProbability(List<TermId> diseaseIds,
+                                        Multimap<TermId, TermId> disease2geneMultimap,
+                                        Set<TermId> panelGenes,
+                                        double outOfPanelWeight) {
+        super(diseaseIds, weights(diseaseIds, disease2geneMultimap, panelGenes, outOfPanelWeight));
+    }
+
+    private static double[] weights(List<TermId> diseaseIds,
+                                    Multimap<TermId, TermId> disease2geneMultimap,
+                                    Set<TermId> panelGenes,
+                                    double outOfPanelWeight) {
+        if (!(outOfPanelWeight > 0.0 && outOfPanelWeight <= 1.0)) {
+            throw new LiricalRuntimeException("[ERROR] Weight of diseases outside of the gene panel must be in (0,1] but was " + outOfPanelWeight);
+        }
+        double[] weights = new double[diseaseIds.size()];
+        int inPanel = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = outOfPanelWeight;
+            for (TermId geneId : disease2geneMultimap.get(diseaseIds.get(i))) {
+                if (panelGenes.contains(geneId)) {
+                    weights[i] = 1.0;
+                    inPanel++;
+                    break;
+                }
+            }
+        }
+        if (inPanel == 0) {
+            logger.warn("None of the {} diseases is associated with a gene of the panel", weights.length);
+        }
+        logger.trace("{} of {} diseases are associated with one of the {} genes of the panel", inPanel,
+                weights.length, panelGenes.size());
+        return weights;
+    }
+}
@@ -4,6 +4,7 @@ import com.google.common.collect.ImmutableList;
 
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
 import org.monarchinitiative.lirical.poisson.PoissonDistribution;
+import org.monarchinitiative.lirical.poisson.PoissonProbabilityTable;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,8 +60,8 @@ public class GenotypeLikelihoodRatio {
      */
     public GenotypeLikelihoodRatio(Map<TermId, Double> g2background) {
         this.gene2backgroundFrequency = g2background;
-        this.recessivePoissonDistribution = new PoissonDistribution(2.0);
-        this.dominantPoissonDistribution = new PoissonDistribution((1.0));
+        this.recessivePoissonDistribution = new PoissonProbabilityTable(2.0);
+        this.dominantPoissonDistribution = new PoissonProbabilityTable(1.0);
         this.strict=false;
     }
 
@@ -70,8 +71,8 @@ public class GenotypeLikelihoodRatio {
      */
     public GenotypeLikelihoodRatio(Map<TermId, Double> g2background, boolean str) {
         this.gene2backgroundFrequency = g2background;
-        this.recessivePoissonDistribution = new PoissonDistribution(2.0);
-        this.dominantPoissonDistribution = new PoissonDistribution((1.0));
+        this.recessivePoissonDistribution = new PoissonProbabilityTable(2.0);
+        this.dominantPoissonDistribution = new PoissonProbabilityTable(1.0);
         this.strict=str;
     }
 
@@ -0,0 +1,262 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import org.monarchinitiative.lirical.analysis.Gene2Genotype;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The genotype likelihood ratios of a case for all genes associated with the diseases, calculated in one pass
+ * once the VCF file has been parsed (see {@link org.monarchinitiative.lirical.analysis.Vcf2GenotypeMap}). The
+ * genotype likelihood ratio of a gene only depends on the genotype of the gene and on the modes of inheritance of
+ * a disease, and the diseases only use a few distinct lists of modes of inheritance (e.g., [AD], [AR], [AD, AR]).
+ * The table therefore has one row for each gene and one column for each distinct list of modes of inheritance,
+ * and only the cells that are used by at least one disease are calculated. The rows of the genes and the column
+ * of each disease are also stored, so that the per-disease evaluation finds the disease with one lookup and then
+ * reads the cells of its genes by index.
+ * <p>
+ * The cells are calculated independently of each other and can be calculated in parallel; the table is identical
+ * to a serial calculation. The table is immutable once it has been calculated and can be shared by several threads.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class GenotypeLrTable {
+    private static final Logger logger = LoggerFactory.getLogger(GenotypeLrTable.class);
+    /** Key: a disease CURIE; value: the index of the disease in the disease map. */
+    private final ImmutableMap<TermId, Integer> diseaseIndex;
+    /** The column of each disease, i.e., the index of its list of modes of inheritance. */
+    private final int[] diseaseColumns;
+    /** The rows of the genes associated with each disease, in the order of the disease to gene multimap. */
+    private final int[][] diseaseGenes;
+    /** EntrezGene id of each row. */
+    private final ImmutableList<TermId> geneIds;
+    /** Number of columns (distinct lists of modes of inheritance). */
+    private final int nColumns;
+    /** Genotype likelihood ratios at gene * {@link #nColumns} + column (NaN: not used by any disease). */
+    private final double[] likelihoodRatios;
+    /** The likelihood ratios of {@link #likelihoodRatios} with their (lazily rendered) explanations. */
+    private final GenotypeLrWithExplanation[] explanations;
+    /** True if a ClinVar-pathogenic or predicted pathogenic variant was found in the gene. */
+    private final boolean[] candidateVariant;
+
+    private GenotypeLrTable(ImmutableMap<TermId, Integer> diseaseIndex,
+                            int[] diseaseColumns,
+                            int[][] diseaseGenes,
+                            ImmutableList<TermId> geneIds,
+                            int nColumns,
+                            double[] likelihoodRatios,
+                            GenotypeLrWithExplanation[] explanations,
+                            boolean[] candidateVariant) {
+        this.diseaseIndex = diseaseIndex;
+        this.diseaseColumns = diseaseColumns;
+        this.diseaseGenes = diseaseGenes;
+        this.geneIds = geneIds;
+        this.nColumns = nColumns;
+        this.likelihoodRatios = likelihoodRatios;
+        this.explanations = explanations;
+        this.candidateVariant = candidateVariant;
+    }
+
+    /**
+     * Calculate the genotype likelihood ratios of all genes of the given diseases serially.
+     * @param diseaseMap the diseases that are evaluated
+     * @param disease2geneMultimap key: a disease CURIE; value: the genes associated with the disease
+     * @param genotypeMap key: an EntrezGene id; value: the genotype of the gene in the case
+     * @param genotypeLr object used to calculate the genotype likelihood ratios
+     * @return the table of the genotype likelihood ratios of the case
+     */
+    public static GenotypeLrTable compute(Map<TermId, HpoDisease> diseaseMap,
+                                          Multimap<TermId, TermId> disease2geneMultimap,
+                                          Map<TermId, Gene2Genotype> genotypeMap,
+                                          GenotypeLikelihoodRatio genotypeLr) {
+        return compute(diseaseMap, disease2geneMultimap, genotypeMap, genotypeLr, 1, null);
+    }
+
+    /**
+     * Calculate the genotype likelihood ratios of all genes of the given diseases, in parallel if more than one
+     * thread or a pool is given.
+     * @param diseaseMap the diseases that are evaluated
+     * @param disease2geneMultimap key: a disease CURIE; value: the genes associated with the disease
+     * @param genotypeMap key: an EntrezGene id; value: the genotype of the gene in the case
+     * @param genotypeLr object used to calculate the genotype likelihood ratios
+     * @param threads number of threads used to calculate the table (1: serial calculation); ignored if pool is set
+     * @param pool optional pool used to calculate the table (can be null)
+     * @return the table of the genotype likelihood ratios of the case
+     */
+    public static GenotypeLrTable compute(Map<TermId, HpoDisease> diseaseMap,
+                                          Multimap<TermId, TermId> disease2geneMultimap,
+                                          Map<TermId, Gene2Genotype> genotypeMap,
+                                          GenotypeLikelihoodRatio genotypeLr,
+                                          int threads,
+                                          ForkJoinPool pool) {
+        return compute(ImmutableList.copyOf(diseaseMap.keySet()), diseaseMap, disease2geneMultimap, genotypeMap,
+                genotypeLr, threads, pool);
+    }
+
+    /**
+     * Calculate the genotype likelihood ratios of all genes of some of the diseases of a disease map, e.g., the
+     * diseases of a {@link DiseaseSubset}. The index of a disease in the table is its index in diseaseIds.
+     * @param diseaseIds the ids of the diseases that are evaluated
+     * @param diseaseMap a disease map that contains the diseases that are evaluated
+     * @param disease2geneMultimap key: a disease CURIE; value: the genes associated with the disease
+     * @param genotypeMap key: an EntrezGene id; value: the genotype of the gene in the case
+     * @param genotypeLr object used to calculate the genotype likelihood ratios
+     * @param threads number of threads used to calculate the table (1: serial calculation); ignored if pool is set
+     * @param pool optional pool used to calculate the table (can be null)
+     * @return the table of the genotype likelihood ratios of the case
+     */
+    static GenotypeLrTable compute(List<TermId> diseaseIds,
+                                   Map<TermId, HpoDisease> diseaseMap,
+                                   Multimap<TermId, TermId> disease2geneMultimap,
+                                   Map<TermId, Gene2Genotype> genotypeMap,
+                                   GenotypeLikelihoodRatio genotypeLr,
+                                   int threads,
+                                   ForkJoinPool pool) {
+        // index the diseases, the genes and the lists of modes of inheritance in the order of the diseases
+        ImmutableMap.Builder<TermId, Integer> diseaseIndex = ImmutableMap.builder();
+        Map<TermId, Integer> genes = new LinkedHashMap<>();
+        Map<List<TermId>, Integer> inheritance = new LinkedHashMap<>();
+        int[] diseaseColumns = new int[diseaseIds.size()];
+        int[][] diseaseGenes = new int[diseaseIds.size()][];
+        int d = 0;
+        for (TermId diseaseId : diseaseIds) {
+            diseaseIndex.put(diseaseId, d);
+            List<TermId> modes = ImmutableList.copyOf(diseaseMap.get(diseaseId).getModesOfInheritance());
+            diseaseColumns[d] = inheritance.computeIfAbsent(modes, k -> inheritance.size());
+            Collection<TermId> associatedGenes = disease2geneMultimap.get(diseaseId);
+            diseaseGenes[d] = new int[associatedGenes.size()];
+            int k = 0;
+            for (TermId geneId : associatedGenes) {
+                diseaseGenes[d][k++] = genes.computeIfAbsent(geneId, id -> genes.size());
+            }
+            d++;
+        }
+        ImmutableList<TermId> geneIds = ImmutableList.copyOf(genes.keySet());
+        List<List<TermId>> modeLists = ImmutableList.copyOf(inheritance.keySet());
+        int nColumns = modeLists.size();
+        // mark the cells that are used by at least one disease
+        BitSet used = new BitSet(geneIds.size() * nColumns);
+        for (d = 0; d < diseaseGenes.length; d++) {
+            for (int gene : diseaseGenes[d]) {
+                used.set(gene * nColumns + diseaseColumns[d]);
+            }
+        }
+        int[] cells = used.stream().toArray();
+        double[] likelihoodRatios = new double[geneIds.size() * nColumns];
+        Arrays.fill(likelihoodRatios, Double.NaN);
+        GenotypeLrWithExplanation[] explanations = new GenotypeLrWithExplanation[likelihoodRatios.length];
+        boolean[] candidateVariant = new boolean[geneIds.size()];
+        for (int g = 0; g < candidateVariant.length; g++) {
+            Gene2Genotype g2g = genotypeMap.getOrDefault(geneIds.get(g), Gene2Genotype.NO_IDENTIFIED_VARIANT);
+            candidateVariant[g] = !g2g.equals(Gene2Genotype.NO_IDENTIFIED_VARIANT) &&
+                    (g2g.hasPathogenicClinvarVar() || g2g.hasPredictedPathogenicVar());
+        }
+        // each task writes a different cell, so the result does not depend on the order of the tasks
+        IntConsumer task = c -> {
+            TermId geneId = geneIds.get(cells[c] / nColumns);
+            Gene2Genotype g2g = genotypeMap.getOrDefault(geneId, Gene2Genotype.NO_IDENTIFIED_VARIANT);
+            GenotypeLrWithExplanation glrwe = genotypeLr.evaluateGenotype(g2g, modeLists.get(cells[c] % nColumns), geneId);
+            likelihoodRatios[cells[c]] = glrwe.getLR();
+            explanations[cells[c]] = glrwe;
+        };
+        if (pool == null && threads < 2) {
+            for (int c = 0; c < cells.length; c++) {
+                task.accept(c);
+            }
+        } else {
+            // a parallel stream started from within a ForkJoinPool task runs in that pool
+            ForkJoinPool forkJoinPool = pool != null ? pool : new ForkJoinPool(threads);
+            try {
+                // the completion of the task makes the writes to the arrays visible to this thread
+                forkJoinPool.submit(() -> IntStream.range(0, cells.length).parallel().forEach(task)).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LiricalRuntimeException("Interrupted while calculating genotype likelihood ratios: " + e.getMessage());
+            } catch (ExecutionException e) {
+                throw new LiricalRuntimeException("Could not calculate genotype likelihood ratios: " + e.getCause().getMessage());
+            } finally {
+                if (pool == null) {
+                    forkJoinPool.shutdown();
+                }
+            }
+        }
+        logger.trace("Calculated {} genotype likelihood ratios for {} genes and {} lists of modes of inheritance",
+                cells.length, geneIds.size(), nColumns);
+        return new GenotypeLrTable(diseaseIndex.build(), diseaseColumns, diseaseGenes, geneIds, nColumns,
+                likelihoodRatios, explanations, candidateVariant);
+    }
+
+    /**
+     * @param diseaseId a disease CURIE
+     * @return the index of the disease, or -1 if the disease is not part of the table
+     */
+    public int getDiseaseIndex(TermId diseaseId) {
+        return diseaseIndex.getOrDefault(diseaseId, -1);
+    }
+
+    /**
+     * @param disease index of a disease (see {@link #getDiseaseIndex(TermId)})
+     * @return the column of the modes of inheritance of the disease
+     */
+    public int getColumn(int disease) {
+        return diseaseColumns[disease];
+    }
+
+    /**
+     * @param disease index of a disease (see {@link #getDiseaseIndex(TermId)})
+     * @return the rows of the genes associated with the disease (do not modify)
+     */
+    public int[] getGeneRows(int disease) {
+        return diseaseGenes[disease];
+    }
+
+    /**
+     * @param gene row of a gene
+     * @return the EntrezGene id of the gene
+     */
+    public TermId getGeneId(int gene) {
+        return geneIds.get(gene);
+    }
+
+    /**
+     * @param gene row of a gene (see {@link #getGeneRows(int)})
+     * @param column column of a disease (see {@link #getColumn(int)})
+     * @return the genotype likelihood ratio, or NaN if the combination is not used by any disease
+     */
+    public double getLikelihoodRatio(int gene, int column) {
+        return likelihoodRatios[gene * nColumns + column];
+    }
+
+    /**
+     * @param gene row of a gene (see {@link #getGeneRows(int)})
+     * @param column column of a disease (see {@link #getColumn(int)})
+     * @return the genotype likelihood ratio with its explanation, or null if the combination is not used by any disease
+     */
+    public GenotypeLrWithExplanation getLikelihoodRatioWithExplanation(int gene, int column) {
+        return explanations[gene * nColumns + column];
+    }
+
+    /**
+     * @param gene row of a gene (see {@link #getGeneRows(int)})
+     * @return true if a ClinVar-pathogenic or predicted pathogenic variant was found in the gene
+     */
+    public boolean hasCandidateVariant(int gene) {
+        return candidateVariant[gene];
+    }
+}
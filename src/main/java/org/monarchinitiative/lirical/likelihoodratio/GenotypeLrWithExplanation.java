@@ -3,19 +3,36 @@ package org.monarchinitiative.lirical.likelihoodratio;
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 
-import static org.monarchinitiative.phenol.annotations.formats.hpo.HpoModeOfInheritanceTermIds.*;
+import java.util.function.Supplier;
 
+import static org.monarchinitiative.phenol.annotations.formats.hpo.HpoModeOfInheritanceTermIds.*;
 
+/**
+ * The likelihood ratio of the genotype of a gene together with its explanation. The explanations created by the
+ * static factory methods are only formatted when {@link #getExplanation()} is called for the first time, because
+ * most genotype likelihood ratios of a case are never shown (the values that are needed for the explanation are
+ * captured when the object is created).
+ */
 public class GenotypeLrWithExplanation  {
     /** The likelihood ratio of the genotype. */
     private final double LR;
-    private final String explanation;
+    /** The explanation (null until it has been rendered by {@link #explanationRenderer}). */
+    private String explanation;
+    /** Formats the explanation on demand (null if the explanation was passed to the constructor). */
+    private final Supplier<String> explanationRenderer;
 
 
 
     public GenotypeLrWithExplanation(double lratio, String explain){
         this.LR = lratio;
         this.explanation = explain;
+        this.explanationRenderer = null;
+    }
+
+    private GenotypeLrWithExplanation(double lratio, Supplier<String> renderer) {
+        this.LR = lratio;
+        this.explanation = null;
+        this.explanationRenderer = renderer;
     }
 
 
@@ -24,58 +41,47 @@ public class GenotypeLrWithExplanation  {
 
 
     static GenotypeLrWithExplanation noVariantsDetectedAutosomalRecessive(double ratio, String geneSymbol) {
-        final String expl = String.format("%s: No variants detected with autosomal recessive disease. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio));
-        return new GenotypeLrWithExplanation(ratio, expl);
+        return new GenotypeLrWithExplanation(ratio, () -> String.format("%s: No variants detected with autosomal recessive disease. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio)));
     }
 
     static GenotypeLrWithExplanation noVariantsDetectedAutosomalDominant(double ratio, String geneSymbol) {
-        final String expl = String.format("%s: No variants detected. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio));
-        return new GenotypeLrWithExplanation(ratio, expl);
+        return new GenotypeLrWithExplanation(ratio, () -> String.format("%s: No variants detected. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio)));
     }
 
     static GenotypeLrWithExplanation twoPathClinVarAllelesRecessive(double ratio, String geneSymbol) {
-        final String expl = String.format("%s: Two pathogenic ClinVar variants detected with autosomal recessive disease. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio));
-        return new GenotypeLrWithExplanation(ratio, expl);
+        return new GenotypeLrWithExplanation(ratio, () -> String.format("%s: Two pathogenic ClinVar variants detected with autosomal recessive disease. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio)));
     }
 
     static GenotypeLrWithExplanation pathClinVar(double ratio, String geneSymbol) {
-        final String expl = String.format("%s: Pathogenic ClinVar variant detected. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio));
-        return new GenotypeLrWithExplanation(ratio, expl);
+        return new GenotypeLrWithExplanation(ratio, () -> String.format("%s: Pathogenic ClinVar variant detected. log<sub>10</sub>(LR)=%.3f.", geneSymbol,  Math.log10(ratio)));
     }
 
      static   GenotypeLrWithExplanation explainOneAlleleRecessive(double ratio, double observedWeightedPathogenicVariantCount, double lambda_background, String geneSymbol) {
         final int lambda_disease = 2;
-        final String expl = String.format("%s: One pathogenic allele detected with autosomal recessive disease. " +
+        return new GenotypeLrWithExplanation(ratio, () -> String.format("%s: One pathogenic allele detected with autosomal recessive disease. " +
              "Observed weighted pathogenic variant count: %.2f. &lambda;<sub>disease</sub>=%d. &lambda;<sub>background</sub>=%.4f. log<sub>10</sub>(LR)=%.3f.",
-                geneSymbol, observedWeightedPathogenicVariantCount, lambda_disease, lambda_background,  Math.log10(ratio));
-         return new GenotypeLrWithExplanation(ratio, expl);
+                geneSymbol, observedWeightedPathogenicVariantCount, lambda_disease, lambda_background,  Math.log10(ratio)));
     }
 
 
     static GenotypeLrWithExplanation explainPathCountAboveLambdaB(double ratio, Gene2Genotype g2g, TermId MoI,  double lambda_background) {
         double observedWeightedPathogenicVariantCount = g2g.getSumOfPathBinScores();
         String geneSymbol = g2g.getSymbol();
-        int lambda_disease = 1;
-        if (MoI.equals(AUTOSOMAL_RECESSIVE) || MoI.equals(X_LINKED_RECESSIVE)) {
-            lambda_disease = 2;
-        }
-        String expl = String.format("%s: %s. Heuristic for high number of observed predicted pathogenic variants. "
+        final int lambda_disease = MoI.equals(AUTOSOMAL_RECESSIVE) || MoI.equals(X_LINKED_RECESSIVE) ? 2 : 1;
+        return new GenotypeLrWithExplanation(ratio, () -> String.format("%s: %s. Heuristic for high number of observed predicted pathogenic variants. "
                         + "Observed weighted pathogenic variant count: %.2f. &lambda;<sub>disease</sub>=%d. &lambda;<sub>background</sub>=%.4f. log<sub>10</sub>(LR)=%.3f.",
-                geneSymbol, getMoIString(MoI), observedWeightedPathogenicVariantCount, lambda_disease, lambda_background, Math.log10(ratio));
-        return new GenotypeLrWithExplanation(ratio, expl);
+                geneSymbol, getMoIString(MoI), observedWeightedPathogenicVariantCount, lambda_disease, lambda_background, Math.log10(ratio)));
     }
 
     static GenotypeLrWithExplanation explanation(double ratio, Gene2Genotype g2g, TermId modeOfInh, double lambda_b, double D, double B) {
         double observedWeightedPathogenicVariantCount = g2g.getSumOfPathBinScores();
         String symbol = g2g.getSymbol();
-        int lambda_disease = 1;
-        if (modeOfInh.equals(AUTOSOMAL_RECESSIVE) || modeOfInh.equals(X_LINKED_RECESSIVE)) {
-            lambda_disease = 2;
-        }
-        String msg = String.format("%s: P(G|D)=%.4f. P(G|&#172;D)=%.4f", symbol, D, B);
-        msg = String.format("%s. %s. Observed weighted pathogenic variant count: %.2f. &lambda;<sub>disease</sub>=%d. &lambda;<sub>background</sub>=%.4f. log<sub>10</sub>(LR)=%.3f",
-               msg, getMoIString(modeOfInh), observedWeightedPathogenicVariantCount,  lambda_disease, lambda_b, Math.log10(ratio));
-        return new GenotypeLrWithExplanation(ratio, msg);
+        final int lambda_disease = modeOfInh.equals(AUTOSOMAL_RECESSIVE) || modeOfInh.equals(X_LINKED_RECESSIVE) ? 2 : 1;
+        return new GenotypeLrWithExplanation(ratio, () -> {
+            String msg = String.format("%s: P(G|D)=%.4f. P(G|&#172;D)=%.4f", symbol, D, B);
+            return String.format("%s. %s. Observed weighted pathogenic variant count: %.2f. &lambda;<sub>disease</sub>=%d. &lambda;<sub>background</sub>=%.4f. log<sub>10</sub>(LR)=%.3f",
+                    msg, getMoIString(modeOfInh), observedWeightedPathogenicVariantCount,  lambda_disease, lambda_b, Math.log10(ratio));
+        });
     }
 
     private static String getMoIString(TermId MoI) {
@@ -97,6 +103,10 @@ public class GenotypeLrWithExplanation  {
     }
 
     public String getExplanation() {
+        // the rendered string is immutable, so rendering it twice in concurrent calls does no harm
+        if (explanation == null && explanationRenderer != null) {
+            explanation = explanationRenderer.get();
+        }
         return explanation;
     }
 }
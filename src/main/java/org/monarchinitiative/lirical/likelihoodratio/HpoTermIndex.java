@@ -0,0 +1,295 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * A dense integer index of the (non-obsolete) HPO terms, i.e., of the terms of the ontology graph, together with
+ * the ancestor closure and the direct parents and children of each term.
+ * The terms are numbered in topological order, i.e., every term has a larger index than all of its
+ * ancestors. The ancestors of term {@code i} (including {@code i} itself) are stored as a bitset of
+ * {@code i/64 + 1} longs, so that a subsumption test is a single bit test and does not need to allocate
+ * a {@code Set<TermId>}, which is what {@link OntologyAlgorithm#isSubclass} and
+ * {@link OntologyAlgorithm#getAncestorTerms} do for each call.
+ * <p>
+ * The direct parents and children of the terms are stored in compressed sparse row (CSR) form: the parents of
+ * term {@code i} are {@code parentTargets[parentOffsets[i]]} to {@code parentTargets[parentOffsets[i+1]-1]},
+ * and likewise for the children. Walking the graph or counting the children of a term therefore does not
+ * allocate, in contrast to {@link OntologyAlgorithm#getParentTerms} and {@link OntologyAlgorithm#getChildTerms}.
+ * </p>
+ * <p>
+ * Terms that are not part of the index (e.g., alternate ids) are reported with an index of {@code -1};
+ * callers are expected to fall back to the ontology for these terms.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class HpoTermIndex {
+    private static final Logger logger = LoggerFactory.getLogger(HpoTermIndex.class);
+    /** Value returned by {@link #indexOf(TermId)} for terms that are not in the index. */
+    static final int NOT_INDEXED = -1;
+    /** Key: an HPO term id; value: its index (position in {@link #terms}). */
+    private final ImmutableMap<TermId, Integer> termId2index;
+    /** The indexed terms, in topological order (ancestors before descendants). */
+    private final TermId[] terms;
+    /** ancestorBits[i] has a bit set for each ancestor of term i, including i itself. */
+    private final long[][] ancestorBits;
+    /** The parents of term i are at positions parentOffsets[i] to parentOffsets[i+1]-1 of {@link #parentTargets}. */
+    private final int[] parentOffsets;
+    /** Indices of the parents of all terms, for each term in the order returned by the ontology. */
+    private final int[] parentTargets;
+    /** The children of term i are at positions childOffsets[i] to childOffsets[i+1]-1 of {@link #childTargets}. */
+    private final int[] childOffsets;
+    /** Indices of the children of all terms, for each term in increasing order. */
+    private final int[] childTargets;
+
+    /**
+     * Index the non-obsolete terms of the ontology and calculate the ancestor closure of each term.
+     * @param ontology Reference to HPO ontology object
+     */
+    HpoTermIndex(Ontology ontology) {
+        // The graph can contain terms that are referenced as parents but have no term stanza of their own
+        // (e.g., in a reduced ontology file). These terms are returned by getParentTerms and getAncestorTerms,
+        // and so they must be indexed as well for the closures to be complete.
+        Set<TermId> termIdSet = new HashSet<>(ontology.getNonObsoleteTermIds());
+        termIdSet.addAll(ontology.getGraph().vertexSet());
+        // sort the terms so that the index does not depend on the iteration order of the ontology
+        List<TermId> termIds = new ArrayList<>(termIdSet);
+        termIds.sort(Comparator.comparing(TermId::getValue));
+        // parents of each term, restricted to the terms that are being indexed
+        Map<TermId, List<TermId>> parentMap = new HashMap<>();
+        Map<TermId, List<TermId>> childMap = new HashMap<>();
+        for (TermId tid : termIds) {
+            List<TermId> parents = new ArrayList<>();
+            for (TermId p : OntologyAlgorithm.getParentTerms(ontology, tid, false)) {
+                if (termIdSet.contains(p)) {
+                    parents.add(p);
+                    childMap.computeIfAbsent(p, k -> new ArrayList<>()).add(tid);
+                }
+            }
+            parentMap.put(tid, parents);
+        }
+        // Kahn's algorithm -- a term is numbered once all of its parents have been numbered
+        Map<TermId, Integer> unprocessedParentCount = new HashMap<>();
+        Queue<TermId> queue = new ArrayDeque<>();
+        for (TermId tid : termIds) {
+            int n = parentMap.get(tid).size();
+            unprocessedParentCount.put(tid, n);
+            if (n == 0) {
+                queue.add(tid);
+            }
+        }
+        this.terms = new TermId[termIds.size()];
+        Map<TermId, Integer> indexMap = new HashMap<>();
+        int i = 0;
+        while (!queue.isEmpty()) {
+            TermId tid = queue.remove();
+            indexMap.put(tid, i);
+            terms[i] = tid;
+            i++;
+            for (TermId child : childMap.getOrDefault(tid, Collections.emptyList())) {
+                int remaining = unprocessedParentCount.get(child) - 1;
+                unprocessedParentCount.put(child, remaining);
+                if (remaining == 0) {
+                    queue.add(child);
+                }
+            }
+        }
+        if (i != terms.length) {
+            throw new LiricalRuntimeException(String.format("[ERROR] Could not sort the HPO topologically " +
+                    "(%d of %d terms sorted). Does the ontology have a cycle?", i, terms.length));
+        }
+        this.termId2index = ImmutableMap.copyOf(indexMap);
+        this.parentOffsets = new int[terms.length + 1];
+        for (int k = 0; k < terms.length; k++) {
+            parentOffsets[k + 1] = parentOffsets[k] + parentMap.get(terms[k]).size();
+        }
+        this.parentTargets = new int[parentOffsets[terms.length]];
+        this.childOffsets = new int[terms.length + 1];
+        for (int k = 0; k < terms.length; k++) {
+            int j = parentOffsets[k];
+            for (TermId p : parentMap.get(terms[k])) {
+                int parentIdx = termId2index.get(p);
+                parentTargets[j++] = parentIdx;
+                childOffsets[parentIdx + 1]++;
+            }
+        }
+        for (int k = 0; k < terms.length; k++) {
+            childOffsets[k + 1] += childOffsets[k];
+        }
+        // the children are added in increasing order because the terms are visited in increasing order
+        this.childTargets = new int[parentTargets.length];
+        int[] next = Arrays.copyOf(childOffsets, terms.length);
+        for (int k = 0; k < terms.length; k++) {
+            for (int j = parentOffsets[k]; j < parentOffsets[k + 1]; j++) {
+                childTargets[next[parentTargets[j]]++] = k;
+            }
+        }
+        // The closure of a term is the union of the closures of its parents plus the term itself.
+        // Since all parents have a smaller index, their closures fit into the row of the child.
+        this.ancestorBits = new long[terms.length][];
+        for (int k = 0; k < terms.length; k++) {
+            long[] row = new long[(k >> 6) + 1];
+            for (TermId p : parentMap.get(terms[k])) {
+                long[] parentRow = ancestorBits[termId2index.get(p)];
+                for (int w = 0; w < parentRow.length; w++) {
+                    row[w] |= parentRow[w];
+                }
+            }
+            row[k >> 6] |= 1L << k;
+            ancestorBits[k] = row;
+        }
+        logger.trace("Indexed {} HPO terms", terms.length);
+    }
+
+    /**
+     * @param tid an HPO term id
+     * @return the index of the term, or {@link #NOT_INDEXED} if the term is not part of the index
+     */
+    int indexOf(TermId tid) {
+        Integer idx = termId2index.get(tid);
+        return idx == null ? NOT_INDEXED : idx;
+    }
+
+    /**
+     * @param idx index of a term
+     * @return the corresponding HPO term id
+     */
+    TermId getTermId(int idx) {
+        return terms[idx];
+    }
+
+    /** @return number of indexed terms. */
+    int size() {
+        return terms.length;
+    }
+
+    /**
+     * @param termIdx index of a term
+     * @return number of direct parents of the term
+     */
+    int getParentCount(int termIdx) {
+        return parentOffsets[termIdx + 1] - parentOffsets[termIdx];
+    }
+
+    /**
+     * @param termIdx index of a term
+     * @param j a number between 0 and {@link #getParentCount(int)}-1
+     * @return the index of the j-th parent of the term, in the order in which the ontology returns the parents
+     */
+    int getParent(int termIdx, int j) {
+        return parentTargets[parentOffsets[termIdx] + j];
+    }
+
+    /**
+     * @param termIdx index of a term
+     * @return number of direct children of the term
+     */
+    int getChildCount(int termIdx) {
+        return childOffsets[termIdx + 1] - childOffsets[termIdx];
+    }
+
+    /**
+     * @param termIdx index of a term
+     * @param j a number between 0 and {@link #getChildCount(int)}-1
+     * @return the index of the j-th child of the term (the children are in increasing order)
+     */
+    int getChild(int termIdx, int j) {
+        return childTargets[childOffsets[termIdx] + j];
+    }
+
+    /**
+     * @param parentIdx index of the putative parent
+     * @param termIdx index of a term
+     * @return true if the term with index parentIdx is a direct parent of the term with index termIdx
+     */
+    boolean isParent(int parentIdx, int termIdx) {
+        for (int j = parentOffsets[termIdx]; j < parentOffsets[termIdx + 1]; j++) {
+            if (parentTargets[j] == parentIdx) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param ancestorIdx index of the putative ancestor
+     * @param termIdx index of a term
+     * @return true if the term with index ancestorIdx is an ancestor of (or equal to) the term with index termIdx
+     */
+    boolean isAncestorOrSelf(int ancestorIdx, int termIdx) {
+        long[] row = ancestorBits[termIdx];
+        int word = ancestorIdx >> 6;
+        return word < row.length && (row[word] & (1L << ancestorIdx)) != 0;
+    }
+
+    /**
+     * @param termIdxs indices of some terms
+     * @return a bitset with the indices of all ancestors of the terms, including the terms themselves
+     */
+    BitSet getAncestorBits(int[] termIdxs) {
+        BitSet bits = new BitSet();
+        for (int t : termIdxs) {
+            bits.or(BitSet.valueOf(ancestorBits[t]));
+        }
+        return bits;
+    }
+
+    /**
+     * @param termIdxs indices of some terms
+     * @return a bitset with the indices of all descendants of the terms, including the terms themselves
+     */
+    BitSet getDescendantBits(int[] termIdxs) {
+        BitSet bits = new BitSet();
+        int[] stack = new int[16];
+        int top = 0;
+        for (int t : termIdxs) {
+            if (!bits.get(t)) {
+                bits.set(t);
+                stack[top++] = t;
+            }
+            while (top > 0) {
+                int u = stack[--top];
+                for (int j = childOffsets[u]; j < childOffsets[u + 1]; j++) {
+                    int c = childTargets[j];
+                    if (!bits.get(c)) {
+                        bits.set(c);
+                        if (top == stack.length) {
+                            stack = Arrays.copyOf(stack, 2 * top);
+                        }
+                        stack[top++] = c;
+                    }
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @param termIdx index of a term
+     * @return the indices of all ancestors of the term, including the term itself, in increasing order
+     */
+    int[] getAncestorIndices(int termIdx) {
+        long[] row = ancestorBits[termIdx];
+        int count = 0;
+        for (long w : row) {
+            count += Long.bitCount(w);
+        }
+        int[] ancestors = new int[count];
+        int j = 0;
+        for (int w = 0; w < row.length; w++) {
+            long bits = row[w];
+            while (bits != 0) {
+                ancestors[j++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return ancestors;
+    }
+}
@@ -0,0 +1,117 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Base class of the pretest probabilities that differ between diseases. Each disease is given a weight, and
+ * the pretest probabilities are the weights divided by their sum, so that the probabilities of all diseases
+ * add up to one. The probabilities and their log<sub>10</sub> odds are stored in primitive arrays indexed by
+ * the position of the disease in the disease map, and are calculated once when the provider is created. The
+ * evaluation of a case reads them by this position; the map from the disease ids to the positions is only used
+ * by the methods with a {@link TermId} argument.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+abstract class IndexedPretestProbability implements PretestProbabilityProvider {
+    /** The ids of the diseases in the order of the arrays. */
+    private final ImmutableList<TermId> diseaseIds;
+    /** Key: a disease id, e.g., OMIM:600200; value: the index of the disease in the arrays. */
+    private final ImmutableMap<TermId, Integer> diseaseId2index;
+    /** The pretest probability of each disease. */
+    private final double[] pretestProbabilities;
+    /** log<sub>10</sub> of the pretest odds of each disease. */
+    private final double[] log10PretestOdds;
+
+    /**
+     * @param diseaseIds the ids of the diseases, e.g., the keys of the disease map
+     * @param weights the (positive) weight of each disease
+     */
+    IndexedPretestProbability(List<TermId> diseaseIds, double[] weights) {
+        this(diseaseIds, weights, null);
+    }
+
+    /**
+     * @param diseaseIds the ids of the diseases, e.g., the keys of the disease map
+     * @param weights the (positive) weight of each disease (ignored for the diseases that are not members)
+     * @param members the diseases that have a pretest probability, e.g., the diseases of a {@link DiseaseSubset}
+     *                (null: all diseases); the probabilities of the other diseases are NaN
+     */
+    IndexedPretestProbability(List<TermId> diseaseIds, double[] weights, BitSet members) {
+        if (diseaseIds.size() != weights.length) {
+            throw new LiricalRuntimeException(String.format("[ERROR] Got %d weights for %d diseases",
+                    weights.length, diseaseIds.size()));
+        }
+        double sum = 0.0;
+        for (int i = 0; i < weights.length; i++) {
+            if (members != null && !members.get(i)) {
+                continue;
+            }
+            if (!(weights[i] > 0.0) || Double.isInfinite(weights[i])) {
+                throw new LiricalRuntimeException(String.format("[ERROR] Invalid pretest weight %s of %s",
+                        weights[i], diseaseIds.get(i).getValue()));
+            }
+            sum += weights[i];
+        }
+        this.diseaseIds = ImmutableList.copyOf(diseaseIds);
+        ImmutableMap.Builder<TermId, Integer> builder = new ImmutableMap.Builder<>();
+        this.pretestProbabilities = new double[weights.length];
+        this.log10PretestOdds = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (members != null && !members.get(i)) {
+                pretestProbabilities[i] = Double.NaN;
+                log10PretestOdds[i] = Double.NaN;
+                continue;
+            }
+            builder.put(diseaseIds.get(i), i);
+            pretestProbabilities[i] = weights[i] / sum;
+            log10PretestOdds[i] = TestResult.log10Odds(pretestProbabilities[i]);
+        }
+        this.diseaseId2index = builder.build();
+    }
+
+    private int indexOf(TermId diseaseId) {
+        Integer idx = diseaseId2index.get(diseaseId);
+        if (idx == null) {
+            throw new LiricalRuntimeException("[ERROR] No pretest probability for " + diseaseId.getValue());
+        }
+        return idx;
+    }
+
+    @Override
+    public double getPretestProbability(TermId diseaseId) {
+        return pretestProbabilities[indexOf(diseaseId)];
+    }
+
+    @Override
+    public double getLog10PretestOdds(TermId diseaseId) {
+        return log10PretestOdds[indexOf(diseaseId)];
+    }
+
+    @Override
+    public double getPretestProbability(int diseaseIdx) {
+        return pretestProbabilities[diseaseIdx];
+    }
+
+    @Override
+    public double getLog10PretestOdds(int diseaseIdx) {
+        return log10PretestOdds[diseaseIdx];
+    }
+
+    /**
+     * @param ids the ids of the diseases of a disease map, in the order of the map
+     * @return true if the arrays of this provider are indexed by the positions of the given diseases
+     */
+    boolean isIndexedBy(List<TermId> ids) {
+        return diseaseIds.equals(ids);
+    }
+
+    /** @return number of diseases. */
+    int size() {
+        return pretestProbabilities.length;
+    }
+}
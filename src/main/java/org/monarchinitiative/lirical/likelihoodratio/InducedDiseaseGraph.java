@@ -1,6 +1,8 @@
 package org.monarchinitiative.lirical.likelihoodratio;
 
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
 import org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm;
@@ -8,12 +10,16 @@ import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * For some calculations of the phenotype likelihood ratio, we need to traverse the graph induced by the HPO terms to
  * which a disease is annotated. It is cheaper to create this graph once and reuse it for each of the query terms. This
  * class organizes that calculation. Note that this class is only used if there are no direct matches, so there is
- * no need to store the directly annotated diseases here.
+ * no need to store the directly annotated diseases here. Objects of this class are immutable once constructed and
+ * can therefore be shared between cases and threads (see {@link InducedDiseaseGraphCache}); the only mutable state
+ * is the small thread-safe memo of {@link #getClosestAncestor(TermId)}, whose size does not grow with the number
+ * of query terms.
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  */
 public class InducedDiseaseGraph {
@@ -21,7 +27,22 @@ public class InducedDiseaseGraph {
     private final HpoDisease disease;
     /** reference to HPO ontology object. */
     private final Ontology ontology;
-    private final Map<TermId,Double> term2frequencyMap;
+    private final ImmutableMap<TermId,Double> term2frequencyMap;
+    /** Dense index of the HPO terms used for the search of {@link #getClosestAncestor(TermId)} (can be null). */
+    private final HpoTermIndex termIndex;
+    /** Indices (according to {@link #termIndex}) of the keys of {@link #term2frequencyMap}; null if not used. */
+    private final BitSet inducedTermBits;
+    /** Number of entries of {@link #closestAncestorMemo} (a power of two). */
+    private static final int MEMO_SIZE = 64;
+    /**
+     * Direct-mapped memo of {@link #getClosestAncestor(TermId)} for the query terms of {@link #termIndex} (null if
+     * the index is not used). The closest ancestor only depends on the query term and on this disease. The entry
+     * {@code q & (MEMO_SIZE - 1)} holds {@code (q << 32) | (a + 2)}, where q is the index of the query term and a the
+     * index of its closest ancestor (-1 for the root); 0 marks an empty entry. A query term that maps to an occupied
+     * entry replaces it, so the memo keeps the most recent query terms (e.g., those of the current case) with a
+     * fixed amount of memory per disease.
+     */
+    private final AtomicLongArray closestAncestorMemo;
     private final static TermId PHENOTYPIC_ABNORMALITY = TermId.of("HP:0000118");
     /**
      * If a disease is negative for say Abnormal serum creatinine kinase level
@@ -31,8 +52,14 @@ public class InducedDiseaseGraph {
      * ancestor graph of Abnormal serum creatinine kinase level (which includes
      * Abnormal serum creatinine kinase), and if any of the patient negated terms are
      * in this graph, then they are excluded both in the patient and in the disease.
+     * If the negative annotations are part of {@link #negativeTermIndex}, the graph is stored as the bitset
+     * {@link #inducedNegativeBits} instead, and this set is null.
      */
-    private final Set<TermId> inducedNegativeGraph;
+    private final ImmutableSet<TermId> inducedNegativeGraph;
+    /** Indices of the terms of the induced negative graph, or null if {@link #inducedNegativeGraph} is used. */
+    private final BitSet inducedNegativeBits;
+    /** The index of the terms of {@link #inducedNegativeBits} (null if the bitset is not used). */
+    private final HpoTermIndex negativeTermIndex;
 
     /**
      * An inner class that represents a term together with the minimum path length to any
@@ -67,10 +94,19 @@ public class InducedDiseaseGraph {
      * @param ontology Reference to HPO ontology object
      */
     public InducedDiseaseGraph(HpoDisease hpoDisease, Ontology ontology) {
+        this(hpoDisease, ontology, null);
+    }
+
+    /**
+     * @param hpoDisease The disease we are currently investigating.
+     * @param ontology Reference to HPO ontology object
+     * @param termIndex Index of the terms of the ontology (if null, the search for the closest ancestor
+     *                  uses the ontology directly)
+     */
+    InducedDiseaseGraph(HpoDisease hpoDisease, Ontology ontology, HpoTermIndex termIndex) {
         this.disease=hpoDisease;
         this.ontology = ontology;
-       // ImmutableMap.Builder<TermId,Double> builder = new ImmutableMap.Builder<>();
-        term2frequencyMap = new HashMap<>();
+        Map<TermId,Double> term2frequencyMap = new HashMap<>();
 
         for (HpoAnnotation annot: hpoDisease.getPhenotypicAbnormalities()) {
             double f = annot.getFrequency();
@@ -95,7 +131,49 @@ public class InducedDiseaseGraph {
                 }
             }
         }
-        this.inducedNegativeGraph = OntologyAlgorithm.getAncestorTerms(ontology,new HashSet<>(disease.getNegativeAnnotations()),true);
+        this.term2frequencyMap = ImmutableMap.copyOf(term2frequencyMap);
+        this.inducedTermBits = termIndex == null ? null : indexTerms(termIndex, term2frequencyMap.keySet());
+        this.termIndex = this.inducedTermBits == null ? null : termIndex;
+        this.closestAncestorMemo = this.termIndex == null ? null : new AtomicLongArray(MEMO_SIZE);
+        int[] negatives = termIndex == null ? null : indexNegativeTerms(termIndex, disease.getNegativeAnnotations());
+        if (negatives != null) {
+            // the union of the ancestor closures of the negative annotations, without creating sets of TermIds
+            this.inducedNegativeBits = termIndex.getAncestorBits(negatives);
+            this.negativeTermIndex = termIndex;
+            this.inducedNegativeGraph = null;
+        } else {
+            this.inducedNegativeBits = null;
+            this.negativeTermIndex = null;
+            this.inducedNegativeGraph = ImmutableSet.copyOf(OntologyAlgorithm.getAncestorTerms(ontology,new HashSet<>(disease.getNegativeAnnotations()),true));
+        }
+    }
+
+    /** @return the indices of the negative annotations, or null if one of them is not part of the index */
+    private static int[] indexNegativeTerms(HpoTermIndex termIndex, List<TermId> negativeAnnotations) {
+        int[] negatives = new int[negativeAnnotations.size()];
+        for (int k = 0; k < negatives.length; k++) {
+            negatives[k] = termIndex.indexOf(negativeAnnotations.get(k));
+            if (negatives[k] == HpoTermIndex.NOT_INDEXED) {
+                return null;
+            }
+        }
+        return negatives;
+    }
+
+    /**
+     * @return a bitset with the indices of the terms, or null if one of the terms is not part of the index (in
+     * which case the closest ancestors cannot be found with the index)
+     */
+    private static BitSet indexTerms(HpoTermIndex termIndex, Set<TermId> terms) {
+        BitSet bits = new BitSet(termIndex.size());
+        for (TermId tid : terms) {
+            int idx = termIndex.indexOf(tid);
+            if (idx == HpoTermIndex.NOT_INDEXED) {
+                return null;
+            }
+            bits.set(idx);
+        }
+        return bits;
     }
 
     /**
@@ -103,7 +181,14 @@ public class InducedDiseaseGraph {
      * @param tid A term that was negated in a patient
      * @return true if the term is also negated in the disease.
      */
-    public boolean isExactExcludedMatch(TermId tid) { return this.inducedNegativeGraph.contains(tid); }
+    public boolean isExactExcludedMatch(TermId tid) {
+        if (inducedNegativeBits == null) {
+            return this.inducedNegativeGraph.contains(tid);
+        }
+        // all terms of the ancestor closures are indexed, and so a term that is not indexed is not part of the graph
+        int idx = negativeTermIndex.indexOf(tid);
+        return idx != HpoTermIndex.NOT_INDEXED && inducedNegativeBits.get(idx);
+    }
 
     public HpoDisease getDisease() {
         return disease;
@@ -118,26 +203,85 @@ public class InducedDiseaseGraph {
      * @return The best hit
      */
     Term2Freq getClosestAncestor(TermId tid) {
-        Queue<TermId> queue = new LinkedList<>();
-        queue.add(tid);
+        int idx = termIndex == null ? HpoTermIndex.NOT_INDEXED : termIndex.indexOf(tid);
+        if (idx == HpoTermIndex.NOT_INDEXED) {
+            return findClosestAncestorInOntology(tid);
+        }
+        int slot = idx & (MEMO_SIZE - 1);
+        long entry = closestAncestorMemo.get(slot);
+        int ancestor;
+        if (entry != 0L && (int) (entry >>> 32) == idx) {
+            ancestor = (int) entry - 2;
+        } else {
+            ancestor = findClosestAncestor(idx);
+            closestAncestorMemo.set(slot, ((long) idx << 32) | (ancestor + 2));
+        }
+        if (ancestor < 0) {
+            return rootMatch();
+        }
+        TermId ancestorId = termIndex.getTermId(ancestor);
+        return new Term2Freq(ancestorId, this.term2frequencyMap.get(ancestorId));
+    }
+
+    /**
+     * Breadth-first search from the term with index idx towards the root. The first term of
+     * {@link #term2frequencyMap} that is reached is the closest ancestor; if several terms have the same distance,
+     * the one whose parent was expanded first wins. Each term is expanded only once, which does not change the
+     * order in which the terms are reached, but avoids revisiting the shared ancestors of the DAG.
+     * @return the index of the closest ancestor, or -1 if there is none (see {@link #rootMatch()})
+     */
+    private int findClosestAncestor(int idx) {
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+        BitSet visited = new BitSet(termIndex.size());
+        queue[tail++] = idx;
+        visited.set(idx);
+        while (head < tail) {
+            int t = queue[head++];
+            if (inducedTermBits.get(t)) {
+                return t;
+            }
+            for (int j = 0; j < termIndex.getParentCount(t); j++) {
+                int p = termIndex.getParent(t, j);
+                if (!visited.get(p)) {
+                    visited.set(p);
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, 2 * tail);
+                    }
+                    queue[tail++] = p;
+                }
+            }
+        }
+        return -1;
+    }
 
+    /** The same search as {@link #findClosestAncestor(int)} for terms that are not part of the index. */
+    private Term2Freq findClosestAncestorInOntology(TermId tid) {
+        Queue<TermId> queue = new ArrayDeque<>();
+        Set<TermId> visited = new HashSet<>();
+        queue.add(tid);
+        visited.add(tid);
         while (!queue.isEmpty()) {
             TermId t = queue.remove();
             if (this.term2frequencyMap.containsKey(t)) {
                 return new Term2Freq(t,this.term2frequencyMap.get(t));
-            } else {
-                Set<TermId> parents = OntologyAlgorithm.getParentTerms(ontology,t,false);
-                queue.addAll(parents);
+            }
+            for (TermId p : OntologyAlgorithm.getParentTerms(ontology,t,false)) {
+                if (visited.add(p)) {
+                    queue.add(p);
+                }
             }
         }
+        return rootMatch();
+    }
 
-       // if we get here, then something wrong has happened, but we did not find any intersection between the query
-        // term and the disease. Return a term that represents the root of the Phenotype ontology
-        // The frequency of the root is taken to be 1.0
-
+    /**
+     * If we get here, then something wrong has happened, but we did not find any intersection between the query
+     * term and the disease. Return a term that represents the root of the Phenotype ontology
+     * The frequency of the root is taken to be 1.0
+     */
+    private static Term2Freq rootMatch() {
         return new Term2Freq(PHENOTYPIC_ABNORMALITY,1.0);
     }
-
-
-
 }
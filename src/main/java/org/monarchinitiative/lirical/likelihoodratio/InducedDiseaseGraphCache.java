@@ -0,0 +1,63 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * The {@link InducedDiseaseGraph} of a disease depends only on the HPO and on the annotations of the disease, and
+ * not on the case being evaluated. This class constructs the induced graph of each disease once and stores it,
+ * so that evaluating a case only needs to look up the graphs. The store is immutable and can be shared by all
+ * cases and threads.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class InducedDiseaseGraphCache {
+    private static final Logger logger = LoggerFactory.getLogger(InducedDiseaseGraphCache.class);
+    /** Reference to HPO ontology object. */
+    private final Ontology ontology;
+    /** Key: a disease CURIE, e.g., OMIM:600100; value: the corresponding {@link InducedDiseaseGraph}. */
+    private final ImmutableMap<TermId, InducedDiseaseGraph> diseaseId2graphMap;
+    /** Dense index of the HPO terms, used by the graphs to find the closest ancestors of query terms. */
+    private final HpoTermIndex termIndex;
+
+    /**
+     * @param ontology Reference to HPO ontology object
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param termIndex Index of the terms of the ontology, shared by the graphs
+     */
+    InducedDiseaseGraphCache(Ontology ontology, Map<TermId, HpoDisease> diseaseMap, HpoTermIndex termIndex) {
+        this.ontology = ontology;
+        this.termIndex = termIndex;
+        ImmutableMap.Builder<TermId, InducedDiseaseGraph> builder = new ImmutableMap.Builder<>();
+        for (Map.Entry<TermId, HpoDisease> entry : diseaseMap.entrySet()) {
+            builder.put(entry.getKey(), new InducedDiseaseGraph(entry.getValue(), ontology, termIndex));
+        }
+        this.diseaseId2graphMap = builder.build();
+        logger.trace("Created induced disease graphs for {} diseases", diseaseId2graphMap.size());
+    }
+
+    /**
+     * Get the induced graph of a disease. If the disease is not part of the store (which can happen if
+     * the caller uses a different disease map than the one used to build the store), the graph is
+     * created on the fly.
+     * @param disease The disease we are currently investigating
+     * @return the corresponding {@link InducedDiseaseGraph}
+     */
+    InducedDiseaseGraph get(HpoDisease disease) {
+        InducedDiseaseGraph idg = diseaseId2graphMap.get(disease.getDiseaseDatabaseId());
+        if (idg != null && idg.getDisease() == disease) {
+            return idg;
+        }
+        return new InducedDiseaseGraph(disease, ontology, termIndex);
+    }
+
+    /** @return number of diseases with a precomputed induced graph. */
+    int size() {
+        return diseaseId2graphMap.size();
+    }
+}
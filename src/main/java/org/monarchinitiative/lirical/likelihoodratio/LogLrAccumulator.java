@@ -0,0 +1,179 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Sums of the log<sub>10</sub> likelihood ratios of the observed and of the excluded phenotypes of a case, for all
+ * diseases at once. The likelihood ratios of one phenotype in all diseases are given as a
+ * {@link PhenotypeLrRowCache.Row}, and adding a phenotype adds the log<sub>10</sub> values of the row to the sums
+ * of the diseases with one pass over two arrays. The loops are simple counted loops over primitive arrays without
+ * branches, which the JIT compiler can unroll and vectorise; this replaces the per-disease loop over the
+ * likelihood ratios of each {@link TestResult}, which touches one small array per disease.
+ * <p>
+ * The rows are added in the order of the phenotypes, and so the sums are identical (not only up to rounding) to
+ * the sums calculated by {@link TestResult}. Likelihood ratios that could not be calculated for a disease are
+ * skipped, i.e., they are counted as log<sub>10</sub>(LR)=0, as in {@link CaseEvaluator}; use
+ * {@link #hasAllObserved(int)} to check whether this happened for a disease. The class is not thread safe.
+ * </p>
+ * <p>
+ * If only some of the diseases are evaluated (e.g., a {@link DiseaseSubset}), the sums are only calculated for
+ * these diseases, and the rows only need to contain their cells (see
+ * {@link PhenotypeLikelihoodRatio#getLikelihoodRatioRow(TermId, BitSet)}). The sums of the other diseases stay 0.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class LogLrAccumulator {
+    /** Sum of the log<sub>10</sub> LRs of the observed phenotypes of each disease. */
+    private final double[] log10ObservedLR;
+    /** Sum of the log<sub>10</sub> LRs of the excluded phenotypes of each disease. */
+    private final double[] log10ExcludedLR;
+    /** log<sub>10</sub> of the genotype LR of each disease (NaN: the disease is evaluated with its phenotypes only). */
+    private final double[] log10GenotypeLR;
+    /** Number of observed phenotypes whose LR could not be calculated for each disease. */
+    private final int[] missingObserved;
+    /** The indices of the diseases whose sums are calculated (null: all diseases). */
+    private final BitSet diseases;
+
+    /** @param nDiseases number of diseases, i.e., the length of the rows that are added */
+    LogLrAccumulator(int nDiseases) {
+        this(nDiseases, null);
+    }
+
+    /**
+     * @param nDiseases number of diseases, i.e., the length of the rows that are added
+     * @param diseases the indices of the diseases whose sums are calculated (null: all diseases)
+     */
+    LogLrAccumulator(int nDiseases, BitSet diseases) {
+        this.log10ObservedLR = new double[nDiseases];
+        this.log10ExcludedLR = new double[nDiseases];
+        this.log10GenotypeLR = new double[nDiseases];
+        Arrays.fill(log10GenotypeLR, Double.NaN);
+        this.missingObserved = new int[nDiseases];
+        this.diseases = diseases;
+    }
+
+    /** @param row the likelihood ratios of an observed phenotype in all diseases */
+    void addObserved(PhenotypeLrRowCache.Row row) {
+        add(log10ObservedLR, row);
+        if (row.isComplete()) {
+            return;
+        }
+        if (diseases == null) {
+            for (int d = 0; d < missingObserved.length; d++) {
+                if (!row.contains(d)) {
+                    missingObserved[d]++;
+                }
+            }
+        } else {
+            for (int d = diseases.nextSetBit(0); d >= 0 && d < missingObserved.length; d = diseases.nextSetBit(d + 1)) {
+                if (!row.contains(d)) {
+                    missingObserved[d]++;
+                }
+            }
+        }
+    }
+
+    /** @param row the likelihood ratios of an excluded phenotype in all diseases */
+    void addExcluded(PhenotypeLrRowCache.Row row) {
+        add(log10ExcludedLR, row);
+    }
+
+    /**
+     * Set the genotype likelihood ratio of each disease, i.e., the best genotype LR of the genes of the disease
+     * (see {@link GenotypeLrTable}). A case has one genotype LR per disease, and so the vector is only added once.
+     * @param genotypeLR the genotype LR of each disease, NaN for the diseases that are evaluated with their
+     *                   phenotypes only
+     */
+    void addGenotype(double[] genotypeLR) {
+        if (genotypeLR.length != log10GenotypeLR.length) {
+            throw new LiricalRuntimeException("[ERROR] Genotype vector of length " + genotypeLR.length + " does not match " + log10GenotypeLR.length + " diseases");
+        }
+        for (int d = 0; d < genotypeLR.length; d++) {
+            log10GenotypeLR[d] = Math.log10(genotypeLR[d]);
+        }
+    }
+
+    /**
+     * Recalculate the sums of the observed phenotypes from scratch (e.g., after a phenotype was removed; this
+     * avoids the rounding errors of subtracting the removed row).
+     * @param rows the rows of the observed phenotypes, in the order in which they were added
+     */
+    void resetObserved(List<PhenotypeLrRowCache.Row> rows) {
+        Arrays.fill(log10ObservedLR, 0.0);
+        Arrays.fill(missingObserved, 0);
+        for (PhenotypeLrRowCache.Row row : rows) {
+            addObserved(row);
+        }
+    }
+
+    /**
+     * Recalculate the sums of the excluded phenotypes from scratch.
+     * @param rows the rows of the excluded phenotypes, in the order in which they were added
+     */
+    void resetExcluded(List<PhenotypeLrRowCache.Row> rows) {
+        Arrays.fill(log10ExcludedLR, 0.0);
+        for (PhenotypeLrRowCache.Row row : rows) {
+            addExcluded(row);
+        }
+    }
+
+    private void add(double[] sums, PhenotypeLrRowCache.Row row) {
+        double[] log10LR = row.getLog10LikelihoodRatios();
+        if (log10LR.length != sums.length) {
+            throw new LiricalRuntimeException("[ERROR] Row of length " + log10LR.length + " does not match " + sums.length + " diseases");
+        }
+        if (diseases == null) {
+            for (int d = 0; d < sums.length; d++) {
+                sums[d] += log10LR[d];
+            }
+        } else {
+            for (int d = diseases.nextSetBit(0); d >= 0 && d < sums.length; d = diseases.nextSetBit(d + 1)) {
+                sums[d] += log10LR[d];
+            }
+        }
+    }
+
+    /** @return number of diseases. */
+    int size() {
+        return log10ObservedLR.length;
+    }
+
+    /**
+     * @param d index of a disease
+     * @return sum of the log<sub>10</sub> LRs of the observed phenotypes of the disease
+     */
+    double getLog10ObservedLR(int d) {
+        return log10ObservedLR[d];
+    }
+
+    /**
+     * @param d index of a disease
+     * @return sum of the log<sub>10</sub> LRs of the excluded phenotypes of the disease
+     */
+    double getLog10ExcludedLR(int d) {
+        return log10ExcludedLR[d];
+    }
+
+    /**
+     * @param d index of a disease
+     * @param log10PretestOdds log<sub>10</sub> of the pretest odds of the disease
+     * @return log<sub>10</sub> of the post-test odds of the disease, identical to the value of {@link TestResult}
+     */
+    double getLog10PosttestOdds(int d, double log10PretestOdds) {
+        return TestResult.log10PosttestOddsFromLog10GenotypeLr(log10ObservedLR[d], log10ExcludedLR[d],
+                log10GenotypeLR[d], log10PretestOdds);
+    }
+
+    /**
+     * @param d index of a disease
+     * @return true if the LRs of all observed phenotypes could be calculated for the disease
+     */
+    boolean hasAllObserved(int d) {
+        return missingObserved[d] == 0;
+    }
+}
@@ -73,6 +73,25 @@ public class LrWithExplanation implements Comparable<LrWithExplanation> {
         return new LrWithExplanation(q, q, MatchType.NO_MATCH_BELOW_ROOT, ratio);
     }
 
+    /**
+     * Recreate an object from its components, e.g., from a precomputed {@link PhenotypeLrMatrix}.
+     */
+    static LrWithExplanation of(TermId q, TermId m, MatchType mt, double ratio) {
+        return new LrWithExplanation(q, m, mt, ratio);
+    }
+
+    TermId getQueryTerm() {
+        return queryTerm;
+    }
+
+    TermId getMatchingTerm() {
+        return matchingTerm;
+    }
+
+    MatchType getMatchType() {
+        return matchType;
+    }
+
 
     public double getLR() {
         return LR;
@@ -1,7 +1,7 @@
 package org.monarchinitiative.lirical.likelihoodratio;
 
 
-import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.hpo.HpoCase;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
@@ -16,7 +16,8 @@ import static org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm.*;
 
 /**
  * This class is designed to calculate the background and foreground frequencies of any HPO term in any disease
- * (This is calculated by {@link #initializeFrequencyMap()} and stored in {@link #hpoTerm2OverallFrequency}).
+ * (The background frequencies are calculated by {@link BackgroundFrequencyTable} and stored in
+ * {@link #backgroundFrequencies}).
  * The main entry point into this class is the function {@link #getLikelihoodRatio}, which is called by
  * {@link HpoCase} once for each HPO term to which the case is annotation; it calls it once for each disease in our
  * database and calculates the likelihood ratio for each HPO term in the query for each of the diseases.
@@ -29,7 +30,25 @@ public class PhenotypeLikelihoodRatio {
     /** This map has one entry for each disease in our database. Key--the disease ID, e.g., OMIM:600200.*/
     private final Map<TermId, HpoDisease> diseaseMap;
     /** Overall, i.e., background frequency of each HPO term. */
-    private ImmutableMap<TermId, Double> hpoTerm2OverallFrequency = null;
+    private final BackgroundFrequencyTable backgroundFrequencies;
+    /** The {@link InducedDiseaseGraph} of each disease in {@link #diseaseMap}, built once and shared by all cases. */
+    private final InducedDiseaseGraphCache inducedDiseaseGraphCache;
+    /** Dense index of the HPO terms with precomputed ancestor closures, used for the subsumption tests. */
+    private final HpoTermIndex termIndex;
+    /** Optional precomputed likelihood ratios of observed terms (null if not used). */
+    private final PhenotypeLrMatrix lrMatrix;
+    /**
+     * Dense index of the diseases of {@link #diseaseMap} in iteration order, with the annotations of each disease
+     * encoded as indices of {@link #termIndex}.
+     */
+    private final DiseaseIndex diseaseIndex;
+    /**
+     * log<sub>10</sub> of the largest likelihood ratio of any term in each disease of {@link #diseaseIndex},
+     * taken from the {@link #lrMatrix} (null if there is no matrix).
+     */
+    private final double[] log10MaxLrOfDisease;
+    /** Optional cache of the likelihood ratios of a query term in all diseases (null if not used). */
+    private final PhenotypeLrRowCache rowCache;
     /**
      * This is the probability of a finding if the disease is not annotated to it and there
      * is no common ancestor except the root. There are many possible causes of findings called
@@ -55,9 +74,73 @@ public class PhenotypeLikelihoodRatio {
      * @param diseases List of all diseases for this simulation
      */
     public PhenotypeLikelihoodRatio(Ontology onto, Map<TermId, HpoDisease> diseases) {
+        this(onto, diseases, null);
+    }
+
+    /**
+     * @param onto The HPO ontology object
+     * @param diseases List of all diseases for this simulation
+     * @param matrix precomputed likelihood ratios for the same ontology and diseases (can be null)
+     */
+    public PhenotypeLikelihoodRatio(Ontology onto, Map<TermId, HpoDisease> diseases, PhenotypeLrMatrix matrix) {
+        this(onto, diseases, matrix, 0);
+    }
+
+    /**
+     * @param onto The HPO ontology object
+     * @param diseases List of all diseases for this simulation
+     * @param matrix precomputed likelihood ratios for the same ontology and diseases (can be null)
+     * @param rowCacheSize maximum number of query terms whose likelihood ratios in all diseases are cached
+     *                     (0: do not use a cache)
+     */
+    public PhenotypeLikelihoodRatio(Ontology onto, Map<TermId, HpoDisease> diseases, PhenotypeLrMatrix matrix, int rowCacheSize) {
+        this(onto, diseases, matrix, rowCacheSize, null);
+    }
+
+    /**
+     * @param onto The HPO ontology object
+     * @param diseases List of all diseases for this simulation
+     * @param matrix precomputed likelihood ratios for the same ontology and diseases (can be null)
+     * @param rowCacheSize maximum number of query terms whose likelihood ratios in all diseases are cached
+     *                     (0: do not use a cache)
+     * @param backgroundFrequencies background frequencies calculated for the same ontology and diseases, e.g.,
+     *                              shared with another object of this class (null: calculate them)
+     */
+    public PhenotypeLikelihoodRatio(Ontology onto, Map<TermId, HpoDisease> diseases, PhenotypeLrMatrix matrix, int rowCacheSize,
+                                    BackgroundFrequencyTable backgroundFrequencies) {
         this.ontology=onto;
         this.diseaseMap = diseases;
-        initializeFrequencyMap();
+        if (backgroundFrequencies != null) {
+            if (!backgroundFrequencies.isCompatible(onto, diseases)) {
+                throw new LiricalRuntimeException("Background frequencies were calculated for a different ontology or disease map");
+            }
+            this.termIndex = backgroundFrequencies.getTermIndex();
+            this.backgroundFrequencies = backgroundFrequencies;
+        } else {
+            this.termIndex = new HpoTermIndex(onto);
+            this.backgroundFrequencies = BackgroundFrequencyTable.compute(onto, termIndex, diseases);
+        }
+        this.lrMatrix = matrix;
+        this.diseaseIndex = new DiseaseIndex(diseases, termIndex);
+        if (matrix != null) {
+            this.log10MaxLrOfDisease = new double[diseaseIndex.size()];
+            for (int d = 0; d < log10MaxLrOfDisease.length; d++) {
+                TermId diseaseId = diseaseIndex.getDisease(d).getDiseaseDatabaseId();
+                log10MaxLrOfDisease[d] = Math.log10(matrix.getMaxLikelihoodRatioOfDisease(diseaseId));
+            }
+        } else {
+            this.log10MaxLrOfDisease = null;
+        }
+        this.rowCache = rowCacheSize > 0 ? new PhenotypeLrRowCache(rowCacheSize) : null;
+        this.inducedDiseaseGraphCache = new InducedDiseaseGraphCache(onto, diseases, termIndex);
+    }
+
+    /**
+     * @param disease The disease we are currently investigating
+     * @return the precomputed {@link InducedDiseaseGraph} of the disease
+     */
+    InducedDiseaseGraph getInducedDiseaseGraph(HpoDisease disease) {
+        return inducedDiseaseGraphCache.get(disease);
     }
 
     /**
@@ -69,12 +152,244 @@ public class PhenotypeLikelihoodRatio {
      * @return A {@link LrWithExplanation} object with an explanation and the likelihood ratio of observing the HPO term in the disease corresponding to idg
      */
     LrWithExplanation getLikelihoodRatio(TermId queryTid, InducedDiseaseGraph idg) {
+        if (lrMatrix != null) {
+            HpoDisease disease = idg.getDisease();
+            // only use the matrix for the diseases it was computed for
+            if (diseaseMap.get(disease.getDiseaseDatabaseId()) == disease) {
+                LrWithExplanation lrwe = lrMatrix.getLikelihoodRatio(queryTid, disease.getDiseaseDatabaseId());
+                if (lrwe != null) {
+                    return lrwe;
+                }
+            }
+        }
+        return computeLikelihoodRatio(queryTid, idg);
+    }
+
+    /**
+     * @param disease a disease
+     * @return the index of the disease (position in the disease map), or -1 if the disease is not one of the
+     * diseases of this object
+     */
+    int getDiseaseIndex(HpoDisease disease) {
+        return diseaseIndex.indexOf(disease);
+    }
+
+    /** @return true if the likelihood ratios of query terms are cached (see {@link #getLikelihoodRatioRow}). */
+    boolean hasRowCache() {
+        return rowCache != null;
+    }
+
+    /** @return the cache of likelihood ratio rows, if used. */
+    public Optional<PhenotypeLrRowCache> getRowCache() {
+        return Optional.ofNullable(rowCache);
+    }
+
+    /**
+     * Get the likelihood ratios of the query term in all diseases (in disease-index order, see
+     * {@link #getDiseaseIndex(HpoDisease)}), from the cache if possible.
+     * @param queryTid An HPO phenotypic abnormality
+     * @return the likelihood ratios of the term in all diseases
+     */
+    PhenotypeLrRowCache.Row getLikelihoodRatioRow(TermId queryTid) {
+        if (rowCache == null) {
+            return computeLikelihoodRatioRow(queryTid);
+        }
+        return rowCache.get(queryTid, this::computeLikelihoodRatioRow);
+    }
+
+    /**
+     * Get the likelihood ratios of the query term in the given diseases, e.g., the diseases of a
+     * {@link DiseaseSubset}. A complete row is returned if it is in the cache; otherwise, only the cells of the
+     * given diseases are calculated, and the row is not cached, so that the cost is proportional to the number of
+     * diseases.
+     * @param queryTid An HPO phenotypic abnormality
+     * @param diseases indices of the diseases (see {@link #getDiseaseIndex(HpoDisease)}), or null for all diseases
+     * @return the likelihood ratios of the term in (at least) the given diseases
+     */
+    PhenotypeLrRowCache.Row getLikelihoodRatioRow(TermId queryTid, BitSet diseases) {
+        if (diseases == null) {
+            return getLikelihoodRatioRow(queryTid);
+        }
+        PhenotypeLrRowCache.Row row = rowCache == null ? null : rowCache.getIfPresent(queryTid);
+        return row != null ? row : computeLikelihoodRatioRow(queryTid, diseases);
+    }
+
+    private PhenotypeLrRowCache.Row computeLikelihoodRatioRow(TermId queryTid) {
+        return computeLikelihoodRatioRow(queryTid, null);
+    }
+
+    /**
+     * @param queryTid An HPO phenotypic abnormality
+     * @param diseases indices of the diseases whose cells are calculated (null: all diseases)
+     * @return the row of the query term
+     */
+    private PhenotypeLrRowCache.Row computeLikelihoodRatioRow(TermId queryTid, BitSet diseases) {
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(diseaseIndex.size());
+        int q = termIndex.indexOf(queryTid);
+        for (int d = firstDisease(diseases); d >= 0; d = nextDisease(diseases, d)) {
+            try {
+                row.set(d, getLikelihoodRatio(queryTid, q, d));
+            } catch (Exception e) {
+                // leave the cell empty, the error will be reported when the disease is evaluated
+                logger.trace("Could not calculate LR for {}/{}: {}", queryTid.getValue(),
+                        diseaseIndex.getDisease(d).getDiseaseDatabaseId().getValue(), e.getMessage());
+            }
+        }
+        return row;
+    }
+
+    /** @return the first index of the given diseases (null: all diseases), or -1 if there is none */
+    private int firstDisease(BitSet diseases) {
+        return nextDisease(diseases, -1);
+    }
+
+    /** @return the index of the given diseases (null: all diseases) after d, or -1 if there is none */
+    private int nextDisease(BitSet diseases, int d) {
+        int next = diseases == null ? d + 1 : diseases.nextSetBit(d + 1);
+        return next < diseaseIndex.size() ? next : -1;
+    }
+
+    /**
+     * Calculate the likelihood ratios of an excluded query term in all diseases (in disease-index order, see
+     * {@link #getDiseaseIndex(HpoDisease)}). The rows of excluded terms are not cached.
+     * @param queryTid An HPO phenotypic abnormality that was excluded in the proband
+     * @return the likelihood ratios of the excluded term in all diseases
+     */
+    PhenotypeLrRowCache.Row getExcludedLikelihoodRatioRow(TermId queryTid) {
+        return getExcludedLikelihoodRatioRow(queryTid, null);
+    }
+
+    /**
+     * Calculate the likelihood ratios of an excluded query term in the given diseases.
+     * @param queryTid An HPO phenotypic abnormality that was excluded in the proband
+     * @param diseases indices of the diseases (see {@link #getDiseaseIndex(HpoDisease)}), or null for all diseases
+     * @return the likelihood ratios of the excluded term in the given diseases
+     */
+    PhenotypeLrRowCache.Row getExcludedLikelihoodRatioRow(TermId queryTid, BitSet diseases) {
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(diseaseIndex.size());
+        for (int d = firstDisease(diseases); d >= 0; d = nextDisease(diseases, d)) {
+            InducedDiseaseGraph idg = getInducedDiseaseGraph(diseaseIndex.getDisease(d));
+            row.set(d, getLikelihoodRatioForExcludedTerm(queryTid, idg));
+        }
+        return row;
+    }
+
+    /**
+     * Equivalent to {@link #getLikelihoodRatio(TermId, InducedDiseaseGraph)} for a disease of {@link #diseaseIndex}.
+     * @param queryTid An HPO phenotypic abnormality
+     * @param q index of queryTid in {@link #termIndex} (or {@link HpoTermIndex#NOT_INDEXED})
+     * @param d index of the disease in {@link #diseaseIndex}
+     * @return A {@link LrWithExplanation} object with an explanation and the likelihood ratio
+     */
+    private LrWithExplanation getLikelihoodRatio(TermId queryTid, int q, int d) {
+        HpoDisease disease = diseaseIndex.getDisease(d);
+        if (lrMatrix != null) {
+            LrWithExplanation lrwe = lrMatrix.getLikelihoodRatio(queryTid, disease.getDiseaseDatabaseId());
+            if (lrwe != null) {
+                return lrwe;
+            }
+        }
+        InducedDiseaseGraph idg = getInducedDiseaseGraph(disease);
+        if (q != HpoTermIndex.NOT_INDEXED && diseaseIndex.isIndexed(d)) {
+            return computeIndexedLikelihoodRatio(queryTid, q, d, idg);
+        }
+        return computeLikelihoodRatioWithTermIds(queryTid, idg);
+    }
+
+    /**
+     * Calculate the likelihood ratio of observing the HPO feature queryTid in the disease idg without
+     * using the {@link PhenotypeLrMatrix} (see {@link #getLikelihoodRatio(TermId, InducedDiseaseGraph)}).
+     * @param queryTid An HPO phenotypic abnormality
+     * @param idg The {@link InducedDiseaseGraph} of the disease
+     * @return A {@link LrWithExplanation} object with an explanation and the likelihood ratio
+     */
+    LrWithExplanation computeLikelihoodRatio(TermId queryTid, InducedDiseaseGraph idg) {
+        int q = termIndex.indexOf(queryTid);
+        int d = diseaseIndex.indexOf(idg.getDisease());
+        if (q != HpoTermIndex.NOT_INDEXED && d != DiseaseIndex.NOT_INDEXED && diseaseIndex.isIndexed(d)) {
+            return computeIndexedLikelihoodRatio(queryTid, q, d, idg);
+        }
+        return computeLikelihoodRatioWithTermIds(queryTid, idg);
+    }
+
+    /**
+     * The calculation of {@link #computeLikelihoodRatio(TermId, InducedDiseaseGraph)} for an indexed query term
+     * and an indexed disease. All subsumption tests and frequency lookups use the integer ids and arrays of
+     * {@link #termIndex}, {@link #diseaseIndex} and {@link #backgroundFrequencies}; the {@link TermId} of a
+     * matching disease term is only looked up for the explanation of the result.
+     * @param queryTid An HPO phenotypic abnormality
+     * @param q index of queryTid in {@link #termIndex}
+     * @param d index of the disease in {@link #diseaseIndex}
+     * @param idg The {@link InducedDiseaseGraph} of the disease
+     * @return A {@link LrWithExplanation} object with an explanation and the likelihood ratio
+     */
+    private LrWithExplanation computeIndexedLikelihoodRatio(TermId queryTid, int q, int d, InducedDiseaseGraph idg) {
+        if (diseaseIndex.isExcludedTerm(d, q)) {
+            // i.e., the query term is explicitly EXCLUDED in the disease definition
+            return LrWithExplanation.queryTermExcluded(queryTid, EXCLUDED_IN_DISEASE_BUT_PRESENT_IN_QUERY_PROBABILITY);
+        }
+        int[] terms = diseaseIndex.getAnnotationTerms(d);
+        double[] frequencies = diseaseIndex.getAnnotationFrequencies(d);
+        double backgroundFrequency = getBackgroundFrequency(q);
+        for (int k = 0; k < terms.length; k++) {
+            if (terms[k] == q) {
+                return LrWithExplanation.exactMatch(queryTid, frequencies[k] / backgroundFrequency);
+            }
+        }
+        // 1. the query term is a superclass of at least one disease term (see computeLikelihoodRatioWithTermIds)
+        double maximumFrequencyOfDescendantTerm = 0.0;
+        int diseaseMatchingTerm = HpoTermIndex.NOT_INDEXED;
+        for (int k = 0; k < terms.length; k++) {
+            if (termIndex.isAncestorOrSelf(q, terms[k])) {
+                maximumFrequencyOfDescendantTerm = Math.max(maximumFrequencyOfDescendantTerm, frequencies[k]);
+                diseaseMatchingTerm = terms[k];
+            }
+        }
+        if (diseaseMatchingTerm != HpoTermIndex.NOT_INDEXED) {
+            double lr = maximumFrequencyOfDescendantTerm / backgroundFrequency;
+            return LrWithExplanation.diseaseTermSubTermOfQuery(queryTid, termIndex.getTermId(diseaseMatchingTerm), lr);
+        }
+        // 2. the query term is a subclass of one or more disease terms
+        double maxF = 0f;
+        int bestMatchTerm = HpoTermIndex.NOT_INDEXED;
+        for (int k = 0; k < terms.length; k++) {
+            if (termIndex.isAncestorOrSelf(terms[k], q)) {
+                double proportionalFrequency = getProportionInChildren(q, terms[k]);
+                double f = proportionalFrequency * frequencies[k];
+                if (f > maxF) {
+                    bestMatchTerm = terms[k];
+                    maxF = f;
+                }
+            }
+        }
+        if (bestMatchTerm != HpoTermIndex.NOT_INDEXED) {
+            double lr = Math.max(maxF, noCommonOrganProbability(backgroundFrequencies.get(q))) / backgroundFrequency;
+            return LrWithExplanation.queryTermSubTermOfDisease(queryTid, termIndex.getTermId(bestMatchTerm), lr);
+        }
+        // 3. a common ancestor that is more specific than Phenotypic abnormality
+        Term2Freq t2f = idg.getClosestAncestor(queryTid);
+        if (t2f.nonRootCommonAncestor()) {
+            double lr = Math.max(DEFAULT_FALSE_POSITIVE_NO_COMMON_ORGAN_PROBABILITY, t2f.frequency / getBackgroundFrequency(t2f.tid));
+            return LrWithExplanation.nonRootCommonAncestor(queryTid, t2f.tid, lr);
+        }
+        return LrWithExplanation.noMatch(queryTid, DEFAULT_FALSE_POSITIVE_NO_COMMON_ORGAN_PROBABILITY);
+    }
+
+    /**
+     * The calculation of {@link #computeLikelihoodRatio(TermId, InducedDiseaseGraph)} with the {@link TermId}
+     * objects of the query and the disease. This is used if the query term or one of the annotations of the
+     * disease is not part of the index (e.g., an alternate id), or if the disease is not one of the diseases of
+     * this object.
+     * @param queryTid An HPO phenotypic abnormality
+     * @param idg The {@link InducedDiseaseGraph} of the disease
+     * @return A {@link LrWithExplanation} object with an explanation and the likelihood ratio
+     */
+    private LrWithExplanation computeLikelihoodRatioWithTermIds(TermId queryTid, InducedDiseaseGraph idg) {
         HpoDisease disease = idg.getDisease();
-        Set<TermId> queryAncestors = getAncestorTerms(ontology,queryTid,true);
         List<TermId> diseaseExcludedTerms = disease.getNegativeAnnotations();
         if (!diseaseExcludedTerms.isEmpty()) {
             for (TermId excl : diseaseExcludedTerms) {
-                if (queryAncestors.contains(excl)) {
+                if (isAncestorOrSelf(excl, queryTid)) {
                     // i.e., the query term is explicitly EXCLUDED in the disease definition
                     return LrWithExplanation.queryTermExcluded(queryTid, EXCLUDED_IN_DISEASE_BUT_PRESENT_IN_QUERY_PROBABILITY);
                 }
@@ -97,7 +412,7 @@ public class PhenotypeLikelihoodRatio {
             TermId diseaseMatchingTerm=null;
             for (HpoAnnotation hpoTermId : disease.getPhenotypicAbnormalities()) {
                 // is query an ancestor of a term that annotates the disease?
-                if (isSubclass(ontology,hpoTermId.getTermId(),queryTid)) {
+                if (isSubclassOrEqual(hpoTermId.getTermId(),queryTid)) {
                     maximumFrequencyOfDescendantTerm=Math.max(maximumFrequencyOfDescendantTerm,hpoTermId.getFrequency());
                     diseaseMatchingTerm=hpoTermId.getTermId();
                     isAncestor=true;
@@ -124,7 +439,7 @@ public class PhenotypeLikelihoodRatio {
             TermId bestMatchTermId = null;
             double denominatorForNonRootCommandAnc = getBackgroundFrequency(queryTid);
             for (HpoAnnotation annot : disease.getPhenotypicAbnormalities()) {
-                if (isSubclass(ontology, queryTid, annot.getTermId())){
+                if (isSubclassOrEqual(queryTid, annot.getTermId())){
                     double proportionalFrequency = getProportionInChildren(queryTid,annot.getTermId());
                     double queryFrequency = annot.getFrequency();
                     double f = proportionalFrequency*queryFrequency;
@@ -136,7 +451,8 @@ public class PhenotypeLikelihoodRatio {
                 }
             }
             if (hasNonRootCommonAncestor) {
-                double lr = Math.max(maxF,noCommonOrganProbability(queryTid))/denominatorForNonRootCommandAnc;
+                double f = backgroundFrequencies.getOrDefault(queryTid, DEFAULT_FALSE_POSITIVE_NO_COMMON_ORGAN_PROBABILITY);
+                double lr = Math.max(maxF,noCommonOrganProbability(f))/denominatorForNonRootCommandAnc;
                 return LrWithExplanation.queryTermSubTermOfDisease(queryTid,bestMatchTermId,lr);
             }
             // If we get here, queryId is not directly annotated in the disease, and it is not a child
@@ -168,7 +484,10 @@ public class PhenotypeLikelihoodRatio {
         if (idg.isExactExcludedMatch(queryTid)) {
             return LrWithExplanation.excludedQueryTermEcludedInDisease(queryTid, EXCLUDED_IN_DISEASE_AND_EXCLUDED_IN_QUERY_PROBABILITY);
         }
-        double backgroundFrequency=getBackgroundFrequency(queryTid);
+        int q = termIndex.indexOf(queryTid);
+        int d = diseaseIndex.indexOf(disease);
+        boolean indexed = q != HpoTermIndex.NOT_INDEXED && d != DiseaseIndex.NOT_INDEXED && diseaseIndex.isIndexed(d);
+        double backgroundFrequency = indexed ? getBackgroundFrequency(q) : getBackgroundFrequency(queryTid);
         // probability a feature is present but not recorded or not noticed.
         final double FALSE_NEGATIVE_OBSERVATION_OF_PHENOTYPE_PROB=0.01;
         if (backgroundFrequency>0.99) {
@@ -179,11 +498,13 @@ public class PhenotypeLikelihoodRatio {
         }
         // The phenotype was excluded in the proband and also the disease
         // is not annotated to the term. This should result in a slight improvement of the LR score.
-        if (! isIndirectlyAnnotatedTo(queryTid,disease,ontology)) {
+        boolean annotated = indexed ? isIndirectlyAnnotatedTo(q, d) : isIndirectlyAnnotatedTo(queryTid,disease,ontology);
+        if (! annotated) {
             double lr = 1.0/(1.0-backgroundFrequency); // this is the negative LR if the disease does not have the term
             return LrWithExplanation.excludedQueryTermNotPresentInDisease(queryTid,lr);
         }
-        double frequency=getFrequencyOfTermInDiseaseWithAnnotationPropagation(queryTid,disease,ontology);
+        double frequency = indexed ? getFrequencyOfTermInDiseaseWithAnnotationPropagation(q, d) :
+                getFrequencyOfTermInDiseaseWithAnnotationPropagation(queryTid,disease,ontology);
         // If the disease actually does have the abnormality in question, but the abnormality was ruled out in
         // the patient, we model this as the 1-F, where F is the frequency of the term in question.
         // We model the frequency of a term "by chance" as one half of its frequency across the entire corpus
@@ -197,6 +518,99 @@ public class PhenotypeLikelihoodRatio {
         return LrWithExplanation.excludedQueryTermPresentInDisease(queryTid,lr);
     }
 
+    /**
+     * Calculate an upper bound for {@link #getLikelihoodRatioForExcludedTerm(TermId, InducedDiseaseGraph)} without
+     * creating the induced disease graph. This is used to skip diseases that cannot reach the top of the
+     * differential diagnosis (see {@link CaseEvaluator}). The bound only depends on whether the disease has
+     * negative annotations.
+     * @param queryTid An HPO phenotypic abnormality that was excluded in the proband
+     * @param negativeAnnotations true if the disease has negative annotations
+     * @return a value that is at least as large as the likelihood ratio of the excluded term in such a disease
+     */
+    double getUpperBoundForExcludedTerm(TermId queryTid, boolean negativeAnnotations) {
+        double backgroundFrequency = getBackgroundFrequency(queryTid);
+        // the frequency of the excluded term in the disease is at most 1
+        double bound = backgroundFrequency > 0.99 ? 1.0 : 1.0/(1.0-backgroundFrequency);
+        if (negativeAnnotations) {
+            // the term may also be excluded in the disease
+            bound = Math.max(bound, EXCLUDED_IN_DISEASE_AND_EXCLUDED_IN_QUERY_PROBABILITY);
+        }
+        return bound;
+    }
+
+    /**
+     * @return true if there is a {@link PhenotypeLrMatrix}, which provides cheap upper bounds of the likelihood
+     * ratios of observed terms (see {@link #getLog10MaxLikelihoodRatioOfTerm(TermId)} and
+     * {@link #getLog10MaxLikelihoodRatioOfDisease(int)})
+     */
+    boolean hasLikelihoodRatioBounds() {
+        return lrMatrix != null;
+    }
+
+    /**
+     * The smaller of this value and {@link #getLog10MaxLikelihoodRatioOfDisease(int)} is an upper bound of the
+     * log<sub>10</sub> likelihood ratio of an observed term in a disease (see {@link #hasLikelihoodRatioBounds()}).
+     * @param queryTid an observed HPO term
+     * @return log<sub>10</sub> of the largest likelihood ratio of the term in any disease, or NaN if the likelihood
+     * ratios of the term are not precomputed (there is then no bound)
+     */
+    double getLog10MaxLikelihoodRatioOfTerm(TermId queryTid) {
+        if (!lrMatrix.containsTerm(queryTid)) {
+            return Double.NaN;
+        }
+        return Math.log10(lrMatrix.getMaxLikelihoodRatioOfTerm(queryTid));
+    }
+
+    /**
+     * @param d index of a disease (see {@link #getDiseaseIndex(HpoDisease)})
+     * @return log<sub>10</sub> of the largest likelihood ratio of any precomputed term in the disease (+Infinity if
+     * some likelihood ratio of the disease could not be precomputed)
+     */
+    double getLog10MaxLikelihoodRatioOfDisease(int d) {
+        return log10MaxLrOfDisease[d];
+    }
+
+    /**
+     * @param d index of a disease (see {@link #getDiseaseIndex(HpoDisease)})
+     * @return true if the disease has negative annotations (see {@link #getUpperBoundForExcludedTerm(TermId, boolean)})
+     */
+    boolean hasNegativeAnnotations(int d) {
+        return !diseaseIndex.getDisease(d).getNegativeAnnotations().isEmpty();
+    }
+
+    /**
+     * Equivalent to {@code getAncestorTerms(ontology,term,true).contains(ancestor)}, but uses the precomputed
+     * ancestor closures of {@link #termIndex} if both terms are indexed.
+     * @param ancestor putative ancestor term
+     * @param term an HPO term
+     * @return true if ancestor is an ancestor of term or equal to term
+     */
+    private boolean isAncestorOrSelf(TermId ancestor, TermId term) {
+        int a = termIndex.indexOf(ancestor);
+        int t = termIndex.indexOf(term);
+        if (a != HpoTermIndex.NOT_INDEXED && t != HpoTermIndex.NOT_INDEXED) {
+            return termIndex.isAncestorOrSelf(a, t);
+        }
+        return getAncestorTerms(ontology,term,true).contains(ancestor);
+    }
+
+    /**
+     * Equivalent to {@code isSubclass(ontology,source,dest)}, which checks whether dest is contained in the
+     * ancestors of source (including source itself), but uses the precomputed ancestor closures of
+     * {@link #termIndex} if both terms are indexed.
+     * @param source an HPO term
+     * @param dest putative superclass of source
+     * @return true if source is a subclass of (or equal to) dest
+     */
+    private boolean isSubclassOrEqual(TermId source, TermId dest) {
+        int s = termIndex.indexOf(source);
+        int d = termIndex.indexOf(dest);
+        if (s != HpoTermIndex.NOT_INDEXED && d != HpoTermIndex.NOT_INDEXED) {
+            return termIndex.isAncestorOrSelf(d, s);
+        }
+        return isSubclass(ontology,source,dest);
+    }
+
     /**
      * @param queryTid TermId of an HPO term
      * @param disease the disease being studied
@@ -205,10 +619,60 @@ public class PhenotypeLikelihoodRatio {
      */
     private boolean isIndirectlyAnnotatedTo(TermId queryTid, HpoDisease disease, Ontology ontology) {
         List<TermId> direct = disease.getPhenotypicAbnormalityTermIdList();
+        int q = termIndex.indexOf(queryTid);
+        if (q != HpoTermIndex.NOT_INDEXED) {
+            boolean allIndexed = true;
+            for (TermId tid : direct) {
+                int d = termIndex.indexOf(tid);
+                if (d == HpoTermIndex.NOT_INDEXED) {
+                    allIndexed = false;
+                } else if (termIndex.isAncestorOrSelf(q, d)) {
+                    return true;
+                }
+            }
+            if (allIndexed) {
+                return false;
+            }
+        }
+        // the query or one of the disease terms is not indexed (e.g., an alternate id)
         Set<TermId> ancs = ontology.getAllAncestorTermIds(direct,true);
         return ancs.contains(queryTid);
     }
 
+    /**
+     * Equivalent to {@link #isIndirectlyAnnotatedTo(TermId, HpoDisease, Ontology)} for an indexed term and disease.
+     * @param q index of an HPO term
+     * @param d index of a disease whose annotations are all indexed
+     * @return true if the disease has a direct (explicit) or indirect (implicit) annotation to the term
+     */
+    private boolean isIndirectlyAnnotatedTo(int q, int d) {
+        for (int t : diseaseIndex.getAnnotationTerms(d)) {
+            if (termIndex.isAncestorOrSelf(q, t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Equivalent to {@link #getFrequencyOfTermInDiseaseWithAnnotationPropagation(TermId, HpoDisease, Ontology)}
+     * for an indexed term and disease.
+     * @param q index of an HPO term
+     * @param d index of a disease whose annotations are all indexed
+     * @return frequency of the term in the disease (including annotation propagation)
+     */
+    private double getFrequencyOfTermInDiseaseWithAnnotationPropagation(int q, int d) {
+        int[] terms = diseaseIndex.getAnnotationTerms(d);
+        double[] frequencies = diseaseIndex.getTermFrequencies(d);
+        double freq = 0.0;
+        for (int k = 0; k < terms.length; k++) {
+            if (termIndex.isAncestorOrSelf(q, terms[k])) {
+                freq = Math.max(frequencies[k], freq);
+            }
+        }
+        return freq;
+    }
+
     /**
      * Get the frequency of a term in the disease. This includes if any disease term is an ancestor of the
      * query term -- we take the maximum of any ancestor term.
@@ -219,9 +683,13 @@ public class PhenotypeLikelihoodRatio {
      */
     private double getFrequencyOfTermInDiseaseWithAnnotationPropagation(TermId queryTid, HpoDisease disease, Ontology ontology) {
         double freq=0.0;
+        int q = termIndex.indexOf(queryTid);
         for (TermId diseaseTermId :  disease.getPhenotypicAbnormalityTermIdList() ) {
-            Set<TermId> ancs = ontology.getAncestorTermIds(diseaseTermId,true);
-            if (ancs.contains(queryTid)) {
+            int d = termIndex.indexOf(diseaseTermId);
+            boolean isAncestor = (q != HpoTermIndex.NOT_INDEXED && d != HpoTermIndex.NOT_INDEXED) ?
+                    termIndex.isAncestorOrSelf(q, d) :
+                    ontology.getAncestorTermIds(diseaseTermId,true).contains(queryTid);
+            if (isAncestor) {
                 double f = disease.getFrequencyOfTermInDisease(diseaseTermId);
                 freq = Math.max(f,freq);
             }
@@ -234,11 +702,11 @@ public class PhenotypeLikelihoodRatio {
      * the entire corpus of diseases. If the feature is maximally rare, i.e., 1/diseases.size(), then
      * we will estimate this frequency as being 1:500. If the feature is very common (at least 10%),
      * then we will estimate it as being 1:10.
-     * @param tid TermId of a term for which the disease has no annotations (nothing in common except root)
+     * @param f background frequency of a term for which the disease has no annotations (nothing in common
+     *          except root), or {@link #DEFAULT_FALSE_POSITIVE_NO_COMMON_ORGAN_PROBABILITY} if it is not known
      * @return Estimate probability of this ("false-positive") finding
      */
-    private double noCommonOrganProbability(TermId tid) {
-        double f = this.hpoTerm2OverallFrequency.getOrDefault(tid, DEFAULT_FALSE_POSITIVE_NO_COMMON_ORGAN_PROBABILITY);
+    private double noCommonOrganProbability(double f) {
         final double MIN_PROB = 0.002; // lowest prob of 1:500
         final double MAX_PROB = 0.10; // highest prob of 1:10
         final double MAX_MINUS_MIN = MAX_PROB - MIN_PROB;
@@ -264,6 +732,11 @@ public class PhenotypeLikelihoodRatio {
         if (queryTid.getId().equals(diseaseTid.getId())) {
             return 1.0;
         }
+        int q = termIndex.indexOf(queryTid);
+        int d = termIndex.indexOf(diseaseTid);
+        if (q != HpoTermIndex.NOT_INDEXED && d != HpoTermIndex.NOT_INDEXED) {
+            return getProportionInChildren(q, d);
+        }
         Set<TermId> directChildren= getChildTerms(ontology,diseaseTid,false);
         if (directChildren.isEmpty()) {
             return 0.0;
@@ -277,6 +750,24 @@ public class PhenotypeLikelihoodRatio {
         // if we get here, there was no match
         return 0d;
     }
+
+    /**
+     * Same as {@link #getProportionInChildren(TermId, TermId)} for indexed terms. The number of children and the
+     * parents of the query term are taken from the {@link HpoTermIndex}, so nothing is allocated.
+     * @param q index of the query term
+     * @param diseaseTerm index of a term that is annotated to the disease we are investigating
+     * @return the proportion of the frequency of diseaseTerm that is attributable to query
+     */
+    private double getProportionInChildren(int q, int diseaseTerm) {
+        if (q == diseaseTerm) {
+            return 1.0;
+        }
+        // the query term has a few parents, whereas the disease term can have many children
+        if (termIndex.isParent(diseaseTerm, q)) {
+            return 1.0 / (double) termIndex.getChildCount(diseaseTerm);
+        }
+        return 0d;
+    }
     
         
 
@@ -286,63 +777,23 @@ public class PhenotypeLikelihoodRatio {
      * @return the estimate background frequency (note: bf \in [0,1])
      */
     double getBackgroundFrequency(TermId termId) {
-        if (! hpoTerm2OverallFrequency.containsKey(termId)) {
-            logger.error(String.format("Map did not contain data for term %s",termId.getValue() ));
-            logger.error(String.format("hpoTerm2OverallFrequency has total of %d entries",hpoTerm2OverallFrequency.size()));
+        int idx = termIndex.indexOf(termId);
+        if (idx == HpoTermIndex.NOT_INDEXED) {
+            logger.error(String.format("Background frequency table did not contain data for term %s",termId.getValue() ));
+            logger.error(String.format("Background frequency table has total of %d entries",backgroundFrequencies.size()));
             // Should never happen!
             return DEFAULT_BACKGROUND_PROBQABILITY;
 
         }
-        return Math.max(DEFAULT_BACKGROUND_PROBQABILITY,hpoTerm2OverallFrequency.get(termId));
-    }
-
-    /**
-     * Initialize the {@link #hpoTerm2OverallFrequency} object that has the background frequencies of each of the
-     * HPO terms in the ontology. */
-    private void initializeFrequencyMap() {
-        Map<TermId, Double> mp = new HashMap<>();
-        for (TermId tid : ontology.getNonObsoleteTermIds()) {
-            mp.put(tid, 0.0D);
-        }
-        ImmutableMap.Builder<TermId, Double> mapbuilder = new ImmutableMap.Builder<>();
-        for (HpoDisease dis : this.diseaseMap.values()) {
-            // We construct a map in order to get the maximum frequencies for any
-            // given ancestor term, also in order to avoid double counting.
-            Map<TermId, Double> updateMap=new HashMap<>();
-
-            for (HpoAnnotation tidm : dis.getPhenotypicAbnormalities()) {
-                TermId tid = tidm.getTermId();
-                double termFrequency = tidm.getFrequency();
-                // All of the ancestor terms are implicitly annotated to tid
-                // therefore, add this to their background frequencies.
-                // Note we also include the original term here (third arg: true)
-                tid=ontology.getPrimaryTermId(tid);
-                Set<TermId> ancs = getAncestorTerms(ontology,tid,true);
-                for (TermId at : ancs) {
-                    updateMap.putIfAbsent(at,termFrequency);
-                    // put the maximum frequency for this term given it is
-                    // an ancestor of one or more of the HPO terms that annotate
-                    // the disease.
-                    if (termFrequency > updateMap.get(at)) {
-                        updateMap.put(at,termFrequency);
-                    }
-                }
-            }
-            for (TermId tid : updateMap.keySet()) {
-                double delta = updateMap.get(tid);
-                mp.putIfAbsent(tid,0.0);
-                double cumulative = delta + mp.get(tid);
-                mp.put(tid,cumulative);
-            }
-        }
-        // Now we need to normalize by the number of diseases.
-        double N = getNumberOfDiseases();
-        for (Map.Entry<TermId, Double> me : mp.entrySet()) {
-            double f = me.getValue() / N;
-            mapbuilder.put(me.getKey(), f);
-        }
-        hpoTerm2OverallFrequency = mapbuilder.build();
-        logger.trace("Got data on background frequency for " + hpoTerm2OverallFrequency.size() + " terms");
+        return getBackgroundFrequency(idx);
+    }
+
+    /**
+     * @param termIdx index of an HPO term in {@link #termIndex}
+     * @return the estimate background frequency of the term (see {@link #getBackgroundFrequency(TermId)})
+     */
+    private double getBackgroundFrequency(int termIdx) {
+        return Math.max(DEFAULT_BACKGROUND_PROBQABILITY,backgroundFrequencies.get(termIdx));
     }
 
     /** @return the number of diseases we are using for the calculations. */
@@ -350,4 +801,25 @@ public class PhenotypeLikelihoodRatio {
         return diseaseMap.size();
     }
 
+    Ontology getOntology() {
+        return ontology;
+    }
+
+    Map<TermId, HpoDisease> getDiseaseMap() {
+        return diseaseMap;
+    }
+
+    HpoTermIndex getTermIndex() {
+        return termIndex;
+    }
+
+    DiseaseIndex getDiseases() {
+        return diseaseIndex;
+    }
+
+    /** @return the background frequencies of the HPO terms, which can be shared with other objects of this class. */
+    public BackgroundFrequencyTable getBackgroundFrequencies() {
+        return backgroundFrequencies;
+    }
+
 }
@@ -0,0 +1,422 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The likelihood ratio that {@link PhenotypeLikelihoodRatio#getLikelihoodRatio(TermId, InducedDiseaseGraph)}
+ * returns for an observed query term and a disease depends only on the HPO and on the disease annotations, and
+ * not on the case being evaluated. This class stores the likelihood ratio (together with the {@link
+ * LrWithExplanation.MatchType} and the matching term needed for the explanation) of every HPO term in every
+ * disease in a columnar binary file that is memory-mapped when it is loaded. Evaluating a case then only needs
+ * to read one value per query term and disease.
+ * <p>
+ * The file is created with {@link #write(PhenotypeLikelihoodRatio, String, int)} and loaded with
+ * {@link #load(String, Ontology, Map)}. It has the following layout (big endian):
+ * </p>
+ * <pre>
+ * int magic, int version, long offset of the data, UTF HPO version,
+ * UTF digest of the HPO and of the disease annotations (see {@link ReferenceDataDigest}),
+ * int number of terms, UTF term id (one per term),
+ * int number of diseases, UTF disease id (one per disease),
+ * column 1: double likelihood ratio (terms x diseases, row-major, one row per term)
+ * column 2: byte match type (ordinal of MatchType, or -1 if not precomputed)
+ * column 3: int row of the matching term
+ * double maximum likelihood ratio of each term (one per row)
+ * double maximum likelihood ratio of each disease (one per column)
+ * </pre>
+ * The maxima are +Infinity for a row or column with a cell that could not be precomputed. They are loaded on the
+ * heap and give a cheap upper bound of the likelihood ratio of a term in a disease, which is used to skip diseases
+ * that cannot reach the top of the differential diagnosis (see {@link CaseEvaluator.Builder#pruning(boolean)}).
+ * Likelihood ratios of excluded terms are not stored in the matrix and are calculated as before.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class PhenotypeLrMatrix {
+    private static final Logger logger = LoggerFactory.getLogger(PhenotypeLrMatrix.class);
+    /** "LRMX" */
+    private static final int MAGIC = 0x4C524D58;
+    private static final int VERSION = 3;
+    /** Value of the match type column for cells that could not be precomputed. */
+    private static final byte NOT_PRECOMPUTED = -1;
+    private static final LrWithExplanation.MatchType[] MATCH_TYPES = LrWithExplanation.MatchType.values();
+    /** The term ids of the rows of the matrix. */
+    private final ImmutableList<TermId> rowTerms;
+    /** Key: an HPO term id; value: the corresponding row of the matrix. */
+    private final ImmutableMap<TermId, Integer> term2row;
+    /** Key: a disease id, e.g., OMIM:600100; value: the corresponding column of the matrix. */
+    private final ImmutableMap<TermId, Integer> disease2column;
+    private final MappedColumn likelihoodRatios;
+    private final MappedColumn matchTypes;
+    private final MappedColumn matchingTerms;
+    /** Maximum likelihood ratio of the term of each row in all diseases (+Infinity: not all cells precomputed). */
+    private final double[] maxLrOfRow;
+    /** Maximum likelihood ratio of all terms in the disease of each column (+Infinity: not all cells precomputed). */
+    private final double[] maxLrOfColumn;
+
+    private PhenotypeLrMatrix(List<TermId> rowTerms,
+                              List<TermId> diseaseIds,
+                              MappedColumn likelihoodRatios,
+                              MappedColumn matchTypes,
+                              MappedColumn matchingTerms,
+                              double[] maxLrOfRow,
+                              double[] maxLrOfColumn) {
+        this.rowTerms = ImmutableList.copyOf(rowTerms);
+        ImmutableMap.Builder<TermId, Integer> rowBuilder = new ImmutableMap.Builder<>();
+        for (int i = 0; i < rowTerms.size(); i++) {
+            rowBuilder.put(rowTerms.get(i), i);
+        }
+        this.term2row = rowBuilder.build();
+        ImmutableMap.Builder<TermId, Integer> columnBuilder = new ImmutableMap.Builder<>();
+        for (int i = 0; i < diseaseIds.size(); i++) {
+            columnBuilder.put(diseaseIds.get(i), i);
+        }
+        this.disease2column = columnBuilder.build();
+        this.likelihoodRatios = likelihoodRatios;
+        this.matchTypes = matchTypes;
+        this.matchingTerms = matchingTerms;
+        this.maxLrOfRow = maxLrOfRow;
+        this.maxLrOfColumn = maxLrOfColumn;
+    }
+
+    /**
+     * @param queryTid an observed HPO term
+     * @param diseaseId id of a disease, e.g., OMIM:600100
+     * @return the precomputed likelihood ratio, or null if it is not part of the matrix
+     */
+    LrWithExplanation getLikelihoodRatio(TermId queryTid, TermId diseaseId) {
+        Integer row = term2row.get(queryTid);
+        Integer column = disease2column.get(diseaseId);
+        if (row == null || column == null) {
+            return null;
+        }
+        byte mt = matchTypes.getByte(row, column);
+        if (mt == NOT_PRECOMPUTED) {
+            return null;
+        }
+        TermId matchingTerm = rowTerms.get(matchingTerms.getInt(row, column));
+        return LrWithExplanation.of(queryTid, matchingTerm, MATCH_TYPES[mt], likelihoodRatios.getDouble(row, column));
+    }
+
+    /**
+     * @param queryTid an observed HPO term
+     * @return true if the likelihood ratios of the term are part of the matrix (some cells of its row may not be
+     * precomputed, see {@link #getMaxLikelihoodRatioOfTerm(TermId)})
+     */
+    boolean containsTerm(TermId queryTid) {
+        return term2row.containsKey(queryTid);
+    }
+
+    /**
+     * @param queryTid an observed HPO term
+     * @return the largest likelihood ratio of the term in any disease, or +Infinity if the term is not part of
+     * the matrix or some cell of its row could not be precomputed
+     */
+    double getMaxLikelihoodRatioOfTerm(TermId queryTid) {
+        Integer row = term2row.get(queryTid);
+        return row == null ? Double.POSITIVE_INFINITY : maxLrOfRow[row];
+    }
+
+    /**
+     * @param diseaseId id of a disease, e.g., OMIM:600100
+     * @return the largest likelihood ratio of any term of the matrix in the disease, or +Infinity if the disease
+     * is not part of the matrix or some cell of its column could not be precomputed
+     */
+    double getMaxLikelihoodRatioOfDisease(TermId diseaseId) {
+        Integer column = disease2column.get(diseaseId);
+        return column == null ? Double.POSITIVE_INFINITY : maxLrOfColumn[column];
+    }
+
+    /** @return number of HPO terms (rows) in the matrix. */
+    public int getNumberOfTerms() {
+        return rowTerms.size();
+    }
+
+    /** @return number of diseases (columns) in the matrix. */
+    public int getNumberOfDiseases() {
+        return disease2column.size();
+    }
+
+    private static String hpoVersion(Ontology ontology) {
+        return ontology.getMetaInfo().getOrDefault("data-version", "n/a");
+    }
+
+    /**
+     * Calculate the likelihood ratio of each indexed HPO term in each disease of lrCalculator and write the
+     * results to a file.
+     * @param lrCalculator object used to calculate the likelihood ratios
+     * @param path path of the output file
+     * @param threads number of threads used for the calculation
+     * @throws LiricalException if the file cannot be written
+     */
+    public static void write(PhenotypeLikelihoodRatio lrCalculator, String path, int threads) throws LiricalException {
+        HpoTermIndex termIndex = lrCalculator.getTermIndex();
+        List<TermId> rowTerms = new ArrayList<>();
+        for (int i = 0; i < termIndex.size(); i++) {
+            rowTerms.add(termIndex.getTermId(i));
+        }
+        DiseaseIndex diseaseIndex = lrCalculator.getDiseases();
+        List<HpoDisease> diseases = new ArrayList<>();
+        List<InducedDiseaseGraph> graphs = new ArrayList<>();
+        for (int d = 0; d < diseaseIndex.size(); d++) {
+            diseases.add(diseaseIndex.getDisease(d));
+            graphs.add(lrCalculator.getInducedDiseaseGraph(diseaseIndex.getDisease(d)));
+        }
+        int nRows = rowTerms.size();
+        int nColumns = diseases.size();
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(baos);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(0L); // placeholder for the offset of the data
+            header.writeUTF(hpoVersion(lrCalculator.getOntology()));
+            header.writeUTF(ReferenceDataDigest.of(lrCalculator.getOntology(), lrCalculator.getDiseaseMap()));
+            header.writeInt(nRows);
+            for (TermId tid : rowTerms) {
+                header.writeUTF(tid.getValue());
+            }
+            header.writeInt(nColumns);
+            for (HpoDisease disease : diseases) {
+                header.writeUTF(disease.getDiseaseDatabaseId().getValue());
+            }
+            header.flush();
+            long dataOffset = align(baos.size());
+            ByteBuffer headerBuffer = ByteBuffer.wrap(baos.toByteArray());
+            headerBuffer.putLong(8, dataOffset);
+            writeFully(channel, headerBuffer, 0L);
+            long cells = (long) nRows * nColumns;
+            long lrOffset = dataOffset;
+            long matchTypeOffset = lrOffset + cells * Double.BYTES;
+            long matchingTermOffset = align(matchTypeOffset + cells);
+            long maxLrOfRowOffset = align(matchingTermOffset + cells * Integer.BYTES);
+            long maxLrOfColumnOffset = maxLrOfRowOffset + (long) nRows * Double.BYTES;
+            double[] maxLrOfColumn = new double[nColumns];
+            Arrays.fill(maxLrOfColumn, Double.NEGATIVE_INFINITY);
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+            try {
+                pool.submit(() -> IntStream.range(0, nRows).parallel().forEach(row -> {
+                    ByteBuffer lrRow = ByteBuffer.allocate(nColumns * Double.BYTES);
+                    ByteBuffer matchTypeRow = ByteBuffer.allocate(nColumns);
+                    ByteBuffer matchingTermRow = ByteBuffer.allocate(nColumns * Integer.BYTES);
+                    // the largest LR of each cell, +Infinity if the cell could not be precomputed
+                    double[] cellMax = new double[nColumns];
+                    TermId queryTid = rowTerms.get(row);
+                    for (int column = 0; column < nColumns; column++) {
+                        double lr = 0.0;
+                        byte mt = NOT_PRECOMPUTED;
+                        int matchRow = 0;
+                        try {
+                            LrWithExplanation lrwe = lrCalculator.computeLikelihoodRatio(queryTid, graphs.get(column));
+                            int m = termIndex.indexOf(lrwe.getMatchingTerm());
+                            if (m != HpoTermIndex.NOT_INDEXED) {
+                                lr = lrwe.getLR();
+                                mt = (byte) lrwe.getMatchType().ordinal();
+                                matchRow = m;
+                            }
+                        } catch (Exception e) {
+                            // leave the cell empty, the error will be reported when the case is evaluated
+                            logger.trace("Could not precompute LR for {}/{}: {}", queryTid.getValue(),
+                                    diseases.get(column).getDiseaseDatabaseId().getValue(), e.getMessage());
+                        }
+                        lrRow.putDouble(lr);
+                        matchTypeRow.put(mt);
+                        matchingTermRow.putInt(matchRow);
+                        cellMax[column] = mt == NOT_PRECOMPUTED || Double.isNaN(lr) ? Double.POSITIVE_INFINITY : lr;
+                    }
+                    double maxLrOfRow = Double.NEGATIVE_INFINITY;
+                    for (double lr : cellMax) {
+                        maxLrOfRow = Math.max(maxLrOfRow, lr);
+                    }
+                    synchronized (maxLrOfColumn) {
+                        for (int column = 0; column < nColumns; column++) {
+                            maxLrOfColumn[column] = Math.max(maxLrOfColumn[column], cellMax[column]);
+                        }
+                    }
+                    long rowStart = (long) row * nColumns;
+                    try {
+                        writeFully(channel, lrRow, lrOffset + rowStart * Double.BYTES);
+                        writeFully(channel, matchTypeRow, matchTypeOffset + rowStart);
+                        writeFully(channel, matchingTermRow, matchingTermOffset + rowStart * Integer.BYTES);
+                        writeFully(channel, ByteBuffer.allocate(Double.BYTES).putDouble(0, maxLrOfRow),
+                                maxLrOfRowOffset + (long) row * Double.BYTES);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).get();
+                ByteBuffer columnBuffer = ByteBuffer.allocate(nColumns * Double.BYTES);
+                for (double lr : maxLrOfColumn) {
+                    columnBuffer.putDouble(lr);
+                }
+                writeFully(channel, columnBuffer, maxLrOfColumnOffset);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LiricalException("Interrupted while calculating LR matrix: " + e.getMessage());
+            } catch (ExecutionException e) {
+                throw new LiricalException("Could not write LR matrix to " + path + ": " + e.getCause().getMessage());
+            } finally {
+                pool.shutdown();
+            }
+        } catch (IOException e) {
+            throw new LiricalException("Could not write LR matrix to " + path, e);
+        }
+        logger.info("Wrote LR matrix with {} terms and {} diseases to {}", nRows, nColumns, path);
+    }
+
+    /**
+     * Load a matrix that was created by {@link #write(PhenotypeLikelihoodRatio, String, int)}.
+     * @param path path of the matrix file
+     * @param ontology Reference to HPO ontology object (must be the same version as used to create the file)
+     * @param diseaseMap the diseases that will be evaluated (must be the same diseases with the same annotations as
+     *                   used to create the file)
+     * @return the memory-mapped matrix
+     * @throws LiricalException if the file cannot be read or was created for other data
+     */
+    public static PhenotypeLrMatrix load(String path, Ontology ontology, Map<TermId, HpoDisease> diseaseMap) throws LiricalException {
+        Path p = Paths.get(path);
+        try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+            DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (header.readInt() != MAGIC) {
+                throw new LiricalException(path + " is not an LR matrix file");
+            }
+            int version = header.readInt();
+            if (version != VERSION) {
+                throw new LiricalException(String.format("Unsupported LR matrix version %d (expected %d)", version, VERSION));
+            }
+            long dataOffset = header.readLong();
+            String hpoVersion = header.readUTF();
+            if (!hpoVersion.equals(hpoVersion(ontology))) {
+                throw new LiricalException(String.format("LR matrix was calculated with HPO version %s but HPO version is %s",
+                        hpoVersion, hpoVersion(ontology)));
+            }
+            String digest = header.readUTF();
+            if (!digest.equals(ReferenceDataDigest.of(ontology, diseaseMap))) {
+                throw new LiricalException("LR matrix was calculated for a different HPO or for different disease annotations");
+            }
+            int nRows = header.readInt();
+            List<TermId> rowTerms = new ArrayList<>(nRows);
+            for (int i = 0; i < nRows; i++) {
+                rowTerms.add(TermId.of(header.readUTF()));
+            }
+            int nColumns = header.readInt();
+            List<TermId> diseaseIds = new ArrayList<>(nColumns);
+            for (int i = 0; i < nColumns; i++) {
+                TermId diseaseId = TermId.of(header.readUTF());
+                if (!diseaseMap.containsKey(diseaseId)) {
+                    throw new LiricalException("LR matrix contains disease " + diseaseId.getValue() + " that is not in the disease map");
+                }
+                diseaseIds.add(diseaseId);
+            }
+            if (nColumns != diseaseMap.size()) {
+                throw new LiricalException(String.format("LR matrix has %d diseases but disease map has %d",
+                        nColumns, diseaseMap.size()));
+            }
+            long cells = (long) nRows * nColumns;
+            long matchTypeOffset = dataOffset + cells * Double.BYTES;
+            long matchingTermOffset = align(matchTypeOffset + cells);
+            MappedColumn lrs = new MappedColumn(channel, dataOffset, nRows, nColumns, Double.BYTES);
+            MappedColumn matchTypes = new MappedColumn(channel, matchTypeOffset, nRows, nColumns, 1);
+            MappedColumn matchingTerms = new MappedColumn(channel, matchingTermOffset, nRows, nColumns, Integer.BYTES);
+            long maxLrOfRowOffset = align(matchingTermOffset + cells * Integer.BYTES);
+            double[] maxLrOfRow = readDoubles(channel, maxLrOfRowOffset, nRows);
+            double[] maxLrOfColumn = readDoubles(channel, maxLrOfRowOffset + (long) nRows * Double.BYTES, nColumns);
+            logger.info("Loaded LR matrix with {} terms and {} diseases from {}", nRows, nColumns, path);
+            return new PhenotypeLrMatrix(rowTerms, diseaseIds, lrs, matchTypes, matchingTerms, maxLrOfRow, maxLrOfColumn);
+        } catch (IOException e) {
+            throw new LiricalException("Could not read LR matrix from " + path, e);
+        }
+    }
+
+    /** @return the smallest multiple of 8 that is at least n. */
+    private static long align(long n) {
+        return (n + 7) & ~7L;
+    }
+
+    /** @return n doubles read from the channel, starting at the given position */
+    private static double[] readDoubles(FileChannel channel, long position, int n) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(n * Double.BYTES);
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, pos);
+            if (read < 0) {
+                throw new EOFException("LR matrix file is truncated");
+            }
+            pos += read;
+        }
+        buffer.flip();
+        double[] values = new double[n];
+        buffer.asDoubleBuffer().get(values);
+        return values;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        buffer.rewind();
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+    }
+
+    /**
+     * One column of the matrix file. A single {@link MappedByteBuffer} cannot be larger than 2GB, and so
+     * the column is mapped in segments of whole rows.
+     */
+    private static class MappedColumn {
+        private final MappedByteBuffer[] segments;
+        private final int rowsPerSegment;
+        private final int nColumns;
+        private final int elementSize;
+
+        MappedColumn(FileChannel channel, long offset, int nRows, int nColumns, int elementSize) throws IOException {
+            this.nColumns = nColumns;
+            this.elementSize = elementSize;
+            long rowBytes = (long) nColumns * elementSize;
+            this.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / Math.max(1, rowBytes));
+            int nSegments = (nRows + rowsPerSegment - 1) / rowsPerSegment;
+            this.segments = new MappedByteBuffer[nSegments];
+            for (int i = 0; i < nSegments; i++) {
+                int firstRow = i * rowsPerSegment;
+                int rows = Math.min(rowsPerSegment, nRows - firstRow);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + firstRow * rowBytes, rows * rowBytes);
+            }
+        }
+
+        private int position(int row, int column) {
+            return ((row % rowsPerSegment) * nColumns + column) * elementSize;
+        }
+
+        double getDouble(int row, int column) {
+            return segments[row / rowsPerSegment].getDouble(position(row, column));
+        }
+
+        byte getByte(int row, int column) {
+            return segments[row / rowsPerSegment].get(position(row, column));
+        }
+
+        int getInt(int row, int column) {
+            return segments[row / rowsPerSegment].getInt(position(row, column));
+        }
+    }
+}
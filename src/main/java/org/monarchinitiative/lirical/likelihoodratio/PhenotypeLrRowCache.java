@@ -0,0 +1,202 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A size-bounded cache of the phenotype likelihood ratios of a query term in all diseases. Each entry ("row")
+ * holds the likelihood ratios of one HPO term in the order of the disease index of
+ * {@link PhenotypeLikelihoodRatio}, together with the information needed to create the explanations. This is
+ * a middle ground between calculating each likelihood ratio for each case and precomputing the full
+ * {@link PhenotypeLrMatrix}: real cohorts reuse a small set of HPO terms, so most rows are shared across cases.
+ * <p>
+ * If the cache is full, the least recently used row is evicted. The cache can be used by several threads at
+ * once. A row that is missing is calculated outside of the lock, so two threads may occasionally calculate the
+ * same row; the result is identical in both cases.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class PhenotypeLrRowCache {
+    private static final Logger logger = LoggerFactory.getLogger(PhenotypeLrRowCache.class);
+    /** Maximum number of rows (HPO terms) that are kept in the cache. */
+    private final int maxRows;
+    /** Access-ordered map, i.e., the first entry is the least recently used one. Guarded by this. */
+    private final LinkedHashMap<TermId, Row> rows;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * The likelihood ratios of one query term in each of the diseases. The entries of a cell that could
+     * not be calculated (e.g., because of an error) are null, and the likelihood ratio must then be
+     * calculated for the disease directly.
+     */
+    static class Row {
+        private final double[] likelihoodRatios;
+        /** log<sub>10</sub> of {@link #likelihoodRatios}, 0 for the cells that were not calculated. */
+        private final double[] log10LikelihoodRatios;
+        private final LrWithExplanation.MatchType[] matchTypes;
+        private final TermId[] matchingTerms;
+        /** Number of cells that were calculated. */
+        private int count;
+
+        Row(int nDiseases) {
+            this.likelihoodRatios = new double[nDiseases];
+            this.log10LikelihoodRatios = new double[nDiseases];
+            this.matchTypes = new LrWithExplanation.MatchType[nDiseases];
+            this.matchingTerms = new TermId[nDiseases];
+        }
+
+        void set(int diseaseIdx, LrWithExplanation lrwe) {
+            if (matchTypes[diseaseIdx] == null) {
+                count++;
+            }
+            likelihoodRatios[diseaseIdx] = lrwe.getLR();
+            log10LikelihoodRatios[diseaseIdx] = Math.log10(lrwe.getLR());
+            matchTypes[diseaseIdx] = lrwe.getMatchType();
+            matchingTerms[diseaseIdx] = lrwe.getMatchingTerm();
+        }
+
+        /**
+         * @param diseaseIdx index of the disease
+         * @param queryTid the query term of this row
+         * @return the likelihood ratio of the query term in the disease, or null if it was not calculated
+         */
+        LrWithExplanation get(int diseaseIdx, TermId queryTid) {
+            LrWithExplanation.MatchType mt = matchTypes[diseaseIdx];
+            if (mt == null) {
+                return null;
+            }
+            return LrWithExplanation.of(queryTid, matchingTerms[diseaseIdx], mt, likelihoodRatios[diseaseIdx]);
+        }
+
+        /** @return true if the likelihood ratio of the query term in the disease was calculated. */
+        boolean contains(int diseaseIdx) {
+            return matchTypes[diseaseIdx] != null;
+        }
+
+        /** @return true if the likelihood ratio of the query term was calculated for all diseases. */
+        boolean isComplete() {
+            return count == matchTypes.length;
+        }
+
+        /** @return number of diseases (cells) of the row. */
+        int size() {
+            return matchTypes.length;
+        }
+
+        /** @return the likelihood ratios of the query term in disease-index order (do not modify). */
+        double[] getLikelihoodRatios() {
+            return likelihoodRatios;
+        }
+
+        /**
+         * @return the log<sub>10</sub> likelihood ratios of the query term in disease-index order, with 0 for the
+         * cells that were not calculated, so that they do not change a sum (do not modify)
+         */
+        double[] getLog10LikelihoodRatios() {
+            return log10LikelihoodRatios;
+        }
+    }
+
+    /**
+     * @param maxRows maximum number of HPO terms whose likelihood ratios are kept in the cache
+     */
+    PhenotypeLrRowCache(int maxRows) {
+        this.maxRows = maxRows;
+        this.rows = new LinkedHashMap<TermId, Row>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TermId, Row> eldest) {
+                if (size() > PhenotypeLrRowCache.this.maxRows) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param queryTid an HPO term
+     * @param loader function used to calculate the row if it is not in the cache
+     * @return the row of the query term
+     */
+    Row get(TermId queryTid, Function<TermId, Row> loader) {
+        Row row;
+        synchronized (this) {
+            row = rows.get(queryTid);
+        }
+        if (row != null) {
+            hits.incrementAndGet();
+            return row;
+        }
+        misses.incrementAndGet();
+        row = loader.apply(queryTid);
+        synchronized (this) {
+            rows.put(queryTid, row);
+        }
+        return row;
+    }
+
+    /**
+     * @param queryTid an HPO term
+     * @return the row of the query term, or null if it is not in the cache
+     */
+    Row getIfPresent(TermId queryTid) {
+        Row row;
+        synchronized (this) {
+            row = rows.get(queryTid);
+        }
+        (row != null ? hits : misses).incrementAndGet();
+        return row;
+    }
+
+    /** @return maximum number of rows in the cache. */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /** @return current number of rows in the cache. */
+    public synchronized int size() {
+        return rows.size();
+    }
+
+    /** @return number of requests that were answered from the cache. */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return number of requests for which the row had to be calculated. */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** @return number of rows that were removed because the cache was full. */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /** @return proportion of requests answered from the cache (0 if there were no requests). */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PhenotypeLrRowCache: %d/%d rows, %d hits, %d misses (hit rate %.1f%%), %d evictions",
+                size(), maxRows, getHitCount(), getMissCount(), 100.0 * getHitRate(), getEvictionCount());
+    }
+
+    /** Write the cache statistics to the log. */
+    public void logStatistics() {
+        logger.info("{}", this);
+    }
+}
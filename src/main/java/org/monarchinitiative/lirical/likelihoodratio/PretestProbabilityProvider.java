@@ -0,0 +1,48 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+/**
+ * Provides the pretest probability of each disease of the differential diagnosis, i.e., the probability of the
+ * disease before the phenotypes and genotypes of the case are taken into account. The post-test odds of a disease
+ * are the pretest odds multiplied by the likelihood ratios of the case (see {@link TestResult}).
+ * <p>
+ * A provider is created once for a disease map and can be shared by all cases (see
+ * {@link CaseEvaluator.Builder#pretestProbability(PretestProbabilityProvider)}); implementations must be
+ * immutable. The available implementations are {@link UniformPretestProbability} (the default),
+ * {@link PrevalencePretestProbability} and {@link GenePanelPretestProbability}.
+ * </p>
+ * <p>
+ * The evaluation of a case looks up the pretest probabilities by the position of the disease in the disease map
+ * for which the provider was created (see {@link #getLog10PretestOdds(int)}), which is also the index of the
+ * disease in a {@link PhenotypeLikelihoodRatio} created for the same map; this avoids hashing a disease id for
+ * every disease of every case. The methods with a {@link TermId} argument are meant for single lookups.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public interface PretestProbabilityProvider {
+
+    /**
+     * @param diseaseId a disease CURIE, e.g., OMIM:600100
+     * @return the pretest probability of the disease
+     */
+    double getPretestProbability(TermId diseaseId);
+
+    /**
+     * @param diseaseId a disease CURIE, e.g., OMIM:600100
+     * @return log<sub>10</sub> of the pretest odds of the disease, p/(1-p) where p is the pretest probability
+     */
+    double getLog10PretestOdds(TermId diseaseId);
+
+    /**
+     * @param diseaseIdx position of a disease in the disease map for which the provider was created
+     * @return the pretest probability of the disease
+     */
+    double getPretestProbability(int diseaseIdx);
+
+    /**
+     * @param diseaseIdx position of a disease in the disease map for which the provider was created
+     * @return log<sub>10</sub> of the pretest odds of the disease, p/(1-p) where p is the pretest probability
+     */
+    double getLog10PretestOdds(int diseaseIdx);
+}
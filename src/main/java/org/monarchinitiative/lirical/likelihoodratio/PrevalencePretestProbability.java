@@ -0,0 +1,101 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pretest probabilities that are proportional to the prevalence of the diseases. The prevalences are usually
+ * loaded from a tab-separated file with {@link #fromTsv(String, Map, double)}; the file has two columns, the
+ * disease id and the prevalence (e.g., {@code ORPHA:558<TAB>0.0002}). Empty lines and lines starting with
+ * {@code #} are ignored. Diseases of the disease map that are not listed in the file get a default prevalence,
+ * and diseases of the file that are not part of the disease map are ignored.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class PrevalencePretestProbability extends IndexedPretestProbability {
+    private static final Logger logger = LoggerFactory.getLogger(PrevalencePretestProbability.class);
+
+    /**
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param prevalences key: a disease CURIE; value: the prevalence of the disease
+     * @param defaultPrevalence prevalence of the diseases that are not in the map of prevalences
+     */
+    public PrevalencePretestProbability(Map<TermId, HpoDisease> diseaseMap,
+                                        Map<TermId, Double> prevalences,
+                                        double defaultPrevalence) {
+        this(ImmutableList.copyOf(diseaseMap.keySet()), prevalences, defaultPrevalence);
+    }
+
+    private PrevalencePretestProbability(List<TermId> diseaseIds, Map<TermId, Double> prevalences, double defaultPrevalence) {
+        super(diseaseIds, weights(diseaseIds, prevalences, defaultPrevalence));
+    }
+
+    private static double[] weights(List<TermId> diseaseIds, Map<TermId, Double> prevalences, double defaultPrevalence) {
+        double[] weights = new double[diseaseIds.size()];
+        int missing = 0;
+        for (int i = 0; i < weights.length; i++) {
+            Double prevalence = prevalences.get(diseaseIds.get(i));
+            if (prevalence == null) {
+                prevalence = defaultPrevalence;
+                missing++;
+            }
+            weights[i] = prevalence;
+        }
+        logger.trace("Using the default prevalence of {} for {} of {} diseases", defaultPrevalence, missing, weights.length);
+        return weights;
+    }
+
+    /**
+     * Load the prevalences from a tab-separated file.
+     * @param path path of the file
+     * @param diseaseMap key: a disease CURIE; value: the corresponding disease object
+     * @param defaultPrevalence prevalence of the diseases that are not listed in the file
+     * @return the corresponding pretest probabilities
+     * @throws LiricalException if the file cannot be read or has a malformed line
+     */
+    public static PrevalencePretestProbability fromTsv(String path,
+                                                       Map<TermId, HpoDisease> diseaseMap,
+                                                       double defaultPrevalence) throws LiricalException {
+        Map<TermId, Double> prevalences = new HashMap<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length < 2) {
+                    throw new LiricalException(String.format("Malformed line %d of %s (expected 2 fields): %s",
+                            lineNumber, path, line));
+                }
+                try {
+                    prevalences.put(TermId.of(fields[0].trim()), Double.parseDouble(fields[1].trim()));
+                } catch (RuntimeException e) {
+                    throw new LiricalException(String.format("Malformed line %d of %s: %s (%s)",
+                            lineNumber, path, line, e.getMessage()));
+                }
+            }
+        } catch (IOException e) {
+            throw new LiricalException("Could not read prevalence file " + path + ": " + e.getMessage());
+        }
+        logger.trace("Read prevalences of {} diseases from {}", prevalences.size(), path);
+        try {
+            return new PrevalencePretestProbability(diseaseMap, prevalences, defaultPrevalence);
+        } catch (LiricalRuntimeException e) {
+            throw new LiricalException(e.getMessage() + " (" + path + ")");
+        }
+    }
+}
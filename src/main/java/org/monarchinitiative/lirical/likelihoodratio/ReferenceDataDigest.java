@@ -0,0 +1,86 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * A SHA-256 digest of the reference data that the precomputed files ({@link PhenotypeLrMatrix},
+ * {@link BackgroundFrequencyTable}) depend on: the is-a hierarchy of the HPO and, for each disease, the annotated
+ * terms with their frequencies and the negated terms. The version string of the HPO is not enough to recognize
+ * a file that was created for other data, because it is missing from some ontology files, and a new annotation
+ * file usually has the same disease ids as the previous one.
+ * <p>
+ * The digest does not depend on the iteration order of the ontology or of the disease map.
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+final class ReferenceDataDigest {
+
+    private ReferenceDataDigest() {
+    }
+
+    /**
+     * @param ontology Reference to HPO ontology object
+     * @param diseaseMap the diseases of the corpus
+     * @return the hexadecimal SHA-256 digest of the ontology and of the disease annotations
+     */
+    static String of(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+        MessageDigest md = newDigest();
+        Set<TermId> termIdSet = new HashSet<>(ontology.getNonObsoleteTermIds());
+        termIdSet.addAll(ontology.getGraph().vertexSet());
+        List<TermId> termIds = new ArrayList<>(termIdSet);
+        termIds.sort(Comparator.comparing(TermId::getValue));
+        for (TermId tid : termIds) {
+            update(md, "T", tid.getValue());
+            List<TermId> parents = new ArrayList<>(OntologyAlgorithm.getParentTerms(ontology, tid, false));
+            parents.sort(Comparator.comparing(TermId::getValue));
+            for (TermId parent : parents) {
+                update(md, "P", parent.getValue());
+            }
+        }
+        List<TermId> diseaseIds = new ArrayList<>(diseaseMap.keySet());
+        diseaseIds.sort(Comparator.comparing(TermId::getValue));
+        for (TermId diseaseId : diseaseIds) {
+            HpoDisease disease = diseaseMap.get(diseaseId);
+            update(md, "D", diseaseId.getValue());
+            List<HpoAnnotation> annotations = new ArrayList<>(disease.getPhenotypicAbnormalities());
+            annotations.sort(Comparator.comparing((HpoAnnotation a) -> a.getTermId().getValue())
+                    .thenComparingDouble(HpoAnnotation::getFrequency));
+            for (HpoAnnotation annotation : annotations) {
+                update(md, "A", annotation.getTermId().getValue() + "=" + Double.doubleToLongBits(annotation.getFrequency()));
+            }
+            List<TermId> negated = new ArrayList<>(disease.getNegativeAnnotations());
+            negated.sort(Comparator.comparing(TermId::getValue));
+            for (TermId tid : negated) {
+                update(md, "N", tid.getValue());
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void update(MessageDigest md, String tag, String value) {
+        md.update((tag + value + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform supports SHA-256
+            throw new LiricalRuntimeException("[ERROR] SHA-256 is not available: " + e.getMessage());
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package org.monarchinitiative.lirical.likelihoodratio;
 
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
 import org.monarchinitiative.lirical.hpo.HpoCase;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -22,6 +26,11 @@ import java.util.stream.Collectors;
  * the patient. This object can include the result of a likelihood ratio for a genotype test. However,
  * not every disease is associated with a known disease gene. Therefore, if no genotype is available,
  * {@link #genotypeLR} and {@link #entrezGeneId} are null.
+ * <p>
+ * The composite likelihood ratio and the post-test odds are accumulated as sums of log<sub>10</sub> values
+ * rather than as products, because the product of many (say 20 or more) likelihood ratios can
+ * overflow or underflow the range of a double.
+ * </p>
  *
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  * @version 0.4.5 (2019-10-28)
@@ -29,33 +38,43 @@ import java.util.stream.Collectors;
 public class TestResult implements Comparable<TestResult> {
     private static final Logger logger = LoggerFactory.getLogger(TestResult.class);
     private static final String EMPTY_STRING="";
-    /**A list of results for the tests performed on observed phenotypes for {@link #hpoDisease}.*/
-    private final List<Double> results;
-    /** A list of test results for phenotypes that were excluded.*/
-    private final List<Double> excludedResults;
+    /**The results for the tests performed on observed phenotypes for {@link #hpoDisease}.*/
+    private final double[] results;
+    /** The test results for phenotypes that were excluded.*/
+    private final double[] excludedResults;
     /** Result of the likelhood ratio test for the genotype. */
     private final Double genotypeLR;
     /** The id of the gene associated with ths disease being tested here. */
     private final TermId entrezGeneId;
-    /** This is the product of the individual test results. */
-    private final double compositeLR;
+    /** This is the log<sub>10</sub> of the product of the individual test results. */
+    private final double log10CompositeLR;
     /** Reference to the the disease that we are testing (e.g., OMIM:600100).*/
     private final HpoDisease hpoDisease;
     /** The probability of some result before the first test is done.*/
     private final double pretestProbability;
+    /** The log<sub>10</sub> of the odds of some result after testing.*/
+    private final double log10PosttestOdds;
     /** The probability of some result after testing.*/
     private final double posttestProbability;
     /** The overall rank of the the result withint the differential diagnosis. */
     private int rank;
     /** An optional genotypeExplanation of the genotype result, intended for display */
     private String genotypeExplanation = EMPTY_STRING;
+    /** Genotype likelihood ratio whose explanation is appended to {@link #genotypeExplanation} on demand. */
+    private GenotypeLrWithExplanation genotypeLrExplanation = null;
     /** Explanations of the phenotype score for observed HPOs. */
     private List<String> explanationsObservedPhenotypes = null;
     /**Explanations of the phenotype score for excluded HPOs. */
     private List<String> explanationsExcludedPhenotypes = null;
+    /** Structured explanations of the LRs of the observed HPOs, rendered to {@link #explanationsObservedPhenotypes} on demand. */
+    private List<LrWithExplanation> observedLrExplanations = null;
+    /** Structured explanations of the LRs of the excluded HPOs, rendered to {@link #explanationsExcludedPhenotypes} on demand. */
+    private List<LrWithExplanation> excludedLrExplanations = null;
+    /** Ontology used to render the structured explanations (term labels). */
+    private Ontology ontology = null;
 
     /**
-     * The constructor initializes the variables and calculates {@link #compositeLR}
+     * The constructor initializes the variables and calculates {@link #log10CompositeLR}
      *
      * @param reslist list of individual test results for observed phenotypes
      * @param excllist list of individual test results for excluded phenotypes
@@ -63,22 +82,7 @@ public class TestResult implements Comparable<TestResult> {
      * @param pretest pretest probability of the disease
      */
     public TestResult(List<Double> reslist, List<Double> excllist, HpoDisease disease, double pretest) {
-        this.results = reslist;
-        this.excludedResults=excllist;
-        this.hpoDisease = disease;
-        this.pretestProbability = pretest;
-        // the composite LR is the product of the individual LR's
-        double observed=reslist.stream().reduce(1.0, (a, b) -> a * b);
-        if (excludedResults.size()>0) {
-            double excluded = excludedResults.stream().reduce(1.0, (a, b) -> a * b);
-            this.compositeLR=observed*excluded;
-        } else {
-            this.compositeLR=observed;
-        }
-
-        this.genotypeLR=null;// result without genotype.
-        this.entrezGeneId=null;
-        this.posttestProbability=getPosttestProbability();
+        this(Doubles.toArray(reslist), Doubles.toArray(excllist), disease, pretest);
     }
 
     /**
@@ -91,34 +95,144 @@ public class TestResult implements Comparable<TestResult> {
      * @param pretest pretest probability of the disease
      */
     public TestResult(List<Double> reslist, List<Double> excllist, HpoDisease diseaseId, Double genotypeLr,TermId geneId,double pretest) {
-        this.results = reslist;
-        this.excludedResults=excllist;
-        this.hpoDisease = diseaseId;
+        this(Doubles.toArray(reslist), Doubles.toArray(excllist), diseaseId, genotypeLr, geneId, pretest);
+    }
+
+    /**
+     * The constructor initializes the variables and calculates {@link #log10CompositeLR}. The arrays are
+     * not copied and must not be changed by the caller.
+     *
+     * @param results individual test results for observed phenotypes
+     * @param excludedResults individual test results for excluded phenotypes
+     * @param disease name of the disease being tested
+     * @param pretest pretest probability of the disease
+     */
+    public TestResult(double[] results, double[] excludedResults, HpoDisease disease, double pretest) {
+        this.results = results;
+        this.excludedResults = excludedResults;
+        this.hpoDisease = disease;
+        this.pretestProbability = pretest;
+        // the composite LR is the product of the individual LR's
+        this.log10CompositeLR = sumOfLog10(results) + sumOfLog10(excludedResults);
+        this.genotypeLR=null;// result without genotype.
+        this.entrezGeneId=null;
+        this.log10PosttestOdds = Math.log10(pretestodds()) + getLog10CompositeLR();
+        this.posttestProbability = oddsToProbability(log10PosttestOdds);
+    }
+
+    /**
+     * This constructor should be used if we have a genotype for this gene/disease. The arrays are
+     * not copied and must not be changed by the caller.
+     * @param results individual test results for observed phenotypes
+     * @param excludedResults individual test results for excluded phenotypes
+     * @param disease name of the disease being tested
+     * @param genotypeLr LR result for the genotype
+     * @param geneId gene id of the gene being tested
+     * @param pretest pretest probability of the disease
+     */
+    public TestResult(double[] results, double[] excludedResults, HpoDisease disease, Double genotypeLr, TermId geneId, double pretest) {
+        this.results = results;
+        this.excludedResults = excludedResults;
+        this.hpoDisease = disease;
         this.pretestProbability = pretest;
         this.genotypeLR=genotypeLr;
         this.entrezGeneId=geneId;
         // the composite ratio is equal to the product of the phenotype LR's
         // multiplied by the genotype LR.
-        double observed=reslist.stream().reduce(1.0, (a, b) -> a * b);
-        if (excludedResults.size()>0) {
-            double excluded = excludedResults.stream().reduce(1.0, (a, b) -> a * b);
-            this.compositeLR=observed*excluded*genotypeLr;
-        } else {
-            this.compositeLR=observed*genotypeLr;
+        this.log10CompositeLR = sumOfLog10(results) + sumOfLog10(excludedResults) + Math.log10(genotypeLr);
+        this.log10PosttestOdds = Math.log10(pretestodds()) + getLog10CompositeLR();
+        this.posttestProbability = oddsToProbability(log10PosttestOdds);
+    }
+
+    private static double sumOfLog10(double[] ratios) {
+        double sum = 0.0;
+        for (double r : ratios) {
+            sum += Math.log10(r);
         }
-        posttestProbability=getPosttestProbability();
+        return sum;
     }
 
+    /**
+     * Calculate the log<sub>10</sub> post-test odds from sums of log<sub>10</sub> likelihood ratios in the same way
+     * (and with the same rounding) as the constructors. This is used to update the score of a disease without
+     * creating a new object when a phenotype is added to a case (see {@link EvaluationSession}).
+     * @param log10ObservedLR sum of the log<sub>10</sub> LRs of the observed phenotypes
+     * @param log10ExcludedLR sum of the log<sub>10</sub> LRs of the excluded phenotypes
+     * @param genotypeLr LR result for the genotype (null if there is none)
+     * @param pretest pretest probability of the disease
+     * @return the log<sub>10</sub> of the post-test odds
+     */
+    static double log10PosttestOdds(double log10ObservedLR, double log10ExcludedLR, Double genotypeLr, double pretest) {
+        return log10PosttestOddsFromPretestOdds(log10ObservedLR, log10ExcludedLR, genotypeLr, log10Odds(pretest));
+    }
 
+    /**
+     * Same as {@link #log10PosttestOdds(double, double, Double, double)} with the precomputed log<sub>10</sub>
+     * pretest odds of the disease (see {@link PretestProbabilityProvider#getLog10PretestOdds(TermId)}).
+     * @param log10ObservedLR sum of the log<sub>10</sub> LRs of the observed phenotypes
+     * @param log10ExcludedLR sum of the log<sub>10</sub> LRs of the excluded phenotypes
+     * @param genotypeLr LR result for the genotype (null if there is none)
+     * @param log10PretestOdds log<sub>10</sub> of the pretest odds of the disease
+     * @return the log<sub>10</sub> of the post-test odds
+     */
+    static double log10PosttestOddsFromPretestOdds(double log10ObservedLR, double log10ExcludedLR, Double genotypeLr,
+                                                   double log10PretestOdds) {
+        return log10PosttestOddsFromLog10GenotypeLr(log10ObservedLR, log10ExcludedLR,
+                genotypeLr != null ? Math.log10(genotypeLr) : Double.NaN, log10PretestOdds);
+    }
+
+    /**
+     * Same as {@link #log10PosttestOddsFromPretestOdds(double, double, Double, double)} with the log<sub>10</sub>
+     * of the genotype likelihood ratio (see {@link LogLrAccumulator#addGenotype(double[])}).
+     * @param log10ObservedLR sum of the log<sub>10</sub> LRs of the observed phenotypes
+     * @param log10ExcludedLR sum of the log<sub>10</sub> LRs of the excluded phenotypes
+     * @param log10GenotypeLr log<sub>10</sub> of the LR result for the genotype (NaN if there is none)
+     * @param log10PretestOdds log<sub>10</sub> of the pretest odds of the disease
+     * @return the log<sub>10</sub> of the post-test odds
+     */
+    static double log10PosttestOddsFromLog10GenotypeLr(double log10ObservedLR, double log10ExcludedLR,
+                                                       double log10GenotypeLr, double log10PretestOdds) {
+        double log10CompositeLR = !Double.isNaN(log10GenotypeLr) ?
+                log10GenotypeLr + (log10ObservedLR + log10ExcludedLR + log10GenotypeLr) :
+                log10ObservedLR + log10ExcludedLR;
+        return log10PretestOdds + log10CompositeLR;
+    }
+
+    /**
+     * @param probability a probability
+     * @return log<sub>10</sub> of the corresponding odds, computed in the same way as in the constructors
+     */
+    static double log10Odds(double probability) {
+        return Math.log10(probability / (1.0 - probability));
+    }
+
+    /**
+     * Convert log<sub>10</sub> odds to a probability, p = o/(1+o) = 1/(1+10<sup>-log10(o)</sup>). The
+     * second form cannot overflow: it tends to 1 for large odds and to 0 for small odds.
+     * @param log10Odds log<sub>10</sub> of the odds
+     * @return the corresponding probability
+     */
+    static double oddsToProbability(double log10Odds) {
+        return 1.0 / (1.0 + Math.pow(10.0, -log10Odds));
+    }
 
     /** @return the composite likelihood ratio (product of the LRs of the individual tests).*/
     public double getCompositeLR() {
-        return genotypeLR!=null ? genotypeLR*compositeLR : compositeLR;
+        return Math.pow(10.0, getLog10CompositeLR());
+    }
+
+    /**
+     * The composite likelihood ratio can be too large or too small to be represented as a double if there
+     * are many observed and excluded phenotypes, and this method should be preferred to {@link #getCompositeLR()}.
+     * @return the log<sub>10</sub> of the composite likelihood ratio.
+     */
+    public double getLog10CompositeLR() {
+        return genotypeLR!=null ? Math.log10(genotypeLR) + log10CompositeLR : log10CompositeLR;
     }
 
     /** @return the total count of tests performed (excluding genotype).*/
     public int getNumberOfTests() {
-        return results.size() + excludedResults.size();
+        return results.length + excludedResults.length;
     }
 
     /** @return the pretest odds.*/
@@ -128,18 +242,20 @@ public class TestResult implements Comparable<TestResult> {
 
     /** @return the post-test odds. */
     public double posttestodds() {
-        double pretestodds = pretestodds();
-        return pretestodds * getCompositeLR();
+        return Math.pow(10.0, log10PosttestOdds);
     }
 
+    /** @return the log<sub>10</sub> of the post-test odds. */
+    public double getLog10PosttestOdds() {
+        return log10PosttestOdds;
+    }
 
     public double getPretestProbability() {
         return pretestProbability;
     }
 
     public double getPosttestProbability() {
-        double po = posttestodds();
-        return po / (1 + po);
+        return posttestProbability;
     }
 
     public int getRank() {
@@ -151,19 +267,20 @@ public class TestResult implements Comparable<TestResult> {
     }
 
     /**
-     * Compare two TestResult objects based on their {@link #compositeLR} value.
+     * Compare two TestResult objects based on their post-test odds. We compare the log<sub>10</sub> odds rather
+     * than the post-test probability, because the latter is rounded to 1.0 for all results with very high odds.
      * @param other the "other" TestResult being compared.
      * @return comparison result
      */
     @Override
     public int compareTo(@SuppressWarnings("NullableProblems") TestResult other) {
-        return Double.compare(posttestProbability, other.posttestProbability);
+        return Double.compare(log10PosttestOdds, other.log10PosttestOdds);
     }
 
 
     @Override
     public String toString() {
-        String resultlist = results.stream().map(String::valueOf).collect(Collectors.joining(";"));
+        String resultlist = Arrays.stream(results).mapToObj(String::valueOf).collect(Collectors.joining(";"));
         String genoResult = hasGenotype() ? String.format("genotype LR: %.4f",this.genotypeLR) : "no genotype LR";
         return String.format("%s: %.2f [%s] %s", hpoDisease, getCompositeLR(), resultlist, genoResult);
     }
@@ -173,7 +290,7 @@ public class TestResult implements Comparable<TestResult> {
      * @return the likelihood ratio of the i'th test
      */
     public double getObservedPhenotypeRatio(int i) {
-        return this.results.get(i);
+        return this.results[i];
     }
 
     /**
@@ -181,7 +298,7 @@ public class TestResult implements Comparable<TestResult> {
      * @return the likelihood ratio of the i'th test
      */
     public double getExcludedPhenotypeRatio(int i) {
-        return this.excludedResults.get(i);
+        return this.excludedResults[i];
     }
 
     /** @return name of the disease being tested. */
@@ -201,30 +318,97 @@ public class TestResult implements Comparable<TestResult> {
         return entrezGeneId;
     }
 
-    public void setGenotypeExplanation(String text) { this.genotypeExplanation = this.genotypeExplanation + text; }
-    public String getGenotypeExplanation() { return this.genotypeExplanation; }
+    public void setGenotypeExplanation(String text) { this.genotypeExplanation = getGenotypeExplanation() + text; }
+
+    /**
+     * Store the explanation of the genotype likelihood ratio, which is only rendered if it is requested by
+     * {@link #getGenotypeExplanation()}.
+     * @param glrwe the genotype likelihood ratio of the gene that was used for this result
+     */
+    void setGenotypeExplanation(GenotypeLrWithExplanation glrwe) {
+        getGenotypeExplanation(); // render a pending explanation first to keep the order of the explanations
+        this.genotypeLrExplanation = glrwe;
+    }
+
+    public String getGenotypeExplanation() {
+        if (genotypeLrExplanation != null) {
+            genotypeExplanation = genotypeExplanation + genotypeLrExplanation.getExplanation();
+            genotypeLrExplanation = null;
+        }
+        return this.genotypeExplanation;
+    }
     //public void setPhenotypeExplanation(String text) { this.phenotypeExplanation=text;}
     public void setObservedPhenotypeExplanation(List<String> lst) { this.explanationsObservedPhenotypes = lst; }
     public void setExcludedPhenotypeExplanation(List<String> lst) { this.explanationsExcludedPhenotypes = lst; }
+
+    /**
+     * Store the explanations of the phenotype likelihood ratios as {@link LrWithExplanation} objects. The
+     * explanation strings are only created if they are requested by {@link #getObservedPhenotypeExplanation()}
+     * or {@link #getExcludedPhenotypeExplanation()}, which is typically the case for only a few of the diseases
+     * that are shown in the HTML output.
+     * @param observed explanations of the LRs of the observed HPOs
+     * @param excluded explanations of the LRs of the excluded HPOs
+     * @param ontology reference to HPO ontology, used to render the explanations
+     */
+    void setPhenotypeExplanations(List<LrWithExplanation> observed, List<LrWithExplanation> excluded, Ontology ontology) {
+        this.observedLrExplanations = observed;
+        this.excludedLrExplanations = excluded;
+        this.ontology = ontology;
+    }
+
+    /** @return explanations of the LRs of the observed HPOs (empty if there are none). */
+    public List<LrWithExplanation> getObservedLrExplanations() {
+        return observedLrExplanations == null ? ImmutableList.of() : observedLrExplanations;
+    }
+
+    /** @return explanations of the LRs of the excluded HPOs (empty if there are none). */
+    public List<LrWithExplanation> getExcludedLrExplanations() {
+        return excludedLrExplanations == null ? ImmutableList.of() : excludedLrExplanations;
+    }
+
     public List<String> getObservedPhenotypeExplanation() {
+        if (explanationsObservedPhenotypes == null && observedLrExplanations != null) {
+            explanationsObservedPhenotypes = renderExplanations(observedLrExplanations);
+        }
         return explanationsObservedPhenotypes == null ? new ArrayList<>() : explanationsObservedPhenotypes;
     }
     public List<String> getExcludedPhenotypeExplanation() {
+        if (explanationsExcludedPhenotypes == null && excludedLrExplanations != null) {
+            explanationsExcludedPhenotypes = renderExplanations(excludedLrExplanations);
+        }
         return explanationsExcludedPhenotypes == null ? new ArrayList<>() : explanationsExcludedPhenotypes;
     }
 
+    /**
+     * @param explanations explanations of the phenotype LRs
+     * @return escaped explanation strings, sorted in decreasing order of the likelihood ratio
+     */
+    private List<String> renderExplanations(List<LrWithExplanation> explanations) {
+        List<LrWithExplanation> sorted = new ArrayList<>(explanations);
+        sorted.sort(Collections.reverseOrder());
+        ImmutableList.Builder<String> builder = new ImmutableList.Builder<>();
+        for (LrWithExplanation lrwe : sorted) {
+            builder.add(lrwe.getEscapedExplanation(ontology));
+        }
+        return builder.build();
+    }
+
 
-    public boolean hasGenotypeExplanation() { return ! this.genotypeExplanation.isEmpty();}
+    public boolean hasGenotypeExplanation() { return ! getGenotypeExplanation().isEmpty();}
 
     /**
      * Calculate the maximum absolute value of any individual likelihood ratio. This is used to help layout the SVG
      * @return maximum abs(LR)
      */
     public double getMaximumIndividualLR() {
-        double m1 = this.results.stream().map(Math::abs).max(Comparator.comparing( Double::doubleValue )).orElse(0.0);
-        double m2 = this.excludedResults.stream().map(Math::abs).max(Comparator.comparing( Double::doubleValue )).orElse(0.0);
-        double m3 = this.genotypeLR != null ? Math.abs(this.genotypeLR) : 0.0;
-        return Math.max(m1, Math.max(m2, m3));
+        double max = this.genotypeLR != null ? Math.abs(this.genotypeLR) : 0.0;
+        for (double r : this.results) {
+            max = Math.max(max, Math.abs(r));
+        }
+        for (double r : this.excludedResults) {
+            max = Math.max(max, Math.abs(r));
+        }
+        return max;
     }
 
 
@@ -0,0 +1,46 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+/**
+ * Equal pretest probabilities of 1/N for all N diseases of the differential diagnosis. This is the default of
+ * {@link CaseEvaluator}. Since all diseases have the same value, the probability and its log odds are stored
+ * once rather than in an array.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class UniformPretestProbability implements PretestProbabilityProvider {
+    /** The pretest probability of each disease. */
+    private final double pretestProbability;
+    /** log<sub>10</sub> of the pretest odds of each disease. */
+    private final double log10PretestOdds;
+
+    /** @param nDiseases number of diseases of the differential diagnosis */
+    public UniformPretestProbability(int nDiseases) {
+        if (nDiseases < 1) {
+            throw new LiricalRuntimeException("[ERROR] Number of diseases must be at least 1 but was " + nDiseases);
+        }
+        this.pretestProbability = 1.0 / (double) nDiseases;
+        this.log10PretestOdds = TestResult.log10Odds(pretestProbability);
+    }
+
+    @Override
+    public double getPretestProbability(TermId diseaseId) {
+        return pretestProbability;
+    }
+
+    @Override
+    public double getLog10PretestOdds(TermId diseaseId) {
+        return log10PretestOdds;
+    }
+
+    @Override
+    public double getPretestProbability(int diseaseIdx) {
+        return pretestProbability;
+    }
+
+    @Override
+    public double getLog10PretestOdds(int diseaseIdx) {
+        return log10PretestOdds;
+    }
+}
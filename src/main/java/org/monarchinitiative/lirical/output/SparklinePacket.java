@@ -48,14 +48,14 @@ public class SparklinePacket {
                 TermId geneId = result.getEntrezGeneId();
                 geneSymbol = geneid2sym.getOrDefault(geneId, EMPTY_STRING);
             }
-            double compositeLR = result.getCompositeLR();
+            double log10CompositeLR = result.getLog10CompositeLR();
             double posttestProb = result.getPosttestProbability();
             String posttestSVG = sparkline2Svg.getPosttestBar(posttestProb);
             String sparkSVG = sparkline2Svg.getSparklineSvg(hcase, diseaseId, geneSymbol);
             String geneSparkSvg = sparkline2Svg.getGeneSparklineSvg(hcase, diseaseId, geneSymbol);
             String disname = prettifyDiseaseName(result.getDiseaseName());
             String diseaseAnchor = getDiseaseAnchor(diseaseId);
-            SparklinePacket sp = new SparklinePacket(rank, posttestSVG, sparkSVG, geneSparkSvg, compositeLR, geneSymbol, disname, diseaseAnchor);
+            SparklinePacket sp = new SparklinePacket(rank, posttestSVG, sparkSVG, geneSparkSvg, log10CompositeLR, geneSymbol, disname, diseaseAnchor);
             builder.add(sp);
         }
         return builder.build();
@@ -75,13 +75,13 @@ public class SparklinePacket {
             TestResult result = results.get(rank);
             rank++;
             TermId diseaseId = result.getDiseaseCurie();
-            double compositeLR = result.getCompositeLR();
+            double log10CompositeLR = result.getLog10CompositeLR();
             double posttestProb = result.getPosttestProbability();
             String posttestSVG = sparkline2Svg.getPosttestBar(posttestProb);
             String sparkSVG = sparkline2Svg.getSparklineSvg(hcase, diseaseId);
             String disname = prettifyDiseaseName(result.getDiseaseName());
             String diseaseAnchor = getDiseaseAnchor(diseaseId);
-            SparklinePacket sp = new SparklinePacket(rank, posttestSVG, sparkSVG, compositeLR, EMPTY_STRING, disname, diseaseAnchor);
+            SparklinePacket sp = new SparklinePacket(rank, posttestSVG, sparkSVG, log10CompositeLR, EMPTY_STRING, disname, diseaseAnchor);
             builder.add(sp);
         }
         return builder.build();
@@ -122,23 +122,23 @@ public class SparklinePacket {
 
 
 
-    private SparklinePacket(int rank, String posttest, String spark, double compLR, String sym, String disname, String diseaseAnchor){
+    private SparklinePacket(int rank, String posttest, String spark, double log10CompLR, String sym, String disname, String diseaseAnchor){
         this.rank = rank;
         this.posttestBarSvg = posttest;
         this.sparklineSvg = spark;
         this.geneSparklineSvg = EMPTY_STRING;
-        this.compositeLikelihoodRatio = Math.log10(compLR);
+        this.compositeLikelihoodRatio = log10CompLR;
         this.geneSymbol = sym;
         this.diseaseName = disname;
         this.diseaseAnchor = diseaseAnchor;
     }
 
-    private SparklinePacket(int rank, String posttest, String spark, String geneSpark, double compLR, String sym, String disname, String diseaseAnchor){
+    private SparklinePacket(int rank, String posttest, String spark, String geneSpark, double log10CompLR, String sym, String disname, String diseaseAnchor){
         this.rank = rank;
         this.posttestBarSvg = posttest;
         this.sparklineSvg = spark;
         this.geneSparklineSvg = geneSpark;
-        this.compositeLikelihoodRatio = Math.log10(compLR);
+        this.compositeLikelihoodRatio = log10CompLR;
         this.geneSymbol = sym;
         this.diseaseName = disname;
         this.diseaseAnchor = diseaseAnchor;
@@ -0,0 +1,54 @@
+package org.monarchinitiative.lirical.poisson;
+
+/**
+ * A {@link PoissonDistribution} that remembers the log probabilities it has calculated. The observed counts are
+ * quantised to a grid with {@link #RESOLUTION} cells per unit between 0 and {@link #MAX_COUNT}, and each cell holds
+ * the last count that fell into it together with its log probability. A lookup returns the stored value only if
+ * the stored count is identical to the query count; otherwise (and for counts beyond the grid) the probability is
+ * calculated exactly and stored. The results are therefore identical to those of {@link PoissonDistribution}, but
+ * the saddle point expansion (with its log-gamma evaluation) is only calculated once for a count that is queried
+ * repeatedly, e.g., for the weighted count of pathogenic variants of a gene that is associated with many diseases.
+ * <p>
+ * The cells hold immutable entries, and so a table can be shared by several threads without locking (a thread may
+ * occasionally calculate a value that was calculated concurrently by another thread).
+ * </p>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class PoissonProbabilityTable extends PoissonDistribution {
+    /** Number of grid cells per unit of the observed count. */
+    static final int RESOLUTION = 16;
+    /** Counts above this value are not stored. */
+    static final int MAX_COUNT = 8;
+
+    private final Entry[] grid = new Entry[RESOLUTION * MAX_COUNT + 1];
+
+    /** An observed count and its log probability. */
+    private static class Entry {
+        private final double x;
+        private final double logProbability;
+
+        private Entry(double x, double logProbability) {
+            this.x = x;
+            this.logProbability = logProbability;
+        }
+    }
+
+    public PoissonProbabilityTable(double m) {
+        super(m);
+    }
+
+    @Override
+    public double logProbability(double x) {
+        if (!(x >= 0.0 && x <= MAX_COUNT)) {
+            return super.logProbability(x);
+        }
+        int cell = (int) (x * RESOLUTION);
+        Entry entry = grid[cell];
+        if (entry != null && entry.x == x) {
+            return entry.logProbability;
+        }
+        double logProbability = super.logProbability(x);
+        grid[cell] = new Entry(x, logProbability);
+        return logProbability;
+    }
+}
@@ -2,6 +2,7 @@ package org.monarchinitiative.lirical.simulation;
 
 
 import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.likelihoodratio.BackgroundFrequencyTable;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
 import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
@@ -67,9 +68,11 @@ public class GridSearch  {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outfilename))) {
             Z = new double[termnumber.length][randomtermnumber.length];
             PhenotypeOnlyHpoCaseSimulator simulator;
+            // the background frequencies do not depend on the simulation parameters
+            BackgroundFrequencyTable backgroundFrequencies = BackgroundFrequencyTable.compute(ontology, diseaseMap);
             for (int i = 0; i < termnumber.length; i++) {
                 for (int j = 0; j < randomtermnumber.length; j++) {
-                    simulator = new PhenotypeOnlyHpoCaseSimulator( ontology,diseaseMap,n_cases_to_simulate_per_run, termnumber[i], randomtermnumber[j], useImprecision);
+                    simulator = new PhenotypeOnlyHpoCaseSimulator( ontology,diseaseMap,n_cases_to_simulate_per_run, termnumber[i], randomtermnumber[j], useImprecision, backgroundFrequencies);
                     simulator.setVerbosity(false); // reduce output!
                     simulator.simulateCases();
                     Z[i][j] = simulator.getProportionAtRank1();
@@ -183,7 +183,8 @@ public class PhenoGenoCaseSimulator {
 
 
         GenotypeLikelihoodRatio genoLr = factory.getGenotypeLR();
-        PhenotypeLikelihoodRatio phenoLr =  new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+        PhenotypeLikelihoodRatio phenoLr =  new PhenotypeLikelihoodRatio(ontology, diseaseMap, null, 0,
+                factory.backgroundFrequencyTable(ontology, diseaseMap));
 
 
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(hpoIdList)
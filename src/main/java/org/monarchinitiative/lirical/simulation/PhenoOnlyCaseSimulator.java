@@ -75,7 +75,8 @@ public class PhenoOnlyCaseSimulator {
 
 
     public void run(){
-        PhenotypeLikelihoodRatio phenoLr =  new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+        PhenotypeLikelihoodRatio phenoLr =  new PhenotypeLikelihoodRatio(ontology, diseaseMap, null, 0,
+                factory.backgroundFrequencyTable(ontology, diseaseMap));
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(hpoIdList)
                 .ontology(ontology)
                 .negated(negatedHpoIdList)
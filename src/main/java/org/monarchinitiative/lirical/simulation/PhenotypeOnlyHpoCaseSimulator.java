@@ -4,6 +4,7 @@ package org.monarchinitiative.lirical.simulation;
 import com.google.common.collect.ImmutableList;
 import org.monarchinitiative.lirical.exception.LiricalException;
 import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.lirical.likelihoodratio.BackgroundFrequencyTable;
 import org.monarchinitiative.lirical.likelihoodratio.CaseEvaluator;
 import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLikelihoodRatio;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
@@ -67,12 +68,33 @@ public class PhenotypeOnlyHpoCaseSimulator {
                                          int cases_to_simulate,
                                          int terms_per_case,
                                          int noise_terms ) {
+        this(ontology,diseaseMap,cases_to_simulate,terms_per_case,noise_terms,false,null);
+    }
+
+    /**
+     * @param ontology reference to HPO Ontology object
+     * @param diseaseMap Map containing (usuallu) all diseases in the corpus
+     * @param cases_to_simulate Number of individual simulations to perform
+     * @param terms_per_case Number of HPO terms per case
+     * @param noise_terms Number of "noise" (random, unrelated) terms to add per case
+     * @param imprecise Whether or not to use imprecision
+     * @param backgroundFrequencies background frequencies of the HPO terms shared by several simulators
+     *                              (null: calculate them for this simulator)
+     */
+    public PhenotypeOnlyHpoCaseSimulator(Ontology ontology,
+                                         Map<TermId,HpoDisease> diseaseMap,
+                                         int cases_to_simulate,
+                                         int terms_per_case,
+                                         int noise_terms,
+                                         boolean imprecise,
+                                         BackgroundFrequencyTable backgroundFrequencies) {
         this.n_cases_to_simulate=cases_to_simulate;
         this.n_terms_per_case=terms_per_case;
         this.n_noise_terms=noise_terms;
         this.ontology=ontology;
         this.diseaseMap=diseaseMap;
-        this.phenotypeLrEvaluator = new PhenotypeLikelihoodRatio(ontology,diseaseMap);
+        this.addTermImprecision=imprecise;
+        this.phenotypeLrEvaluator = new PhenotypeLikelihoodRatio(ontology,diseaseMap,null,0,backgroundFrequencies);
         Set<TermId> descendents=getDescendents(ontology,PHENOTYPIC_ABNORMALITY);
         ImmutableList.Builder<TermId> builder = new ImmutableList.Builder<>();
         for (TermId t: descendents) {
@@ -96,8 +118,7 @@ public class PhenotypeOnlyHpoCaseSimulator {
                                          int terms_per_case,
                                          int noise_terms,
                                          boolean imprecise ) {
-        this(ontology,diseaseMap,cases_to_simulate,terms_per_case,noise_terms);
-        this.addTermImprecision=imprecise;
+        this(ontology,diseaseMap,cases_to_simulate,terms_per_case,noise_terms,imprecise,null);
     }
 
 
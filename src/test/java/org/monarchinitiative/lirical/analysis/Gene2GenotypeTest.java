@@ -6,6 +6,8 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.monarchinitiative.exomiser.core.model.TranscriptAnnotation;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.vcf.SimpleVariant;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 
 
@@ -13,6 +15,8 @@ import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 import static org.monarchinitiative.lirical.analysis.Gene2Genotype.NO_IDENTIFIED_VARIANT;
@@ -151,6 +155,42 @@ class Gene2GenotypeTest {
     }
 
 
+    /** The counts are updated when a variant is added, and the variants are sorted once when they are requested. */
+    @Test
+    void testCountsAndSortedVariants() {
+        Gene2Genotype g2g = new Gene2Genotype(TermId.of("NCBIGene:7273"), "TTN");
+        List<TranscriptAnnotation> emptyList = ImmutableList.of();
+        float[] pathscores = {0.2f, 1.0f, 0.9f, 1.0f, 0.85f, 0.0f};
+        String[] genotypes = {"0/1", "1/1", "0/1", "0/1", "1/1", "0/1"};
+        for (int i = 0; i < pathscores.length; i++) {
+            ClinVarData.ClinSig clinsig = i == 3 ? ClinVarData.ClinSig.PATHOGENIC : ClinVarData.ClinSig.NOT_PROVIDED;
+            g2g.addVariant(2, 179390716 + i, "A", "G", emptyList, genotypes[i], pathscores[i], 0.0f, clinsig);
+        }
+        List<SimpleVariant> variants = g2g.freeze().getVarList();
+        assertEquals(pathscores.length, variants.size());
+        for (int i = 1; i < variants.size(); i++) {
+            assertTrue(variants.get(i - 1).getPathogenicityScore() >= variants.get(i).getPathogenicityScore());
+        }
+        assertEquals(variants.stream().anyMatch(SimpleVariant::isInPathogenicBin), g2g.hasPredictedPathogenicVar());
+        assertEquals(variants.stream().anyMatch(SimpleVariant::isClinVarPathogenic), g2g.hasPathogenicClinvarVar());
+        assertEquals(variants.stream().mapToInt(SimpleVariant::pathogenicAlleleCount).sum(), g2g.pathogenicAlleleCount());
+        assertEquals(variants.stream().mapToInt(SimpleVariant::pathogenicClinVarAlleleCount).sum(), g2g.pathogenicClinVarCount());
+        assertEquals(1, g2g.pathogenicClinVarCount());
+    }
+
+    @Test
+    void testFrozenGenotypeIsImmutable() {
+        Gene2Genotype g2g = new Gene2Genotype(TermId.of("NCBIGene:4893"), "NRAS");
+        List<TranscriptAnnotation> emptyList = ImmutableList.of();
+        g2g.addVariant(1,114713908, "A","G",emptyList,"0/1",1.0f,0.0f, ClinVarData.ClinSig.NOT_PROVIDED);
+        assertFalse(g2g.isFrozen());
+        assertSame(g2g, g2g.freeze());
+        assertTrue(g2g.isFrozen());
+        assertThrows(LiricalRuntimeException.class, () -> g2g.addVariant(1,114713909, "A","G",emptyList,"0/1",1.0f,0.0f, ClinVarData.ClinSig.NOT_PROVIDED));
+        assertThrows(UnsupportedOperationException.class, () -> g2g.getVarList().clear());
+        assertTrue(NO_IDENTIFIED_VARIANT.isFrozen());
+    }
+
     @Test
     void testToString() {
         // return String.format("%s[%s]: %s",this.symbol,this.geneId.getValue(),varString);
@@ -0,0 +1,163 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.vcf.SimpleVariant;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests that the annotation of a VCF file with several threads gives the same genotypes, in the same order, as the
+ * serial annotation. The variants are annotated with a fake annotator that derives the gene from the position,
+ * because the tests do not have Jannovar transcripts and an Exomiser database.
+ */
+class Vcf2GenotypeMapTest {
+
+    /** Enough records for the reader to fill the queue of batches of two worker threads. */
+    private static final int N_RECORDS = 12_000;
+
+    @TempDir
+    static Path tempDir;
+
+    private static String vcfPath;
+
+    /**
+     * Write a VCF file with one sample. Every fifth record has two alternate alleles and every eleventh record does
+     * not pass the quality filter.
+     */
+    @BeforeAll
+    static void init() throws IOException {
+        Path vcf = tempDir.resolve("sample.vcf");
+        String[] genotypes = {"0/1", "1/1", "0/0", "./.", "0/1"};
+        Random random = new Random(42);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(vcf))) {
+            writer.println("##fileformat=VCFv4.2");
+            writer.println("##FILTER=<ID=LowQ,Description=\"Low quality\">");
+            writer.println("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+            writer.println("##contig=<ID=1>");
+            writer.println("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tsample1");
+            for (int i = 1; i <= N_RECORDS; i++) {
+                boolean multiAllelic = i % 5 == 0;
+                writer.println(String.join("\t", "1", String.valueOf(3 * i), ".", "A",
+                        multiAllelic ? "G,T" : "G", "50", i % 11 == 0 ? "LowQ" : "PASS", ".", "GT",
+                        multiAllelic ? "1/2" : genotypes[random.nextInt(genotypes.length)]));
+            }
+        }
+        vcfPath = vcf.toString();
+    }
+
+    /**
+     * Annotates a variant with one of 50 genes according to its position. One gene has a symbol but no gene id.
+     */
+    private static class FakeAnnotator implements Vcf2GenotypeMap.RecordAnnotator {
+        @Override
+        public void annotate(VariantContext vc, List<Vcf2GenotypeMap.AnnotatedAllele> alleles) {
+            int pos = vc.getStart();
+            int gene = pos % 50;
+            String symbol = "GENE" + gene;
+            if (gene == 0) {
+                alleles.add(Vcf2GenotypeMap.AnnotatedAllele.withoutGeneId(symbol));
+                return;
+            }
+            TermId geneId = TermId.of("NCBIGene", String.valueOf(1000 + gene));
+            String genotypeString = genotypeString(vc);
+            for (Allele allele : vc.getAlternateAlleles()) {
+                if (genotypeString.equals("0/0") || genotypeString.equals("./.")) {
+                    alleles.add(Vcf2GenotypeMap.AnnotatedAllele.withoutVariant(geneId, symbol));
+                    continue;
+                }
+                alleles.add(new Vcf2GenotypeMap.AnnotatedAllele(geneId, symbol, true, 1, pos,
+                        vc.getReference().getBaseString(), allele.getBaseString(), ImmutableList.of(), genotypeString,
+                        (pos % 100) / 100f, 0.0001f, ClinVarData.ClinSig.NOT_PROVIDED));
+            }
+        }
+    }
+
+    /**
+     * @return the genotype of the sample with allele indices, e.g., 0/1
+     */
+    private static String genotypeString(VariantContext vc) {
+        List<String> indices = new ArrayList<>();
+        for (Allele allele : vc.getGenotype(0).getAlleles()) {
+            indices.add(allele.isNoCall() ? "." : String.valueOf(vc.getAlleleIndex(allele)));
+        }
+        return String.join("/", indices);
+    }
+
+    /**
+     * @return the genes, variants and counts of the annotated VCF file as a string
+     */
+    private static String annotate(int threads) {
+        Vcf2GenotypeMap vcf2geno = new Vcf2GenotypeMap(vcfPath, FakeAnnotator::new, new HashMap<>(), threads);
+        Map<TermId, Gene2Genotype> genotypeMap = new TreeMap<>(vcf2geno.vcf2genotypeMap());
+        StringBuilder sb = new StringBuilder();
+        for (Gene2Genotype g2g : genotypeMap.values()) {
+            sb.append(g2g.getGeneId()).append(' ').append(g2g.getSymbol()).append(' ')
+                    .append(g2g.getSumOfPathBinScores()).append('\n');
+            for (SimpleVariant variant : g2g.getVarList()) {
+                sb.append(variant.getPosition()).append(variant.getAlt()).append(' ').append(variant.getGtype())
+                        .append(' ').append(variant.getPathogenicityScore()).append('\n');
+            }
+        }
+        sb.append(vcf2geno.getN_good_quality_variants()).append(' ').append(vcf2geno.getN_filtered_variants())
+                .append(' ').append(new TreeSet<>(vcf2geno.getSymbolsWithoutGeneIds()));
+        return sb.toString();
+    }
+
+    @Test
+    void testParallelAnnotationGivesSameGenotypeMap() {
+        String serial = annotate(1);
+        assertEquals(serial, annotate(2));
+        assertEquals(serial, annotate(4));
+    }
+
+    @Test
+    void testCounts() {
+        Vcf2GenotypeMap vcf2geno = new Vcf2GenotypeMap(vcfPath, FakeAnnotator::new, new HashMap<>(), 4);
+        Map<TermId, Gene2Genotype> genotypeMap = vcf2geno.vcf2genotypeMap();
+        assertEquals(N_RECORDS / 11, vcf2geno.getN_filtered_variants());
+        assertEquals(N_RECORDS - N_RECORDS / 11, vcf2geno.getN_good_quality_variants());
+        assertEquals(49, genotypeMap.size());
+        assertEquals(Collections.singleton("GENE0"), vcf2geno.getSymbolsWithoutGeneIds());
+    }
+
+    /**
+     * If a worker fails, the annotation fails, and the reader thread stops even if the queue of batches is full.
+     */
+    @Test
+    void testFailedAnnotationStopsReader() throws InterruptedException {
+        Vcf2GenotypeMap vcf2geno = new Vcf2GenotypeMap(vcfPath, () -> (vc, alleles) -> {
+            if (vc.getStart() == 3) {
+                try {
+                    // let the reader fill the queue
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("bad record");
+            }
+        }, new HashMap<>(), 2);
+        assertThrows(LiricalRuntimeException.class, vcf2geno::vcf2genotypeMap);
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("vcf-reader-")) {
+                thread.join(10_000);
+                assertFalse(thread.isAlive());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm.getAncestorTerms;
+
+/**
+ * Check that the background frequencies of the terms of hp.small.obo in the diseases of small.hpoa are identical
+ * to the ones calculated term by term from the ontology, and that the table can be written and loaded again.
+ */
+class BackgroundFrequencyTableTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static BackgroundFrequencyTable table;
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        table = BackgroundFrequencyTable.compute(ontology, diseaseMap);
+    }
+
+    /** The background frequencies calculated with a map of term ids, one disease after the other. */
+    private static Map<TermId, Double> expectedFrequencies() {
+        Map<TermId, Double> mp = new HashMap<>();
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            mp.put(tid, 0.0);
+        }
+        for (TermId tid : ontology.getGraph().vertexSet()) {
+            mp.put(tid, 0.0);
+        }
+        for (HpoDisease dis : diseaseMap.values()) {
+            Map<TermId, Double> updateMap = new HashMap<>();
+            for (HpoAnnotation annotation : dis.getPhenotypicAbnormalities()) {
+                TermId tid = ontology.getPrimaryTermId(annotation.getTermId());
+                for (TermId at : getAncestorTerms(ontology, tid, true)) {
+                    updateMap.merge(at, annotation.getFrequency(), Math::max);
+                }
+            }
+            for (Map.Entry<TermId, Double> e : updateMap.entrySet()) {
+                mp.merge(e.getKey(), e.getValue(), Double::sum);
+            }
+        }
+        Map<TermId, Double> frequencies = new HashMap<>();
+        for (Map.Entry<TermId, Double> e : mp.entrySet()) {
+            frequencies.put(e.getKey(), e.getValue() / diseaseMap.size());
+        }
+        return frequencies;
+    }
+
+    @Test
+    void testFrequenciesMatchCalculation() {
+        Map<TermId, Double> expected = expectedFrequencies();
+        // the terms of the ontology plus the parent terms that are referenced but not defined in hp.small.obo
+        assertEquals(expected.size(), table.size());
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            assertTrue(table.contains(tid));
+            assertEquals(expected.get(tid), table.getOrDefault(tid, -1.0), 1e-12);
+        }
+    }
+
+    @Test
+    void testDedicatedPoolGivesSameFrequencies() throws LiricalException {
+        BackgroundFrequencyTable parallel = BackgroundFrequencyTable.compute(ontology, diseaseMap, 3);
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            assertEquals(table.getOrDefault(tid, -1.0), parallel.getOrDefault(tid, -1.0));
+        }
+    }
+
+    @Test
+    void testWriteAndLoad() throws LiricalException {
+        String path = tempDir.resolve("background.bin").toString();
+        table.write(path);
+        BackgroundFrequencyTable loaded = BackgroundFrequencyTable.load(path, ontology, diseaseMap);
+        assertTrue(loaded.isCompatible(ontology, diseaseMap));
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            assertEquals(table.getOrDefault(tid, -1.0), loaded.getOrDefault(tid, -1.0));
+        }
+    }
+
+    @Test
+    void testLoadWithDifferentDiseasesFails() throws LiricalException {
+        String path = tempDir.resolve("background2.bin").toString();
+        table.write(path);
+        Map<TermId, HpoDisease> otherMap = new LinkedHashMap<>(diseaseMap);
+        otherMap.remove(otherMap.keySet().iterator().next());
+        assertFalse(table.isCompatible(ontology, otherMap));
+        assertThrows(LiricalException.class, () -> BackgroundFrequencyTable.load(path, ontology, otherMap));
+    }
+
+    @Test
+    void testLoadWithDifferentAnnotationsFails() throws LiricalException {
+        String path = tempDir.resolve("background3.bin").toString();
+        table.write(path);
+        TermId diseaseId = diseaseMap.keySet().iterator().next();
+        HpoDisease disease = diseaseMap.get(diseaseId);
+        List<HpoAnnotation> annotations = new ArrayList<>(disease.getPhenotypicAbnormalities());
+        annotations.remove(0);
+        HpoDisease changed = new HpoDisease(disease.getName(), diseaseId, annotations, disease.getModesOfInheritance(),
+                disease.getNegativeAnnotations(), disease.getClinicalModifiers(), disease.getClinicalCourseList());
+        Map<TermId, HpoDisease> otherMap = new LinkedHashMap<>(diseaseMap);
+        otherMap.put(diseaseId, changed);
+        // same disease ids in the same order, but one annotation less
+        assertTrue(table.isCompatible(ontology, otherMap));
+        assertThrows(LiricalException.class, () -> BackgroundFrequencyTable.load(path, ontology, otherMap));
+    }
+
+    @Test
+    void testSharedTable() {
+        PhenotypeLikelihoodRatio own = new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+        PhenotypeLikelihoodRatio shared = new PhenotypeLikelihoodRatio(ontology, diseaseMap, null, 0, own.getBackgroundFrequencies());
+        assertSame(own.getBackgroundFrequencies(), shared.getBackgroundFrequencies());
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            assertEquals(own.getBackgroundFrequency(tid), shared.getBackgroundFrequency(tid));
+        }
+    }
+}
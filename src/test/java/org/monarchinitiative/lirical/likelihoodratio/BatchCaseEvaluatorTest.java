@@ -0,0 +1,108 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.monarchinitiative.lirical.likelihoodratio.CaseAssertions.assertSameResults;
+
+/**
+ * Check that the disease-major evaluation of three cases (one of them with top K, one with pruning) gives the
+ * same results as evaluating each case on its own, with one or two threads and with chunks of one or two cases.
+ */
+class BatchCaseEvaluatorTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    /** Uses an LR matrix, which is needed for pruning. */
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+
+    private static final List<List<TermId>> OBSERVED = ImmutableList.of(
+            ImmutableList.of(TermId.of("HP:0000047"), TermId.of("HP:0000028"), TermId.of("HP:0000185")),
+            ImmutableList.of(TermId.of("HP:0000028")),
+            ImmutableList.of(TermId.of("HP:0000047"), TermId.of("HP:0000369")));
+
+    private static final List<List<TermId>> EXCLUDED = ImmutableList.of(
+            ImmutableList.of(TermId.of("HP:0000369")),
+            ImmutableList.of(),
+            ImmutableList.of(TermId.of("HP:0000185")));
+
+    @BeforeAll
+    static void setup() throws LiricalException {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = new PhenotypeLikelihoodRatio(ontology, diseaseMap, SmallHpoData.lrMatrix(tempDir));
+    }
+
+    private CaseEvaluator.Builder builder(int c) {
+        return new CaseEvaluator.Builder(OBSERVED.get(c))
+                .negated(EXCLUDED.get(c))
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator);
+    }
+
+    private List<CaseEvaluator> evaluators() {
+        return ImmutableList.of(builder(0).buildPhenotypeOnlyEvaluator(),
+                builder(1).topK(2).buildPhenotypeOnlyEvaluator(),
+                builder(2).topK(1).pruning(true).buildPhenotypeOnlyEvaluator());
+    }
+
+    /** Same results and, for the cases with top K, the same ranks of the diseases that are not in the top K. */
+    private void assertSameCase(HpoCase expected, HpoCase actual) {
+        assertSameResults(expected, actual);
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(expected.getRank(diseaseId), actual.getRank(diseaseId));
+        }
+    }
+
+    @Test
+    void testBatchGivesSameResults() {
+        List<CaseEvaluator> single = evaluators();
+        for (int threads = 1; threads <= 2; threads++) {
+            List<HpoCase> batch = new BatchCaseEvaluator(evaluators(), threads).evaluate();
+            assertEquals(single.size(), batch.size());
+            for (int c = 0; c < single.size(); c++) {
+                assertSameCase(single.get(c).evaluate(), batch.get(c));
+            }
+        }
+    }
+
+    @Test
+    void testChunksGiveSameResults() {
+        List<CaseEvaluator> single = evaluators();
+        for (int chunkSize = 1; chunkSize <= 2; chunkSize++) {
+            List<HpoCase> batch = new BatchCaseEvaluator(evaluators(), 2, chunkSize).evaluate();
+            assertEquals(single.size(), batch.size());
+            for (int c = 0; c < single.size(); c++) {
+                assertSameCase(single.get(c).evaluate(), batch.get(c));
+            }
+        }
+        assertThrows(LiricalRuntimeException.class, () -> new BatchCaseEvaluator(evaluators(), 1, 0));
+    }
+
+    @Test
+    void testDifferentDiseaseMapsAreRejected() {
+        PhenotypeLikelihoodRatio other = new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+        List<CaseEvaluator> evaluators = ImmutableList.of(builder(0).buildPhenotypeOnlyEvaluator(),
+                builder(1).phenotypeLr(other).buildPhenotypeOnlyEvaluator());
+        assertThrows(LiricalRuntimeException.class, () -> new BatchCaseEvaluator(evaluators, 1));
+    }
+}
@@ -0,0 +1,41 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.monarchinitiative.lirical.hpo.HpoCase;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Assertions shared by the tests that compare a case evaluated in some optimized way (in parallel, in a batch,
+ * incrementally, ...) with the same case evaluated by a plain {@link CaseEvaluator}.
+ */
+final class CaseAssertions {
+
+    private CaseAssertions() {
+    }
+
+    /**
+     * Assert that two results are for the same disease and have the same rank, post-test probability and
+     * explanations.
+     */
+    static void assertSameResult(TestResult expected, TestResult actual) {
+        assertEquals(expected.getDiseaseCurie(), actual.getDiseaseCurie());
+        assertEquals(expected.getRank(), actual.getRank());
+        assertEquals(expected.getPosttestProbability(), actual.getPosttestProbability());
+        assertEquals(expected.getObservedPhenotypeExplanation(), actual.getObservedPhenotypeExplanation());
+        assertEquals(expected.getExcludedPhenotypeExplanation(), actual.getExcludedPhenotypeExplanation());
+    }
+
+    /**
+     * Assert that two cases have the same results in the same order (see {@link #assertSameResult}).
+     */
+    static void assertSameResults(HpoCase expected, HpoCase actual) {
+        List<TestResult> expectedResults = expected.getResults();
+        List<TestResult> actualResults = actual.getResults();
+        assertEquals(expectedResults.size(), actualResults.size());
+        for (int i = 0; i < expectedResults.size(); i++) {
+            assertSameResult(expectedResults.get(i), actualResults.get(i));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.monarchinitiative.lirical.likelihoodratio.CaseAssertions.assertSameResult;
+import static org.monarchinitiative.lirical.likelihoodratio.CaseAssertions.assertSameResults;
+
+/**
+ * Check that the parallel evaluation of the diseases (with its own threads, an external pool or a row cache) gives
+ * the same results as the serial evaluation, and that the top K and pruned evaluations give the same best diseases
+ * as the full evaluation.
+ */
+class CaseEvaluatorTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+    /** Uses an LR matrix, which is needed for pruning. */
+    private static PhenotypeLikelihoodRatio matrixLrCalculator;
+
+    private static final List<TermId> OBSERVED = ImmutableList.of(TermId.of("HP:0000047"),
+            TermId.of("HP:0000028"),
+            TermId.of("HP:0000185"));
+
+    private static final List<TermId> EXCLUDED = ImmutableList.of(TermId.of("HP:0000369"));
+
+    @BeforeAll
+    static void setup() throws LiricalException {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = SmallHpoData.phenotypeLr();
+        matrixLrCalculator = new PhenotypeLikelihoodRatio(ontology, diseaseMap, SmallHpoData.lrMatrix(tempDir));
+    }
+
+    private CaseEvaluator.Builder builder() {
+        return new CaseEvaluator.Builder(OBSERVED)
+                .negated(EXCLUDED)
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator);
+    }
+
+    @Test
+    void testSerialEvaluation() {
+        HpoCase hcase = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        assertEquals(3, hcase.getResults().size());
+        for (TestResult result : hcase.getResults()) {
+            assertEquals(OBSERVED.size(), result.getObservedPhenotypeExplanation().size());
+            assertEquals(EXCLUDED.size(), result.getExcludedPhenotypeExplanation().size());
+        }
+    }
+
+    /**
+     * The explanations are stored as {@link LrWithExplanation} objects and rendered in decreasing order of the LR.
+     */
+    @Test
+    void testDeferredExplanations() {
+        HpoCase hcase = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        for (TestResult result : hcase.getResults()) {
+            List<LrWithExplanation> records = result.getObservedLrExplanations();
+            assertEquals(OBSERVED.size(), records.size());
+            List<String> rendered = result.getObservedPhenotypeExplanation();
+            double maxLr = records.stream().mapToDouble(LrWithExplanation::getLR).max().orElse(0.0);
+            LrWithExplanation best = records.stream().filter(r -> r.getLR() == maxLr).findFirst().orElseThrow(IllegalStateException::new);
+            assertEquals(best.getEscapedExplanation(ontology), rendered.get(0));
+            // the rendered explanations are created only once
+            assertSame(rendered, result.getObservedPhenotypeExplanation());
+        }
+    }
+
+    @Test
+    void testParallelEvaluationGivesSameResults() {
+        HpoCase serial = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        HpoCase parallel = builder().threads(4).buildPhenotypeOnlyEvaluator().evaluate();
+        assertSameResults(serial, parallel);
+    }
+
+    @Test
+    void testEvaluationWithExternalPool() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            HpoCase serial = builder().buildPhenotypeOnlyEvaluator().evaluate();
+            HpoCase parallel = builder().forkJoinPool(pool).buildPhenotypeOnlyEvaluator().evaluate();
+            assertSameResults(serial, parallel);
+            // the evaluator must not shut down a pool that was provided by the caller
+            assertFalse(pool.isShutdown());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testEvaluationWithRowCache() {
+        PhenotypeLikelihoodRatio cachingLrCalculator = new PhenotypeLikelihoodRatio(ontology, diseaseMap, null, 10);
+        HpoCase serial = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        for (int i = 0; i < 2; i++) {
+            HpoCase cached = builder().phenotypeLr(cachingLrCalculator).threads(2).buildPhenotypeOnlyEvaluator().evaluate();
+            assertSameResults(serial, cached);
+        }
+        PhenotypeLrRowCache cache = cachingLrCalculator.getRowCache().orElseThrow(IllegalStateException::new);
+        assertEquals(OBSERVED.size(), cache.getMissCount());
+        assertEquals(OBSERVED.size(), cache.getHitCount());
+    }
+
+    @Test
+    void testTopKEvaluation() {
+        HpoCase full = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        HpoCase top = builder().topK(2).threads(2).buildPhenotypeOnlyEvaluator().evaluate();
+        List<TestResult> fullResults = full.getResults();
+        List<TestResult> topResults = top.getResults();
+        assertEquals(2, topResults.size());
+        for (int i = 0; i < topResults.size(); i++) {
+            assertSameResult(fullResults.get(i), topResults.get(i));
+        }
+        // the diseases that are not in the top K still have a rank and a post-test probability
+        for (TestResult e : fullResults) {
+            TermId diseaseId = e.getDiseaseCurie();
+            assertEquals(full.getRank(diseaseId), top.getRank(diseaseId));
+            assertEquals(full.getPosttestProbability(diseaseId), top.getPosttestProbability(diseaseId), 1e-12);
+        }
+        assertEquals(full.getRankOfUnrankedDisease(), top.getRankOfUnrankedDisease());
+    }
+
+    /**
+     * With pruning, the best K diseases must be identical to the best K diseases of the full evaluation.
+     */
+    @Test
+    void testPruningGivesSameTopK() {
+        HpoCase full = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        for (int threads = 1; threads <= 2; threads++) {
+            for (int k = 1; k <= 3; k++) {
+                HpoCase pruned = builder().phenotypeLr(matrixLrCalculator).threads(threads).topK(k).pruning(true)
+                        .buildPhenotypeOnlyEvaluator().evaluate();
+                List<TestResult> prunedResults = pruned.getResults();
+                assertEquals(k, prunedResults.size());
+                for (int i = 0; i < k; i++) {
+                    assertSameResult(full.getResults().get(i), prunedResults.get(i));
+                    TermId diseaseId = prunedResults.get(i).getDiseaseCurie();
+                    assertEquals(full.getRank(diseaseId), pruned.getRank(diseaseId));
+                }
+            }
+        }
+    }
+
+    /** The upper bounds of the diseases are derived from the maximum likelihood ratios of an LR matrix. */
+    @Test
+    void testPruningRequiresMatrix() {
+        assertThrows(LiricalRuntimeException.class, () -> builder().topK(1).pruning(true).buildPhenotypeOnlyEvaluator());
+    }
+
+    @Test
+    void testPruningWithThreshold() {
+        HpoCase full = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        // slightly below the probability of the second best disease to avoid rounding issues at the threshold
+        double threshold = 0.999 * full.getResults().get(1).getPosttestProbability();
+        HpoCase pruned = builder().phenotypeLr(matrixLrCalculator).threshold(threshold).pruning(true)
+                .buildPhenotypeOnlyEvaluator().evaluate();
+        long expected = full.getResults().stream().filter(r -> r.getPosttestProbability() >= threshold).count();
+        assertEquals(expected, pruned.getResults().size());
+        for (TestResult result : pruned.getResults()) {
+            assertTrue(result.getPosttestProbability() >= threshold);
+            assertEquals(full.getRank(result.getDiseaseCurie()), pruned.getRank(result.getDiseaseCurie()));
+        }
+    }
+
+    @Test
+    void testInvalidTopK() {
+        assertThrows(LiricalRuntimeException.class, () -> builder().topK(-1));
+    }
+
+    @Test
+    void testInvalidNumberOfThreads() {
+        assertThrows(LiricalRuntimeException.class, () -> builder().threads(0));
+    }
+}
@@ -0,0 +1,117 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the mapping between diseases and indices of {@link DiseaseIndex}, that the likelihood ratios calculated
+ * with the integer ids of the index are identical to the ones calculated with the {@link TermId} objects, and that
+ * the negated annotations of the diseases are indexed as excluded terms.
+ */
+class DiseaseIndexTest {
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = SmallHpoData.phenotypeLr();
+    }
+
+    /** @return a disease with the same data that is not part of the index of {@link #phenotypeLrCalculator} */
+    private static HpoDisease copy(HpoDisease disease) {
+        return withNegatives(disease, disease.getNegativeAnnotations());
+    }
+
+    /** @return a copy of the disease with the given negative annotations */
+    private static HpoDisease withNegatives(HpoDisease disease, List<TermId> negatives) {
+        return new HpoDisease(disease.getName(), disease.getDiseaseDatabaseId(), disease.getPhenotypicAbnormalities(),
+                disease.getModesOfInheritance(), negatives, disease.getClinicalModifiers(),
+                disease.getClinicalCourseList());
+    }
+
+    private static void assertSameLikelihoodRatios(PhenotypeLikelihoodRatio lrCalculator,
+                                                   InducedDiseaseGraph expectedIdg,
+                                                   InducedDiseaseGraph actualIdg) {
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            LrWithExplanation expected = lrCalculator.computeLikelihoodRatio(tid, expectedIdg);
+            LrWithExplanation actual = lrCalculator.computeLikelihoodRatio(tid, actualIdg);
+            assertEquals(expected.getLR(), actual.getLR());
+            assertEquals(expected.getMatchType(), actual.getMatchType());
+            assertEquals(expected.getMatchingTerm(), actual.getMatchingTerm());
+            expected = lrCalculator.getLikelihoodRatioForExcludedTerm(tid, expectedIdg);
+            actual = lrCalculator.getLikelihoodRatioForExcludedTerm(tid, actualIdg);
+            assertEquals(expected.getLR(), actual.getLR());
+            assertEquals(expected.getMatchType(), actual.getMatchType());
+            assertEquals(expectedIdg.isExactExcludedMatch(tid), actualIdg.isExactExcludedMatch(tid));
+        }
+    }
+
+    @Test
+    void testIndex() {
+        DiseaseIndex diseaseIndex = phenotypeLrCalculator.getDiseases();
+        assertEquals(diseaseMap.size(), diseaseIndex.size());
+        int d = 0;
+        for (HpoDisease disease : diseaseMap.values()) {
+            assertEquals(d, diseaseIndex.indexOf(disease));
+            assertEquals(d, diseaseIndex.indexOf(disease.getDiseaseDatabaseId()));
+            assertSame(disease, diseaseIndex.getDisease(d));
+            assertTrue(diseaseIndex.isIndexed(d));
+            assertEquals(disease.getPhenotypicAbnormalities().size(), diseaseIndex.getAnnotationTerms(d).length);
+            assertEquals(DiseaseIndex.NOT_INDEXED, diseaseIndex.indexOf(copy(disease)));
+            d++;
+        }
+        assertEquals(DiseaseIndex.NOT_INDEXED, diseaseIndex.indexOf(TermId.of("OMIM:999999")));
+    }
+
+    @Test
+    void testIndexedLikelihoodRatiosMatchTermIds() {
+        for (HpoDisease disease : diseaseMap.values()) {
+            InducedDiseaseGraph indexed = phenotypeLrCalculator.getInducedDiseaseGraph(disease);
+            InducedDiseaseGraph notIndexed = new InducedDiseaseGraph(copy(disease), ontology);
+            assertSameLikelihoodRatios(phenotypeLrCalculator, notIndexed, indexed);
+        }
+    }
+
+    /**
+     * The diseases of small.hpoa have no negative annotations, so we add some (Abnormality of the eye and
+     * Low-set ears) to check the precomputed excluded terms.
+     */
+    @Test
+    void testNegativeAnnotations() {
+        List<TermId> negatives = ImmutableList.of(TermId.of("HP:0000478"), TermId.of("HP:0000369"));
+        Map<TermId, HpoDisease> negatedMap = new LinkedHashMap<>();
+        for (HpoDisease disease : diseaseMap.values()) {
+            negatedMap.put(disease.getDiseaseDatabaseId(), withNegatives(disease, negatives));
+        }
+        PhenotypeLikelihoodRatio lrCalculator = new PhenotypeLikelihoodRatio(ontology, negatedMap);
+        DiseaseIndex diseaseIndex = lrCalculator.getDiseases();
+        HpoTermIndex termIndex = lrCalculator.getTermIndex();
+        for (HpoDisease disease : negatedMap.values()) {
+            int d = diseaseIndex.indexOf(disease);
+            assertTrue(diseaseIndex.isExcludedTerm(d, termIndex.indexOf(TermId.of("HP:0000528"))));
+            assertTrue(diseaseIndex.isExcludedTerm(d, termIndex.indexOf(TermId.of("HP:0000369"))));
+            assertFalse(diseaseIndex.isExcludedTerm(d, termIndex.indexOf(TermId.of("HP:0000118"))));
+            InducedDiseaseGraph indexed = lrCalculator.getInducedDiseaseGraph(disease);
+            assertTrue(indexed.isExactExcludedMatch(TermId.of("HP:0000118")));
+            assertFalse(indexed.isExactExcludedMatch(TermId.of("HP:0000528")));
+            InducedDiseaseGraph notIndexed = new InducedDiseaseGraph(copy(disease), ontology);
+            assertSameLikelihoodRatios(lrCalculator, notIndexed, indexed);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that evaluating a {@link DiseaseSubset} gives the same results as evaluating a disease map that only
+ * contains the diseases of the subset, that the pretest probabilities are normalised within the subset, that
+ * subsets can be selected by gene and by organ system, and that empty subsets and subsets of another disease map
+ * are rejected.
+ */
+class DiseaseSubsetTest {
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+
+    private static final TermId OMIM_164745 = TermId.of("OMIM:164745");
+    private static final TermId OMIM_216300 = TermId.of("OMIM:216300");
+    private static final TermId OMIM_616684 = TermId.of("OMIM:616684");
+
+    private static final List<TermId> OBSERVED = ImmutableList.of(TermId.of("HP:0000047"), TermId.of("HP:0000028"),
+            TermId.of("HP:0000185"));
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = SmallHpoData.phenotypeLr();
+    }
+
+    private CaseEvaluator.Builder builder(Map<TermId, HpoDisease> diseases) {
+        return new CaseEvaluator.Builder(OBSERVED)
+                .ontology(ontology)
+                .diseaseMap(diseases)
+                .phenotypeLr(phenotypeLrCalculator);
+    }
+
+    @Test
+    void testSubsetGivesSameResultsAsSmallerDiseaseMap() {
+        DiseaseSubset subset = DiseaseSubset.ofDiseases(diseaseMap, ImmutableList.of(OMIM_616684, OMIM_164745));
+        assertEquals(2, subset.size());
+        assertFalse(subset.contains(OMIM_216300));
+        // the order of the disease map is kept
+        Map<TermId, HpoDisease> smallMap = new LinkedHashMap<>();
+        int i = 0;
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(!diseaseId.equals(OMIM_216300), subset.contains(i++));
+            if (!diseaseId.equals(OMIM_216300)) {
+                smallMap.put(diseaseId, diseaseMap.get(diseaseId));
+            }
+        }
+        assertEquals(ImmutableList.copyOf(smallMap.keySet()), subset.getDiseaseIds());
+        for (int k = 0; k <= 1; k++) {
+            HpoCase expected = builder(smallMap).topK(k).buildPhenotypeOnlyEvaluator().evaluate();
+            HpoCase actual = builder(diseaseMap).diseaseSubset(subset).topK(k).buildPhenotypeOnlyEvaluator().evaluate();
+            assertEquals(expected.getResults().size(), actual.getResults().size());
+            for (TermId diseaseId : smallMap.keySet()) {
+                assertEquals(expected.getRank(diseaseId), actual.getRank(diseaseId));
+                assertEquals(expected.getPosttestProbability(diseaseId), actual.getPosttestProbability(diseaseId));
+            }
+            assertNull(actual.getResult(OMIM_216300));
+        }
+    }
+
+    @Test
+    void testPretestProbabilitiesAreNormalisedWithinSubset() {
+        DiseaseSubset subset = DiseaseSubset.ofDiseases(diseaseMap, ImmutableList.of(OMIM_164745, OMIM_216300));
+        PretestProbabilityProvider provider = new PrevalencePretestProbability(diseaseMap,
+                ImmutableMap.of(OMIM_164745, 3.0, OMIM_216300, 1.0, OMIM_616684, 4.0), 1.0);
+        PretestProbabilityProvider restricted = subset.restrict(provider);
+        assertEquals(0.75, restricted.getPretestProbability(OMIM_164745), 1e-12);
+        assertEquals(0.25, restricted.getPretestProbability(OMIM_216300), 1e-12);
+        // the restriction is calculated once
+        assertSame(restricted, subset.restrict(provider));
+        HpoCase hpoCase = builder(diseaseMap).diseaseSubset(subset).pretestProbability(provider)
+                .buildPhenotypeOnlyEvaluator().evaluate();
+        assertEquals(0.75, hpoCase.getResult(OMIM_164745).getPretestProbability(), 1e-12);
+    }
+
+    @Test
+    void testGenesAndOrganSystem() {
+        DiseaseSubset genes = DiseaseSubset.ofGenes(diseaseMap,
+                ImmutableMultimap.of(OMIM_216300, TermId.of("NCBIGene:1"), OMIM_616684, TermId.of("NCBIGene:2")),
+                ImmutableList.of(TermId.of("NCBIGene:2"), TermId.of("NCBIGene:3")));
+        assertEquals(ImmutableList.of(OMIM_616684), genes.getDiseaseIds());
+        // some annotations of small.hpoa refer to terms that are not part of hp.small.obo
+        Set<TermId> phenotypicAbnormalities = OntologyAlgorithm.getDescendents(ontology, TermId.of("HP:0000118"));
+        DiseaseSubset all = DiseaseSubset.ofOrganSystem(diseaseMap, ontology, TermId.of("HP:0000118"));
+        TermId hypospadias = TermId.of("HP:0000047");
+        DiseaseSubset organ = DiseaseSubset.ofOrganSystem(diseaseMap, ontology, hypospadias);
+        for (HpoDisease disease : diseaseMap.values()) {
+            List<TermId> terms = disease.getPhenotypicAbnormalityTermIdList();
+            assertEquals(terms.stream().anyMatch(phenotypicAbnormalities::contains),
+                    all.contains(disease.getDiseaseDatabaseId()));
+            assertEquals(terms.contains(hypospadias), organ.contains(disease.getDiseaseDatabaseId()));
+        }
+        assertTrue(organ.size() > 0);
+        assertTrue(organ.size() <= all.size());
+    }
+
+    @Test
+    void testSubsetOfOtherDiseaseMapIsRejected() {
+        // the same diseases in another order
+        Map<TermId, HpoDisease> reordered = new LinkedHashMap<>();
+        for (TermId diseaseId : Lists.reverse(ImmutableList.copyOf(diseaseMap.keySet()))) {
+            reordered.put(diseaseId, diseaseMap.get(diseaseId));
+        }
+        DiseaseSubset subset = DiseaseSubset.ofDiseases(reordered, ImmutableList.of(OMIM_164745));
+        assertThrows(LiricalRuntimeException.class, () -> builder(diseaseMap).diseaseSubset(subset).buildPhenotypeOnlyEvaluator());
+        DiseaseSubset empty = DiseaseSubset.ofDiseases(diseaseMap, ImmutableList.of());
+        assertThrows(LiricalRuntimeException.class, () -> builder(diseaseMap).diseaseSubset(empty).buildPhenotypeOnlyEvaluator());
+    }
+}
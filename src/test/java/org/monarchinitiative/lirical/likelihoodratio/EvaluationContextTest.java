@@ -0,0 +1,117 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that cases configured with a shared {@link EvaluationContext} and evaluated concurrently give the same
+ * results as cases configured on their own, and that such cases use the reference data of the context instead
+ * of copies.
+ */
+class EvaluationContextTest {
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+
+    private static EvaluationContext context;
+
+    private static final List<List<TermId>> OBSERVED = ImmutableList.of(
+            ImmutableList.of(TermId.of("HP:0000047"), TermId.of("HP:0000028"), TermId.of("HP:0000185")),
+            ImmutableList.of(TermId.of("HP:0000028")),
+            ImmutableList.of(TermId.of("HP:0000047"), TermId.of("HP:0000369")));
+
+    private static final List<List<TermId>> EXCLUDED = ImmutableList.of(
+            ImmutableList.of(TermId.of("HP:0000369")),
+            ImmutableList.of(),
+            ImmutableList.of(TermId.of("HP:0000185")));
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = SmallHpoData.phenotypeLr();
+        context = new EvaluationContext.Builder()
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator)
+                .build();
+    }
+
+    private HpoCase evaluateOnItsOwn(int c) {
+        return new CaseEvaluator.Builder(OBSERVED.get(c))
+                .negated(EXCLUDED.get(c))
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator)
+                .buildPhenotypeOnlyEvaluator()
+                .evaluate();
+    }
+
+    @Test
+    void testConcurrentCasesGiveSameResults() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<HpoCase>> futures = new ArrayList<>();
+            for (int r = 0; r < 10; r++) {
+                for (int c = 0; c < OBSERVED.size(); c++) {
+                    final int i = c;
+                    futures.add(executor.submit(() -> context.newCase(OBSERVED.get(i))
+                            .negated(EXCLUDED.get(i))
+                            .buildPhenotypeOnlyEvaluator()
+                            .evaluate()));
+                }
+            }
+            for (int f = 0; f < futures.size(); f++) {
+                HpoCase expected = evaluateOnItsOwn(f % OBSERVED.size());
+                HpoCase actual = futures.get(f).get();
+                for (TermId diseaseId : diseaseMap.keySet()) {
+                    assertEquals(expected.getRank(diseaseId), actual.getRank(diseaseId));
+                    assertEquals(expected.getPosttestProbability(diseaseId), actual.getPosttestProbability(diseaseId));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testCaseSharesReferenceData() {
+        CaseEvaluator evaluator = context.newCase(OBSERVED.get(0)).buildPhenotypeOnlyEvaluator();
+        assertSame(context, evaluator.getContext());
+        assertSame(context.getDiseaseMap(), evaluator.getDiseaseMap());
+        // the context has its own copy of the disease map
+        Map<TermId, HpoDisease> diseases = new LinkedHashMap<>(diseaseMap);
+        EvaluationContext copied = new EvaluationContext.Builder()
+                .ontology(ontology)
+                .diseaseMap(diseases)
+                .phenotypeLr(phenotypeLrCalculator)
+                .build();
+        diseases.clear();
+        assertEquals(diseaseMap, copied.getDiseaseMap());
+        assertThrows(UnsupportedOperationException.class, () -> copied.getDiseaseMap().clear());
+        // the reference data cannot be replaced for a single case
+        assertThrows(LiricalRuntimeException.class,
+                () -> context.newCase(OBSERVED.get(0)).diseaseMap(diseaseMap).buildPhenotypeOnlyEvaluator());
+        // there is no genotype likelihood ratio calculator
+        assertThrows(LiricalRuntimeException.class, () -> context.newCase(OBSERVED.get(0)).build());
+    }
+}
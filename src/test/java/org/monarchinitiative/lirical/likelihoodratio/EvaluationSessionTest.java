@@ -0,0 +1,96 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.monarchinitiative.lirical.likelihoodratio.CaseAssertions.assertSameResults;
+
+/**
+ * Check that adding and removing observed and excluded phenotypes in an {@link EvaluationSession} gives the same
+ * results as evaluating the case with the resulting phenotypes from scratch, and that a session case with top K
+ * still ranks the diseases outside the top K.
+ */
+class EvaluationSessionTest {
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+
+    private static final TermId HYPOSPADIAS = TermId.of("HP:0000047");
+    private static final TermId CRYPTORCHIDISM = TermId.of("HP:0000028");
+    private static final TermId CLEFT_SOFT_PALATE = TermId.of("HP:0000185");
+    private static final TermId LOW_SET_EARS = TermId.of("HP:0000369");
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = SmallHpoData.phenotypeLr();
+    }
+
+    private HpoCase evaluate(List<TermId> observed, List<TermId> excluded) {
+        return new CaseEvaluator.Builder(observed)
+                .negated(excluded)
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator)
+                .buildPhenotypeOnlyEvaluator()
+                .evaluate();
+    }
+
+    @Test
+    void testAddAndRemoveTerms() {
+        EvaluationSession session = new CaseEvaluator.Builder(ImmutableList.of(HYPOSPADIAS))
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator)
+                .buildPhenotypeOnlyEvaluator()
+                .startSession();
+        assertSameResults(evaluate(ImmutableList.of(HYPOSPADIAS), ImmutableList.of()), session.getCase(0));
+
+        assertTrue(session.addObservedTerm(CRYPTORCHIDISM));
+        assertTrue(session.addObservedTerm(CLEFT_SOFT_PALATE));
+        assertFalse(session.addObservedTerm(CRYPTORCHIDISM));
+        assertTrue(session.addExcludedTerm(LOW_SET_EARS));
+        assertSameResults(evaluate(ImmutableList.of(HYPOSPADIAS, CRYPTORCHIDISM, CLEFT_SOFT_PALATE), ImmutableList.of(LOW_SET_EARS)),
+                session.getCase(0));
+
+        assertTrue(session.removeObservedTerm(HYPOSPADIAS));
+        assertFalse(session.removeObservedTerm(HYPOSPADIAS));
+        assertEquals(ImmutableList.of(CRYPTORCHIDISM, CLEFT_SOFT_PALATE), session.getObservedTerms());
+        assertSameResults(evaluate(ImmutableList.of(CRYPTORCHIDISM, CLEFT_SOFT_PALATE), ImmutableList.of(LOW_SET_EARS)),
+                session.getCase(0));
+
+        assertTrue(session.removeExcludedTerm(LOW_SET_EARS));
+        assertSameResults(evaluate(ImmutableList.of(CRYPTORCHIDISM, CLEFT_SOFT_PALATE), ImmutableList.of()), session.getCase(0));
+    }
+
+    @Test
+    void testRankingOfDiseasesOutsideTopK() {
+        EvaluationSession session = new CaseEvaluator.Builder(ImmutableList.of(HYPOSPADIAS, CRYPTORCHIDISM))
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator)
+                .buildPhenotypeOnlyEvaluator()
+                .startSession();
+        session.addExcludedTerm(CLEFT_SOFT_PALATE);
+        HpoCase full = evaluate(ImmutableList.of(HYPOSPADIAS, CRYPTORCHIDISM), ImmutableList.of(CLEFT_SOFT_PALATE));
+        HpoCase top = session.getCase(1);
+        assertEquals(1, top.getResults().size());
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(full.getRank(diseaseId), top.getRank(diseaseId));
+            assertEquals(full.getPosttestProbability(diseaseId), top.getPosttestProbability(diseaseId), 1e-12);
+        }
+    }
+}
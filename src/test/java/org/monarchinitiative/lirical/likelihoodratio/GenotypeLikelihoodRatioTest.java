@@ -11,6 +11,7 @@ import org.monarchinitiative.phenol.ontology.data.TermId;
 import java.util.*;
 
 import static junit.framework.TestCase.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.monarchinitiative.phenol.annotations.formats.hpo.HpoModeOfInheritanceTermIds.AUTOSOMAL_DOMINANT;
@@ -64,6 +65,25 @@ class GenotypeLikelihoodRatioTest {
     }
 
 
+    /**
+     * The explanation is rendered when it is requested for the first time, with the gene symbol at the time the
+     * likelihood ratio was calculated, and is then reused.
+     */
+    @Test
+    void testExplanationIsRenderedOnDemand() {
+        Gene2Genotype g2g = mock(Gene2Genotype.class);
+        when(g2g.hasPathogenicClinvarVar()).thenReturn(true);
+        when(g2g.pathogenicClinVarCount()).thenReturn(1);
+        when(g2g.getSymbol()).thenReturn("FBN1");
+        GenotypeLikelihoodRatio genoLRmap = new GenotypeLikelihoodRatio(ImmutableMap.of());
+        GenotypeLrWithExplanation glrwe = genoLRmap.evaluateGenotype(g2g, ImmutableList.of(AUTOSOMAL_DOMINANT), TermId.of("NCBIGene:2200"));
+        when(g2g.getSymbol()).thenReturn("other");
+        String explanation = glrwe.getExplanation();
+        assertEquals("FBN1: Pathogenic ClinVar variant detected. log<sub>10</sub>(LR)=3.000.", explanation);
+        assertSame(explanation, glrwe.getExplanation());
+    }
+
+
     /**
      * We want to test what happens with a gene that has lots of variants but a pathogenic variant count sum of zero,
      * a lambda-disease of 1, and a lambda-background of 8.7. This numbers are taken from the HLA-B gene.
@@ -0,0 +1,104 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+import org.monarchinitiative.lirical.analysis.Gene2Genotype;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the genotype likelihood ratios of a {@link GenotypeLrTable} are identical to the ones calculated for
+ * each gene and disease, that the genes of each disease are indexed in the order of the disease to gene multimap,
+ * and that the parallel calculation gives the same table as the serial one.
+ */
+class GenotypeLrTableTest {
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static final TermId DISEASE_1 = TermId.of("OMIM:164745");
+    private static final TermId DISEASE_2 = TermId.of("OMIM:216300");
+    private static final TermId DISEASE_3 = TermId.of("OMIM:616684");
+
+    private static final TermId GENE_1 = TermId.of("NCBIGene:1");
+    private static final TermId GENE_2 = TermId.of("NCBIGene:2");
+    private static final TermId GENE_3 = TermId.of("NCBIGene:3");
+
+    private static final Multimap<TermId, TermId> DISEASE_2_GENE = ImmutableMultimap.of(
+            DISEASE_1, GENE_1, DISEASE_1, GENE_2, DISEASE_2, GENE_2, DISEASE_2, GENE_3);
+
+    private static final GenotypeLikelihoodRatio GENOTYPE_LR = new GenotypeLikelihoodRatio(
+            ImmutableMap.of(GENE_1, 0.05, GENE_2, 0.5));
+
+    private static Map<TermId, Gene2Genotype> genotypeMap;
+
+    @BeforeAll
+    static void setup() {
+        diseaseMap = SmallHpoData.diseaseMap();
+        genotypeMap = new HashMap<>();
+        Gene2Genotype g1 = new Gene2Genotype(GENE_1, "GENE1");
+        g1.addVariant(1, 1000, "A", "G", ImmutableList.of(), "0/1", 0.95f, 0.0f, ClinVarData.ClinSig.NOT_PROVIDED);
+        g1.addVariant(1, 2000, "C", "T", ImmutableList.of(), "1/1", 0.9f, 0.0f, ClinVarData.ClinSig.NOT_PROVIDED);
+        genotypeMap.put(GENE_1, g1.freeze());
+        Gene2Genotype g2 = new Gene2Genotype(GENE_2, "GENE2");
+        g2.addVariant(2, 3000, "G", "A", ImmutableList.of(), "0/1", 1.0f, 0.0f, ClinVarData.ClinSig.PATHOGENIC);
+        genotypeMap.put(GENE_2, g2.freeze());
+        // GENE_3: no variant was found in the VCF file
+    }
+
+    @Test
+    void testTableIsIdenticalToSingleEvaluations() {
+        GenotypeLrTable table = GenotypeLrTable.compute(diseaseMap, DISEASE_2_GENE, genotypeMap, GENOTYPE_LR);
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            HpoDisease disease = diseaseMap.get(diseaseId);
+            int d = table.getDiseaseIndex(diseaseId);
+            int[] genes = table.getGeneRows(d);
+            // the genes of the disease in the order of the multimap
+            assertEquals(DISEASE_2_GENE.get(diseaseId).size(), genes.length);
+            int k = 0;
+            for (TermId geneId : DISEASE_2_GENE.get(diseaseId)) {
+                int gene = genes[k++];
+                assertEquals(geneId, table.getGeneId(gene));
+                Gene2Genotype g2g = genotypeMap.getOrDefault(geneId, Gene2Genotype.NO_IDENTIFIED_VARIANT);
+                double expected = GENOTYPE_LR.evaluateGenotype(g2g, disease.getModesOfInheritance(), geneId).getLR();
+                assertEquals(expected, table.getLikelihoodRatio(gene, table.getColumn(d)));
+                assertEquals(expected, table.getLikelihoodRatioWithExplanation(gene, table.getColumn(d)).getLR());
+                assertEquals(!geneId.equals(GENE_3), table.hasCandidateVariant(gene));
+            }
+        }
+        // DISEASE_3 has no associated gene
+        assertEquals(0, table.getGeneRows(table.getDiseaseIndex(DISEASE_3)).length);
+        assertEquals(-1, table.getDiseaseIndex(TermId.of("OMIM:999999")));
+    }
+
+    @Test
+    void testParallelTableIsIdenticalToSerialTable() {
+        GenotypeLrTable serial = GenotypeLrTable.compute(diseaseMap, DISEASE_2_GENE, genotypeMap, GENOTYPE_LR);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            GenotypeLrTable parallel = GenotypeLrTable.compute(diseaseMap, DISEASE_2_GENE, genotypeMap, GENOTYPE_LR, 4, pool);
+            for (TermId diseaseId : diseaseMap.keySet()) {
+                int d = serial.getDiseaseIndex(diseaseId);
+                assertEquals(d, parallel.getDiseaseIndex(diseaseId));
+                assertEquals(serial.getColumn(d), parallel.getColumn(d));
+                assertArrayEquals(serial.getGeneRows(d), parallel.getGeneRows(d));
+                for (int gene : serial.getGeneRows(d)) {
+                    assertEquals(serial.getLikelihoodRatio(gene, serial.getColumn(d)),
+                            parallel.getLikelihoodRatio(gene, parallel.getColumn(d)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
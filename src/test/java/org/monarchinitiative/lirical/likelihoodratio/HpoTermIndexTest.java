@@ -0,0 +1,128 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the ancestor closures of {@link HpoTermIndex} against the corresponding methods of the ontology.
+ */
+class HpoTermIndexTest {
+
+    private static Ontology ontology;
+
+    private static HpoTermIndex termIndex;
+
+    private static final TermId ALL = TermId.of("HP:0000001");
+    private static final TermId PHENOTYPIC_ABNORMALITY = TermId.of("HP:0000118");
+    private static final TermId ABNORMALITY_OF_THE_EYE = TermId.of("HP:0000478");
+    private static final TermId ABNORMAL_EYE_PHYSIOLOGY = TermId.of("HP:0012373");
+    private static final TermId ANOPHTHALMIA = TermId.of("HP:0000528");
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        termIndex = new HpoTermIndex(ontology);
+    }
+
+    @Test
+    void testAllTermsIndexed() {
+        Set<TermId> termIds = new HashSet<>(ontology.getNonObsoleteTermIds());
+        termIds.addAll(ontology.getGraph().vertexSet());
+        assertEquals(termIds.size(), termIndex.size());
+        for (TermId tid : termIds) {
+            int idx = termIndex.indexOf(tid);
+            assertNotEquals(HpoTermIndex.NOT_INDEXED, idx);
+            assertEquals(tid, termIndex.getTermId(idx));
+        }
+    }
+
+    @Test
+    void testParentsHaveSmallerIndex() {
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            for (TermId parent : OntologyAlgorithm.getParentTerms(ontology, tid, false)) {
+                assertTrue(termIndex.indexOf(parent) < termIndex.indexOf(tid));
+            }
+        }
+    }
+
+    @Test
+    void testIsAncestorOrSelf() {
+        int anophthalmia = termIndex.indexOf(ANOPHTHALMIA);
+        assertTrue(termIndex.isAncestorOrSelf(anophthalmia, anophthalmia));
+        assertTrue(termIndex.isAncestorOrSelf(termIndex.indexOf(ABNORMALITY_OF_THE_EYE), anophthalmia));
+        assertTrue(termIndex.isAncestorOrSelf(termIndex.indexOf(PHENOTYPIC_ABNORMALITY), anophthalmia));
+        assertTrue(termIndex.isAncestorOrSelf(termIndex.indexOf(ALL), anophthalmia));
+        assertFalse(termIndex.isAncestorOrSelf(termIndex.indexOf(ABNORMAL_EYE_PHYSIOLOGY), anophthalmia));
+        assertFalse(termIndex.isAncestorOrSelf(anophthalmia, termIndex.indexOf(ABNORMALITY_OF_THE_EYE)));
+    }
+
+    /**
+     * The closure of each term must be identical to the ancestors returned by phenol.
+     */
+    @Test
+    void testClosuresMatchOntology() {
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            Set<TermId> expected = OntologyAlgorithm.getAncestorTerms(ontology, tid, true);
+            Set<TermId> actual = new HashSet<>();
+            for (int idx : termIndex.getAncestorIndices(termIndex.indexOf(tid))) {
+                actual.add(termIndex.getTermId(idx));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    /**
+     * The direct parents and children of each term must be identical to the ones returned by phenol.
+     */
+    @Test
+    void testParentsAndChildrenMatchOntology() {
+        for (TermId tid : ontology.getNonObsoleteTermIds()) {
+            int idx = termIndex.indexOf(tid);
+            List<TermId> parents = new ArrayList<>();
+            for (int j = 0; j < termIndex.getParentCount(idx); j++) {
+                int p = termIndex.getParent(idx, j);
+                parents.add(termIndex.getTermId(p));
+                assertTrue(termIndex.isParent(p, idx));
+            }
+            assertEquals(new ArrayList<>(OntologyAlgorithm.getParentTerms(ontology, tid, false)), parents);
+            Set<TermId> children = new HashSet<>();
+            for (int j = 0; j < termIndex.getChildCount(idx); j++) {
+                children.add(termIndex.getTermId(termIndex.getChild(idx, j)));
+            }
+            assertEquals(OntologyAlgorithm.getChildTerms(ontology, tid, false), children);
+        }
+        assertFalse(termIndex.isParent(termIndex.indexOf(PHENOTYPIC_ABNORMALITY), termIndex.indexOf(ANOPHTHALMIA)));
+    }
+
+    @Test
+    void testAncestorAndDescendantBits() {
+        int[] eyeTerms = {termIndex.indexOf(ABNORMALITY_OF_THE_EYE), termIndex.indexOf(ABNORMAL_EYE_PHYSIOLOGY)};
+        Set<TermId> expected = new HashSet<>(OntologyAlgorithm.getDescendents(ontology, ABNORMALITY_OF_THE_EYE));
+        expected.addAll(OntologyAlgorithm.getDescendents(ontology, ABNORMAL_EYE_PHYSIOLOGY));
+        Set<TermId> actual = new HashSet<>();
+        BitSet bits = termIndex.getDescendantBits(eyeTerms);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            actual.add(termIndex.getTermId(i));
+        }
+        assertEquals(expected, actual);
+        expected = OntologyAlgorithm.getAncestorTerms(ontology, new HashSet<>(Arrays.asList(ABNORMALITY_OF_THE_EYE, ABNORMAL_EYE_PHYSIOLOGY)), true);
+        actual.clear();
+        bits = termIndex.getAncestorBits(eyeTerms);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            actual.add(termIndex.getTermId(i));
+        }
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,91 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the search for the closest annotated ancestor of {@link InducedDiseaseGraph}, with and without the term
+ * index, against a plain breadth-first search over the ontology, and check that the fixed-size memo still gives the
+ * right ancestors after more query terms than it has entries.
+ */
+class InducedDiseaseGraphTest {
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static HpoTermIndex termIndex;
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        termIndex = new HpoTermIndex(ontology);
+    }
+
+    /**
+     * Breadth-first search without a visited set, i.e., the way the closest ancestor was originally calculated.
+     */
+    private static TermId referenceClosestAncestor(TermId tid, Set<TermId> inducedTerms) {
+        Queue<TermId> queue = new LinkedList<>();
+        queue.add(tid);
+        while (!queue.isEmpty()) {
+            TermId t = queue.remove();
+            if (inducedTerms.contains(t)) {
+                return t;
+            }
+            queue.addAll(OntologyAlgorithm.getParentTerms(ontology, t, false));
+        }
+        return TermId.of("HP:0000118");
+    }
+
+    /**
+     * The induced graph consists of the ancestors of the annotations (an annotation is only included if it is an
+     * ancestor of another annotation).
+     */
+    private static Set<TermId> inducedTerms(HpoDisease disease) {
+        Set<TermId> terms = new HashSet<>();
+        for (TermId tid : disease.getPhenotypicAbnormalityTermIdList()) {
+            for (TermId parent : OntologyAlgorithm.getParentTerms(ontology, tid, false)) {
+                terms.addAll(OntologyAlgorithm.getAncestorTerms(ontology, parent, true));
+            }
+        }
+        // the graph stops at Phenotypic abnormality
+        terms.removeAll(OntologyAlgorithm.getAncestorTerms(ontology, TermId.of("HP:0000118"), true));
+        return terms;
+    }
+
+    @Test
+    void testClosestAncestorMatchesReference() {
+        for (HpoDisease disease : diseaseMap.values()) {
+            Set<TermId> inducedTerms = inducedTerms(disease);
+            InducedDiseaseGraph indexed = new InducedDiseaseGraph(disease, ontology, termIndex);
+            InducedDiseaseGraph plain = new InducedDiseaseGraph(disease, ontology);
+            Map<TermId, TermId> expectedAncestors = new HashMap<>();
+            for (TermId tid : ontology.getNonObsoleteTermIds()) {
+                TermId expected = referenceClosestAncestor(tid, inducedTerms);
+                expectedAncestors.put(tid, expected);
+                Term2Freq t2f = indexed.getClosestAncestor(tid);
+                assertEquals(expected, t2f.tid);
+                assertEquals(expected, plain.getClosestAncestor(tid).tid);
+                assertEquals(plain.getClosestAncestor(tid).frequency, t2f.frequency);
+                // the second call is answered from the memo
+                Term2Freq memoised = indexed.getClosestAncestor(tid);
+                assertEquals(t2f.tid, memoised.tid);
+                assertEquals(t2f.frequency, memoised.frequency);
+            }
+            // hp.small.obo has more terms than the memo has entries, so some of these are recalculated
+            for (TermId tid : ontology.getNonObsoleteTermIds()) {
+                assertEquals(expectedAncestors.get(tid), indexed.getClosestAncestor(tid).tid);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the scoring of all diseases from the likelihood ratio rows of a case: the per-disease loop that
+ * copies the likelihood ratios of each disease out of the rows and creates a {@link TestResult}, against
+ * {@link LogLrAccumulator}, which adds each row to the sums of all diseases. The rows hold random likelihood ratios
+ * (with a fixed seed) for a realistic number of diseases and phenotypes. This is not a unit test and is not run
+ * by the build; to run it:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/test-classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     org.monarchinitiative.lirical.likelihoodratio.LogLrAccumulatorBenchmark
+ * </pre>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogLrAccumulatorBenchmark {
+
+    private static final TermId QUERY = TermId.of("HP:0000028");
+
+    private static final double PRETEST = 1.0 / 8000;
+
+    /** Number of diseases (the HPO annotations have about 8000 diseases). */
+    @Param({"1000", "8000"})
+    public int nDiseases;
+    /** Number of observed phenotypes of the case. */
+    @Param({"5", "20"})
+    public int nObserved;
+    /** Number of excluded phenotypes of the case. */
+    @Param({"3"})
+    public int nExcluded;
+
+    private PhenotypeLrRowCache.Row[] observedRows;
+
+    private PhenotypeLrRowCache.Row[] excludedRows;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        observedRows = new PhenotypeLrRowCache.Row[nObserved];
+        for (int i = 0; i < nObserved; i++) {
+            observedRows[i] = randomRow(random);
+        }
+        excludedRows = new PhenotypeLrRowCache.Row[nExcluded];
+        for (int i = 0; i < nExcluded; i++) {
+            excludedRows[i] = randomRow(random);
+        }
+    }
+
+    /** A row with likelihood ratios between 0.01 and 100 for all diseases. */
+    private PhenotypeLrRowCache.Row randomRow(Random random) {
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(nDiseases);
+        for (int d = 0; d < nDiseases; d++) {
+            row.set(d, LrWithExplanation.exactMatch(QUERY, Math.pow(10.0, 4.0 * random.nextDouble() - 2.0)));
+        }
+        return row;
+    }
+
+    /** The way {@link CaseEvaluator} scores each disease on its own. */
+    @Benchmark
+    public void testResultPerDisease(Blackhole blackhole) {
+        for (int d = 0; d < nDiseases; d++) {
+            double[] observedLR = new double[nObserved];
+            for (int i = 0; i < nObserved; i++) {
+                observedLR[i] = observedRows[i].getLikelihoodRatios()[d];
+            }
+            double[] excludedLR = new double[nExcluded];
+            for (int i = 0; i < nExcluded; i++) {
+                excludedLR[i] = excludedRows[i].getLikelihoodRatios()[d];
+            }
+            blackhole.consume(new TestResult(observedLR, excludedLR, null, PRETEST).getLog10PosttestOdds());
+        }
+    }
+
+    /** The sums of all diseases are accumulated row by row, and the post-test odds are calculated from them. */
+    @Benchmark
+    public void logLrAccumulator(Blackhole blackhole) {
+        LogLrAccumulator accumulator = new LogLrAccumulator(nDiseases);
+        for (PhenotypeLrRowCache.Row row : observedRows) {
+            accumulator.addObserved(row);
+        }
+        for (PhenotypeLrRowCache.Row row : excludedRows) {
+            accumulator.addExcluded(row);
+        }
+        for (int d = 0; d < nDiseases; d++) {
+            blackhole.consume(TestResult.log10PosttestOdds(accumulator.getLog10ObservedLR(d),
+                    accumulator.getLog10ExcludedLR(d), null, PRETEST));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LogLrAccumulatorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
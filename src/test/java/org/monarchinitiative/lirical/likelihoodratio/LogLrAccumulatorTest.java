@@ -0,0 +1,110 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check that the sums of {@link LogLrAccumulator} are identical to the sums of the log<sub>10</sub> LRs of
+ * {@link TestResult}, that LRs that could not be calculated are skipped, that the sums can be restricted to
+ * some of the diseases, and that the post-test odds with the genotype LRs are identical to those of {@link TestResult}.
+ */
+class LogLrAccumulatorTest {
+
+    private static final TermId QUERY = TermId.of("HP:0000028");
+
+    private static PhenotypeLrRowCache.Row row(double... lrs) {
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(lrs.length);
+        for (int d = 0; d < lrs.length; d++) {
+            // NaN marks a LR that could not be calculated
+            if (!Double.isNaN(lrs[d])) {
+                row.set(d, LrWithExplanation.exactMatch(QUERY, lrs[d]));
+            }
+        }
+        return row;
+    }
+
+    @Test
+    void testSumsAreIdenticalToTestResult() {
+        PhenotypeLrRowCache.Row observed1 = row(0.3, 17.0, 1.0 / 3.0);
+        PhenotypeLrRowCache.Row observed2 = row(2.5, 0.01, Double.NaN);
+        PhenotypeLrRowCache.Row excluded = row(0.7, 1.3, 0.2);
+        LogLrAccumulator accumulator = new LogLrAccumulator(3);
+        accumulator.addObserved(observed1);
+        accumulator.addObserved(observed2);
+        accumulator.addExcluded(excluded);
+        double pretest = 0.001;
+        double[][] observedLR = {{0.3, 2.5}, {17.0, 0.01}, {1.0 / 3.0}};
+        double[] excludedLR = {0.7, 1.3, 0.2};
+        for (int d = 0; d < 3; d++) {
+            TestResult result = new TestResult(observedLR[d], new double[]{excludedLR[d]}, null, pretest);
+            double log10PosttestOdds = TestResult.log10PosttestOdds(accumulator.getLog10ObservedLR(d),
+                    accumulator.getLog10ExcludedLR(d), null, pretest);
+            assertEquals(result.getLog10PosttestOdds(), log10PosttestOdds);
+        }
+        assertTrue(accumulator.hasAllObserved(0));
+        assertTrue(accumulator.hasAllObserved(1));
+        assertFalse(accumulator.hasAllObserved(2));
+    }
+
+    @Test
+    void testReset() {
+        PhenotypeLrRowCache.Row observed1 = row(0.3, Double.NaN);
+        PhenotypeLrRowCache.Row observed2 = row(2.5, 0.01);
+        LogLrAccumulator accumulator = new LogLrAccumulator(2);
+        accumulator.addObserved(observed1);
+        accumulator.addObserved(observed2);
+        accumulator.addExcluded(row(0.5, 0.5));
+        accumulator.resetObserved(ImmutableList.of(observed2));
+        accumulator.resetExcluded(ImmutableList.of());
+        assertEquals(Math.log10(2.5), accumulator.getLog10ObservedLR(0));
+        assertEquals(Math.log10(0.01), accumulator.getLog10ObservedLR(1));
+        assertEquals(0.0, accumulator.getLog10ExcludedLR(0));
+        assertTrue(accumulator.hasAllObserved(1));
+    }
+
+    /** The cells outside of the mask are neither added nor counted as missing. */
+    @Test
+    void testMask() {
+        BitSet mask = new BitSet();
+        mask.set(0);
+        mask.set(2);
+        LogLrAccumulator accumulator = new LogLrAccumulator(3, mask);
+        accumulator.addObserved(row(0.3, Double.NaN, 2.0));
+        accumulator.addObserved(row(2.5, Double.NaN, Double.NaN));
+        accumulator.addExcluded(row(0.7, 1.3, 0.2));
+        assertEquals(Math.log10(0.3) + Math.log10(2.5), accumulator.getLog10ObservedLR(0));
+        assertEquals(0.0, accumulator.getLog10ObservedLR(1));
+        assertEquals(Math.log10(2.0), accumulator.getLog10ObservedLR(2));
+        assertEquals(0.0, accumulator.getLog10ExcludedLR(1));
+        assertEquals(Math.log10(0.2), accumulator.getLog10ExcludedLR(2));
+        assertTrue(accumulator.hasAllObserved(0));
+        assertTrue(accumulator.hasAllObserved(1));
+        assertFalse(accumulator.hasAllObserved(2));
+    }
+
+    /** A NaN genotype LR means that the disease is evaluated with its phenotypes only. */
+    @Test
+    void testGenotype() {
+        LogLrAccumulator accumulator = new LogLrAccumulator(3);
+        accumulator.addObserved(row(0.3, 17.0, 1.0 / 3.0));
+        accumulator.addExcluded(row(0.7, 1.3, 0.2));
+        accumulator.addGenotype(new double[]{0.05, Double.NaN, 1234.5});
+        double pretest = 0.001;
+        double[] observedLR = {0.3, 17.0, 1.0 / 3.0};
+        double[] excludedLR = {0.7, 1.3, 0.2};
+        Double[] genotypeLR = {0.05, null, 1234.5};
+        for (int d = 0; d < 3; d++) {
+            TestResult result = genotypeLR[d] != null ?
+                    new TestResult(new double[]{observedLR[d]}, new double[]{excludedLR[d]}, null, genotypeLR[d], null, pretest) :
+                    new TestResult(new double[]{observedLR[d]}, new double[]{excludedLR[d]}, null, pretest);
+            assertEquals(result.getLog10PosttestOdds(), accumulator.getLog10PosttestOdds(d, TestResult.log10Odds(pretest)));
+        }
+        assertThrows(LiricalRuntimeException.class, () -> accumulator.addGenotype(new double[2]));
+    }
+}
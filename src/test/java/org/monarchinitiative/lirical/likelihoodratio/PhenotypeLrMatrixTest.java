@@ -0,0 +1,114 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoAnnotation;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Write the LR matrix for the diseases of small.hpoa, load it again, and check that the stored likelihood ratios
+ * and explanations are identical to the ones calculated by {@link PhenotypeLikelihoodRatio}, and that the stored
+ * maximum likelihood ratios of the terms and diseases are those of the stored likelihood ratios.
+ */
+class PhenotypeLrMatrixTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+
+    private static PhenotypeLrMatrix matrix;
+
+    @BeforeAll
+    static void setup() throws LiricalException {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = SmallHpoData.phenotypeLr();
+        matrix = SmallHpoData.lrMatrix(tempDir);
+    }
+
+    @Test
+    void testDimensions() {
+        assertEquals(phenotypeLrCalculator.getTermIndex().size(), matrix.getNumberOfTerms());
+        assertEquals(diseaseMap.size(), matrix.getNumberOfDiseases());
+    }
+
+    @Test
+    void testMatrixMatchesCalculation() {
+        for (HpoDisease disease : diseaseMap.values()) {
+            InducedDiseaseGraph idg = phenotypeLrCalculator.getInducedDiseaseGraph(disease);
+            for (TermId tid : ontology.getNonObsoleteTermIds()) {
+                LrWithExplanation expected = phenotypeLrCalculator.computeLikelihoodRatio(tid, idg);
+                LrWithExplanation actual = matrix.getLikelihoodRatio(tid, disease.getDiseaseDatabaseId());
+                assertNotNull(actual);
+                assertEquals(expected.getLR(), actual.getLR());
+                assertEquals(expected.getEscapedExplanation(ontology), actual.getEscapedExplanation(ontology));
+            }
+        }
+    }
+
+    @Test
+    void testMaxLikelihoodRatios() {
+        Map<TermId, Double> maxOfDisease = new HashMap<>();
+        HpoTermIndex termIndex = phenotypeLrCalculator.getTermIndex();
+        for (int i = 0; i < termIndex.size(); i++) {
+            TermId tid = termIndex.getTermId(i);
+            double maxOfTerm = Double.NEGATIVE_INFINITY;
+            for (TermId diseaseId : diseaseMap.keySet()) {
+                double lr = matrix.getLikelihoodRatio(tid, diseaseId).getLR();
+                maxOfTerm = Math.max(maxOfTerm, lr);
+                maxOfDisease.merge(diseaseId, lr, Math::max);
+            }
+            assertEquals(maxOfTerm, matrix.getMaxLikelihoodRatioOfTerm(tid));
+        }
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(maxOfDisease.get(diseaseId).doubleValue(), matrix.getMaxLikelihoodRatioOfDisease(diseaseId));
+        }
+        assertEquals(Double.POSITIVE_INFINITY, matrix.getMaxLikelihoodRatioOfDisease(TermId.of("OMIM:999999")));
+    }
+
+    @Test
+    void testUnknownDisease() {
+        TermId tid = TermId.of("HP:0000028");
+        assertNull(matrix.getLikelihoodRatio(tid, TermId.of("OMIM:999999")));
+    }
+
+    @Test
+    void testLoadWithDifferentDiseasesFails() {
+        String matrixPath = tempDir.resolve("lr-matrix.bin").toString();
+        Map<TermId, HpoDisease> otherMap = new HashMap<>(diseaseMap);
+        otherMap.remove(otherMap.keySet().iterator().next());
+        assertThrows(LiricalException.class, () -> PhenotypeLrMatrix.load(matrixPath, ontology, otherMap));
+    }
+
+    /**
+     * A new annotation file usually has the same disease ids as the one the matrix was calculated for, and so the
+     * annotations themselves must be compared.
+     */
+    @Test
+    void testLoadWithDifferentAnnotationsFails() {
+        String matrixPath = tempDir.resolve("lr-matrix.bin").toString();
+        TermId diseaseId = diseaseMap.keySet().iterator().next();
+        HpoDisease disease = diseaseMap.get(diseaseId);
+        List<HpoAnnotation> annotations = new ArrayList<>(disease.getPhenotypicAbnormalities());
+        annotations.remove(0);
+        HpoDisease changed = new HpoDisease(disease.getName(), diseaseId, annotations, disease.getModesOfInheritance(),
+                disease.getNegativeAnnotations(), disease.getClinicalModifiers(), disease.getClinicalCourseList());
+        Map<TermId, HpoDisease> otherMap = new LinkedHashMap<>(diseaseMap);
+        otherMap.put(diseaseId, changed);
+        assertThrows(LiricalException.class, () -> PhenotypeLrMatrix.load(matrixPath, ontology, otherMap));
+    }
+}
@@ -0,0 +1,63 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the eviction and the hit/miss counts of {@link PhenotypeLrRowCache}.
+ */
+class PhenotypeLrRowCacheTest {
+
+    private static final TermId T1 = TermId.of("HP:0000028");
+    private static final TermId T2 = TermId.of("HP:0000047");
+    private static final TermId T3 = TermId.of("HP:0000185");
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<TermId, PhenotypeLrRowCache.Row> loader = tid -> {
+        loads.incrementAndGet();
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(1);
+        row.set(0, LrWithExplanation.exactMatch(tid, 2.0));
+        return row;
+    };
+
+    @Test
+    void testHitsAndMisses() {
+        PhenotypeLrRowCache cache = new PhenotypeLrRowCache(2);
+        PhenotypeLrRowCache.Row row = cache.get(T1, loader);
+        assertSame(row, cache.get(T1, loader));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+        assertEquals(2.0, row.get(0, T1).getLR(), 1e-9);
+    }
+
+    @Test
+    void testLeastRecentlyUsedRowIsEvicted() {
+        PhenotypeLrRowCache cache = new PhenotypeLrRowCache(2);
+        cache.get(T1, loader);
+        cache.get(T2, loader);
+        cache.get(T1, loader); // T2 is now the least recently used row
+        cache.get(T3, loader);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        cache.get(T1, loader);
+        assertEquals(3, loads.get());
+        cache.get(T2, loader);
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void testEmptyCell() {
+        PhenotypeLrRowCache.Row row = new PhenotypeLrRowCache.Row(2);
+        row.set(1, LrWithExplanation.exactMatch(T1, 2.0));
+        assertNull(row.get(0, T1));
+        assertNotNull(row.get(1, T1));
+    }
+}
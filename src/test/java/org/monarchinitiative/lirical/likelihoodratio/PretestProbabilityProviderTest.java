@@ -0,0 +1,144 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.hpo.HpoCase;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the pretest probabilities of the uniform provider, of a prevalence table read from a file, of a gene panel
+ * and of a prevalence map (see {@link PretestProbabilityProvider}).
+ */
+class PretestProbabilityProviderTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLrCalculator;
+
+    private static final TermId OMIM_164745 = TermId.of("OMIM:164745");
+    private static final TermId OMIM_216300 = TermId.of("OMIM:216300");
+    private static final TermId OMIM_616684 = TermId.of("OMIM:616684");
+
+    private static final List<TermId> OBSERVED = ImmutableList.of(TermId.of("HP:0000047"), TermId.of("HP:0000028"));
+
+    @BeforeAll
+    static void setup() {
+        ontology = SmallHpoData.ontology();
+        diseaseMap = SmallHpoData.diseaseMap();
+        phenotypeLrCalculator = SmallHpoData.phenotypeLr();
+    }
+
+    private CaseEvaluator.Builder builder() {
+        return new CaseEvaluator.Builder(OBSERVED)
+                .ontology(ontology)
+                .diseaseMap(diseaseMap)
+                .phenotypeLr(phenotypeLrCalculator);
+    }
+
+    @Test
+    void testUniform() {
+        PretestProbabilityProvider provider = new UniformPretestProbability(diseaseMap.size());
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(1.0 / 3.0, provider.getPretestProbability(diseaseId));
+            assertEquals(Math.log10(0.5), provider.getLog10PretestOdds(diseaseId), 1e-12);
+        }
+        // the uniform provider is the default
+        HpoCase expected = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        HpoCase actual = builder().pretestProbability(provider).topK(2).buildPhenotypeOnlyEvaluator().evaluate();
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(expected.getRank(diseaseId), actual.getRank(diseaseId));
+            assertEquals(expected.getPosttestProbability(diseaseId), actual.getPosttestProbability(diseaseId));
+        }
+    }
+
+    @Test
+    void testPrevalenceTable() throws IOException, LiricalException {
+        Path path = tempDir.resolve("prevalence.tsv");
+        Files.write(path, ImmutableList.of("# disease\tprevalence", OMIM_164745.getValue() + "\t0.3",
+                "", OMIM_216300.getValue() + "\t0.1", "OMIM:999999\t0.5"));
+        PretestProbabilityProvider provider = PrevalencePretestProbability.fromTsv(path.toString(), diseaseMap, 0.1);
+        assertEquals(0.6, provider.getPretestProbability(OMIM_164745), 1e-12);
+        assertEquals(0.2, provider.getPretestProbability(OMIM_216300), 1e-12);
+        assertEquals(0.2, provider.getPretestProbability(OMIM_616684), 1e-12);
+        assertEquals(Math.log10(0.25), provider.getLog10PretestOdds(OMIM_616684), 1e-12);
+        // with the same likelihood ratios, the post-test odds are proportional to the pretest odds
+        HpoCase uniform = builder().buildPhenotypeOnlyEvaluator().evaluate();
+        HpoCase prevalence = builder().pretestProbability(provider).buildPhenotypeOnlyEvaluator().evaluate();
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            double expected = uniform.getResult(diseaseId).getLog10CompositeLR() + provider.getLog10PretestOdds(diseaseId);
+            assertEquals(expected, prevalence.getResult(diseaseId).getLog10PosttestOdds(), 1e-12);
+        }
+        assertThrows(LiricalException.class,
+                () -> PrevalencePretestProbability.fromTsv(tempDir.resolve("missing.tsv").toString(), diseaseMap, 0.1));
+        Path malformed = tempDir.resolve("malformed.tsv");
+        Files.write(malformed, ImmutableList.of(OMIM_164745.getValue() + "\tcommon"));
+        assertThrows(LiricalException.class, () -> PrevalencePretestProbability.fromTsv(malformed.toString(), diseaseMap, 0.1));
+    }
+
+    @Test
+    void testGenePanel() {
+        Multimap<TermId, TermId> disease2gene = ImmutableMultimap.of(OMIM_164745, TermId.of("NCBIGene:2200"),
+                OMIM_216300, TermId.of("NCBIGene:1"));
+        PretestProbabilityProvider provider = new GenePanelPretestProbability(diseaseMap, disease2gene,
+                ImmutableList.of(TermId.of("NCBIGene:2200")), 0.5);
+        assertEquals(0.5, provider.getPretestProbability(OMIM_164745), 1e-12);
+        assertEquals(0.25, provider.getPretestProbability(OMIM_216300), 1e-12);
+        assertEquals(0.25, provider.getPretestProbability(OMIM_616684), 1e-12);
+        assertThrows(RuntimeException.class, () -> new GenePanelPretestProbability(diseaseMap, disease2gene,
+                ImmutableList.of(), 0.0));
+        assertThrows(RuntimeException.class, () -> provider.getPretestProbability(TermId.of("OMIM:999999")));
+    }
+
+    @Test
+    void testPrevalenceMap() {
+        PretestProbabilityProvider provider = new PrevalencePretestProbability(diseaseMap,
+                ImmutableMap.of(OMIM_164745, 1.0, OMIM_216300, 1.0, OMIM_616684, 1.0), 1.0);
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(1.0 / 3.0, provider.getPretestProbability(diseaseId));
+        }
+    }
+
+    /**
+     * The evaluation reads the pretest probabilities by the position of the disease in the disease map, so a
+     * provider of another disease map must be rejected.
+     */
+    @Test
+    void testLookupByPosition() {
+        PretestProbabilityProvider provider = new PrevalencePretestProbability(diseaseMap,
+                ImmutableMap.of(OMIM_164745, 3.0, OMIM_216300, 1.0), 1.0);
+        int i = 0;
+        for (TermId diseaseId : diseaseMap.keySet()) {
+            assertEquals(provider.getPretestProbability(diseaseId), provider.getPretestProbability(i));
+            assertEquals(provider.getLog10PretestOdds(diseaseId), provider.getLog10PretestOdds(i));
+            i++;
+        }
+        Map<TermId, HpoDisease> otherMap = ImmutableMap.of(OMIM_216300, diseaseMap.get(OMIM_216300),
+                OMIM_164745, diseaseMap.get(OMIM_164745), OMIM_616684, diseaseMap.get(OMIM_616684));
+        PretestProbabilityProvider otherOrder = new PrevalencePretestProbability(otherMap,
+                ImmutableMap.of(OMIM_164745, 3.0, OMIM_216300, 1.0), 1.0);
+        assertThrows(LiricalRuntimeException.class,
+                () -> builder().pretestProbability(otherOrder).buildPhenotypeOnlyEvaluator());
+    }
+}
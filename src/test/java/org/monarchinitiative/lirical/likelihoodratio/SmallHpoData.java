@@ -0,0 +1,72 @@
+package org.monarchinitiative.lirical.likelihoodratio;
+
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.annotations.obo.hpo.HpoDiseaseAnnotationParser;
+import org.monarchinitiative.phenol.io.OntologyLoader;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reference data shared by the tests of this package: the small HPO of hp.small.obo, the three diseases of
+ * small.hpoa (OMIM:164745, OMIM:216300 and OMIM:616684) and a {@link PhenotypeLikelihoodRatio} for them. The data
+ * is loaded once, when a test first needs it, and must not be modified by the tests.
+ */
+final class SmallHpoData {
+
+    private static Ontology ontology;
+
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    private static PhenotypeLikelihoodRatio phenotypeLr;
+
+    private SmallHpoData() {
+    }
+
+    private static String resource(String name) {
+        URL url = SmallHpoData.class.getClassLoader().getResource(name);
+        Objects.requireNonNull(url);
+        return url.getFile();
+    }
+
+    static synchronized Ontology ontology() {
+        if (ontology == null) {
+            ontology = OntologyLoader.loadOntology(new File(resource("hp.small.obo")));
+        }
+        return ontology;
+    }
+
+    /** @return the diseases of small.hpoa (an immutable map) */
+    static synchronized Map<TermId, HpoDisease> diseaseMap() {
+        if (diseaseMap == null) {
+            diseaseMap = ImmutableMap.copyOf(HpoDiseaseAnnotationParser.loadDiseaseMap(resource("small.hpoa"), ontology()));
+        }
+        return diseaseMap;
+    }
+
+    /** @return a phenotype likelihood ratio object for the diseases, without LR matrix and without cache */
+    static synchronized PhenotypeLikelihoodRatio phenotypeLr() {
+        if (phenotypeLr == null) {
+            phenotypeLr = new PhenotypeLikelihoodRatio(ontology(), diseaseMap());
+        }
+        return phenotypeLr;
+    }
+
+    /**
+     * Write the LR matrix of the diseases and load it again.
+     * @param dir directory of the matrix file, e.g., a {@link org.junit.jupiter.api.io.TempDir}
+     * @return the LR matrix
+     */
+    static PhenotypeLrMatrix lrMatrix(Path dir) throws LiricalException {
+        String matrixPath = dir.resolve("lr-matrix.bin").toString();
+        PhenotypeLrMatrix.write(phenotypeLr(), matrixPath, 2);
+        return PhenotypeLrMatrix.load(matrixPath, ontology(), diseaseMap());
+    }
+}
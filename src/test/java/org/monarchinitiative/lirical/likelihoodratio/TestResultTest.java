@@ -10,6 +10,7 @@ import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
@@ -193,6 +194,44 @@ class TestResultTest {
     }
 
 
+    /**
+     * The product of 40 likelihood ratios of 10^10 cannot be represented as a double. The log composite LR and
+     * the post-test probability must nevertheless be calculated correctly.
+     */
+    @Test
+    void testManyLargeLikelihoodRatiosDoNotOverflow() {
+        double[] observed = new double[40];
+        Arrays.fill(observed, 1e10);
+        TestResult large = new TestResult(observed, new double[0], glaucoma, 0.025);
+        assertEquals(400.0, large.getLog10CompositeLR(), EPSILON);
+        assertEquals(1.0, large.getPosttestProbability(), EPSILON);
+        assertFalse(Double.isNaN(large.getPosttestProbability()));
+        // a single additional likelihood ratio must still change the ranking, although the
+        // post-test probability of both results is rounded to 1.0
+        double[] observed2 = Arrays.copyOf(observed, 41);
+        observed2[40] = 2.0;
+        TestResult larger = new TestResult(observed2, new double[0], glaucoma, 0.025);
+        assertTrue(larger.compareTo(large) > 0);
+    }
+
+    @Test
+    void testManySmallLikelihoodRatiosDoNotUnderflow() {
+        double[] excluded = new double[40];
+        Arrays.fill(excluded, 1e-10);
+        TestResult small = new TestResult(new double[]{2.0}, excluded, glaucoma, 0.025);
+        assertEquals(Math.log10(2.0) - 400.0, small.getLog10CompositeLR(), EPSILON);
+        assertEquals(0.0, small.getPosttestProbability(), EPSILON);
+        assertEquals(41, small.getNumberOfTests());
+    }
+
+    @Test
+    void testLog10PosttestOdds() {
+        // pretest odds 0.025/0.975, composite LR 24
+        double expected = Math.log10(0.025 / 0.975 * 24.0);
+        assertEquals(expected, tresultNoGenotype.getLog10PosttestOdds(), EPSILON);
+        assertEquals(Math.log10(24.0), tresultNoGenotype.getLog10CompositeLR(), EPSILON);
+    }
+
     @Test
     void testHasGenotype() {
         assertTrue(tresultWithGenotype.hasGenotype());
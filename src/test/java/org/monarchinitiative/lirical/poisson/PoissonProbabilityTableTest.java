@@ -0,0 +1,33 @@
+package org.monarchinitiative.lirical.poisson;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Check that the memoised probabilities of {@link PoissonProbabilityTable} are identical to the ones of
+ * {@link PoissonDistribution}, including counts that fall into the same cell of the grid and counts beyond it.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class PoissonProbabilityTableTest {
+
+    @Test
+    void testIdenticalToPoissonDistribution() {
+        Random random = new Random(42);
+        for (double lambda : new double[]{0.0001, 0.1, 1.0, 2.0, 3.7}) {
+            PoissonDistribution exact = new PoissonDistribution(lambda);
+            PoissonProbabilityTable table = new PoissonProbabilityTable(lambda);
+            for (int i = 0; i < 2000; i++) {
+                // repeated queries of a few counts, and many counts that share a cell
+                double x = i % 3 == 0 ? (i % 7) * 0.5 : random.nextDouble() * (PoissonProbabilityTable.MAX_COUNT + 2);
+                assertEquals(exact.logProbability(x), table.logProbability(x));
+                assertEquals(exact.probability(x), table.probability(x));
+            }
+            assertEquals(exact.logProbability(-1.0), table.logProbability(-1.0));
+            assertEquals(exact.logProbability(PoissonProbabilityTable.MAX_COUNT),
+                    table.logProbability(PoissonProbabilityTable.MAX_COUNT));
+        }
+    }
+}